@@ -151,8 +151,17 @@ public class HttpWebConnection implements WebConnection {
     /** Authentication cache shared among all threads of a web client. */
     private final AuthCache sharedAuthCache_ = new SynchronizedAuthCache();
 
-    /** Maintains a separate {@link HttpClientContext} object per HttpWebConnection and thread. */
-    private final Map<Thread, HttpClientContext> httpClientContextByThread_ = new WeakHashMap<>();
+    /**
+     * Maintains a separate {@link HttpClientContext} object per HttpWebConnection and thread.
+     * This is a thread local (and not a synchronized map) to avoid pinning of virtual threads.
+     */
+    private final ThreadLocal<HttpClientContext> httpClientContextByThread_ = ThreadLocal.withInitial(() -> {
+        final HttpClientContext httpClientContext = new HttpClientContext();
+
+        // set the shared authentication cache
+        httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
+        return httpClientContext;
+    });
 
     /**
      * Creates a new HTTP web connection instance.
@@ -243,17 +252,8 @@ public class HttpWebConnection implements WebConnection {
     /**
      * Returns the {@link HttpClientContext} for the current thread. Creates a new one if necessary.
      */
-    private synchronized HttpContext getHttpContext() {
-        HttpClientContext httpClientContext = httpClientContextByThread_.get(Thread.currentThread());
-        if (httpClientContext == null) {
-            httpClientContext = new HttpClientContext();
-
-            // set the shared authentication cache
-            httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
-
-            httpClientContextByThread_.put(Thread.currentThread(), httpClientContext);
-        }
-        return httpClientContext;
+    private HttpContext getHttpContext() {
+        return httpClientContextByThread_.get();
     }
 
     private void setProxy(final HttpRequestBase httpRequest, final WebRequest webRequest) {
@@ -22,6 +22,7 @@ import com.gargoylesoftware.htmlunit.html.HtmlPage;
  * is called. It gives developers the opportunity to modify the script to be executed.
  *
  * @author <a href="mailto:bcurren@esomnie.com">Ben Curren</a>
+ * @author Ronald Brill
  */
 public interface ScriptPreProcessor {
 
@@ -35,4 +36,15 @@ public interface ScriptPreProcessor {
      * @return the source code after pre processing
      */
     String preProcess(HtmlPage htmlPage, String sourceCode, String sourceName, int lineNumber, HtmlElement htmlElement);
+
+    /**
+     * Returns {@code true} if the result of {@link #preProcess(HtmlPage, String, String, int, HtmlElement)}
+     * only depends on the source code, the source name and the line number. In this case the compiled
+     * code of short dynamic scripts (like the code passed to <code>eval()</code>) can be reused without
+     * calling the pre processor again.
+     * @return {@code false} by default
+     */
+    default boolean isDeterministic() {
+        return false;
+    }
 }
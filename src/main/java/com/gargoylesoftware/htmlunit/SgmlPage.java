@@ -20,6 +20,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.xpath.XPathContext;
 import org.w3c.dom.CDATASection;
 import org.w3c.dom.Comment;
 import org.w3c.dom.DOMException;
@@ -34,6 +35,7 @@ import org.w3c.dom.traversal.NodeFilter;
 import com.gargoylesoftware.htmlunit.html.AbstractDomNodeList;
 import com.gargoylesoftware.htmlunit.html.DomAttr;
 import com.gargoylesoftware.htmlunit.html.DomCDataSection;
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
 import com.gargoylesoftware.htmlunit.html.DomComment;
 import com.gargoylesoftware.htmlunit.html.DomDocumentFragment;
 import com.gargoylesoftware.htmlunit.html.DomElement;
@@ -56,6 +58,10 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     private WebWindow enclosingWindow_;
     private final WebClient webClient_;
 
+    private transient int modificationCount_;
+    private transient XPathContext xpathContext_;
+    private transient int xpathContextModificationCount_;
+
     /**
      * Creates an instance of SgmlPage.
      *
@@ -77,6 +83,9 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
         if (getWebClient().getCache().getCachedResponse(webResponse_.getWebRequest()) == null) {
             webResponse_.cleanUp();
         }
+        synchronized (this) {
+            xpathContext_ = null;
+        }
     }
 
     /**
@@ -211,6 +220,8 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     protected SgmlPage clone() {
         try {
             final SgmlPage result = (SgmlPage) super.clone();
+            // the cached context belongs to the nodes of this page
+            result.xpathContext_ = null;
             return result;
         }
         catch (final CloneNotSupportedException e) {
@@ -380,4 +391,77 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
      * @return the content type of this page
      */
     public abstract String getContentType();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void fireNodeAdded(final DomChangeEvent event) {
+        notifyModification();
+        super.fireNodeAdded(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void fireNodeDeleted(final DomChangeEvent event) {
+        notifyModification();
+        super.fireNodeDeleted(event);
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns a counter that changes whenever nodes are added to or removed from this page or
+     * attributes of its elements are added, replaced or removed. Structures derived from the
+     * DOM tree can use it to find out if they are still up to date.
+     * @return the modification count
+     */
+    public int getModificationCount() {
+        return modificationCount_;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Notifies this page that its DOM tree was modified; used for modifications
+     * not firing a {@link DomChangeEvent}.
+     */
+    public void notifyModification() {
+        modificationCount_++;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Removes the XPath context cached for this page and returns it, if the page was not modified
+     * since the context was released. A context is never used by two threads at the same time.
+     * @return the context or {@code null}
+     * @see #releaseXPathContext(XPathContext, int)
+     */
+    public synchronized XPathContext acquireXPathContext() {
+        final XPathContext context = xpathContext_;
+        xpathContext_ = null;
+        if (context != null && xpathContextModificationCount_ == modificationCount_) {
+            return context;
+        }
+        return null;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Caches the given XPath context for the next evaluation. The context is dropped
+     * if the page was modified since the given modification count was read.
+     * @param context the context, its DTM must only contain the nodes of this page
+     * @param modificationCount the {@link #getModificationCount() modification count}
+     *        read before the context was used
+     */
+    public synchronized void releaseXPathContext(final XPathContext context, final int modificationCount) {
+        if (modificationCount == modificationCount_) {
+            xpathContext_ = context;
+            xpathContextModificationCount_ = modificationCount;
+        }
+    }
 }
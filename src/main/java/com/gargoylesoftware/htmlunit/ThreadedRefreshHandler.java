@@ -20,6 +20,8 @@ import java.net.URL;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.gargoylesoftware.htmlunit.util.ThreadUtils;
+
 /**
  * This refresh handler spawns a new thread that waits the specified
  * number of seconds before refreshing the specified page, using the
@@ -45,7 +47,7 @@ public class ThreadedRefreshHandler implements RefreshHandler {
      */
     @Override
     public void handleRefresh(final Page page, final URL url, final int seconds) {
-        final Thread thread = new Thread("ThreadedRefreshHandler Thread") {
+        final Runnable refresh = new Runnable() {
             @Override
             public void run() {
                 try {
@@ -57,7 +59,8 @@ public class ThreadedRefreshHandler implements RefreshHandler {
                 }
             }
         };
-        thread.setDaemon(true);
+        final boolean virtual = page.getEnclosingWindow().getWebClient().getOptions().isUseVirtualThreads();
+        final Thread thread = ThreadUtils.newThread("ThreadedRefreshHandler Thread", refresh, virtual);
         thread.start();
     }
 
@@ -80,6 +80,7 @@ import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.DefaultJavaScriptErrorListener;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptErrorListener;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.host.Location;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
@@ -204,6 +205,7 @@ public class WebClient implements Serializable, AutoCloseable {
     private transient MSXMLActiveXObjectFactory msxmlActiveXObjectFactory_;
     private RefreshHandler refreshHandler_ = new NiceRefreshHandler(2);
     private JavaScriptErrorListener javaScriptErrorListener_ = new DefaultJavaScriptErrorListener();
+    private JavaScriptClock javaScriptClock_ = new JavaScriptClock();
 
     private WebClientOptions options_ = new WebClientOptions();
     private final boolean javaScriptEngineEnabled_;
@@ -1629,6 +1631,28 @@ public class WebClient implements Serializable, AutoCloseable {
         return scriptPreProcessor_;
     }
 
+    /**
+     * Sets the clock used for scheduling the background JavaScript jobs and as time source
+     * for {@code Date} and {@code performance.now()}.
+     * Use a {@link com.gargoylesoftware.htmlunit.javascript.background.VirtualJavaScriptClock}
+     * to fast-forward timeouts and intervals while waiting for background JavaScript.
+     * The clock should be set before the first page is loaded.
+     * @param javaScriptClock the new clock (must not be {@code null})
+     */
+    public void setJavaScriptClock(final JavaScriptClock javaScriptClock) {
+        WebAssert.notNull("javaScriptClock", javaScriptClock);
+        javaScriptClock_ = javaScriptClock;
+    }
+
+    /**
+     * Returns the clock used for the JavaScript support.
+     * The default clock simply follows the system clock.
+     * @return the clock
+     */
+    public JavaScriptClock getJavaScriptClock() {
+        return javaScriptClock_;
+    }
+
     /**
      * Sets the active X object map for this webclient. The <code>Map</code> is used to map the
      * string passed into the <code>ActiveXObject</code> constructor to a java class name. Therefore
@@ -2006,7 +2030,7 @@ public class WebClient implements Serializable, AutoCloseable {
      */
     public int waitForBackgroundJavaScript(final long timeoutMillis) {
         int count = 0;
-        final long endTime = System.currentTimeMillis() + timeoutMillis;
+        final long endTime = javaScriptClock_.currentTimeMillis() + timeoutMillis;
         for (Iterator<WeakReference<JavaScriptJobManager>> i = jobManagers_.iterator(); i.hasNext();) {
             final JavaScriptJobManager jobManager;
             final WeakReference<JavaScriptJobManager> reference;
@@ -2024,11 +2048,11 @@ public class WebClient implements Serializable, AutoCloseable {
                 continue;
             }
 
-            final long newTimeout = endTime - System.currentTimeMillis();
+            final long newTimeout = endTime - javaScriptClock_.currentTimeMillis();
             count += jobManager.waitForJobs(newTimeout);
         }
         if (count != getAggregateJobCount()) {
-            final long newTimeout = endTime - System.currentTimeMillis();
+            final long newTimeout = endTime - javaScriptClock_.currentTimeMillis();
             return waitForBackgroundJavaScript(newTimeout);
         }
         return count;
@@ -2060,7 +2084,7 @@ public class WebClient implements Serializable, AutoCloseable {
      */
     public int waitForBackgroundJavaScriptStartingBefore(final long delayMillis) {
         int count = 0;
-        final long endTime = System.currentTimeMillis() + delayMillis;
+        final long endTime = javaScriptClock_.currentTimeMillis() + delayMillis;
         for (Iterator<WeakReference<JavaScriptJobManager>> i = jobManagers_.iterator(); i.hasNext();) {
             final JavaScriptJobManager jobManager;
             final WeakReference<JavaScriptJobManager> reference;
@@ -2077,11 +2101,11 @@ public class WebClient implements Serializable, AutoCloseable {
                 count = 0;
                 continue;
             }
-            final long newDelay = endTime - System.currentTimeMillis();
+            final long newDelay = endTime - javaScriptClock_.currentTimeMillis();
             count += jobManager.waitForJobsStartingBefore(newDelay);
         }
         if (count != getAggregateJobCount()) {
-            final long newDelay = endTime - System.currentTimeMillis();
+            final long newDelay = endTime - javaScriptClock_.currentTimeMillis();
             return waitForBackgroundJavaScriptStartingBefore(newDelay);
         }
         return count;
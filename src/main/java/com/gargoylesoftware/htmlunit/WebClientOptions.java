@@ -64,6 +64,10 @@ public class WebClientOptions implements Serializable {
     private int webSocketMaxBinaryMessageSize_ = -1;
     private int webSocketMaxBinaryMessageBufferSize_ = -1;
 
+    private int javaScriptExecutorThreads_ = 1;
+    private boolean useVirtualThreads_;
+    private int javaScriptOptimizationLevel_ = -1;
+
     /**
      * If set to {@code true}, the client will accept connections to any host, regardless of
      * whether they have valid certificates or not. This is especially useful when you are trying to
@@ -719,4 +723,71 @@ public class WebClientOptions implements Serializable {
     public void setWebSocketMaxBinaryMessageBufferSize(final int webSocketMaxBinaryMessageBufferSize) {
         webSocketMaxBinaryMessageBufferSize_ = webSocketMaxBinaryMessageBufferSize;
     }
+
+    /**
+     * Returns the number of threads used to execute the background JavaScript jobs.
+     * @return the number of threads
+     */
+    public int getJavaScriptExecutorThreads() {
+        return javaScriptExecutorThreads_;
+    }
+
+    /**
+     * Sets the number of threads used to execute the background JavaScript jobs (default is 1).
+     * If more than one thread is configured, unrelated top level windows are processed
+     * in parallel; the jobs of one window (and its frames and the windows opened by it)
+     * are always executed by the same thread.
+     * This has to be set before the first page is loaded.
+     *
+     * @param javaScriptExecutorThreads the number of threads
+     * @see com.gargoylesoftware.htmlunit.javascript.background.ParallelJavaScriptExecutor
+     */
+    public void setJavaScriptExecutorThreads(final int javaScriptExecutorThreads) {
+        javaScriptExecutorThreads_ = javaScriptExecutorThreads;
+    }
+
+    /**
+     * Returns whether the background threads of the client are virtual threads.
+     * @return whether to use virtual threads
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads_;
+    }
+
+    /**
+     * Sets whether to use virtual threads for the event loop, the refresh handling and
+     * the WebSocket connections (default is {@code false}).
+     * This is only supported by JDKs providing virtual threads (Java 21 and later);
+     * on other JDKs this setting is ignored.
+     * This has to be set before the first page is loaded.
+     *
+     * @param useVirtualThreads whether to use virtual threads
+     */
+    public void setUseVirtualThreads(final boolean useVirtualThreads) {
+        useVirtualThreads_ = useVirtualThreads;
+    }
+
+    /**
+     * Returns the optimization level used to run JavaScript code.
+     * @return the optimization level
+     */
+    public int getJavaScriptOptimizationLevel() {
+        return javaScriptOptimizationLevel_;
+    }
+
+    /**
+     * Sets the optimization level used to run JavaScript code (default is -1).
+     * A value of -1 runs all scripts in the interpreter; the values 0 to 9 compile
+     * the scripts to Java bytecode, which is faster for code executed many times.
+     * If a debugger is attached or a script can not be compiled (e.g. because a method
+     * is too large) the interpreter is used anyway.
+     *
+     * @param javaScriptOptimizationLevel the optimization level (-1 to 9)
+     */
+    public void setJavaScriptOptimizationLevel(final int javaScriptOptimizationLevel) {
+        if (javaScriptOptimizationLevel < -1 || javaScriptOptimizationLevel > 9) {
+            throw new IllegalArgumentException("Invalid optimization level: " + javaScriptOptimizationLevel);
+        }
+        javaScriptOptimizationLevel_ = javaScriptOptimizationLevel;
+    }
 }
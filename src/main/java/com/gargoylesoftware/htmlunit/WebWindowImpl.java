@@ -23,6 +23,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,6 +58,7 @@ public abstract class WebWindowImpl implements WebWindow {
     private String name_ = "";
     private final History history_ = new History(this);
     private boolean closed_;
+    private final AtomicLong javaScriptExecutionTime_ = new AtomicLong();
 
     private int innerHeight_;
     private int outerHeight_;
@@ -255,6 +257,25 @@ public abstract class WebWindowImpl implements WebWindow {
         return history_;
     }
 
+    /**
+     * Returns the time spent executing JavaScript for pages of this window.
+     * Only top level calls are counted; nested calls are part of the caller's time.
+     * @return the JavaScript execution time in milliseconds
+     */
+    public long getJavaScriptExecutionTime() {
+        return javaScriptExecutionTime_.get() / 1_000_000;
+    }
+
+    /**
+     * <p><span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span></p>
+     *
+     * Adds the given amount to the JavaScript execution time of this window.
+     * @param nanos the time spent in nanoseconds
+     */
+    public void addJavaScriptExecutionTime(final long nanos) {
+        javaScriptExecutionTime_.addAndGet(nanos);
+    }
+
     /**
      * {@inheritDoc}
      */
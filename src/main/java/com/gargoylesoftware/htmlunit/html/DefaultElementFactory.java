@@ -18,7 +18,6 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.KEYGEN_AS_BLO
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.KEYGEN_AS_SELECT;
 
 import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -772,28 +771,34 @@ public class DefaultElementFactory implements ElementFactory {
     }
 
     /**
-     * Converts {@link Attributes} into the map needed by {@link HtmlElement}s.
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Converts {@link Attributes} into the map needed by {@link DomElement}s.
+     * The {@link DomAttr}s of attributes without namespace are only created if requested.
      *
      * @param page the page which contains the specified attributes
      * @param attributes the SAX attributes
-     * @return the map of attribute values for {@link HtmlElement}s
+     * @return the map of attribute values for {@link DomElement}s
      */
-    static Map<String, DomAttr> toMap(final SgmlPage page, final Attributes attributes) {
+    public static Map<String, DomAttr> toMap(final SgmlPage page, final Attributes attributes) {
         if (attributes == null) {
             return null;
         }
 
-        final Map<String, DomAttr> attributeMap = new LinkedHashMap<>(attributes.getLength());
-        for (int i = 0; i < attributes.getLength(); i++) {
+        final int length = attributes.getLength();
+        final NamedAttrNodeMapImpl attributeMap = new NamedAttrNodeMapImpl(page, length);
+        for (int i = 0; i < length; i++) {
             final String qName = attributes.getQName(i);
             // browsers consider only first attribute (ex: <div id='foo' id='something'>...</div>)
             if (!attributeMap.containsKey(qName)) {
-                String namespaceURI = attributes.getURI(i);
-                if (namespaceURI != null && namespaceURI.isEmpty()) {
-                    namespaceURI = null;
+                final String namespaceURI = attributes.getURI(i);
+                if (namespaceURI == null || namespaceURI.isEmpty()) {
+                    attributeMap.putValue(qName, attributes.getValue(i));
+                }
+                else {
+                    final DomAttr newAttr = new DomAttr(page, namespaceURI, qName, attributes.getValue(i), true);
+                    attributeMap.put(qName, newAttr);
                 }
-                final DomAttr newAttr = new DomAttr(page, namespaceURI, qName, attributes.getValue(i), true);
-                attributeMap.put(qName, newAttr);
             }
         }
         return attributeMap;
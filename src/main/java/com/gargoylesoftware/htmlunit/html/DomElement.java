@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -84,10 +87,10 @@ public class DomElement extends DomNamespaceNode implements Element {
     public static final String ATTRIBUTE_VALUE_EMPTY = new String();
 
     /** The map holding the attributes, keyed by name. */
-    private NamedAttrNodeMapImpl attributes_ = new NamedAttrNodeMapImpl(this, isAttributeCaseSensitive());
+    private NamedAttrNodeMapImpl attributes_;
 
-    /** The map holding the namespaces, keyed by URI. */
-    private Map<String, String> namespaces_ = new HashMap<>();
+    /** The map holding the namespaces, keyed by URI; created for the first attribute with a namespace. */
+    private Map<String, String> namespaces_;
 
     /** Cache for the styles. */
     private String styleString_ = new String();
@@ -112,14 +115,21 @@ public class DomElement extends DomNamespaceNode implements Element {
         super(namespaceURI, qualifiedName, page);
         if (attributes != null && !attributes.isEmpty()) {
             attributes_ = new NamedAttrNodeMapImpl(this, isAttributeCaseSensitive(), attributes);
-            for (final DomAttr entry : attributes_.values()) {
-                entry.setParentNode(this);
-                final String attrNamespaceURI = entry.getNamespaceURI();
-                if (attrNamespaceURI != null) {
-                    namespaces_.put(attrNamespaceURI, entry.getPrefix());
+            for (int i = 0; i < attributes_.size(); i++) {
+                // attributes without namespace are usually not yet created
+                final DomAttr entry = attributes_.createdAttrAt(i);
+                if (entry != null) {
+                    entry.setParentNode(this);
+                    final String attrNamespaceURI = entry.getNamespaceURI();
+                    if (attrNamespaceURI != null) {
+                        addNamespace(attrNamespaceURI, entry.getPrefix());
+                    }
                 }
             }
         }
+        else {
+            attributes_ = new NamedAttrNodeMapImpl(this, isAttributeCaseSensitive());
+        }
     }
 
     /**
@@ -301,11 +311,11 @@ public class DomElement extends DomNamespaceNode implements Element {
      */
     protected void printOpeningTagContentAsXml(final PrintWriter printWriter) {
         printWriter.print(getTagName());
-        for (final Map.Entry<String, DomAttr> entry : attributes_.entrySet()) {
+        for (int i = 0; i < attributes_.size(); i++) {
             printWriter.print(" ");
-            printWriter.print(entry.getKey());
+            printWriter.print(attributes_.nameAt(i));
             printWriter.print("=\"");
-            printWriter.print(StringUtils.escapeXmlAttributeValue(entry.getValue().getNodeValue()));
+            printWriter.print(StringUtils.escapeXmlAttributeValue(attributes_.valueAt(i)));
             printWriter.print("\"");
         }
     }
@@ -358,7 +368,7 @@ public class DomElement extends DomNamespaceNode implements Element {
             qualifiedName = localName;
         }
         else {
-            final String prefix = namespaces_.get(namespaceURI);
+            final String prefix = namespaces_ == null ? null : namespaces_.get(namespaceURI);
             if (prefix == null) {
                 qualifiedName = null;
             }
@@ -380,11 +390,7 @@ public class DomElement extends DomNamespaceNode implements Element {
      */
     @Override
     public String getAttribute(final String attributeName) {
-        final DomAttr attr = attributes_.get(attributeName);
-        if (attr != null) {
-            return attr.getNodeValue();
-        }
-        return ATTRIBUTE_NOT_DEFINED;
+        return attributes_.getValue(attributeName);
     }
 
     /**
@@ -394,11 +400,7 @@ public class DomElement extends DomNamespaceNode implements Element {
      * @return the value of the attribute or {@link #ATTRIBUTE_NOT_DEFINED} or {@link #ATTRIBUTE_VALUE_EMPTY}
      */
     public String getAttributeDirect(final String attributeName) {
-        final DomAttr attr = attributes_.getDirect(attributeName);
-        if (attr != null) {
-            return attr.getNodeValue();
-        }
-        return ATTRIBUTE_NOT_DEFINED;
+        return attributes_.getValueDirect(attributeName);
     }
 
     /**
@@ -444,7 +446,7 @@ public class DomElement extends DomNamespaceNode implements Element {
     public final boolean hasAttributeNS(final String namespaceURI, final String localName) {
         final String qualifiedName = getQualifiedName(namespaceURI, localName);
         if (qualifiedName != null) {
-            return attributes_.get(qualifiedName) != null;
+            return attributes_.containsKey(qualifiedName);
         }
         return false;
     }
@@ -501,14 +503,22 @@ public class DomElement extends DomNamespaceNode implements Element {
     protected void setAttributeNS(final String namespaceURI, final String qualifiedName,
             final String attributeValue, final boolean notifyAttributeChangeListeners,
             final boolean notifyMutationObservers) {
-        final String value = attributeValue;
-        final DomAttr newAttr = new DomAttr(getPage(), namespaceURI, qualifiedName, value, true);
+        if (namespaceURI == null) {
+            attributes_.putValue(qualifiedName, attributeValue);
+            return;
+        }
+
+        final DomAttr newAttr = new DomAttr(getPage(), namespaceURI, qualifiedName, attributeValue, true);
         newAttr.setParentNode(this);
         attributes_.put(qualifiedName, newAttr);
+        addNamespace(namespaceURI, newAttr.getPrefix());
+    }
 
-        if (namespaceURI != null) {
-            namespaces_.put(namespaceURI, newAttr.getPrefix());
+    private void addNamespace(final String namespaceURI, final String prefix) {
+        if (namespaces_ == null) {
+            namespaces_ = new HashMap<>();
         }
+        namespaces_.put(namespaceURI, prefix);
     }
 
     /**
@@ -1557,29 +1567,51 @@ public class DomElement extends DomNamespaceNode implements Element {
 
 /**
  * The {@link NamedNodeMap} to store the node attributes.
+ *
+ * <p>The names and values are stored in one flat array, the names are interned. An attribute without namespace
+ * is stored as plain value, the {@link DomAttr} node is only created when it is requested (e.g. by
+ * {@link #get(Object)} or {@link #item(int)}) and replaces the value afterwards.</p>
  */
 class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serializable {
     protected static final NamedAttrNodeMapImpl EMPTY_MAP = new NamedAttrNodeMapImpl();
-    private static final DomAttr[] EMPTY_ARRAY = new DomAttr[0];
+    private static final Object[] EMPTY_ARRAY = new Object[0];
 
-    private final Map<String, DomAttr> map_ = new LinkedHashMap<>();
-    private boolean dirty_ = false;
-    private DomAttr[] attrPositions_ = EMPTY_ARRAY;
+    /** The names (even indices) and the values (odd indices), a value is a {@link DomAttr} or a String. */
+    private Object[] entries_ = EMPTY_ARRAY;
+    private int size_;
     private final DomElement domNode_;
+    private final SgmlPage page_;
     private final boolean caseSensitive_;
 
     private NamedAttrNodeMapImpl() {
         super();
         domNode_ = null;
+        page_ = null;
         caseSensitive_ = true;
     }
 
+    /**
+     * Creates a map which is not yet attached to an element; the names are case sensitive.
+     * @param page the page the attributes belong to
+     * @param capacity the expected number of attributes
+     */
+    NamedAttrNodeMapImpl(final SgmlPage page, final int capacity) {
+        super();
+        domNode_ = null;
+        page_ = page;
+        caseSensitive_ = true;
+        if (capacity > 0) {
+            entries_ = new Object[capacity * 2];
+        }
+    }
+
     NamedAttrNodeMapImpl(final DomElement domNode, final boolean caseSensitive) {
         super();
         if (domNode == null) {
             throw new IllegalArgumentException("Provided domNode can't be null.");
         }
         domNode_ = domNode;
+        page_ = null;
         caseSensitive_ = caseSensitive;
     }
 
@@ -1628,14 +1660,10 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public Node item(final int index) {
-        if (index < 0 || index >= map_.size()) {
+        if (index < 0 || index >= size_) {
             return null;
         }
-        if (dirty_) {
-            attrPositions_ = map_.values().toArray(attrPositions_);
-            dirty_ = false;
-        }
-        return attrPositions_[index];
+        return attrAt(index);
     }
 
     /**
@@ -1678,9 +1706,63 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public DomAttr put(final String key, final DomAttr value) {
+        notifyModification();
         final String name = fixName(key);
-        dirty_ = true;
-        return map_.put(name, value);
+        final int index = indexOf(name);
+        if (index < 0) {
+            add(name, value);
+            return null;
+        }
+        final DomAttr old = attrAt(index);
+        entries_[index * 2 + 1] = value;
+        return old;
+    }
+
+    /**
+     * Sets the value of the attribute without namespace; the {@link DomAttr} is created later, if requested.
+     * @param qualifiedName the name of the attribute
+     * @param value the value of the attribute
+     */
+    void putValue(final String qualifiedName, final String value) {
+        notifyModification();
+        final String name = fixName(qualifiedName);
+        set(name, toEntry(qualifiedName, name, value));
+    }
+
+    private Object toEntry(final String qualifiedName, final String name, final String value) {
+        if (name.equals(qualifiedName)) {
+            if (value != null && value.isEmpty()) {
+                return DomElement.ATTRIBUTE_VALUE_EMPTY;
+            }
+            return value;
+        }
+
+        // the attribute node has to remember the original name
+        final DomAttr attr = new DomAttr(getPage(), null, qualifiedName, value, true);
+        if (domNode_ != null) {
+            attr.setParentNode(domNode_);
+        }
+        return attr;
+    }
+
+    private void set(final String name, final Object entry) {
+        final int index = indexOf(name);
+        if (index < 0) {
+            add(name, entry);
+        }
+        else {
+            entries_[index * 2 + 1] = entry;
+        }
+    }
+
+    private void add(final String name, final Object value) {
+        final int position = size_ * 2;
+        if (position == entries_.length) {
+            entries_ = Arrays.copyOf(entries_, Math.max(4, position * 2));
+        }
+        entries_[position] = name.intern();
+        entries_[position + 1] = value;
+        size_++;
     }
 
     /**
@@ -1690,19 +1772,50 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     public DomAttr remove(final Object key) {
         if (key instanceof String) {
             final String name = fixName((String) key);
-            dirty_ = true;
-            return map_.remove(name);
+            notifyModification();
+            final int index = indexOf(name);
+            if (index < 0) {
+                return null;
+            }
+            final DomAttr old = attrAt(index);
+            removeAt(index);
+            return old;
         }
         return null;
     }
 
+    private void removeAt(final int index) {
+        final int position = index * 2;
+        System.arraycopy(entries_, position + 2, entries_, position, size_ * 2 - position - 2);
+        size_--;
+        entries_[size_ * 2] = null;
+        entries_[size_ * 2 + 1] = null;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void clear() {
-        dirty_ = true;
-        map_.clear();
+        notifyModification();
+        Arrays.fill(entries_, 0, size_ * 2, null);
+        size_ = 0;
+    }
+
+    private void notifyModification() {
+        if (domNode_ != null) {
+            final SgmlPage page = domNode_.getPage();
+            if (page != null) {
+                page.notifyModification();
+            }
+        }
+    }
+
+    private SgmlPage getPage() {
+        if (domNode_ != null) {
+            return domNode_.getPage();
+        }
+        return page_;
     }
 
     /**
@@ -1710,6 +1823,30 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public void putAll(final Map<? extends String, ? extends DomAttr> t) {
+        if (t instanceof NamedAttrNodeMapImpl) {
+            // take over the values without creating the attribute nodes
+            final NamedAttrNodeMapImpl source = (NamedAttrNodeMapImpl) t;
+            if (source.size_ == 0) {
+                return;
+            }
+            notifyModification();
+            if (size_ == 0 && entries_.length < source.size_ * 2) {
+                entries_ = new Object[source.size_ * 2];
+            }
+            for (int i = 0; i < source.size_; i++) {
+                final String key = source.nameAt(i);
+                final String name = fixName(key);
+                final Object value = source.entries_[i * 2 + 1];
+                if (value instanceof DomAttr) {
+                    set(name, value);
+                }
+                else {
+                    set(name, toEntry(key, name, (String) value));
+                }
+            }
+            return;
+        }
+
         // add one after the other to save the positions
         for (final Map.Entry<? extends String, ? extends DomAttr> entry : t.entrySet()) {
             put(entry.getKey(), entry.getValue());
@@ -1723,7 +1860,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     public boolean containsKey(final Object key) {
         if (key instanceof String) {
             final String name = fixName((String) key);
-            return map_.containsKey(name);
+            return indexOf(name) > -1;
         }
         return false;
     }
@@ -1735,17 +1872,95 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     public DomAttr get(final Object key) {
         if (key instanceof String) {
             final String name = fixName((String) key);
-            return map_.get(name);
+            final int index = indexOf(name);
+            if (index > -1) {
+                return attrAt(index);
+            }
         }
         return null;
     }
 
     /**
-     * Fast access.
-     * @param key the key
+     * Returns the value of the attribute without creating the attribute node.
+     * @param key the name of the attribute
+     * @return the value or {@link DomElement#ATTRIBUTE_NOT_DEFINED}
+     */
+    String getValue(final String key) {
+        return getValueDirect(fixName(key));
+    }
+
+    /**
+     * Fast access; the name is used as it is.
+     * @param key the name of the attribute
+     * @return the value or {@link DomElement#ATTRIBUTE_NOT_DEFINED}
      */
-    protected DomAttr getDirect(final String key) {
-        return map_.get(key);
+    String getValueDirect(final String key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return DomElement.ATTRIBUTE_NOT_DEFINED;
+        }
+        return valueAt(index);
+    }
+
+    /**
+     * Returns the name of the attribute at the given index, as used as key of this map.
+     * @param index the index
+     * @return the name
+     */
+    String nameAt(final int index) {
+        return (String) entries_[index * 2];
+    }
+
+    /**
+     * Returns the value of the attribute at the given index without creating the attribute node.
+     * @param index the index
+     * @return the value
+     */
+    String valueAt(final int index) {
+        final Object value = entries_[index * 2 + 1];
+        if (value instanceof DomAttr) {
+            return ((DomAttr) value).getNodeValue();
+        }
+        return (String) value;
+    }
+
+    /**
+     * Returns the attribute node at the given index, if it was already created.
+     * @param index the index
+     * @return the attribute node or {@code null}
+     */
+    DomAttr createdAttrAt(final int index) {
+        final Object value = entries_[index * 2 + 1];
+        if (value instanceof DomAttr) {
+            return (DomAttr) value;
+        }
+        return null;
+    }
+
+    private DomAttr attrAt(final int index) {
+        final int position = index * 2 + 1;
+        final Object value = entries_[position];
+        if (value instanceof DomAttr) {
+            return (DomAttr) value;
+        }
+
+        final DomAttr attr = new DomAttr(getPage(), null, (String) entries_[index * 2], (String) value, true);
+        if (domNode_ != null) {
+            attr.setParentNode(domNode_);
+        }
+        entries_[position] = attr;
+        return attr;
+    }
+
+    private int indexOf(final String name) {
+        final Object[] entries = entries_;
+        final int end = size_ * 2;
+        for (int i = 0; i < end; i += 2) {
+            if (name.equals(entries[i])) {
+                return i / 2;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -1753,7 +1968,14 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public boolean containsValue(final Object value) {
-        return map_.containsValue(value);
+        if (value instanceof DomAttr) {
+            for (int i = 0; i < size_; i++) {
+                if (value.equals(entries_[i * 2 + 1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -1761,7 +1983,22 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public Set<Map.Entry<String, DomAttr>> entrySet() {
-        return map_.entrySet();
+        return new AbstractSet<Map.Entry<String, DomAttr>>() {
+            @Override
+            public Iterator<Map.Entry<String, DomAttr>> iterator() {
+                return new IndexIterator<Map.Entry<String, DomAttr>>() {
+                    @Override
+                    Map.Entry<String, DomAttr> get(final int index) {
+                        return new AttrEntry(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+        };
     }
 
     /**
@@ -1769,7 +2006,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public boolean isEmpty() {
-        return map_.isEmpty();
+        return size_ == 0;
     }
 
     /**
@@ -1777,7 +2014,27 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public Set<String> keySet() {
-        return map_.keySet();
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new IndexIterator<String>() {
+                    @Override
+                    String get(final int index) {
+                        return nameAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(final Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+        };
     }
 
     /**
@@ -1785,7 +2042,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public int size() {
-        return map_.size();
+        return size_;
     }
 
     /**
@@ -1793,6 +2050,85 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      */
     @Override
     public Collection<DomAttr> values() {
-        return map_.values();
+        return new AbstractCollection<DomAttr>() {
+            @Override
+            public Iterator<DomAttr> iterator() {
+                return new IndexIterator<DomAttr>() {
+                    @Override
+                    DomAttr get(final int index) {
+                        return attrAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the indices of the attributes.
+     * @param <T> the type of the elements
+     */
+    private abstract class IndexIterator<T> implements Iterator<T> {
+        private int next_;
+        private int last_ = -1;
+
+        abstract T get(int index);
+
+        @Override
+        public boolean hasNext() {
+            return next_ < size_;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last_ = next_++;
+            return get(last_);
+        }
+
+        @Override
+        public void remove() {
+            if (last_ < 0) {
+                throw new IllegalStateException();
+            }
+            notifyModification();
+            removeAt(last_);
+            next_ = last_;
+            last_ = -1;
+        }
+    }
+
+    /**
+     * An entry of the {@link #entrySet()}; the attribute node is created by {@link #getValue()}.
+     */
+    private final class AttrEntry implements Map.Entry<String, DomAttr> {
+        private final int index_;
+
+        AttrEntry(final int index) {
+            index_ = index;
+        }
+
+        @Override
+        public String getKey() {
+            return nameAt(index_);
+        }
+
+        @Override
+        public DomAttr getValue() {
+            return attrAt(index_);
+        }
+
+        @Override
+        public DomAttr setValue(final DomAttr value) {
+            final DomAttr old = attrAt(index_);
+            entries_[index_ * 2 + 1] = value;
+            return old;
+        }
     }
 }
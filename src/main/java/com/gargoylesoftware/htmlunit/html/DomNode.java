@@ -26,13 +26,19 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.xml.utils.PrefixResolver;
 import org.w3c.dom.DOMException;
@@ -46,7 +52,6 @@ import com.gargoylesoftware.css.parser.CSSException;
 import com.gargoylesoftware.css.parser.CSSOMParser;
 import com.gargoylesoftware.css.parser.CSSParseException;
 import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
-import com.gargoylesoftware.css.parser.selector.Selector;
 import com.gargoylesoftware.css.parser.selector.SelectorList;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.BrowserVersionFeatures;
@@ -59,11 +64,14 @@ import com.gargoylesoftware.htmlunit.html.HtmlElement.DisplayStyle;
 import com.gargoylesoftware.htmlunit.html.xpath.XPathHelper;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
 import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleDeclaration;
+import com.gargoylesoftware.htmlunit.javascript.host.css.AncestorFilter;
 import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleSheet;
+import com.gargoylesoftware.htmlunit.javascript.host.css.SelectorMatcher;
 import com.gargoylesoftware.htmlunit.javascript.host.css.StyleAttributes;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
@@ -119,6 +127,18 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     /** The name of the "element" property. Used when watching property change events. */
     public static final String PROPERTY_ELEMENT = "element";
 
+    /** The default gap between the document order of two consecutive nodes. */
+    private static final long DOCUMENT_ORDER_STEP = 1L << 32;
+
+    /** The maximum number of parsed selectors kept in the cache. */
+    static final int SELECTOR_CACHE_SIZE = 1_000;
+
+    /**
+     * The parsed and validated selectors of querySelector(), querySelectorAll() and matches().
+     * The selector lists are never modified after parsing, therefore they are shared by all pages and clients.
+     */
+    private static final LruCache<SelectorKey, SelectorList> SELECTORS = new LruCache<>(SELECTOR_CACHE_SIZE);
+
     /** The owning page of this node. */
     private SgmlPage page_;
 
@@ -139,6 +159,24 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     /** Start of the child list. */
     private DomNode firstChild_;
 
+    /**
+     * The child nodes of this node as array (the array may be larger), {@code null} if not computed
+     * or outdated. Appending a child updates the array, all other changes of the children reset it.
+     */
+    private transient DomNode[] childNodes_;
+
+    /** The number of valid entries in {@link #childNodes_}. */
+    private int childNodesCount_;
+
+    /** The index of this node within its parent's child nodes; only valid if the parent has an array. */
+    private int index_;
+
+    /**
+     * The position of this node in document order. Only nodes attached to the page have a valid value;
+     * the values are sparse to allow inserting nodes without renumbering the whole document.
+     */
+    private long documentOrder_;
+
     /**
      * This is the JavaScript object corresponding to this DOM node. It may
      * be null if there isn't a corresponding JavaScript object.
@@ -317,6 +355,12 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return this node's index within its parent's child nodes (zero-based)
      */
     public int getIndex() {
+        final int childIndex = getChildIndex();
+        if (childIndex != -1) {
+            return childIndex;
+        }
+
+        // not a regular child (e.g. an attribute)
         int index = 0;
         for (DomNode n = previousSibling_; n != null && n.nextSibling_ != null; n = n.previousSibling_) {
             index++;
@@ -386,6 +430,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     /** @param previous set the previousSibling field value */
     protected void setPreviousSibling(final DomNode previous) {
         previousSibling_ = previous;
+        resetParentChildNodes();
     }
 
     /**
@@ -395,6 +440,62 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     public void setNextSibling(final DomNode next) {
         nextSibling_ = next;
+        resetParentChildNodes();
+    }
+
+    /**
+     * Returns the child nodes of this node as array; the index of the children is updated if the
+     * array has to be created. Only the first {@link #childNodesCount_} entries are valid.
+     * @return the child nodes
+     */
+    DomNode[] getChildNodesArray() {
+        DomNode[] childNodes = childNodes_;
+        if (childNodes == null) {
+            int count = 0;
+            for (DomNode node = firstChild_; node != null; node = node.nextSibling_) {
+                count++;
+            }
+
+            childNodes = new DomNode[count];
+            int index = 0;
+            for (DomNode node = firstChild_; node != null && index < count; node = node.nextSibling_) {
+                node.index_ = index;
+                childNodes[index++] = node;
+            }
+            childNodesCount_ = index;
+            childNodes_ = childNodes;
+        }
+        return childNodes;
+    }
+
+    /**
+     * @return the number of child nodes of this node
+     */
+    int getChildNodesCount() {
+        getChildNodesArray();
+        return childNodesCount_;
+    }
+
+    /**
+     * Returns the index of this node within the child nodes of its parent using the array of the child nodes.
+     * @return the index or {@code -1} if this node is not part of the child nodes of its parent
+     */
+    private int getChildIndex() {
+        final DomNode parent = parent_;
+        if (parent != null) {
+            final DomNode[] siblings = parent.getChildNodesArray();
+            final int index = index_;
+            if (index < parent.childNodesCount_ && siblings[index] == this) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void resetParentChildNodes() {
+        if (parent_ != null) {
+            parent_.childNodes_ = null;
+        }
     }
 
     /**
@@ -542,8 +643,18 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         }
 
         // neither contains nor contained by
-        final Node myAncestor = myAncestors.get(i);
-        final Node otherAncestor = otherAncestors.get(i);
+        final DomNode myAncestor = (DomNode) myAncestors.get(i);
+        final DomNode otherAncestor = (DomNode) otherAncestors.get(i);
+        // the indexes are only comparable for siblings, the nodes may be part of different trees
+        final int myIndex = myAncestor.getChildIndex();
+        final int otherIndex = otherAncestor.getChildIndex();
+        if (myIndex != -1 && otherIndex != -1 && myAncestor.getParentNode() == otherAncestor.getParentNode()) {
+            if (myIndex < otherIndex) {
+                return DOCUMENT_POSITION_FOLLOWING;
+            }
+            return DOCUMENT_POSITION_PRECEDING;
+        }
+
         Node node = myAncestor;
         while (node != otherAncestor && node != null) {
             node = node.getPreviousSibling();
@@ -900,6 +1011,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         newnode.previousSibling_ = null;
         newnode.scriptObject_ = null;
         newnode.firstChild_ = null;
+        newnode.childNodes_ = null;
         newnode.attachedToPage_ = false;
 
         // if deep, clone the children too.
@@ -1006,6 +1118,17 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
             firstChild_.previousSibling_ = node; // new last node
         }
         node.parent_ = this;
+
+        // appending is the usual case, keep the array of the child nodes
+        DomNode[] childNodes = childNodes_;
+        if (childNodes != null) {
+            if (childNodesCount_ == childNodes.length) {
+                childNodes = Arrays.copyOf(childNodes, childNodes.length * 2 + 4);
+                childNodes_ = childNodes;
+            }
+            node.index_ = childNodesCount_;
+            childNodes[childNodesCount_++] = node;
+        }
     }
 
     /**
@@ -1076,6 +1199,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         node.nextSibling_ = this;
         previousSibling_ = node;
         node.parent_ = parent_;
+        parent_.childNodes_ = null;
     }
 
     private void fireAddition(final DomNode domNode) {
@@ -1083,6 +1207,8 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         domNode.attachedToPage_ = isAttachedToPage();
 
         if (isAttachedToPage()) {
+            assignDocumentOrder(domNode);
+
             // trigger events
             final Page page = getPage();
             if (null != page && page.isHtmlPage()) {
@@ -1176,6 +1302,18 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * Cuts off all relationships this node has with siblings and parents.
      */
     protected void basicRemove() {
+        if (parent_ != null) {
+            final DomNode[] siblings = parent_.childNodes_;
+            if (siblings != null && parent_.childNodesCount_ > 0
+                    && siblings[parent_.childNodesCount_ - 1] == this) {
+                // removing the last child is the usual case, keep the array of the child nodes
+                parent_.childNodesCount_--;
+                siblings[parent_.childNodesCount_] = null;
+            }
+            else {
+                parent_.childNodes_ = null;
+            }
+        }
         if (parent_ != null && parent_.firstChild_ == this) {
             parent_.firstChild_ = nextSibling_;
         }
@@ -1257,11 +1395,109 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         if (destination.getPage() != getPage()) {
             throw new RuntimeException("Cannot perform quiet move on nodes from different pages.");
         }
+        final HtmlPage htmlPage = getHtmlPageOrNull();
+        if (htmlPage != null) {
+            htmlPage.resetIndexes();
+        }
+        getPage().notifyModification();
         for (final DomNode child : getChildren()) {
             child.basicRemove();
             destination.basicAppend(child);
         }
         basicRemove();
+        updateDocumentOrder(getPage());
+    }
+
+    /**
+     * Assigns the document order to the specified node and its descendants; the node has just been
+     * inserted into the page. The numbers are taken from the gap between the preceding node in
+     * document order and the following one, if there is no gap left the whole document is numbered again.
+     * @param node the node
+     */
+    private static void assignDocumentOrder(final DomNode node) {
+        DomNode previous = node.getPreviousSibling();
+        if (previous == null) {
+            previous = node.parent_;
+        }
+        else {
+            while (previous.firstChild_ != null) {
+                previous = previous.getLastChild();
+            }
+        }
+
+        DomNode following = null;
+        for (DomNode n = node; n != null && following == null; n = n.parent_) {
+            following = n.nextSibling_;
+        }
+
+        int count = 1;
+        for (DomNode descendant = node.firstChild_; descendant != null; descendant = descendant.nextInOrder(node)) {
+            count++;
+        }
+
+        final long start = previous.documentOrder_;
+        final long end;
+        if (following == null) {
+            end = Long.MAX_VALUE;
+        }
+        else {
+            end = following.documentOrder_;
+        }
+        final long step = Math.min(DOCUMENT_ORDER_STEP, (end - start) / (count + 1));
+        if (step < 1) {
+            updateDocumentOrder(node.getPage());
+            return;
+        }
+
+        long order = start + step;
+        node.documentOrder_ = order;
+        for (DomNode descendant = node.firstChild_; descendant != null; descendant = descendant.nextInOrder(node)) {
+            order += step;
+            descendant.documentOrder_ = order;
+        }
+    }
+
+    /**
+     * Numbers all the nodes of the specified root in document order.
+     * @param root the root
+     */
+    private static void updateDocumentOrder(final DomNode root) {
+        long order = 0;
+        root.documentOrder_ = order;
+        for (DomNode descendant = root.firstChild_; descendant != null; descendant = descendant.nextInOrder(root)) {
+            order += DOCUMENT_ORDER_STEP;
+            descendant.documentOrder_ = order;
+        }
+    }
+
+    /**
+     * Returns the next node in document order, without leaving the subtree of the specified root.
+     * @param root the root of the subtree
+     * @return the next node or {@code null}
+     */
+    private DomNode nextInOrder(final DomNode root) {
+        if (firstChild_ != null) {
+            return firstChild_;
+        }
+        for (DomNode node = this; node != null && node != root; node = node.parent_) {
+            if (node.nextSibling_ != null) {
+                return node.nextSibling_;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Compares the position of two nodes in document order. Both nodes have to be attached to the same page,
+     * for all other nodes use {@link #compareDocumentPosition(Node)}.
+     * @param other the other node
+     * @return a negative integer, zero, or a positive integer as this node is before, the same
+     *         or after the other node
+     */
+    public int compareDocumentOrder(final DomNode other) {
+        return Long.compare(documentOrder_, other.documentOrder_);
     }
 
     /**
@@ -1569,6 +1805,16 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @see #getCanonicalXPath()
      */
     public <T> List<T> getByXPath(final String xpathExpr) {
+        return XPathHelper.getByXPath(this, xpathExpr, getSelectionNamespacesResolver(),
+                hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
+    }
+
+    /**
+     * Returns a prefix resolver for the namespaces defined by the SelectionNamespaces property
+     * of the document, if supported.
+     * @return the resolver or {@code null}
+     */
+    private PrefixResolver getSelectionNamespacesResolver() {
         PrefixResolver prefixResolver = null;
         if (hasFeature(XPATH_SELECTION_NAMESPACES)) {
             /*
@@ -1610,7 +1856,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
                 }
             }
         }
-        return XPathHelper.getByXPath(this, xpathExpr, prefixResolver, hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
+        return prefixResolver;
     }
 
     /**
@@ -1651,13 +1897,57 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @see #getByXPath(String)
      * @see #getCanonicalXPath()
      */
-    @SuppressWarnings("unchecked")
     public <X> X getFirstByXPath(final String xpathExpr, final PrefixResolver resolver) {
-        final List<?> results = getByXPath(xpathExpr, resolver);
-        if (results.isEmpty()) {
-            return null;
-        }
-        return (X) results.get(0);
+        return XPathHelper.getFirstByXPath(this, xpathExpr, resolver, hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
+    }
+
+    /**
+     * Evaluates the specified XPath expression from this node, returning an iterator over the matching
+     * elements. In contrast to {@link #getByXPath(String)} the elements are fetched lazily;
+     * the evaluation stops as soon as the caller stops iterating.
+     * The iterator throws a {@link java.util.ConcurrentModificationException} if the DOM is modified
+     * while iterating.
+     *
+     * @param <T> the expected type
+     * @param xpathExpr the XPath expression to evaluate
+     * @return the iterator over the elements which match the specified XPath expression
+     * @see #getByXPath(String)
+     */
+    public <T> Iterator<T> getByXPathIterator(final String xpathExpr) {
+        return XPathHelper.getByXPathIterator(this, xpathExpr, getSelectionNamespacesResolver(),
+                hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
+    }
+
+    /**
+     * Evaluates the specified XPath expression from this node, returning an iterator over the matching
+     * elements. In contrast to {@link #getByXPath(String, PrefixResolver)} the elements are fetched lazily;
+     * the evaluation stops as soon as the caller stops iterating.
+     * The iterator throws a {@link java.util.ConcurrentModificationException} if the DOM is modified
+     * while iterating.
+     *
+     * @param xpathExpr the XPath expression to evaluate
+     * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
+     * @return the iterator over the elements which match the specified XPath expression
+     * @see #getByXPath(String, PrefixResolver)
+     */
+    public Iterator<?> getByXPathIterator(final String xpathExpr, final PrefixResolver resolver) {
+        return XPathHelper.getByXPathIterator(this, xpathExpr, resolver, hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
+    }
+
+    /**
+     * Evaluates the specified XPath expression from this node, returning a sequential stream of the
+     * matching elements. The elements are fetched lazily, short-circuiting operations like
+     * {@link Stream#findFirst()} or {@link Stream#limit(long)} stop the evaluation early.
+     * The DOM must not be modified while the stream is consumed.
+     *
+     * @param <T> the expected type
+     * @param xpathExpr the XPath expression to evaluate
+     * @return the stream of the elements which match the specified XPath expression
+     * @see #getByXPathIterator(String)
+     */
+    public <T> Stream<T> getByXPathStream(final String xpathExpr) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this.<T>getByXPathIterator(xpathExpr),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     /**
@@ -1849,28 +2139,161 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return list of all found nodes
      */
     public DomNodeList<DomNode> querySelectorAll(final String selectors) {
+        final List<DomNode> elements = new ArrayList<>();
+        final Iterator<DomElement> iterator = querySelectorIterator(selectors);
+        while (iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+        return new StaticDomNodeList(elements);
+    }
+
+    /**
+     * Returns an iterator over the descendant elements of this node that match any selector
+     * within the supplied selector strings, in document order.
+     * In contrast to {@link #querySelectorAll(String)} the elements are searched lazily;
+     * the search stops as soon as the caller stops iterating.
+     * The DOM must not be modified while iterating.
+     * @param selectors one or more CSS selectors separated by commas
+     * @return the iterator
+     */
+    public Iterator<DomElement> querySelectorIterator(final String selectors) {
         try {
             final BrowserVersion browserVersion = getPage().getWebClient().getBrowserVersion();
             final SelectorList selectorList = getSelectorList(selectors, browserVersion);
+            if (selectorList == null) {
+                return Collections.emptyIterator();
+            }
 
-            final List<DomNode> elements = new ArrayList<>();
-            if (selectorList != null) {
-                for (final DomElement child : getDomElementDescendants()) {
-                    for (Selector selector : selectorList) {
-                        if (CSSStyleSheet.selects(browserVersion, selector, child, null, true)) {
-                            elements.add(child);
-                            break;
+            if (selectorList.size() == 1) {
+                final SelectorMatcher matcher = SelectorMatcher.of(selectorList.get(0));
+                final String id = matcher.getRequiredId();
+                final SgmlPage page = getPage();
+                if (id != null && page instanceof HtmlPage && page.isAncestorOf(this)) {
+                    // only the few elements with this id have to be checked
+                    final List<DomElement> elements = new ArrayList<>();
+                    for (final DomElement candidate : ((HtmlPage) page).getElementsById(id)) {
+                        if (candidate != this && isAncestorOf(candidate)
+                                && matcher.matches(browserVersion, candidate, null, true, null)) {
+                            elements.add(candidate);
                         }
                     }
+                    return elements.iterator();
                 }
             }
-            return new StaticDomNodeList(elements);
+            return new QuerySelectorIterator(browserVersion, selectorList);
         }
         catch (final IOException e) {
             throw new CSSException("Error parsing CSS selectors from '" + selectors + "': " + e.getMessage());
         }
     }
 
+    /**
+     * Returns a sequential stream of the descendant elements of this node that match any selector
+     * within the supplied selector strings, in document order.
+     * The elements are searched lazily, short-circuiting operations like
+     * {@link Stream#findFirst()} or {@link Stream#limit(long)} stop the search early.
+     * The DOM must not be modified while the stream is consumed.
+     * @param selectors one or more CSS selectors separated by commas
+     * @return the stream
+     */
+    public Stream<DomElement> querySelectorStream(final String selectors) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(querySelectorIterator(selectors),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Iterates over the descendant elements matching one of the selectors of a list, in document order.
+     * The walk maintains an {@link AncestorFilter} of the ancestors of the current element.
+     */
+    private final class QuerySelectorIterator implements Iterator<DomElement> {
+        private final BrowserVersion browserVersion_;
+        private final SelectorMatcher[] matchers_;
+        private final AncestorFilter filter_ = new AncestorFilter();
+        private DomNode current_;
+        private DomElement next_;
+
+        QuerySelectorIterator(final BrowserVersion browserVersion, final SelectorList selectorList) {
+            browserVersion_ = browserVersion;
+            matchers_ = new SelectorMatcher[selectorList.size()];
+            for (int i = 0; i < matchers_.length; i++) {
+                matchers_[i] = SelectorMatcher.of(selectorList.get(i));
+            }
+
+            filter_.pushAncestors(DomNode.this);
+            if (DomNode.this instanceof DomElement) {
+                filter_.pushElement((DomElement) DomNode.this);
+            }
+            current_ = DomNode.this;
+            next_ = findNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next_ != null;
+        }
+
+        @Override
+        public DomElement next() {
+            final DomElement next = next_;
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            next_ = findNext();
+            return next;
+        }
+
+        private DomElement findNext() {
+            for (DomElement element = advance(); element != null; element = advance()) {
+                for (final SelectorMatcher matcher : matchers_) {
+                    if (matcher.matches(browserVersion_, element, null, true, filter_)) {
+                        return element;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Moves to the next element in document order, keeping the filter up to date.
+         * @return the new current element or {@code null} at the end of the walk
+         */
+        private DomElement advance() {
+            DomNode node = current_;
+            if (node == null) {
+                return null;
+            }
+
+            DomNode next = nextElement(node.getFirstChild());
+            if (next != null) {
+                if (node != DomNode.this) {
+                    filter_.pushElement((DomElement) node);
+                }
+            }
+            else {
+                while (next == null && node != DomNode.this) {
+                    next = nextElement(node.getNextSibling());
+                    if (next == null) {
+                        node = node.getParentNode();
+                        if (node == null || node == DomNode.this) {
+                            break;
+                        }
+                        filter_.popElement();
+                    }
+                }
+            }
+            current_ = next;
+            return (DomElement) next;
+        }
+
+        private DomNode nextElement(final DomNode start) {
+            DomNode node = start;
+            while (node != null && !(node instanceof DomElement)) {
+                node = node.getNextSibling();
+            }
+            return node;
+        }
+    }
+
     /**
      * Returns the {@link SelectorList}.
      * @param selectors the selectors
@@ -1880,26 +2303,37 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     protected SelectorList getSelectorList(final String selectors, final BrowserVersion browserVersion)
             throws IOException {
+        int documentMode = 9;
+        if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
+            final Object sobj = getPage().getScriptableObject();
+            if (sobj instanceof HTMLDocument) {
+                documentMode = ((HTMLDocument) sobj).getDocumentMode();
+            }
+        }
+
+        final SelectorKey key = new SelectorKey(selectors, browserVersion, documentMode);
+        SelectorList selectorList = SELECTORS.get(key);
+        if (selectorList != null) {
+            // the validation of some pseudo classes depends on the node if it is not attached
+            if (!isAttachedToPage()) {
+                CSSStyleSheet.validateSelectors(selectorList, documentMode, this);
+            }
+            return selectorList;
+        }
+
         final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
         final CheckErrorHandler errorHandler = new CheckErrorHandler();
         parser.setErrorHandler(errorHandler);
 
-        final SelectorList selectorList = parser.parseSelectors(selectors);
+        selectorList = parser.parseSelectors(selectors);
         // in case of error parseSelectors returns null
         if (errorHandler.errorDetected()) {
             throw new CSSException("Invalid selectors: " + selectors);
         }
 
         if (selectorList != null) {
-            int documentMode = 9;
-            if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
-                final Object sobj = getPage().getScriptableObject();
-                if (sobj instanceof HTMLDocument) {
-                    documentMode = ((HTMLDocument) sobj).getDocumentMode();
-                }
-            }
             CSSStyleSheet.validateSelectors(selectorList, documentMode, this);
-
+            SELECTORS.put(key, selectorList);
         }
         return selectorList;
     }
@@ -1912,9 +2346,9 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     @SuppressWarnings("unchecked")
     public <N extends DomNode> N querySelector(final String selectors) {
-        final DomNodeList<DomNode> list = querySelectorAll(selectors);
-        if (!list.isEmpty()) {
-            return (N) list.get(0);
+        final Iterator<DomElement> iterator = querySelectorIterator(selectors);
+        if (iterator.hasNext()) {
+            return (N) iterator.next();
         }
         return null;
     }
@@ -1953,6 +2387,37 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         return getPage().getWebClient().getBrowserVersion().hasFeature(feature);
     }
 
+    /**
+     * The key of the selector cache; the result of the validation depends on the browser and the document mode.
+     */
+    private static final class SelectorKey {
+        private final String selectors_;
+        private final BrowserVersion browserVersion_;
+        private final int documentMode_;
+
+        SelectorKey(final String selectors, final BrowserVersion browserVersion, final int documentMode) {
+            selectors_ = selectors;
+            browserVersion_ = browserVersion;
+            documentMode_ = documentMode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof SelectorKey)) {
+                return false;
+            }
+            final SelectorKey other = (SelectorKey) obj;
+            return browserVersion_ == other.browserVersion_
+                    && documentMode_ == other.documentMode_
+                    && selectors_.equals(other.selectors_);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(browserVersion_) * 31 + documentMode_) * 31 + selectors_.hashCode();
+        }
+    }
+
     private static final class CheckErrorHandler implements CSSErrorHandler {
         private boolean errorDetected_;
 
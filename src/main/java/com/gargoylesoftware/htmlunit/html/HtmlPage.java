@@ -156,6 +156,11 @@ public class HtmlPage extends SgmlPage {
     private Map<String, SortedSet<DomElement>> nameMap_
             = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
 
+    /** Lazily created index of the elements by their lower case tag name. */
+    private Map<String, SortedSet<DomElement>> tagNameMap_;
+    /** Lazily created index of the html elements by each of their class names. */
+    private Map<String, SortedSet<DomElement>> classNameMap_;
+
     private SortedSet<BaseFrameElement> frameElements_ = new TreeSet<>(documentPositionComparator);
     private int parserCount_;
     private int snippetParserCount_;
@@ -179,6 +184,10 @@ public class HtmlPage extends SgmlPage {
     static class DocumentPositionComparator implements Comparator<DomElement>, Serializable {
         @Override
         public int compare(final DomElement elt1, final DomElement elt2) {
+            if (elt1.isAttachedToPage() && elt2.isAttachedToPage() && elt1.getPage() == elt2.getPage()) {
+                return elt1.compareDocumentOrder(elt2);
+            }
+
             final short relation = elt1.compareDocumentPosition(elt2);
             if (relation == 0) {
                 return 0; // same node
@@ -1717,6 +1726,68 @@ public class HtmlPage extends SgmlPage {
         return list;
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the elements of this page with the specified tag name (compared case insensitive), in document order.
+     * The index used to find the elements is created at the first call and maintained together with the
+     * id and name maps afterwards.
+     *
+     * @param tagName the tag name to search for
+     * @return the elements, the list is a copy and can be modified
+     */
+    public List<DomElement> getIndexedElementsByTagName(final String tagName) {
+        Map<String, SortedSet<DomElement>> tagNameMap = tagNameMap_;
+        if (tagNameMap == null) {
+            tagNameMap = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
+            for (final DomElement element : getDomElementDescendants()) {
+                addIndexedElement(tagNameMap, element, element.getNodeName().toLowerCase(Locale.ROOT));
+            }
+            tagNameMap_ = tagNameMap;
+        }
+        return copyOf(tagNameMap.get(tagName.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the html elements of this page having the specified class name, in document order.
+     * The index used to find the elements is created at the first call and maintained together with the
+     * id and name maps afterwards.
+     *
+     * @param className a single class name to search for
+     * @return the elements, the list is a copy and can be modified
+     */
+    public List<DomElement> getIndexedElementsByClassName(final String className) {
+        Map<String, SortedSet<DomElement>> classNameMap = classNameMap_;
+        if (classNameMap == null) {
+            classNameMap = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
+            for (final HtmlElement element : getHtmlElementDescendants()) {
+                addClassNames(classNameMap, element, false);
+            }
+            classNameMap_ = classNameMap;
+        }
+        return copyOf(classNameMap.get(className));
+    }
+
+    /**
+     * Drops the tag name and class name indexes; they are created again at the next use.
+     * This is required if nodes are moved without notification (parser hacks).
+     */
+    void resetIndexes() {
+        tagNameMap_ = null;
+        classNameMap_ = null;
+    }
+
+    private static List<DomElement> copyOf(final SortedSet<DomElement> elements) {
+        if (elements == null) {
+            return new ArrayList<>();
+        }
+        synchronized (elements) {
+            return new ArrayList<>(elements);
+        }
+    }
+
     /**
      * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
      *
@@ -1764,6 +1835,16 @@ public class HtmlPage extends SgmlPage {
                 calculateBase();
             }
         }
+        else if (node instanceof DomElement) {
+            final Map<String, SortedSet<DomElement>> classNameMap = classNameMap_;
+            if (classNameMap != null) {
+                removeClassNames(classNameMap, (DomElement) node, true);
+            }
+            final Map<String, SortedSet<DomElement>> tagNameMap = tagNameMap_;
+            if (tagNameMap != null) {
+                removeTagName(tagNameMap, (DomElement) node);
+            }
+        }
     }
 
     /**
@@ -1783,9 +1864,53 @@ public class HtmlPage extends SgmlPage {
         if (isAncestorOf(element)) {
             addElement(idMap_, element, "id", recurse);
             addElement(nameMap_, element, "name", recurse);
+
+            final Map<String, SortedSet<DomElement>> classNameMap = classNameMap_;
+            if (classNameMap != null) {
+                addClassNames(classNameMap, element, recurse);
+            }
+            // the tag name does not change; only added nodes have to be indexed
+            final Map<String, SortedSet<DomElement>> tagNameMap = tagNameMap_;
+            if (tagNameMap != null && recurse) {
+                addTagName(tagNameMap, element);
+            }
         }
     }
 
+    private static void addTagName(final Map<String, SortedSet<DomElement>> map, final DomElement element) {
+        addIndexedElement(map, element, element.getNodeName().toLowerCase(Locale.ROOT));
+        for (final DomElement child : element.getChildElements()) {
+            addTagName(map, child);
+        }
+    }
+
+    private static void addClassNames(final Map<String, SortedSet<DomElement>> map, final DomElement element,
+            final boolean recurse) {
+        if (element instanceof HtmlElement) {
+            final String classAttribute = element.getAttributeDirect("class");
+            if (DomElement.ATTRIBUTE_NOT_DEFINED != classAttribute) {
+                for (final String className : StringUtils.split(classAttribute)) {
+                    addIndexedElement(map, element, className);
+                }
+            }
+        }
+        if (recurse) {
+            for (final DomElement child : element.getChildElements()) {
+                addClassNames(map, child, true);
+            }
+        }
+    }
+
+    private static void addIndexedElement(final Map<String, SortedSet<DomElement>> map, final DomElement element,
+            final String key) {
+        SortedSet<DomElement> elements = map.get(key);
+        if (elements == null) {
+            elements = Collections.synchronizedSortedSet(new TreeSet<>(documentPositionComparator));
+            map.put(key, elements);
+        }
+        elements.add(element);
+    }
+
     private void addElement(final Map<String, SortedSet<DomElement>> map, final DomElement element,
             final String attribute, final boolean recurse) {
         final String value = getAttributeValue(element, attribute);
@@ -1852,6 +1977,50 @@ public class HtmlPage extends SgmlPage {
         if (descendant || isAncestorOf(element)) {
             removeElement(idMap_, element, "id", recurse);
             removeElement(nameMap_, element, "name", recurse);
+
+            final Map<String, SortedSet<DomElement>> classNameMap = classNameMap_;
+            if (classNameMap != null) {
+                removeClassNames(classNameMap, element, recurse);
+            }
+            final Map<String, SortedSet<DomElement>> tagNameMap = tagNameMap_;
+            if (tagNameMap != null && recurse) {
+                removeTagName(tagNameMap, element);
+            }
+        }
+    }
+
+    private static void removeTagName(final Map<String, SortedSet<DomElement>> map, final DomElement element) {
+        removeIndexedElement(map, element, element.getNodeName().toLowerCase(Locale.ROOT));
+        for (final DomElement child : element.getChildElements()) {
+            removeTagName(map, child);
+        }
+    }
+
+    private static void removeClassNames(final Map<String, SortedSet<DomElement>> map, final DomElement element,
+            final boolean recurse) {
+        if (element instanceof HtmlElement) {
+            final String classAttribute = element.getAttributeDirect("class");
+            if (DomElement.ATTRIBUTE_NOT_DEFINED != classAttribute) {
+                for (final String className : StringUtils.split(classAttribute)) {
+                    removeIndexedElement(map, element, className);
+                }
+            }
+        }
+        if (recurse) {
+            for (final DomElement child : element.getChildElements()) {
+                removeClassNames(map, child, true);
+            }
+        }
+    }
+
+    private static void removeIndexedElement(final Map<String, SortedSet<DomElement>> map,
+            final DomElement element, final String key) {
+        final SortedSet<DomElement> elements = map.get(key);
+        if (elements != null) {
+            elements.remove(element);
+            if (elements.isEmpty()) {
+                map.remove(key);
+            }
         }
     }
 
@@ -1881,7 +2050,7 @@ public class HtmlPage extends SgmlPage {
      */
     static boolean isMappedElement(final Document document, final String attributeName) {
         return document instanceof HtmlPage
-            && ("name".equals(attributeName) || "id".equals(attributeName));
+            && ("name".equals(attributeName) || "id".equals(attributeName) || "class".equals(attributeName));
     }
 
     private void calculateBase() {
@@ -1967,6 +2136,8 @@ public class HtmlPage extends SgmlPage {
 
         result.idMap_ = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
         result.nameMap_ = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
+        result.tagNameMap_ = null;
+        result.classNameMap_ = null;
 
         return result;
     }
@@ -65,6 +65,11 @@ public class HtmlTemplate extends HtmlElement {
      */
     @Override
     public void onAllChildrenAddedToPage(final boolean postponed) {
+        final HtmlPage htmlPage = getHtmlPageOrNull();
+        if (htmlPage != null && getFirstChild() != null) {
+            htmlPage.resetIndexes();
+            htmlPage.notifyModification();
+        }
         while (getFirstChild() != null) {
             final DomNode child = getFirstChild();
             child.basicRemove();
@@ -38,11 +38,7 @@ class SiblingDomNodeList extends AbstractSequentialList<DomNode> implements DomN
      */
     @Override
     public int getLength() {
-        int length = 0;
-        for (DomNode node = parent_.getFirstChild(); node != null; node = node.getNextSibling()) {
-            length++;
-        }
-        return length;
+        return parent_.getChildNodesCount();
     }
 
     /**
@@ -66,12 +62,9 @@ class SiblingDomNodeList extends AbstractSequentialList<DomNode> implements DomN
      */
     @Override
     public DomNode get(final int index) {
-        int i = 0;
-        for (DomNode node = parent_.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (i == index) {
-                return node;
-            }
-            i++;
+        final DomNode[] childNodes = parent_.getChildNodesArray();
+        if (index >= 0 && index < parent_.getChildNodesCount()) {
+            return childNodes[index];
         }
         return null;
     }
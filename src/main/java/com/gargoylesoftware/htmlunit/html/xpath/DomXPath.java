@@ -0,0 +1,1470 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html.xpath;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.html.DomAttr;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.LruCache;
+
+/**
+ * Evaluates the commonly used subset of XPath directly on the {@link DomNode} tree, without
+ * building the DTM of Xalan.
+ *
+ * <p>Supported are location paths with the child, descendant, descendant-or-self, attribute, parent
+ * and self axes (and the abbreviations {@code //}, {@code @}, {@code .} and {@code ..}), unprefixed
+ * name tests, {@code *}, {@code text()} and {@code node()}. The predicates can use numbers, string
+ * literals, location paths, the comparison operators, {@code and}, {@code or} and the functions
+ * {@code contains()}, {@code starts-with()}, {@code normalize-space()}, {@code string()},
+ * {@code not()}, {@code count()}, {@code position()}, {@code last()}, {@code true()} and
+ * {@code false()}.</p>
+ *
+ * <p>Everything else (namespace prefixes, unions, other axes, functions or operators) is not
+ * compiled and left to {@link XPathAdapter}. The same is done if the evaluation meets a node
+ * Xalan sees differently from the DOM (e.g. adjacent text nodes, which are only one node for Xalan).</p>
+ *
+ * <p>Descendant steps testing the id attribute with a literal (e.g. {@code //div[@id='x']}) use the
+ * id map of the {@link HtmlPage} instead of walking the tree.</p>
+ *
+ * @author Ronald Brill
+ */
+final class DomXPath {
+
+    private static final LruCache<XPathAdapter.XPathKey, DomXPath> EXPRESSIONS
+            = new LruCache<>(XPathAdapter.CACHE_SIZE);
+
+    /** Marks the expressions not supported in the cache. */
+    private static final DomXPath UNSUPPORTED = new DomXPath(null);
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)");
+    private static final Pattern NUMBER_LIKE_PATTERN = Pattern.compile("[-+0-9.eE]+|[-+]?(Infinity|NaN)");
+
+    private final LocationPath path_;
+
+    private DomXPath(final LocationPath path) {
+        path_ = path;
+    }
+
+    /**
+     * Returns the (cached) compiled expression.
+     * @param expression the XPath expression
+     * @param caseSensitive whether or not the XPath expression should be case-sensitive
+     * @param attributeCaseSensitive whether or not the attributes should be case-sensitive
+     * @return the compiled expression or {@code null} if the expression is not supported
+     */
+    static DomXPath getInstance(final String expression, final boolean caseSensitive,
+            final boolean attributeCaseSensitive) {
+        final XPathAdapter.XPathKey key = new XPathAdapter.XPathKey(expression, caseSensitive, attributeCaseSensitive);
+        final DomXPath xpath = EXPRESSIONS.computeIfAbsent(key,
+            k -> compile(XPathAdapter.preProcessXPath(expression, caseSensitive, attributeCaseSensitive)));
+        if (xpath == UNSUPPORTED) {
+            return null;
+        }
+        return xpath;
+    }
+
+    private static DomXPath compile(final String expression) {
+        try {
+            return new DomXPath(new Parser(expression).parse());
+        }
+        catch (final UnsupportedException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Evaluates the expression. The names of the nodes are the ones seen by Xalan,
+     * therefore this has to be called while {@link XPathHelper#isProcessingXPath()}.
+     * @param <T> the type class
+     * @param contextNode the node to start searching from
+     * @param list the list to add the nodes found to
+     * @return {@code false} if the expression can't be evaluated for this tree;
+     *         nothing is added to the list in this case
+     */
+    @SuppressWarnings("unchecked")
+    <T> boolean evaluate(final DomNode contextNode, final List<T> list) {
+        if (!isSupported(contextNode)) {
+            return false;
+        }
+
+        try {
+            list.addAll((List<T>) path_.select(contextNode));
+            return true;
+        }
+        catch (final UnsupportedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns an iterator over the nodes selected by the expression. Paths of child steps and single
+     * descendant steps without positional predicates are evaluated lazily, while iterating. If the walk
+     * meets a node Xalan sees differently, the remaining nodes are taken from the fallback, after skipping
+     * the nodes already returned. The same conditions as for {@link #evaluate(DomNode, List)} apply.
+     * @param <T> the type class
+     * @param contextNode the node to start searching from
+     * @param fallback supplies the iterator over the nodes selected by Xalan
+     * @return the iterator or {@code null} if the expression can't be evaluated for this tree
+     */
+    <T> Iterator<T> iterator(final DomNode contextNode, final Supplier<Iterator<T>> fallback) {
+        if (!path_.isLazy()) {
+            final List<T> list = new ArrayList<>();
+            if (!evaluate(contextNode, list)) {
+                return null;
+            }
+            return list.iterator();
+        }
+
+        if (!isSupported(contextNode)) {
+            return null;
+        }
+        try {
+            return new PathIterator<>(path_, contextNode, fallback);
+        }
+        catch (final UnsupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the document order is known for the context node.
+     */
+    private static boolean isSupported(final DomNode contextNode) {
+        final SgmlPage page = contextNode.getPage();
+        return contextNode == page
+                || contextNode.getNodeType() == Node.ELEMENT_NODE && page.isAncestorOf(contextNode);
+    }
+
+    /**
+     * Thrown if an expression or a tree is not supported.
+     */
+    private static final class UnsupportedException extends RuntimeException {
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private enum Axis {
+        CHILD, DESCENDANT, DESCENDANT_OR_SELF, ATTRIBUTE, PARENT, SELF
+    }
+
+    private enum NodeTest {
+        NAME, ANY_NAME, TEXT, NODE
+    }
+
+    private enum Operator {
+        EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL
+    }
+
+    private enum Function {
+        CONTAINS(2, 2), STARTS_WITH(2, 2), NORMALIZE_SPACE(0, 1), STRING(0, 1), NOT(1, 1), COUNT(1, 1),
+        POSITION(0, 0), LAST(0, 0), TRUE(0, 0), FALSE(0, 0);
+
+        private final int minArgs_;
+        private final int maxArgs_;
+
+        Function(final int minArgs, final int maxArgs) {
+            minArgs_ = minArgs;
+            maxArgs_ = maxArgs;
+        }
+    }
+
+    /**
+     * The parts of an expression. The values are either a {@code List} of nodes in document order,
+     * a {@code String}, a {@code Double} or a {@code Boolean}.
+     */
+    private abstract static class Expr {
+
+        /**
+         * Evaluates this expression.
+         * @param node the context node
+         * @param position the context position
+         * @param size the context size
+         * @return the value
+         */
+        abstract Object evaluate(DomNode node, int position, int size);
+
+        /**
+         * @return whether the value depends on the context position or size
+         */
+        boolean isPositional() {
+            return false;
+        }
+
+        /**
+         * @return whether the value is a number; a number predicate is compared with the position
+         */
+        boolean isNumber() {
+            return false;
+        }
+    }
+
+    private static final class Literal extends Expr {
+        private final Object value_;
+
+        Literal(final Object value) {
+            value_ = value;
+        }
+
+        @Override
+        Object evaluate(final DomNode node, final int position, final int size) {
+            return value_;
+        }
+
+        @Override
+        boolean isNumber() {
+            return value_ instanceof Double;
+        }
+    }
+
+    private static final class Logical extends Expr {
+        private final boolean and_;
+        private final Expr left_;
+        private final Expr right_;
+
+        Logical(final boolean and, final Expr left, final Expr right) {
+            and_ = and;
+            left_ = left;
+            right_ = right;
+        }
+
+        @Override
+        Object evaluate(final DomNode node, final int position, final int size) {
+            final boolean left = toBoolean(left_.evaluate(node, position, size));
+            if (left != and_) {
+                return Boolean.valueOf(left);
+            }
+            return Boolean.valueOf(toBoolean(right_.evaluate(node, position, size)));
+        }
+
+        @Override
+        boolean isPositional() {
+            return left_.isPositional() || right_.isPositional();
+        }
+    }
+
+    private static final class Comparison extends Expr {
+        private final Operator operator_;
+        private final Expr left_;
+        private final Expr right_;
+
+        Comparison(final Operator operator, final Expr left, final Expr right) {
+            operator_ = operator;
+            left_ = left;
+            right_ = right;
+        }
+
+        @Override
+        Object evaluate(final DomNode node, final int position, final int size) {
+            return Boolean.valueOf(compare(operator_, left_.evaluate(node, position, size),
+                    right_.evaluate(node, position, size)));
+        }
+
+        @Override
+        boolean isPositional() {
+            return left_.isPositional() || right_.isPositional();
+        }
+
+        /**
+         * Returns the value of the id if this is a comparison of the id attribute with a literal.
+         * @return the id or {@code null}
+         */
+        String getIdLiteral() {
+            if (operator_ != Operator.EQUAL) {
+                return null;
+            }
+            if (isIdAttribute(left_) && right_ instanceof Literal && ((Literal) right_).value_ instanceof String) {
+                return (String) ((Literal) right_).value_;
+            }
+            if (isIdAttribute(right_) && left_ instanceof Literal && ((Literal) left_).value_ instanceof String) {
+                return (String) ((Literal) left_).value_;
+            }
+            return null;
+        }
+
+        private static boolean isIdAttribute(final Expr expr) {
+            if (!(expr instanceof LocationPath)) {
+                return false;
+            }
+            final LocationPath path = (LocationPath) expr;
+            if (path.absolute_ || path.steps_.length != 1) {
+                return false;
+            }
+            final Step step = path.steps_[0];
+            return step.axis_ == Axis.ATTRIBUTE && step.test_ == NodeTest.NAME
+                    && "id".equals(step.name_) && step.predicates_.length == 0;
+        }
+    }
+
+    private static final class FunctionCall extends Expr {
+        private final Function function_;
+        private final Expr[] args_;
+
+        FunctionCall(final Function function, final Expr[] args) {
+            function_ = function;
+            args_ = args;
+        }
+
+        @Override
+        Object evaluate(final DomNode node, final int position, final int size) {
+            switch (function_) {
+                case CONTAINS:
+                    return Boolean.valueOf(argument(0, node, position, size)
+                            .contains(argument(1, node, position, size)));
+
+                case STARTS_WITH:
+                    return Boolean.valueOf(argument(0, node, position, size)
+                            .startsWith(argument(1, node, position, size)));
+
+                case NORMALIZE_SPACE:
+                    return normalizeSpace(argument(0, node, position, size));
+
+                case STRING:
+                    return argument(0, node, position, size);
+
+                case NOT:
+                    return Boolean.valueOf(!toBoolean(args_[0].evaluate(node, position, size)));
+
+                case COUNT:
+                    final Object nodes = args_[0].evaluate(node, position, size);
+                    if (!(nodes instanceof List)) {
+                        throw new UnsupportedException();
+                    }
+                    return Double.valueOf(((List<?>) nodes).size());
+
+                case POSITION:
+                    return Double.valueOf(position);
+
+                case LAST:
+                    return Double.valueOf(size);
+
+                case TRUE:
+                    return Boolean.TRUE;
+
+                default:
+                    return Boolean.FALSE;
+            }
+        }
+
+        /**
+         * Returns the argument as string; a missing argument is the context node.
+         */
+        private String argument(final int index, final DomNode node, final int position, final int size) {
+            if (index >= args_.length) {
+                return stringValue(node);
+            }
+            return toStringValue(args_[index].evaluate(node, position, size));
+        }
+
+        @Override
+        boolean isPositional() {
+            if (function_ == Function.POSITION || function_ == Function.LAST) {
+                return true;
+            }
+            for (final Expr arg : args_) {
+                if (arg.isPositional()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isNumber() {
+            return function_ == Function.COUNT || function_ == Function.POSITION || function_ == Function.LAST;
+        }
+    }
+
+    private static final class Step {
+        private final Axis axis_;
+        private final NodeTest test_;
+        private final String name_;
+        private final Expr[] predicates_;
+        private final boolean positional_;
+        /** Whether a descendant-or-self step only has to return the elements, used before a child step. */
+        private boolean elementsOnly_;
+
+        Step(final Axis axis, final NodeTest test, final String name, final Expr[] predicates) {
+            axis_ = axis;
+            test_ = test;
+            name_ = name;
+            predicates_ = predicates;
+
+            boolean positional = false;
+            for (final Expr predicate : predicates) {
+                positional |= predicate.isPositional() || predicate.isNumber();
+            }
+            positional_ = positional;
+        }
+
+        /**
+         * Returns the nodes selected by this step for all the given nodes.
+         * @param nodes the nodes in document order
+         * @return the nodes in document order
+         */
+        List<DomNode> select(final List<DomNode> nodes) {
+            if (nodes.size() == 1) {
+                return select(nodes.get(0));
+            }
+
+            final List<DomNode> result = new ArrayList<>();
+            for (final DomNode node : nodes) {
+                result.addAll(select(node));
+            }
+            if (axis_ == Axis.ATTRIBUTE || axis_ == Axis.SELF) {
+                return result;
+            }
+            return sortAndRemoveDuplicates(result);
+        }
+
+        private List<DomNode> select(final DomNode node) {
+            final List<DomNode> result = new ArrayList<>();
+            switch (axis_) {
+                case CHILD:
+                    if (node.getNodeType() != Node.ATTRIBUTE_NODE) {
+                        for (DomNode child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                            if (matches(child)) {
+                                result.add(child);
+                            }
+                        }
+                    }
+                    break;
+
+                case DESCENDANT:
+                    addDescendants(node, result);
+                    break;
+
+                case DESCENDANT_OR_SELF:
+                    if (matches(node)) {
+                        result.add(node);
+                    }
+                    addDescendants(node, result);
+                    break;
+
+                case ATTRIBUTE:
+                    if (node instanceof DomElement) {
+                        final NamedNodeMap attributes = node.getAttributes();
+                        final int length = attributes.getLength();
+                        for (int i = 0; i < length; i++) {
+                            final DomAttr attribute = (DomAttr) attributes.item(i);
+                            if (!isNamespaceDeclaration(attribute) && matches(attribute)) {
+                                result.add(attribute);
+                            }
+                        }
+                    }
+                    break;
+
+                case PARENT:
+                    final DomNode parent;
+                    if (node instanceof DomAttr) {
+                        parent = ((DomAttr) node).getOwnerElement();
+                    }
+                    else {
+                        parent = node.getParentNode();
+                    }
+                    if (parent != null && matches(parent)) {
+                        result.add(parent);
+                    }
+                    break;
+
+                default:
+                    if (matches(node)) {
+                        result.add(node);
+                    }
+            }
+            return filter(result);
+        }
+
+        private void addDescendants(final DomNode root, final List<DomNode> result) {
+            if (root.getNodeType() == Node.ATTRIBUTE_NODE) {
+                return;
+            }
+            DomNode node = root.getFirstChild();
+            while (node != null) {
+                if (elementsOnly_) {
+                    checkSupported(node);
+                    if (node.getNodeType() == Node.ELEMENT_NODE) {
+                        result.add(node);
+                    }
+                }
+                else if (matches(node)) {
+                    result.add(node);
+                }
+
+                DomNode next = node.getFirstChild();
+                while (next == null && node != root) {
+                    next = node.getNextSibling();
+                    node = node.getParentNode();
+                }
+                node = next;
+            }
+        }
+
+        /**
+         * Applies the predicates to the nodes selected for one context node.
+         */
+        List<DomNode> filter(final List<DomNode> nodes) {
+            List<DomNode> result = nodes;
+            for (final Expr predicate : predicates_) {
+                final int size = result.size();
+                final List<DomNode> filtered = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    final DomNode node = result.get(i);
+                    final Object value = predicate.evaluate(node, i + 1, size);
+                    final boolean keep;
+                    if (value instanceof Double) {
+                        keep = ((Double) value).doubleValue() == i + 1;
+                    }
+                    else {
+                        keep = toBoolean(value);
+                    }
+                    if (keep) {
+                        filtered.add(node);
+                    }
+                }
+                result = filtered;
+            }
+            return result;
+        }
+
+        /**
+         * Returns whether the node passes the node test and all the predicates;
+         * only to be used for steps without positional predicates.
+         */
+        boolean accepts(final DomNode node) {
+            if (!matches(node)) {
+                return false;
+            }
+            for (final Expr predicate : predicates_) {
+                if (!toBoolean(predicate.evaluate(node, 1, 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns whether the node passes the node test; the principal node type of the attribute axis
+         * is attribute, the one of the other axes is element.
+         */
+        boolean matches(final DomNode node) {
+            final short type = checkSupported(node);
+            switch (test_) {
+                case NAME:
+                    if (axis_ == Axis.ATTRIBUTE ? type == Node.ATTRIBUTE_NODE : type == Node.ELEMENT_NODE) {
+                        return name_.equals(node.getLocalName()) && namespaceURI(node) == null;
+                    }
+                    return false;
+
+                case ANY_NAME:
+                    return axis_ == Axis.ATTRIBUTE ? type == Node.ATTRIBUTE_NODE : type == Node.ELEMENT_NODE;
+
+                case TEXT:
+                    if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                        checkSingleText(node);
+                        return true;
+                    }
+                    return false;
+
+                default:
+                    if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                        checkSingleText(node);
+                    }
+                    return type != Node.DOCUMENT_TYPE_NODE;
+            }
+        }
+    }
+
+    private static final class LocationPath extends Expr {
+        private final boolean absolute_;
+        private final Step[] steps_;
+        /** The id, if the first step is a descendant step testing the id attribute with a literal. */
+        private final String id_;
+
+        LocationPath(final boolean absolute, final Step[] steps) {
+            absolute_ = absolute;
+            steps_ = steps;
+
+            String id = null;
+            if (steps.length > 0) {
+                final Step first = steps[0];
+                if (first.axis_ == Axis.DESCENDANT && first.test_ == NodeTest.NAME && !first.positional_) {
+                    for (final Expr predicate : first.predicates_) {
+                        if (id == null && predicate instanceof Comparison) {
+                            id = ((Comparison) predicate).getIdLiteral();
+                        }
+                    }
+                }
+            }
+            id_ = id;
+        }
+
+        @Override
+        Object evaluate(final DomNode node, final int position, final int size) {
+            return select(node);
+        }
+
+        /**
+         * Returns whether the nodes can be selected by a walk of the tree in document order:
+         * the path is either a single descendant step or a sequence of child steps,
+         * all without positional predicates and without the id map.
+         */
+        boolean isLazy() {
+            if (steps_.length == 0 || id_ != null) {
+                return false;
+            }
+            for (final Step step : steps_) {
+                if (step.positional_ || step.axis_ != Axis.CHILD
+                        && (steps_.length > 1 || step.axis_ != Axis.DESCENDANT
+                                && step.axis_ != Axis.DESCENDANT_OR_SELF)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        DomNode getStart(final DomNode contextNode) {
+            if (absolute_) {
+                return contextNode.getPage();
+            }
+            return contextNode;
+        }
+
+        List<DomNode> select(final DomNode contextNode) {
+            final DomNode start = getStart(contextNode);
+
+            List<DomNode> nodes;
+            int first = 0;
+            if (id_ != null && start.getPage() instanceof HtmlPage) {
+                nodes = steps_[0].filter(getElementsById(start));
+                first = 1;
+            }
+            else {
+                nodes = new ArrayList<>(1);
+                nodes.add(start);
+            }
+
+            for (int i = first; i < steps_.length && !nodes.isEmpty(); i++) {
+                nodes = steps_[i].select(nodes);
+            }
+            return nodes;
+        }
+
+        /**
+         * Returns the descendants of the start node with the id and the name of the first step, in document order.
+         * The id map contains the html elements; on html pages, all the elements matching an unprefixed name
+         * test are html elements.
+         */
+        private List<DomNode> getElementsById(final DomNode start) {
+            final List<DomNode> result = new ArrayList<>();
+            for (final DomElement element : ((HtmlPage) start.getPage()).getElementsById(id_)) {
+                if (element instanceof HtmlElement && element != start && start.isAncestorOf(element)
+                        && steps_[0].matches(element)) {
+                    result.add(element);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Walks the tree in document order for a {@link LocationPath#isLazy() lazy} path. The depth of a
+     * node below the start node is the index of the child step it has to pass; the children of a node
+     * are only visited if it passed its step.
+     */
+    private static final class PathIterator<T> implements Iterator<T> {
+        private final Step[] steps_;
+        private final boolean childSteps_;
+        private final DomNode start_;
+        private final Supplier<Iterator<T>> fallbackSupplier_;
+        private Iterator<T> fallback_;
+        private DomNode node_;
+        private int depth_;
+        private boolean descend_ = true;
+        private DomNode next_;
+        private int returned_;
+
+        PathIterator(final LocationPath path, final DomNode contextNode,
+                final Supplier<Iterator<T>> fallbackSupplier) {
+            steps_ = path.steps_;
+            childSteps_ = steps_[0].axis_ == Axis.CHILD;
+            start_ = path.getStart(contextNode);
+            fallbackSupplier_ = fallbackSupplier;
+
+            node_ = start_;
+            if (steps_[0].axis_ == Axis.DESCENDANT_OR_SELF && steps_[0].accepts(start_)) {
+                next_ = start_;
+            }
+            else {
+                next_ = findNext();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (fallback_ != null) {
+                return fallback_.hasNext();
+            }
+            return next_ != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (fallback_ != null) {
+                return fallback_.next();
+            }
+            if (next_ == null) {
+                throw new NoSuchElementException();
+            }
+
+            final DomNode node = next_;
+            returned_++;
+            try {
+                next_ = findNext();
+            }
+            catch (final UnsupportedException e) {
+                next_ = null;
+                fallback_ = fallbackSupplier_.get();
+                // the nodes before the unsupported one are the same for Xalan
+                for (int i = 0; i < returned_; i++) {
+                    fallback_.next();
+                }
+            }
+            return (T) node;
+        }
+
+        private DomNode findNext() {
+            while (true) {
+                DomNode next = null;
+                if (descend_ && node_.getNodeType() != Node.ATTRIBUTE_NODE) {
+                    next = node_.getFirstChild();
+                }
+                if (next != null) {
+                    depth_++;
+                }
+                else {
+                    DomNode node = node_;
+                    while (node != start_ && node.getNextSibling() == null) {
+                        node = node.getParentNode();
+                        depth_--;
+                    }
+                    if (node == start_) {
+                        return null;
+                    }
+                    next = node.getNextSibling();
+                }
+                node_ = next;
+
+                if (childSteps_) {
+                    final boolean accepted = steps_[depth_ - 1].accepts(next);
+                    descend_ = accepted && depth_ < steps_.length;
+                    if (accepted && depth_ == steps_.length) {
+                        return next;
+                    }
+                }
+                else if (steps_[0].accepts(next)) {
+                    return next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws an {@link UnsupportedException} if Xalan sees the node differently.
+     * @return the node type
+     */
+    private static short checkSupported(final DomNode node) {
+        final short type = node.getNodeType();
+        switch (type) {
+            case Node.ELEMENT_NODE:
+            case Node.ATTRIBUTE_NODE:
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+            case Node.COMMENT_NODE:
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_TYPE_NODE:
+                return type;
+
+            default:
+                // entity references are transparent, processing instructions named xml are ignored
+                throw new UnsupportedException();
+        }
+    }
+
+    /**
+     * Xalan merges adjacent text nodes and ignores empty ones.
+     */
+    private static void checkSingleText(final DomNode node) {
+        if (node.getNodeValue().isEmpty()
+                || isText(node.getPreviousSibling()) || isText(node.getNextSibling())) {
+            throw new UnsupportedException();
+        }
+    }
+
+    private static boolean isText(final DomNode node) {
+        return node != null
+                && (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE);
+    }
+
+    private static boolean isNamespaceDeclaration(final DomAttr attribute) {
+        final String name = attribute.getName();
+        return name.startsWith("xmlns:") || "xmlns".equals(name);
+    }
+
+    private static String namespaceURI(final DomNode node) {
+        final String namespaceURI = node.getNamespaceURI();
+        if (namespaceURI != null && namespaceURI.isEmpty()) {
+            throw new UnsupportedException();
+        }
+        return namespaceURI;
+    }
+
+    /**
+     * Sorts the nodes in document order and removes the duplicates; all nodes are attached to the page.
+     */
+    private static List<DomNode> sortAndRemoveDuplicates(final List<DomNode> nodes) {
+        nodes.sort(DomXPath::compareDocumentOrder);
+        final List<DomNode> result = new ArrayList<>(nodes.size());
+        DomNode last = null;
+        for (final DomNode node : nodes) {
+            if (node != last) {
+                result.add(node);
+                last = node;
+            }
+        }
+        return result;
+    }
+
+    private static int compareDocumentOrder(final DomNode node1, final DomNode node2) {
+        if (node1 == node2) {
+            return 0;
+        }
+        final DomNode owner1 = node1 instanceof DomAttr ? ((DomAttr) node1).getOwnerElement() : node1;
+        final DomNode owner2 = node2 instanceof DomAttr ? ((DomAttr) node2).getOwnerElement() : node2;
+        final int result = owner1.compareDocumentOrder(owner2);
+        if (result != 0 || owner1 != owner2) {
+            return result;
+        }
+        // the attributes follow their element
+        return Integer.compare(attributeIndex(node1), attributeIndex(node2));
+    }
+
+    private static int attributeIndex(final DomNode node) {
+        if (node instanceof DomAttr) {
+            final NamedNodeMap attributes = ((DomAttr) node).getOwnerElement().getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                if (attributes.item(i) == node) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the string-value of the node as defined by Xalan: the text of an element or a document
+     * is the concatenation of the text and CDATA nodes of the subtree.
+     */
+    private static String stringValue(final DomNode node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+            case Node.DOCUMENT_NODE:
+                final StringBuilder builder = new StringBuilder();
+                appendText(node, builder);
+                return builder.toString();
+
+            default:
+                return node.getNodeValue();
+        }
+    }
+
+    private static void appendText(final DomNode node, final StringBuilder builder) {
+        for (DomNode child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                case Node.DOCUMENT_FRAGMENT_NODE:
+                    appendText(child, builder);
+                    break;
+
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    builder.append(child.getNodeValue());
+                    break;
+
+                default:
+            }
+        }
+    }
+
+    private static boolean toBoolean(final Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        if (value instanceof List) {
+            return !((List<?>) value).isEmpty();
+        }
+        if (value instanceof String) {
+            return !((String) value).isEmpty();
+        }
+        final double d = ((Double) value).doubleValue();
+        return d != 0 && !Double.isNaN(d);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toStringValue(final Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof List) {
+            final List<DomNode> nodes = (List<DomNode>) value;
+            if (nodes.isEmpty()) {
+                return "";
+            }
+            return stringValue(nodes.get(0));
+        }
+        if (value instanceof Boolean) {
+            return value.toString();
+        }
+        final double d = ((Double) value).doubleValue();
+        if (d == (long) d && Math.abs(d) < 1e15) {
+            return Long.toString((long) d);
+        }
+        // the formatting of NaN, infinite and fractional numbers is left to Xalan
+        throw new UnsupportedException();
+    }
+
+    private static double toNumber(final Object value) {
+        if (value instanceof Double) {
+            return ((Double) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue() ? 1 : 0;
+        }
+        final String string = trim(toStringValue(value));
+        if (NUMBER_PATTERN.matcher(string).matches()) {
+            return Double.parseDouble(string);
+        }
+        if (NUMBER_LIKE_PATTERN.matcher(string).matches()) {
+            // exponents, signs and special values are not numbers for XPath, let Xalan decide
+            throw new UnsupportedException();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Compares two values as defined by XPath 1.0: a node-set is compared by the string-values of its
+     * nodes, the comparison is true if it is true for one of the nodes.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean compare(final Operator operator, final Object left, final Object right) {
+        if ((left instanceof List || right instanceof List)
+                && (left instanceof Boolean || right instanceof Boolean)) {
+            return compare(operator, Boolean.valueOf(toBoolean(left)), Boolean.valueOf(toBoolean(right)));
+        }
+        if (left instanceof List) {
+            for (final DomNode node : (List<DomNode>) left) {
+                if (compare(operator, stringValue(node), right)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (right instanceof List) {
+            for (final DomNode node : (List<DomNode>) right) {
+                if (compare(operator, left, stringValue(node))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (operator == Operator.EQUAL || operator == Operator.NOT_EQUAL) {
+            if (left instanceof Boolean || right instanceof Boolean) {
+                return compareEquality(operator, Boolean.valueOf(toBoolean(left)),
+                        Boolean.valueOf(toBoolean(right)));
+            }
+            if (left instanceof Double || right instanceof Double) {
+                return compareEquality(operator, Double.valueOf(toNumber(left)), Double.valueOf(toNumber(right)));
+            }
+            return compareEquality(operator, left, right);
+        }
+
+        final double l = toNumber(left);
+        final double r = toNumber(right);
+        switch (operator) {
+            case LESS:
+                return l < r;
+            case LESS_OR_EQUAL:
+                return l <= r;
+            case GREATER:
+                return l > r;
+            default:
+                return l >= r;
+        }
+    }
+
+    private static boolean compareEquality(final Operator operator, final Object left, final Object right) {
+        final boolean equal;
+        if (left instanceof Double) {
+            // NaN is not equal to itself
+            equal = ((Double) left).doubleValue() == ((Double) right).doubleValue();
+        }
+        else {
+            equal = left.equals(right);
+        }
+        return equal == (operator == Operator.EQUAL);
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static String trim(final String string) {
+        int start = 0;
+        int end = string.length();
+        while (start < end && isWhitespace(string.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(string.charAt(end - 1))) {
+            end--;
+        }
+        return string.substring(start, end);
+    }
+
+    private static String normalizeSpace(final String string) {
+        final StringBuilder builder = new StringBuilder(string.length());
+        boolean space = false;
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (isWhitespace(c)) {
+                space = builder.length() > 0;
+            }
+            else {
+                if (space) {
+                    builder.append(' ');
+                    space = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A recursive descent parser for the supported subset; everything else is reported
+     * by an {@link UnsupportedException}.
+     */
+    private static final class Parser {
+        private final String expression_;
+        private int pos_;
+
+        Parser(final String expression) {
+            expression_ = expression;
+        }
+
+        LocationPath parse() {
+            final LocationPath path = parseLocationPath();
+            skipWhitespace();
+            if (pos_ != expression_.length()) {
+                throw new UnsupportedException();
+            }
+            return path;
+        }
+
+        private LocationPath parseLocationPath() {
+            final List<Step> steps = new ArrayList<>();
+            boolean absolute = false;
+            skipWhitespace();
+            if (startsWith("//")) {
+                absolute = true;
+            }
+            else if (startsWith("/")) {
+                absolute = true;
+                pos_++;
+                if (!startsStep()) {
+                    return new LocationPath(true, new Step[0]);
+                }
+                steps.add(parseStep());
+            }
+            else {
+                steps.add(parseStep());
+            }
+
+            while (true) {
+                skipWhitespace();
+                if (startsWith("//")) {
+                    pos_ += 2;
+                    steps.add(new Step(Axis.DESCENDANT_OR_SELF, NodeTest.NODE, null, new Expr[0]));
+                }
+                else if (startsWith("/")) {
+                    pos_++;
+                }
+                else {
+                    break;
+                }
+                steps.add(parseStep());
+            }
+            return new LocationPath(absolute, optimize(steps));
+        }
+
+        /**
+         * Removes the self steps and merges {@code //} with the following step if the result is the same.
+         */
+        private static Step[] optimize(final List<Step> steps) {
+            final List<Step> result = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i++) {
+                final Step step = steps.get(i);
+                if (step.axis_ == Axis.SELF && step.test_ == NodeTest.NODE && step.predicates_.length == 0) {
+                    continue;
+                }
+                if (step.axis_ == Axis.DESCENDANT_OR_SELF && step.test_ == NodeTest.NODE
+                        && step.predicates_.length == 0 && i + 1 < steps.size()) {
+                    final Step next = steps.get(i + 1);
+                    if (next.axis_ == Axis.CHILD && !next.positional_) {
+                        result.add(new Step(Axis.DESCENDANT, next.test_, next.name_, next.predicates_));
+                        i++;
+                        continue;
+                    }
+                    // only the elements have child elements or attributes
+                    step.elementsOnly_ = next.axis_ == Axis.CHILD || next.axis_ == Axis.ATTRIBUTE;
+                }
+                result.add(step);
+            }
+            return result.toArray(new Step[result.size()]);
+        }
+
+        private boolean startsStep() {
+            skipWhitespace();
+            if (pos_ >= expression_.length()) {
+                return false;
+            }
+            final char c = expression_.charAt(pos_);
+            return c == '.' || c == '@' || c == '*' || isNameStart(c);
+        }
+
+        private Step parseStep() {
+            skipWhitespace();
+            if (startsWith("..")) {
+                pos_ += 2;
+                return new Step(Axis.PARENT, NodeTest.NODE, null, new Expr[0]);
+            }
+            if (startsWith(".")) {
+                pos_++;
+                return new Step(Axis.SELF, NodeTest.NODE, null, new Expr[0]);
+            }
+
+            Axis axis = Axis.CHILD;
+            if (startsWith("@")) {
+                pos_++;
+                axis = Axis.ATTRIBUTE;
+            }
+            else {
+                final int start = pos_;
+                final String name = parseName();
+                skipWhitespace();
+                if (name != null && startsWith("::")) {
+                    pos_ += 2;
+                    axis = parseAxis(name);
+                }
+                else {
+                    pos_ = start;
+                }
+            }
+
+            skipWhitespace();
+            final NodeTest test;
+            String name = null;
+            if (startsWith("*")) {
+                pos_++;
+                test = NodeTest.ANY_NAME;
+            }
+            else {
+                name = parseName();
+                if (name == null || startsWith(":")) {
+                    throw new UnsupportedException();
+                }
+                skipWhitespace();
+                if (startsWith("(")) {
+                    pos_++;
+                    skipWhitespace();
+                    expect(')');
+                    if ("text".equals(name)) {
+                        test = NodeTest.TEXT;
+                    }
+                    else if ("node".equals(name)) {
+                        test = NodeTest.NODE;
+                    }
+                    else {
+                        throw new UnsupportedException();
+                    }
+                    name = null;
+                }
+                else {
+                    test = NodeTest.NAME;
+                }
+            }
+
+            final List<Expr> predicates = new ArrayList<>();
+            skipWhitespace();
+            while (startsWith("[")) {
+                pos_++;
+                predicates.add(parseOr());
+                skipWhitespace();
+                expect(']');
+                skipWhitespace();
+            }
+            return new Step(axis, test, name, predicates.toArray(new Expr[predicates.size()]));
+        }
+
+        private static Axis parseAxis(final String name) {
+            switch (name) {
+                case "child":
+                    return Axis.CHILD;
+                case "descendant":
+                    return Axis.DESCENDANT;
+                case "descendant-or-self":
+                    return Axis.DESCENDANT_OR_SELF;
+                case "attribute":
+                    return Axis.ATTRIBUTE;
+                case "parent":
+                    return Axis.PARENT;
+                case "self":
+                    return Axis.SELF;
+                default:
+                    throw new UnsupportedException();
+            }
+        }
+
+        private Expr parseOr() {
+            Expr left = parseAnd();
+            while (isOperatorName("or")) {
+                left = new Logical(false, left, parseAnd());
+            }
+            return left;
+        }
+
+        private Expr parseAnd() {
+            Expr left = parseEquality();
+            while (isOperatorName("and")) {
+                left = new Logical(true, left, parseEquality());
+            }
+            return left;
+        }
+
+        private Expr parseEquality() {
+            Expr left = parseRelational();
+            while (true) {
+                skipWhitespace();
+                if (startsWith("=")) {
+                    pos_++;
+                    left = new Comparison(Operator.EQUAL, left, parseRelational());
+                }
+                else if (startsWith("!=")) {
+                    pos_ += 2;
+                    left = new Comparison(Operator.NOT_EQUAL, left, parseRelational());
+                }
+                else {
+                    return left;
+                }
+            }
+        }
+
+        private Expr parseRelational() {
+            Expr left = parsePrimary();
+            while (true) {
+                skipWhitespace();
+                final Operator operator;
+                if (startsWith("<=")) {
+                    pos_ += 2;
+                    operator = Operator.LESS_OR_EQUAL;
+                }
+                else if (startsWith("<")) {
+                    pos_++;
+                    operator = Operator.LESS;
+                }
+                else if (startsWith(">=")) {
+                    pos_ += 2;
+                    operator = Operator.GREATER_OR_EQUAL;
+                }
+                else if (startsWith(">")) {
+                    pos_++;
+                    operator = Operator.GREATER;
+                }
+                else {
+                    return left;
+                }
+                left = new Comparison(operator, left, parsePrimary());
+            }
+        }
+
+        private Expr parsePrimary() {
+            skipWhitespace();
+            if (pos_ >= expression_.length()) {
+                throw new UnsupportedException();
+            }
+            final char c = expression_.charAt(pos_);
+            if (c == '\'' || c == '"') {
+                final int end = expression_.indexOf(c, pos_ + 1);
+                if (end == -1) {
+                    throw new UnsupportedException();
+                }
+                final String literal = expression_.substring(pos_ + 1, end);
+                pos_ = end + 1;
+                return new Literal(literal);
+            }
+            if (isDigit(c) || c == '.' && pos_ + 1 < expression_.length() && isDigit(expression_.charAt(pos_ + 1))) {
+                final int start = pos_;
+                while (pos_ < expression_.length()
+                        && (isDigit(expression_.charAt(pos_)) || expression_.charAt(pos_) == '.')) {
+                    pos_++;
+                }
+                final String number = expression_.substring(start, pos_);
+                if (!NUMBER_PATTERN.matcher(number).matches()) {
+                    throw new UnsupportedException();
+                }
+                return new Literal(Double.valueOf(number));
+            }
+            if (c == '(') {
+                pos_++;
+                final Expr expr = parseOr();
+                skipWhitespace();
+                expect(')');
+                return expr;
+            }
+
+            final int start = pos_;
+            final String name = parseName();
+            if (name != null) {
+                skipWhitespace();
+                if (startsWith("(") && !"text".equals(name) && !"node".equals(name)) {
+                    pos_++;
+                    return parseFunctionCall(name);
+                }
+            }
+            pos_ = start;
+            return parseLocationPath();
+        }
+
+        private Expr parseFunctionCall(final String name) {
+            final Function function;
+            try {
+                function = Function.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+            }
+            catch (final IllegalArgumentException e) {
+                throw new UnsupportedException();
+            }
+            if (!name.equals(name.toLowerCase(Locale.ROOT)) || name.indexOf('_') != -1) {
+                throw new UnsupportedException();
+            }
+
+            final List<Expr> args = new ArrayList<>();
+            skipWhitespace();
+            if (startsWith(")")) {
+                pos_++;
+            }
+            else {
+                while (true) {
+                    args.add(parseOr());
+                    skipWhitespace();
+                    if (startsWith(",")) {
+                        pos_++;
+                    }
+                    else {
+                        expect(')');
+                        break;
+                    }
+                }
+            }
+            if (args.size() < function.minArgs_ || args.size() > function.maxArgs_) {
+                throw new UnsupportedException();
+            }
+            return new FunctionCall(function, args.toArray(new Expr[args.size()]));
+        }
+
+        /**
+         * Consumes the operator name if it follows.
+         */
+        private boolean isOperatorName(final String name) {
+            skipWhitespace();
+            final int end = pos_ + name.length();
+            if (expression_.startsWith(name, pos_)
+                    && (end == expression_.length() || !isNameChar(expression_.charAt(end)))) {
+                pos_ = end;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parses an NCName.
+         * @return the name or {@code null} if there is no name
+         */
+        private String parseName() {
+            if (pos_ >= expression_.length() || !isNameStart(expression_.charAt(pos_))) {
+                return null;
+            }
+            final int start = pos_;
+            pos_++;
+            while (pos_ < expression_.length() && isNameChar(expression_.charAt(pos_))) {
+                pos_++;
+            }
+            return expression_.substring(start, pos_);
+        }
+
+        private void expect(final char c) {
+            if (pos_ >= expression_.length() || expression_.charAt(pos_) != c) {
+                throw new UnsupportedException();
+            }
+            pos_++;
+        }
+
+        private boolean startsWith(final String prefix) {
+            return expression_.startsWith(prefix, pos_);
+        }
+
+        private void skipWhitespace() {
+            while (pos_ < expression_.length() && isWhitespace(expression_.charAt(pos_))) {
+                pos_++;
+            }
+        }
+
+        private static boolean isDigit(final char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isNameStart(final char c) {
+            return Character.isLetter(c) || c == '_';
+        }
+
+        private static boolean isNameChar(final char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+        }
+    }
+}
@@ -14,7 +14,10 @@
  */
 package com.gargoylesoftware.htmlunit.html.xpath;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +37,9 @@ import org.apache.xpath.compiler.XPathParser;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.res.XPATHErrorResources;
 import org.apache.xpath.res.XPATHMessages;
+import org.w3c.dom.Node;
+
+import com.gargoylesoftware.htmlunit.util.LruCache;
 
 /**
  * XPath adapter implementation for HtmlUnit.
@@ -43,8 +49,19 @@ import org.apache.xpath.res.XPATHMessages;
 class XPathAdapter {
     private static final Pattern PREPROCESS_XPATH_PATTERN = Pattern.compile("(@[a-zA-Z]+)");
 
+    /** The maximum number of compiled expressions kept in the cache. */
+    static final int CACHE_SIZE = 1_000;
+
+    /**
+     * The compiled expressions. The prefixes of the expression are resolved during the compilation;
+     * a cached expression is only reused if the resolver returns the same namespaces for them.
+     */
+    private static final LruCache<XPathKey, XPathAdapter> ADAPTERS = new LruCache<>(CACHE_SIZE);
+
     private Expression mainExp_;
     private FunctionTable funcTable_;
+    private Map<String, String> resolvedPrefixes_;
+    private Boolean handlesNullPrefixes_;
 
     /**
      * Initiates the function table.
@@ -88,6 +105,56 @@ class XPathAdapter {
         }
     }
 
+    /**
+     * Returns the (cached) compiled expression.
+     * @param exprString the XPath expression
+     * @param prefixResolver a prefix resolver to use to resolve prefixes to namespace URIs
+     * @param caseSensitive whether or not the XPath expression should be case-sensitive
+     * @param attributeCaseSensitive whether or not the attributes should be case-sensitive
+     * @return the adapter
+     * @throws TransformerException if a syntax or other error occurs
+     */
+    static XPathAdapter getInstance(final String exprString, final PrefixResolver prefixResolver,
+            final boolean caseSensitive, final boolean attributeCaseSensitive) throws TransformerException {
+        final XPathKey key = new XPathKey(exprString, caseSensitive, attributeCaseSensitive);
+        final XPathAdapter cached = ADAPTERS.get(key);
+        if (cached != null && cached.resolvesSamePrefixes(prefixResolver)) {
+            return cached;
+        }
+
+        final RecordingPrefixResolver recorder = new RecordingPrefixResolver(prefixResolver);
+        final XPathAdapter adapter = new XPathAdapter(exprString, null, recorder, null,
+                caseSensitive, attributeCaseSensitive);
+        if (recorder.isReplayable()) {
+            adapter.resolvedPrefixes_ = recorder.resolvedPrefixes_;
+            adapter.handlesNullPrefixes_ = recorder.handlesNullPrefixes_;
+            ADAPTERS.put(key, adapter);
+        }
+        return adapter;
+    }
+
+    /**
+     * Returns the cache of the compiled expressions; shared by all
+     * {@link com.gargoylesoftware.htmlunit.WebClient}s. The cache can be used to get the hit rate.
+     * @return the cache
+     */
+    static LruCache<?, XPathAdapter> getCache() {
+        return ADAPTERS;
+    }
+
+    private boolean resolvesSamePrefixes(final PrefixResolver prefixResolver) {
+        if (handlesNullPrefixes_ != null
+                && handlesNullPrefixes_.booleanValue() != prefixResolver.handlesNullPrefixes()) {
+            return false;
+        }
+        for (final Map.Entry<String, String> entry : resolvedPrefixes_.entrySet()) {
+            if (!Objects.equals(entry.getValue(), prefixResolver.getNamespaceForPrefix(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Pre-processes the specified case-insensitive XPath expression before passing it to the engine.
      * The current implementation lower-cases the attribute name, and anything outside the brackets.
@@ -97,7 +164,7 @@ class XPathAdapter {
      * @param attributeCaseSensitive whether or not the attributes should be case-sensitive
      * @return the processed XPath expression
      */
-    private static String preProcessXPath(final String xpath, final boolean caseSensitive,
+    static String preProcessXPath(final String xpath, final boolean caseSensitive,
             final boolean attributeCaseSensitive) {
 
         String path;
@@ -205,4 +272,80 @@ class XPathAdapter {
 
         return xobj;
     }
+
+    /**
+     * The key of the caches of the compiled expressions.
+     */
+    static final class XPathKey {
+        private final String expression_;
+        private final boolean caseSensitive_;
+        private final boolean attributeCaseSensitive_;
+
+        XPathKey(final String expression, final boolean caseSensitive, final boolean attributeCaseSensitive) {
+            expression_ = expression;
+            caseSensitive_ = caseSensitive;
+            attributeCaseSensitive_ = attributeCaseSensitive;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof XPathKey)) {
+                return false;
+            }
+            final XPathKey other = (XPathKey) obj;
+            return caseSensitive_ == other.caseSensitive_
+                    && attributeCaseSensitive_ == other.attributeCaseSensitive_
+                    && expression_.equals(other.expression_);
+        }
+
+        @Override
+        public int hashCode() {
+            return (expression_.hashCode() * 31 + (caseSensitive_ ? 1 : 0)) * 31 + (attributeCaseSensitive_ ? 1 : 0);
+        }
+    }
+
+    /**
+     * Records the answers of a resolver during the compilation of an expression. The compiled
+     * expression must not keep a reference to the resolver, it usually references a node.
+     */
+    private static final class RecordingPrefixResolver implements PrefixResolver {
+        private final PrefixResolver resolver_;
+        private final Map<String, String> resolvedPrefixes_ = new HashMap<>();
+        private Boolean handlesNullPrefixes_;
+        private boolean replayable_ = true;
+
+        RecordingPrefixResolver(final PrefixResolver resolver) {
+            resolver_ = resolver;
+        }
+
+        boolean isReplayable() {
+            return replayable_;
+        }
+
+        @Override
+        public String getNamespaceForPrefix(final String prefix) {
+            final String namespace = resolver_.getNamespaceForPrefix(prefix);
+            resolvedPrefixes_.put(prefix, namespace);
+            return namespace;
+        }
+
+        @Override
+        public String getNamespaceForPrefix(final String prefix, final Node context) {
+            replayable_ = false;
+            return resolver_.getNamespaceForPrefix(prefix, context);
+        }
+
+        @Override
+        public String getBaseIdentifier() {
+            replayable_ = false;
+            return resolver_.getBaseIdentifier();
+        }
+
+        @Override
+        public boolean handlesNullPrefixes() {
+            final boolean handlesNullPrefixes = resolver_.handlesNullPrefixes();
+            handlesNullPrefixes_ = Boolean.valueOf(handlesNullPrefixes);
+            return handlesNullPrefixes;
+        }
+    }
 }
@@ -15,10 +15,16 @@
 package com.gargoylesoftware.htmlunit.html.xpath;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.xml.transform.TransformerException;
 
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.objects.XBoolean;
@@ -30,6 +36,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 
 /**
@@ -59,7 +66,6 @@ public final class XPathHelper {
      * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
      * @return the list of objects found
      */
-    @SuppressWarnings("unchecked")
     public static <T> List<T> getByXPath(final DomNode node, final String xpathExpr,
             final PrefixResolver resolver, final boolean caseSensitiveXpathAttributes) {
         if (xpathExpr == null) {
@@ -69,26 +75,7 @@ public final class XPathHelper {
         PROCESS_XPATH_.set(Boolean.TRUE);
         final List<T> list = new ArrayList<>();
         try {
-            final XObject result = evaluateXPath(node, xpathExpr, resolver, caseSensitiveXpathAttributes);
-
-            if (result instanceof XNodeSet) {
-                final NodeList nodelist = ((XNodeSet) result).nodelist();
-                for (int i = 0; i < nodelist.getLength(); i++) {
-                    list.add((T) nodelist.item(i));
-                }
-            }
-            else if (result instanceof XNumber) {
-                list.add((T) Double.valueOf(result.num()));
-            }
-            else if (result instanceof XBoolean) {
-                list.add((T) Boolean.valueOf(result.bool()));
-            }
-            else if (result instanceof XString) {
-                list.add((T) result.str());
-            }
-            else {
-                throw new RuntimeException("Unproccessed " + result.getClass().getName());
-            }
+            evaluateXPath(node, xpathExpr, resolver, caseSensitiveXpathAttributes, list);
         }
         catch (final Exception e) {
             throw new RuntimeException("Could not retrieve XPath >" + xpathExpr + "< on " + node, e);
@@ -99,6 +86,75 @@ public final class XPathHelper {
         return list;
     }
 
+    /**
+     * Evaluates an XPath expression from the specified node, returning an iterator over the resultant nodes.
+     * In contrast to {@link #getByXPath(DomNode, String, PrefixResolver, boolean)} the nodes are fetched
+     * lazily from the node set; no more of the document is visited than needed for the nodes iterated.
+     * The iterator throws a {@link ConcurrentModificationException} if the page is modified while iterating.
+     *
+     * @param <T> the type class
+     * @param node the node to start searching from
+     * @param xpathExpr the XPath expression
+     * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
+     * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
+     * @return the iterator over the objects found
+     */
+    public static <T> Iterator<T> getByXPathIterator(final DomNode node, final String xpathExpr,
+            final PrefixResolver resolver, final boolean caseSensitiveXpathAttributes) {
+        if (xpathExpr == null) {
+            throw new IllegalArgumentException("Null is not a valid XPath expression");
+        }
+
+        final SgmlPage page = node.getPage();
+        final int modificationCount = page.getModificationCount();
+        final Boolean processing = PROCESS_XPATH_.get();
+        PROCESS_XPATH_.set(Boolean.TRUE);
+        try {
+            final Iterator<T> iterator = iterateXPath(node, xpathExpr, resolver, caseSensitiveXpathAttributes);
+            return new XPathIterator<>(iterator, page, modificationCount);
+        }
+        catch (final Exception e) {
+            throw new RuntimeException("Could not retrieve XPath >" + xpathExpr + "< on " + node, e);
+        }
+        finally {
+            PROCESS_XPATH_.set(processing);
+        }
+    }
+
+    /**
+     * Evaluates an XPath expression from the specified node, returning the first resultant node.
+     * Only the part of the document needed to find this node is visited.
+     *
+     * @param <T> the type class
+     * @param node the node to start searching from
+     * @param xpathExpr the XPath expression
+     * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
+     * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
+     * @return the first object found or {@code null}
+     */
+    public static <T> T getFirstByXPath(final DomNode node, final String xpathExpr,
+            final PrefixResolver resolver, final boolean caseSensitiveXpathAttributes) {
+        if (xpathExpr == null) {
+            throw new IllegalArgumentException("Null is not a valid XPath expression");
+        }
+
+        final Boolean processing = PROCESS_XPATH_.get();
+        PROCESS_XPATH_.set(Boolean.TRUE);
+        try {
+            final Iterator<T> iterator = iterateXPath(node, xpathExpr, resolver, caseSensitiveXpathAttributes);
+            if (iterator.hasNext()) {
+                return iterator.next();
+            }
+            return null;
+        }
+        catch (final Exception e) {
+            throw new RuntimeException("Could not retrieve XPath >" + xpathExpr + "< on " + node, e);
+        }
+        finally {
+            PROCESS_XPATH_.set(processing);
+        }
+    }
+
     /**
      * Returns whether the thread is currently evaluating XPath expression or no.
      * @return whether the thread is currently evaluating XPath expression or no
@@ -108,18 +164,110 @@ public final class XPathHelper {
     }
 
     /**
-     * Evaluates an XPath expression to an XObject.
+     * Evaluates an XPath expression and adds the result to the given list.
      * @param contextNode the node to start searching from
      * @param str a valid XPath string
      * @param a prefix resolver to use for resolving namespace prefixes, or null
      * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
-     * @return an XObject, which can be used to obtain a string, number, nodelist, etc (should never be {@code null})
+     * @param list the list to add the nodes found (or the string, number or boolean result) to
      * @throws TransformerException if a syntax or other error occurs
      */
-    private static XObject evaluateXPath(final DomNode contextNode,
+    private static <T> void evaluateXPath(final DomNode contextNode,
+            final String str, final PrefixResolver prefixResolver,
+            final boolean caseSensitiveXpathAttributes, final List<T> list) throws TransformerException {
+        final SgmlPage page = contextNode.getPage();
+        final boolean caseSensitive = page.hasCaseSensitiveTagNames();
+        final boolean attributeCaseSensitive = caseSensitive || caseSensitiveXpathAttributes;
+
+        // the common expressions are evaluated directly on the dom tree; prefixes are not supported there
+        if (prefixResolver == null) {
+            final DomXPath domXPath = DomXPath.getInstance(str, caseSensitive, attributeCaseSensitive);
+            if (domXPath != null && domXPath.evaluate(contextNode, list)) {
+                return;
+            }
+        }
+
+        final XPathAdapter xpath = getXPathAdapter(contextNode, str, prefixResolver, attributeCaseSensitive);
+
+        // every evaluation for a node not attached to the page would add another DTM to the context
+        if (!page.isAncestorOf(contextNode)) {
+            final XPathContext xpathSupport = new XPathContext();
+            final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+            addResult(xpath.execute(xpathSupport, ctxtNode, prefixResolver), list);
+            return;
+        }
+
+        // the DTM of the page is built step by step while evaluating expressions;
+        // it can be used again as long as the page is not modified
+        final int modificationCount = page.getModificationCount();
+        XPathContext xpathSupport = page.acquireXPathContext();
+        if (xpathSupport == null) {
+            xpathSupport = new XPathContext();
+        }
+        final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+        // the node set is evaluated lazily, the context is still in use until all nodes are fetched
+        addResult(xpath.execute(xpathSupport, ctxtNode, prefixResolver), list);
+        page.releaseXPathContext(xpathSupport, modificationCount);
+    }
+
+    /**
+     * Evaluates an XPath expression and returns an iterator over the result.
+     * @param contextNode the node to start searching from
+     * @param str a valid XPath string
+     * @param a prefix resolver to use for resolving namespace prefixes, or null
+     * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
+     * @return the iterator over the nodes found (or the string, number or boolean result)
+     * @throws TransformerException if a syntax or other error occurs
+     */
+    private static <T> Iterator<T> iterateXPath(final DomNode contextNode,
             final String str, final PrefixResolver prefixResolver,
             final boolean caseSensitiveXpathAttributes) throws TransformerException {
-        final XPathContext xpathSupport = new XPathContext();
+        final boolean caseSensitive = contextNode.getPage().hasCaseSensitiveTagNames();
+        final boolean attributeCaseSensitive = caseSensitive || caseSensitiveXpathAttributes;
+
+        if (prefixResolver == null) {
+            final DomXPath domXPath = DomXPath.getInstance(str, caseSensitive, attributeCaseSensitive);
+            if (domXPath != null) {
+                final Iterator<T> iterator = domXPath.iterator(contextNode, () -> {
+                    try {
+                        return iterateXPathWithXalan(contextNode, str, null, attributeCaseSensitive);
+                    }
+                    catch (final TransformerException e) {
+                        throw new RuntimeException("Could not retrieve XPath >" + str + "< on " + contextNode, e);
+                    }
+                });
+                if (iterator != null) {
+                    return iterator;
+                }
+            }
+        }
+        return iterateXPathWithXalan(contextNode, str, prefixResolver, attributeCaseSensitive);
+    }
+
+    private static <T> Iterator<T> iterateXPathWithXalan(final DomNode contextNode,
+            final String str, final PrefixResolver prefixResolver,
+            final boolean attributeCaseSensitive) throws TransformerException {
+        final XPathAdapter xpath = getXPathAdapter(contextNode, str, prefixResolver, attributeCaseSensitive);
+
+        final SgmlPage page = contextNode.getPage();
+        if (!page.isAncestorOf(contextNode)) {
+            final XPathContext xpathSupport = new XPathContext();
+            final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+            return resultIterator(xpath.execute(xpathSupport, ctxtNode, prefixResolver), null, null, 0);
+        }
+
+        final int modificationCount = page.getModificationCount();
+        XPathContext xpathSupport = page.acquireXPathContext();
+        if (xpathSupport == null) {
+            xpathSupport = new XPathContext();
+        }
+        final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+        return resultIterator(xpath.execute(xpathSupport, ctxtNode, prefixResolver),
+                page, xpathSupport, modificationCount);
+    }
+
+    private static XPathAdapter getXPathAdapter(final DomNode contextNode, final String str,
+            final PrefixResolver prefixResolver, final boolean attributeCaseSensitive) throws TransformerException {
         final Node xpathExpressionContext;
         if (contextNode.getNodeType() == Node.DOCUMENT_NODE) {
             xpathExpressionContext = ((Document) contextNode).getDocumentElement();
@@ -134,11 +282,142 @@ public final class XPathHelper {
         }
 
         final boolean caseSensitive = contextNode.getPage().hasCaseSensitiveTagNames();
-        final boolean attributeCaseSensitive = caseSensitive || caseSensitiveXpathAttributes;
+        return XPathAdapter.getInstance(str, resolver, caseSensitive, attributeCaseSensitive);
+    }
 
-        final XPathAdapter xpath = new XPathAdapter(str, null, resolver, null, caseSensitive, attributeCaseSensitive);
-        final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
-        return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+    @SuppressWarnings("unchecked")
+    private static <T> void addResult(final XObject result, final List<T> list) throws TransformerException {
+        if (result instanceof XNodeSet) {
+            final NodeList nodelist = ((XNodeSet) result).nodelist();
+            for (int i = 0; i < nodelist.getLength(); i++) {
+                list.add((T) nodelist.item(i));
+            }
+        }
+        else {
+            list.add((T) toValue(result));
+        }
+    }
+
+    /**
+     * Returns an iterator over the result; the nodes of a node set are fetched lazily.
+     * @param page the page to release the context to when all nodes are fetched, or null
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Iterator<T> resultIterator(final XObject result, final SgmlPage page,
+            final XPathContext xpathSupport, final int modificationCount) throws TransformerException {
+        if (result instanceof XNodeSet) {
+            return new NodeSetIterator<>(((XNodeSet) result).iterRaw(), page, xpathSupport, modificationCount);
+        }
+        if (page != null) {
+            page.releaseXPathContext(xpathSupport, modificationCount);
+        }
+        return Collections.singletonList((T) toValue(result)).iterator();
+    }
+
+    private static Object toValue(final XObject result) throws TransformerException {
+        if (result instanceof XNumber) {
+            return Double.valueOf(result.num());
+        }
+        if (result instanceof XBoolean) {
+            return Boolean.valueOf(result.bool());
+        }
+        if (result instanceof XString) {
+            return result.str();
+        }
+        throw new RuntimeException("Unproccessed " + result.getClass().getName());
+    }
+
+    /**
+     * Fetches the nodes of a node set one by one from the DTM iterator.
+     */
+    private static final class NodeSetIterator<T> implements Iterator<T> {
+        private final DTMIterator iterator_;
+        private final SgmlPage page_;
+        private final XPathContext xpathSupport_;
+        private final int modificationCount_;
+        private int next_ = DTM.NULL;
+        private boolean done_;
+
+        NodeSetIterator(final DTMIterator iterator, final SgmlPage page, final XPathContext xpathSupport,
+                final int modificationCount) {
+            iterator_ = iterator;
+            page_ = page;
+            xpathSupport_ = xpathSupport;
+            modificationCount_ = modificationCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next_ == DTM.NULL && !done_) {
+                next_ = iterator_.nextNode();
+                if (next_ == DTM.NULL) {
+                    done_ = true;
+                    // the context is not needed any longer
+                    if (page_ != null) {
+                        page_.releaseXPathContext(xpathSupport_, modificationCount_);
+                    }
+                }
+            }
+            return next_ != DTM.NULL;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int handle = next_;
+            next_ = DTM.NULL;
+            return (T) iterator_.getDTM(handle).getNode(handle);
+        }
+    }
+
+    /**
+     * Evaluates the underlying iterator as XPath processing and checks the page for modifications.
+     */
+    private static final class XPathIterator<T> implements Iterator<T> {
+        private final Iterator<T> iterator_;
+        private final SgmlPage page_;
+        private final int modificationCount_;
+
+        XPathIterator(final Iterator<T> iterator, final SgmlPage page, final int modificationCount) {
+            iterator_ = iterator;
+            page_ = page;
+            modificationCount_ = modificationCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            checkModification();
+            final Boolean processing = PROCESS_XPATH_.get();
+            PROCESS_XPATH_.set(Boolean.TRUE);
+            try {
+                return iterator_.hasNext();
+            }
+            finally {
+                PROCESS_XPATH_.set(processing);
+            }
+        }
+
+        @Override
+        public T next() {
+            checkModification();
+            final Boolean processing = PROCESS_XPATH_.get();
+            PROCESS_XPATH_.set(Boolean.TRUE);
+            try {
+                return iterator_.next();
+            }
+            finally {
+                PROCESS_XPATH_.set(processing);
+            }
+        }
+
+        private void checkModification() {
+            if (modificationCount_ != page_.getModificationCount()) {
+                throw new ConcurrentModificationException("The page was modified while iterating");
+            }
+        }
     }
 
 }
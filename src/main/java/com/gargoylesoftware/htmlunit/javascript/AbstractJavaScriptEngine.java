@@ -135,4 +135,14 @@ public interface AbstractJavaScriptEngine<SCRIPT> {
      * @return the result of executing the specified code
      */
     Object execute(HtmlPage page, SCRIPT script);
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     * Runs a batch of JavaScript jobs. The engine may use this to do the per execution setup only
+     * once for the whole batch; the jobs are still responsible for their own error handling.
+     * @param batch the code running the jobs
+     */
+    default void executeBatch(final Runnable batch) {
+        batch.run();
+    }
 }
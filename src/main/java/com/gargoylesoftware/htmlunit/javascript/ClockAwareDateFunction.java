@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
+
+import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * Wrapper for Rhino's native Date constructor taking the current time
+ * from a {@link JavaScriptClock} instead of the system clock.
+ * This affects {@code new Date()}, {@code Date()} and {@code Date.now()}.
+ *
+ * @author Ronald Brill
+ */
+class ClockAwareDateFunction extends FunctionWrapper {
+
+    private final JavaScriptClock clock_;
+    private final Function now_;
+
+    /**
+     * Install the wrapper in place of the native Date constructor.
+     * @param window the scope
+     * @param clock the clock to use
+     */
+    static void install(final ScriptableObject window, final JavaScriptClock clock) {
+        final Function nativeDate = (Function) ScriptableObject.getProperty(window, "Date");
+        final ClockAwareDateFunction date = new ClockAwareDateFunction(nativeDate, clock);
+
+        final ScriptableObject datePrototype = (ScriptableObject) ScriptableObject.getClassPrototype(window, "Date");
+        datePrototype.defineProperty("constructor", date, ScriptableObject.DONTENUM);
+        window.defineProperty("Date", date, ScriptableObject.DONTENUM);
+    }
+
+    ClockAwareDateFunction(final Function wrapped, final JavaScriptClock clock) {
+        super(wrapped);
+        clock_ = clock;
+
+        final BaseFunction now = new BaseFunction() {
+            @Override
+            public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj,
+                    final Object[] args) {
+                return Double.valueOf(clock_.currentTimeMillis());
+            }
+
+            @Override
+            public String getFunctionName() {
+                return "now";
+            }
+        };
+        ScriptRuntime.setFunctionProtoAndParent(now, wrapped.getParentScope());
+        now_ = now;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj, final Object[] args) {
+        // Date() always returns the current time as string
+        return ScriptRuntime.toString(construct(cx, scope, ScriptRuntime.emptyArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Scriptable construct(final Context cx, final Scriptable scope, final Object[] args) {
+        if (args.length == 0) {
+            return super.construct(cx, scope, new Object[] {Double.valueOf(clock_.currentTimeMillis())});
+        }
+        return super.construct(cx, scope, args);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(final String name, final Scriptable start) {
+        if ("now".equals(name)) {
+            return now_;
+        }
+        return super.get(name, start);
+    }
+}
@@ -23,14 +23,25 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.JS_PROPERTY_D
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.ScriptException;
 import com.gargoylesoftware.htmlunit.ScriptPreProcessor;
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.WebWindowImpl;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.regexp.HtmlUnitRegExpProxy;
+import com.gargoylesoftware.htmlunit.util.LruCache;
+import com.gargoylesoftware.htmlunit.util.ThreadUtils;
 
 import net.sourceforge.htmlunit.corejs.javascript.Callable;
 import net.sourceforge.htmlunit.corejs.javascript.ClassShutter;
@@ -58,14 +69,31 @@ import net.sourceforge.htmlunit.corejs.javascript.debug.Debugger;
  */
 public class HtmlUnitContextFactory extends ContextFactory {
 
+    private static final Log LOG = LogFactory.getLog(HtmlUnitContextFactory.class);
+
     private static final int INSTRUCTION_COUNT_THRESHOLD = 10_000;
 
+    /** The maximal time the watchdog sleeps between two checks. */
+    private static final long MAX_WATCHDOG_INTERVAL = 100;
+
+    /** The maximum number of entries of the dynamic script cache. */
+    static final int DYNAMIC_SCRIPT_CACHE_SIZE = 500;
+    /**
+     * Longer sources are not cached; large scripts are loaded from urls
+     * and cached by the {@link com.gargoylesoftware.htmlunit.Cache}.
+     */
+    static final int DYNAMIC_SCRIPT_MAX_LENGTH = 10_000;
+
+    private static final String NEW_FUNCTION_PREFIX = "function anonymous(";
+
     private final WebClient webClient_;
     private final BrowserVersion browserVersion_;
     private long timeout_;
     private Debugger debugger_;
     private final WrapFactory wrapFactory_ = new HtmlUnitWrapFactory();
     private boolean deminifyFunctionCode_;
+    private final Watchdog watchdog_ = new Watchdog();
+    private final LruCache<DynamicScriptKey, Script> dynamicScripts_ = new LruCache<>(DYNAMIC_SCRIPT_CACHE_SIZE);
 
     /**
      * Creates a new instance of HtmlUnitContextFactory.
@@ -136,11 +164,40 @@ public class HtmlUnitContextFactory extends ContextFactory {
         return deminifyFunctionCode_;
     }
 
+    /**
+     * Returns the cache of the compiled dynamic code like the code passed to <code>eval()</code>,
+     * <code>setTimeout()</code> or <code>new Function()</code>.
+     * The cache can be used to get the hit rate.
+     * @return the cache
+     */
+    public LruCache<?, Script> getDynamicScriptCache() {
+        return dynamicScripts_;
+    }
+
+    /**
+     * Returns the key for the dynamic script cache or {@code null} if the script should not be cached.
+     */
+    private DynamicScriptKey getDynamicScriptKey(final Context cx, final String source, final int kind,
+            final String sourceName, final int lineno) {
+        if (debugger_ != null || source.length() > DYNAMIC_SCRIPT_MAX_LENGTH) {
+            return null;
+        }
+        final ScriptPreProcessor preProcessor = webClient_.getScriptPreProcessor();
+        if (preProcessor != null && !preProcessor.isDeterministic()) {
+            return null;
+        }
+        return new DynamicScriptKey(source, kind, sourceName, lineno, cx.getOptimizationLevel(), preProcessor);
+    }
+
     /**
      * Custom context to store execution time and handle timeouts.
+     * The deadline is checked by the {@link Watchdog}; the script itself only
+     * looks at the flag set by the watchdog.
      */
     private class TimeoutContext extends Context {
         private long startTime_;
+        private volatile long deadline_;
+        private volatile boolean timedOut_;
 
         protected TimeoutContext(final ContextFactory factory) {
             super(factory);
@@ -148,21 +205,57 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
         public void startClock() {
             startTime_ = System.currentTimeMillis();
+            timedOut_ = false;
+            if (timeout_ > 0) {
+                setInstructionObserverThreshold(INSTRUCTION_COUNT_THRESHOLD);
+                deadline_ = startTime_ + timeout_;
+                watchdog_.arm(this);
+            }
+            else {
+                // no need to observe anything, run at full speed
+                setInstructionObserverThreshold(0);
+                deadline_ = 0;
+            }
+        }
+
+        public void stopClock() {
+            if (deadline_ != 0) {
+                deadline_ = 0;
+                watchdog_.disarm(this);
+            }
         }
 
         public void terminateScriptIfNecessary() {
-            if (timeout_ > 0) {
-                final long currentTime = System.currentTimeMillis();
-                if (currentTime - startTime_ > timeout_) {
-                    // Terminate script by throwing an Error instance to ensure that the
-                    // script will never get control back through catch or finally.
-                    throw new TimeoutError(timeout_, currentTime - startTime_);
-                }
+            if (timedOut_) {
+                // Terminate script by throwing an Error instance to ensure that the
+                // script will never get control back through catch or finally.
+                throw new TimeoutError(timeout_, System.currentTimeMillis() - startTime_);
             }
         }
 
         @Override
-        protected Script compileString(String source, final Evaluator compiler,
+        protected Script compileString(final String source, final Evaluator compiler,
+                final ErrorReporter compilationErrorReporter, final String sourceName,
+                final int lineno, final Object securityDomain) {
+            final DynamicScriptKey key = getDynamicScriptKey(this, source,
+                    compiler == null ? DynamicScriptKey.SCRIPT : DynamicScriptKey.EVAL, sourceName, lineno);
+            if (key == null) {
+                return doCompileString(source, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+            }
+
+            Script script = dynamicScripts_.get(key);
+            if (script == null) {
+                script = doCompileString(source, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+                if (script != null) {
+                    dynamicScripts_.put(key, script);
+                }
+            }
+            return script;
+        }
+
+        private Script doCompileString(String source, final Evaluator compiler,
                 final ErrorReporter compilationErrorReporter, final String sourceName,
                 final int lineno, final Object securityDomain) {
 
@@ -221,12 +314,59 @@ public class HtmlUnitContextFactory extends ContextFactory {
                 .getThreadLocal(JavaScriptEngine.KEY_STARTING_PAGE);
             source = preProcess(page, source, sourceName, lineno, null);
 
+            if (getOptimizationLevel() > -1) {
+                try {
+                    return super.compileString(source, compiler, compilationErrorReporter,
+                            sourceName, lineno, securityDomain);
+                }
+                catch (final RuntimeException e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Compilation of '" + sourceName + "' failed, using the interpreter", e);
+                    }
+                }
+                final String script = source;
+                return interpreted(() -> super.compileString(script, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain));
+            }
             return super.compileString(source, compiler, compilationErrorReporter,
                     sourceName, lineno, securityDomain);
         }
 
         @Override
-        protected Function compileFunction(final Scriptable scope, String source,
+        protected Function compileFunction(final Scriptable scope, final String source,
+                final Evaluator compiler, final ErrorReporter compilationErrorReporter,
+                final String sourceName, final int lineno, final Object securityDomain) {
+
+            // new Function(...) compiles 'function anonymous(...) {...}'; the compiled code of
+            // such a function can be reused by compiling a script creating the function
+            if (deminifyFunctionCode_ || !source.startsWith(NEW_FUNCTION_PREFIX)) {
+                return doCompileFunction(scope, source, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+            }
+            final DynamicScriptKey key = getDynamicScriptKey(this, source, DynamicScriptKey.FUNCTION,
+                    sourceName, lineno);
+            if (key == null) {
+                return doCompileFunction(scope, source, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+            }
+
+            Script template = dynamicScripts_.get(key);
+            if (template == null) {
+                // declared inside a wrapper to not bind the name 'anonymous' to the function itself
+                final String wrapped = "(function() {" + source + "\nreturn anonymous;})()";
+                template = super.compileString(wrapped, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+                if (template == null) {
+                    return null;
+                }
+                dynamicScripts_.put(key, template);
+            }
+            final Function function = (Function) template.exec(this, scope);
+            function.setParentScope(scope);
+            return function;
+        }
+
+        private Function doCompileFunction(final Scriptable scope, String source,
                 final Evaluator compiler, final ErrorReporter compilationErrorReporter,
                 final String sourceName, final int lineno, final Object securityDomain) {
 
@@ -235,9 +375,39 @@ public class HtmlUnitContextFactory extends ContextFactory {
                         compilationErrorReporter, sourceName, lineno, securityDomain);
                 source = decompileFunction(f, 4).trim().replace("\n    ", "\n");
             }
+            if (getOptimizationLevel() > -1) {
+                try {
+                    return super.compileFunction(scope, source, compiler,
+                            compilationErrorReporter, sourceName, lineno, securityDomain);
+                }
+                catch (final RuntimeException e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Compilation of '" + sourceName + "' failed, using the interpreter", e);
+                    }
+                }
+                final String functionSource = source;
+                return interpreted(() -> super.compileFunction(scope, functionSource, compiler,
+                        compilationErrorReporter, sourceName, lineno, securityDomain));
+            }
             return super.compileFunction(scope, source, compiler,
                     compilationErrorReporter, sourceName, lineno, securityDomain);
         }
+
+        /**
+         * Runs the given compilation with the interpreter.
+         * @param compilation the compilation
+         * @return the result of the compilation
+         */
+        private <T> T interpreted(final Supplier<T> compilation) {
+            final int optimizationLevel = getOptimizationLevel();
+            setOptimizationLevel(-1);
+            try {
+                return compilation.get();
+            }
+            finally {
+                setOptimizationLevel(optimizationLevel);
+            }
+        }
     }
 
     /**
@@ -293,11 +463,9 @@ public class HtmlUnitContextFactory extends ContextFactory {
         });
 
         // Use pure interpreter mode to get observeInstructionCount() callbacks.
+        // The threshold is set when the clock is started and only if a timeout is configured.
         cx.setOptimizationLevel(-1);
 
-        // Set threshold on how often we want to receive the callbacks
-        cx.setInstructionObserverThreshold(INSTRUCTION_COUNT_THRESHOLD);
-
         cx.setErrorReporter(new HtmlUnitErrorReporter(webClient_.getJavaScriptErrorListener()));
         cx.setWrapFactory(wrapFactory_);
 
@@ -310,6 +478,14 @@ public class HtmlUnitContextFactory extends ContextFactory {
 
         cx.setMaximumInterpreterStackDepth(10_000);
 
+        // compiled code is opt-in and never used when debugging; it only supports
+        // observeInstructionCount() callbacks if generated for it
+        final int optimizationLevel = webClient_.getOptions().getJavaScriptOptimizationLevel();
+        if (debugger_ == null && optimizationLevel > -1) {
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setGenerateObserverCount(timeout_ > 0);
+        }
+
         return cx;
     }
 
@@ -336,8 +512,21 @@ public class HtmlUnitContextFactory extends ContextFactory {
             final Scriptable thisObj, final Object[] args) {
 
         final TimeoutContext tcx = (TimeoutContext) cx;
+        final Object page = cx.getThreadLocal(JavaScriptEngine.KEY_STARTING_PAGE);
+        final long start = System.nanoTime();
         tcx.startClock();
-        return super.doTopCall(callable, cx, scope, thisObj, args);
+        try {
+            return super.doTopCall(callable, cx, scope, thisObj, args);
+        }
+        finally {
+            tcx.stopClock();
+            if (page instanceof HtmlPage) {
+                final WebWindow window = ((HtmlPage) page).getEnclosingWindow();
+                if (window instanceof WebWindowImpl) {
+                    ((WebWindowImpl) window).addJavaScriptExecutionTime(System.nanoTime() - start);
+                }
+            }
+        }
     }
 
     /**
@@ -392,6 +581,67 @@ public class HtmlUnitContextFactory extends ContextFactory {
         }
     }
 
+    /**
+     * Watches the running top level calls and flags the ones exceeding their deadline.
+     * The thread is started on demand and ends if there is nothing to watch anymore.
+     */
+    private final class Watchdog implements Runnable {
+        private final Set<TimeoutContext> armed_ = ConcurrentHashMap.newKeySet();
+        private Thread thread_;
+
+        void arm(final TimeoutContext cx) {
+            armed_.add(cx);
+            synchronized (this) {
+                if (thread_ == null) {
+                    thread_ = ThreadUtils.newThread("JS watchdog for " + webClient_, this, false);
+                    thread_.start();
+                }
+                else {
+                    notifyAll();
+                }
+            }
+        }
+
+        void disarm(final TimeoutContext cx) {
+            armed_.remove(cx);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final long now = System.currentTimeMillis();
+                    long next = now + MAX_WATCHDOG_INTERVAL;
+                    for (final TimeoutContext cx : armed_) {
+                        final long deadline = cx.deadline_;
+                        if (deadline != 0) {
+                            if (deadline <= now) {
+                                cx.timedOut_ = true;
+                            }
+                            else {
+                                next = Math.min(next, deadline);
+                            }
+                        }
+                    }
+
+                    synchronized (this) {
+                        if (armed_.isEmpty()) {
+                            thread_ = null;
+                            return;
+                        }
+                        wait(Math.max(1, next - System.currentTimeMillis()));
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                LOG.debug("JS watchdog interrupted", e);
+                synchronized (this) {
+                    thread_ = null;
+                }
+            }
+        }
+    }
+
     private static final class HtmlUnitErrorReporter implements ErrorReporter, Serializable {
 
         private final JavaScriptErrorListener javaScriptErrorListener_;
@@ -457,4 +707,49 @@ public class HtmlUnitContextFactory extends ContextFactory {
             return new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
         }
     }
+
+    /**
+     * The key of the dynamic script cache.
+     */
+    private static final class DynamicScriptKey {
+        static final int SCRIPT = 0;
+        static final int EVAL = 1;
+        static final int FUNCTION = 2;
+
+        private final String source_;
+        private final int kind_;
+        private final String sourceName_;
+        private final int lineno_;
+        private final int optimizationLevel_;
+        private final ScriptPreProcessor preProcessor_;
+
+        DynamicScriptKey(final String source, final int kind, final String sourceName, final int lineno,
+                final int optimizationLevel, final ScriptPreProcessor preProcessor) {
+            source_ = source;
+            kind_ = kind;
+            sourceName_ = sourceName;
+            lineno_ = lineno;
+            optimizationLevel_ = optimizationLevel;
+            preProcessor_ = preProcessor;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof DynamicScriptKey)) {
+                return false;
+            }
+            final DynamicScriptKey other = (DynamicScriptKey) obj;
+            return kind_ == other.kind_
+                    && lineno_ == other.lineno_
+                    && optimizationLevel_ == other.optimizationLevel_
+                    && preProcessor_ == other.preProcessor_
+                    && source_.equals(other.source_)
+                    && Objects.equals(sourceName_, other.sourceName_);
+        }
+
+        @Override
+        public int hashCode() {
+            return (source_.hashCode() * 31 + kind_) * 31 + lineno_;
+        }
+    }
 }
@@ -53,6 +53,7 @@ import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.background.BackgroundJavaScriptFactory;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptExecutor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration.ConstantInfo;
@@ -111,6 +112,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
     private transient ThreadLocal<Boolean> javaScriptRunning_;
     private transient ThreadLocal<List<PostponedAction>> postponedActions_;
     private transient boolean holdPostponedActions_;
+    private transient ThreadLocal<Deque<PostponedAction>> microtasks_;
 
     /** The JavaScriptExecutor corresponding to all windows of this Web client */
     private transient JavaScriptExecutor javaScriptExecutor_;
@@ -462,10 +464,17 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         deleteProperties(window, "isXMLName");
 
         NativeFunctionToStringFunction.installFix(window, webClient.getBrowserVersion());
+        JsonParseFunction.install(window);
+        JsonStringifyFunction.install(window);
 
         datePrototype.defineFunctionProperties(new String[] {"toLocaleDateString", "toLocaleTimeString"},
                 DateCustom.class, ScriptableObject.DONTENUM);
 
+        final JavaScriptClock clock = webClient.getJavaScriptClock();
+        if (!clock.isSystemClock()) {
+            ClockAwareDateFunction.install(window, clock);
+        }
+
         if (!browserVersion.hasFeature(JS_OBJECT_GET_OWN_PROPERTY_SYMBOLS)) {
             ((ScriptableObject) ScriptableObject.getProperty(window, "Object")).delete("getOwnPropertySymbols");
         }
@@ -762,6 +771,19 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         return getContextFactory().callSecured(action, page);
     }
 
+    /**
+     * {@inheritDoc}
+     * The Rhino context is entered once for the whole batch; every job entering the
+     * context again only increments the enter count instead of creating a new context.
+     */
+    @Override
+    public void executeBatch(final Runnable batch) {
+        getContextFactory().call(cx -> {
+            batch.run();
+            return null;
+        });
+    }
+
     /**
      * Calls a JavaScript function and return the result.
      * @param page the page
@@ -865,6 +887,12 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                             return null; // page has been unloaded
                         }
                         response = doRun(cx);
+
+                        // the script is done, run the microtasks before anything else
+                        // can get the lock of the page
+                        if (!Boolean.TRUE.equals(javaScriptAlreadyRunning)) {
+                            processMicrotasks();
+                        }
                     }
                 }
                 finally {
@@ -954,6 +982,62 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         actions.add(action);
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     * Adds a microtask (e.g. a promise reaction or the delivery of mutation records).
+     * Microtasks are executed in order as soon as the currently running script is finished,
+     * before any postponed action and before the next job of the event loop.
+     * If no script is running on the current thread, the microtask is executed immediately.
+     * @param microtask the microtask
+     */
+    public void addMicrotask(final PostponedAction microtask) {
+        Deque<PostponedAction> microtasks = microtasks_.get();
+        if (microtasks == null) {
+            microtasks = new ArrayDeque<>();
+            microtasks_.set(microtasks);
+        }
+        microtasks.add(microtask);
+
+        if (!Boolean.TRUE.equals(javaScriptRunning_.get())) {
+            processMicrotasks();
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     * Executes the pending microtasks of the current thread, including the ones
+     * added while processing.
+     */
+    public void processMicrotasks() {
+        final Deque<PostponedAction> microtasks = microtasks_.get();
+        if (microtasks == null || microtasks.isEmpty()) {
+            return;
+        }
+
+        // microtasks added by a microtask are only queued
+        final Boolean javaScriptAlreadyRunning = javaScriptRunning_.get();
+        javaScriptRunning_.set(Boolean.TRUE);
+        try {
+            PostponedAction microtask = microtasks.poll();
+            while (microtask != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Processing microtask " + microtask);
+                }
+                // verify that the page that registered this microtask is still alive
+                if (microtask.isStillAlive()) {
+                    microtask.execute();
+                }
+                microtask = microtasks.poll();
+            }
+        }
+        catch (final Exception e) {
+            Context.throwAsScriptRuntimeEx(e);
+        }
+        finally {
+            javaScriptRunning_.set(javaScriptAlreadyRunning);
+        }
+    }
+
     /**
      * Handles an exception that occurred during execution of JavaScript code.
      * @param scriptException the exception
@@ -1014,6 +1098,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         javaScriptRunning_ = new ThreadLocal<>();
         postponedActions_ = new ThreadLocal<>();
         holdPostponedActions_ = false;
+        microtasks_ = new ThreadLocal<>();
     }
 
     /**
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.Arrays;
+
+import net.sourceforge.htmlunit.corejs.javascript.Callable;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.NativeArray;
+import net.sourceforge.htmlunit.corejs.javascript.NativeObject;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.TopLevel;
+
+/**
+ * Replacement (in fact a wrapper) for Rhino's native {@code JSON.parse} function.
+ *
+ * <p>The text is parsed in one pass directly into {@link NativeObject}s and {@link NativeArray}s.
+ * Compared to the native parser the prototypes are looked up only once per call, small
+ * integers are converted without creating a substring and property names are interned
+ * per call; large arrays of similar objects are sharing the name strings.</p>
+ *
+ * <p>Calls with a reviver and invalid input are delegated to the native implementation,
+ * this way the behavior (including the error messages) is exactly the same.</p>
+ *
+ * @author Ronald Brill
+ */
+class JsonParseFunction extends FunctionWrapper {
+
+    /**
+     * Install the wrapper in place of the native parse function of the JSON object.
+     * @param window the scope
+     */
+    static void install(final ScriptableObject window) {
+        final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(window, "JSON");
+        final Function nativeParse = (Function) ScriptableObject.getProperty(json, "parse");
+        json.defineProperty("parse", new JsonParseFunction(nativeParse), ScriptableObject.DONTENUM);
+    }
+
+    JsonParseFunction(final Function wrapped) {
+        super(wrapped);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj, final Object[] args) {
+        if (args.length > 1 && args[1] instanceof Callable) {
+            return super.call(cx, scope, thisObj, args);
+        }
+
+        final String text = ScriptRuntime.toString(args, 0);
+        try {
+            return new Parser(scope, text).parse();
+        }
+        catch (final InvalidJsonException e) {
+            // let the native implementation report the error
+            return super.call(cx, scope, thisObj, new Object[] {text});
+        }
+    }
+
+    /**
+     * Signals invalid input; the details are provided by the native implementation.
+     */
+    private static final class InvalidJsonException extends Exception {
+        InvalidJsonException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The parser; accepts exactly the same input as Rhino's JsonParser.
+     */
+    private static final class Parser {
+        private static final int KEY_CACHE_SIZE = 256;
+        private static final int MAX_INT_DIGITS = 9;
+
+        private final String src_;
+        private final int length_;
+        private int pos_;
+
+        private final Scriptable scope_;
+        private final Scriptable objectPrototype_;
+        private final Scriptable arrayPrototype_;
+
+        private final String[] keys_ = new String[KEY_CACHE_SIZE];
+
+        private Object[] elements_ = new Object[64];
+        private int elementsSize_;
+
+        Parser(final Scriptable scope, final String src) {
+            src_ = src;
+            length_ = src.length();
+            scope_ = ScriptableObject.getTopLevelScope(scope);
+            objectPrototype_ = TopLevel.getBuiltinPrototype(scope_, TopLevel.Builtins.Object);
+            arrayPrototype_ = TopLevel.getBuiltinPrototype(scope_, TopLevel.Builtins.Array);
+        }
+
+        Object parse() throws InvalidJsonException {
+            final Object value = readValue();
+            consumeWhitespace();
+            if (pos_ < length_) {
+                throw new InvalidJsonException();
+            }
+            return value;
+        }
+
+        private Object readValue() throws InvalidJsonException {
+            consumeWhitespace();
+            if (pos_ >= length_) {
+                throw new InvalidJsonException();
+            }
+
+            final char c = src_.charAt(pos_++);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    return readLiteral("rue", Boolean.TRUE);
+                case 'f':
+                    return readLiteral("alse", Boolean.FALSE);
+                case 'n':
+                    return readLiteral("ull", null);
+                case '-':
+                case '0':
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                    return readNumber(c);
+                default:
+                    throw new InvalidJsonException();
+            }
+        }
+
+        private Object readObject() throws InvalidJsonException {
+            final NativeObject object = new NativeObject();
+            object.setParentScope(scope_);
+            object.setPrototype(objectPrototype_);
+
+            consumeWhitespace();
+            if (pos_ < length_ && src_.charAt(pos_) == '}') {
+                pos_++;
+                return object;
+            }
+
+            boolean needsComma = false;
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_++);
+                if (c == '}') {
+                    if (!needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    return object;
+                }
+                if (c == ',') {
+                    if (!needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    needsComma = false;
+                }
+                else if (c == '"') {
+                    if (needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    final String key = readKey();
+                    consume(':');
+                    final Object value = readValue();
+
+                    final long index = ScriptRuntime.indexFromString(key);
+                    if (index < 0) {
+                        object.put(key, object, value);
+                    }
+                    else {
+                        object.put((int) index, object, value);
+                    }
+                    needsComma = true;
+                }
+                else {
+                    throw new InvalidJsonException();
+                }
+                consumeWhitespace();
+            }
+            throw new InvalidJsonException();
+        }
+
+        private Object readArray() throws InvalidJsonException {
+            consumeWhitespace();
+            if (pos_ < length_ && src_.charAt(pos_) == ']') {
+                pos_++;
+                final NativeArray array = new NativeArray(0);
+                array.setParentScope(scope_);
+                array.setPrototype(arrayPrototype_);
+                return array;
+            }
+
+            // the elements of all open arrays are collected on one stack
+            final int start = elementsSize_;
+            boolean needsComma = false;
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_);
+                if (c == ']') {
+                    if (!needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    pos_++;
+                    final Object[] elements = Arrays.copyOfRange(elements_, start, elementsSize_);
+                    Arrays.fill(elements_, start, elementsSize_, null);
+                    elementsSize_ = start;
+                    return newArray(elements);
+                }
+                if (c == ',') {
+                    if (!needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    needsComma = false;
+                    pos_++;
+                }
+                else {
+                    if (needsComma) {
+                        throw new InvalidJsonException();
+                    }
+                    final Object value = readValue();
+                    if (elementsSize_ == elements_.length) {
+                        elements_ = Arrays.copyOf(elements_, elements_.length * 2);
+                    }
+                    elements_[elementsSize_++] = value;
+                    needsComma = true;
+                }
+                consumeWhitespace();
+            }
+            throw new InvalidJsonException();
+        }
+
+        private NativeArray newArray(final Object[] elements) {
+            final NativeArray array = new NativeArray(elements);
+            array.setParentScope(scope_);
+            array.setPrototype(arrayPrototype_);
+            return array;
+        }
+
+        /**
+         * Reads a property name; names without escapes are interned.
+         */
+        private String readKey() throws InvalidJsonException {
+            final int start = pos_;
+            int hash = 0;
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_++);
+                if (c <= '\u001F') {
+                    throw new InvalidJsonException();
+                }
+                if (c == '\\') {
+                    pos_ = start;
+                    return readString();
+                }
+                if (c == '"') {
+                    final int end = pos_ - 1;
+                    final int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+                    final String cached = keys_[slot];
+                    if (cached != null && cached.length() == end - start
+                            && src_.regionMatches(start, cached, 0, end - start)) {
+                        return cached;
+                    }
+                    final String key = src_.substring(start, end);
+                    keys_[slot] = key;
+                    return key;
+                }
+                hash = 31 * hash + c;
+            }
+            throw new InvalidJsonException();
+        }
+
+        private String readString() throws InvalidJsonException {
+            int start = pos_;
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_++);
+                if (c <= '\u001F') {
+                    throw new InvalidJsonException();
+                }
+                if (c == '\\') {
+                    break;
+                }
+                if (c == '"') {
+                    return src_.substring(start, pos_ - 1);
+                }
+            }
+
+            final StringBuilder b = new StringBuilder();
+            while (pos_ < length_) {
+                b.append(src_, start, pos_ - 1);
+                final char c = src_.charAt(pos_++);
+                switch (c) {
+                    case '"':
+                        b.append('"');
+                        break;
+                    case '\\':
+                        b.append('\\');
+                        break;
+                    case '/':
+                        b.append('/');
+                        break;
+                    case 'b':
+                        b.append('\b');
+                        break;
+                    case 'f':
+                        b.append('\f');
+                        break;
+                    case 'n':
+                        b.append('\n');
+                        break;
+                    case 'r':
+                        b.append('\r');
+                        break;
+                    case 't':
+                        b.append('\t');
+                        break;
+                    case 'u':
+                        if (length_ - pos_ < 5) {
+                            throw new InvalidJsonException();
+                        }
+                        final int code = fromHex(src_.charAt(pos_)) << 12
+                                | fromHex(src_.charAt(pos_ + 1)) << 8
+                                | fromHex(src_.charAt(pos_ + 2)) << 4
+                                | fromHex(src_.charAt(pos_ + 3));
+                        if (code < 0) {
+                            throw new InvalidJsonException();
+                        }
+                        pos_ += 4;
+                        b.append((char) code);
+                        break;
+                    default:
+                        throw new InvalidJsonException();
+                }
+
+                start = pos_;
+                while (pos_ < length_) {
+                    final char next = src_.charAt(pos_++);
+                    if (next <= '\u001F') {
+                        throw new InvalidJsonException();
+                    }
+                    if (next == '\\') {
+                        break;
+                    }
+                    if (next == '"') {
+                        b.append(src_, start, pos_ - 1);
+                        return b.toString();
+                    }
+                }
+            }
+            throw new InvalidJsonException();
+        }
+
+        private static int fromHex(final char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'A' && c <= 'F') {
+                return c - 'A' + 10;
+            }
+            if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            }
+            return -1;
+        }
+
+        private Number readNumber(final char first) throws InvalidJsonException {
+            final int start = pos_ - 1;
+            char c = first;
+            if (c == '-') {
+                c = nextDigit();
+            }
+            if (c != '0') {
+                readDigits();
+            }
+            final int integerEnd = pos_;
+
+            boolean simple = true;
+            if (pos_ < length_ && src_.charAt(pos_) == '.') {
+                pos_++;
+                nextDigit();
+                readDigits();
+                simple = false;
+            }
+            if (pos_ < length_) {
+                c = src_.charAt(pos_);
+                if (c == 'e' || c == 'E') {
+                    pos_++;
+                    c = next();
+                    if (c == '-' || c == '+') {
+                        c = next();
+                    }
+                    if (c < '0' || c > '9') {
+                        throw new InvalidJsonException();
+                    }
+                    readDigits();
+                    simple = false;
+                }
+            }
+
+            final boolean negative = first == '-';
+            final int digitsStart = negative ? start + 1 : start;
+            if (simple && integerEnd - digitsStart <= MAX_INT_DIGITS) {
+                int value = 0;
+                for (int i = digitsStart; i < integerEnd; i++) {
+                    value = value * 10 + src_.charAt(i) - '0';
+                }
+                return Integer.valueOf(negative ? -value : value);
+            }
+
+            final double d = Double.parseDouble(src_.substring(start, pos_));
+            final int i = (int) d;
+            if (i == d) {
+                return Integer.valueOf(i);
+            }
+            return Double.valueOf(d);
+        }
+
+        private char next() throws InvalidJsonException {
+            if (pos_ >= length_) {
+                throw new InvalidJsonException();
+            }
+            return src_.charAt(pos_++);
+        }
+
+        private char nextDigit() throws InvalidJsonException {
+            final char c = next();
+            if (c < '0' || c > '9') {
+                throw new InvalidJsonException();
+            }
+            return c;
+        }
+
+        private void readDigits() {
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_);
+                if (c < '0' || c > '9') {
+                    return;
+                }
+                pos_++;
+            }
+        }
+
+        private Object readLiteral(final String rest, final Object value) throws InvalidJsonException {
+            if (!src_.startsWith(rest, pos_)) {
+                throw new InvalidJsonException();
+            }
+            pos_ += rest.length();
+            return value;
+        }
+
+        private void consume(final char token) throws InvalidJsonException {
+            consumeWhitespace();
+            if (pos_ >= length_ || src_.charAt(pos_) != token) {
+                throw new InvalidJsonException();
+            }
+            pos_++;
+        }
+
+        private void consumeWhitespace() {
+            while (pos_ < length_) {
+                final char c = src_.charAt(pos_);
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                    return;
+                }
+                pos_++;
+            }
+        }
+    }
+}
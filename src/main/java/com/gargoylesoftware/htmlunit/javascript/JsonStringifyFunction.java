@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.sourceforge.htmlunit.corejs.javascript.Callable;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.NativeArray;
+import net.sourceforge.htmlunit.corejs.javascript.NativeObject;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.Undefined;
+
+/**
+ * Replacement (in fact a wrapper) for Rhino's native {@code JSON.stringify} function.
+ *
+ * <p>The native implementation builds a string for every nested object and array and joins
+ * them on the way back; for deep structures the same characters are copied again and again.
+ * This implementation follows exactly the same algorithm but writes all the output into one buffer.</p>
+ *
+ * @author Ronald Brill
+ */
+class JsonStringifyFunction extends FunctionWrapper {
+
+    private static final int MAX_GAP_LENGTH = 10;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Install the wrapper in place of the native stringify function of the JSON object.
+     * @param window the scope
+     */
+    static void install(final ScriptableObject window) {
+        final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(window, "JSON");
+        final Function nativeStringify = (Function) ScriptableObject.getProperty(json, "stringify");
+        json.defineProperty("stringify", new JsonStringifyFunction(nativeStringify), ScriptableObject.DONTENUM);
+    }
+
+    JsonStringifyFunction(final Function wrapped) {
+        super(wrapped);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj, final Object[] args) {
+        final Object value = args.length > 0 ? args[0] : null;
+        final Object replacer = args.length > 1 ? args[1] : null;
+        Object space = args.length > 2 ? args[2] : null;
+
+        Callable replacerFunction = null;
+        List<Object> propertyList = null;
+        if (replacer instanceof Callable) {
+            replacerFunction = (Callable) replacer;
+        }
+        else if (replacer instanceof NativeArray) {
+            propertyList = new ArrayList<>();
+            final NativeArray replacerArray = (NativeArray) replacer;
+            for (final Integer index : replacerArray.getIndexIds()) {
+                final Object v = replacerArray.get(index, replacerArray);
+                if (v instanceof String || v instanceof Number) {
+                    propertyList.add(v);
+                }
+                else if (isWrapper(v, "String") || isWrapper(v, "Number")) {
+                    propertyList.add(ScriptRuntime.toString(v));
+                }
+            }
+        }
+
+        if (isWrapper(space, "Number")) {
+            space = Double.valueOf(ScriptRuntime.toNumber(space));
+        }
+        else if (isWrapper(space, "String")) {
+            space = ScriptRuntime.toString(space);
+        }
+
+        String gap = "";
+        if (space instanceof Number) {
+            final int gapLength = Math.min(MAX_GAP_LENGTH, (int) ScriptRuntime.toInteger(space));
+            if (gapLength > 0) {
+                gap = StringUtils.repeat(' ', gapLength);
+            }
+        }
+        else if (space instanceof String) {
+            gap = (String) space;
+            if (gap.length() > MAX_GAP_LENGTH) {
+                gap = gap.substring(0, MAX_GAP_LENGTH);
+            }
+        }
+
+        final NativeObject wrapper = new NativeObject();
+        wrapper.setParentScope(scope);
+        wrapper.setPrototype(ScriptableObject.getObjectPrototype(scope));
+        wrapper.defineProperty("", value, 0);
+
+        final Writer writer = new Writer(cx, scope, gap, replacerFunction, propertyList);
+        if (!writer.str("", wrapper)) {
+            return Undefined.instance;
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Rhino's wrapper objects for primitive values (NativeNumber, NativeString, NativeBoolean)
+     * are not public; they are identified by the class name.
+     * @param value the value to check
+     * @param className the class name of the wrapper
+     * @return whether the value is a wrapper object of the given class
+     */
+    private static boolean isWrapper(final Object value, final String className) {
+        return value instanceof ScriptableObject
+                && !(value instanceof Callable)
+                && className.equals(((ScriptableObject) value).getClassName());
+    }
+
+    /**
+     * Writes the JSON representation of values into one buffer.
+     */
+    private static final class Writer {
+        private final Context cx_;
+        private final Scriptable scope_;
+        private final String gap_;
+        private final Callable replacer_;
+        private final List<Object> propertyList_;
+
+        private final StringBuilder builder_ = new StringBuilder();
+        private final List<Object> stack_ = new ArrayList<>();
+        private String indent_ = "";
+
+        Writer(final Context cx, final Scriptable scope, final String gap,
+                final Callable replacer, final List<Object> propertyList) {
+            cx_ = cx;
+            scope_ = scope;
+            gap_ = gap;
+            replacer_ = replacer;
+            propertyList_ = propertyList;
+        }
+
+        /**
+         * Writes the value of the given property.
+         * @return false if the value has no JSON representation; nothing is written in this case
+         */
+        boolean str(final Object key, final Scriptable holder) {
+            Object value;
+            if (key instanceof String) {
+                value = ScriptableObject.getProperty(holder, (String) key);
+            }
+            else {
+                value = ScriptableObject.getProperty(holder, ((Number) key).intValue());
+            }
+
+            if (value instanceof Scriptable && ScriptableObject.hasProperty((Scriptable) value, "toJSON")) {
+                final Object toJSON = ScriptableObject.getProperty((Scriptable) value, "toJSON");
+                if (toJSON instanceof Callable) {
+                    value = ScriptableObject.callMethod(cx_, (Scriptable) value, "toJSON", new Object[] {key});
+                }
+            }
+
+            if (replacer_ != null) {
+                value = replacer_.call(cx_, scope_, holder, new Object[] {key, value});
+            }
+
+            if (isWrapper(value, "Number")) {
+                value = Double.valueOf(ScriptRuntime.toNumber(value));
+            }
+            else if (isWrapper(value, "String")) {
+                value = ScriptRuntime.toString(value);
+            }
+            else if (isWrapper(value, "Boolean")) {
+                value = ((ScriptableObject) value).getDefaultValue(ScriptRuntime.BooleanClass);
+            }
+
+            if (value == null) {
+                builder_.append("null");
+                return true;
+            }
+            if (value.equals(Boolean.TRUE)) {
+                builder_.append("true");
+                return true;
+            }
+            if (value.equals(Boolean.FALSE)) {
+                builder_.append("false");
+                return true;
+            }
+            if (value instanceof CharSequence) {
+                quote(value.toString());
+                return true;
+            }
+            if (value instanceof Number) {
+                if (value instanceof Integer) {
+                    builder_.append(((Integer) value).intValue());
+                    return true;
+                }
+                final double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    builder_.append("null");
+                }
+                else {
+                    builder_.append(ScriptRuntime.toString(value));
+                }
+                return true;
+            }
+            if (value instanceof Scriptable && !(value instanceof Callable)) {
+                if (value instanceof NativeArray) {
+                    ja((NativeArray) value);
+                }
+                else {
+                    jo((Scriptable) value);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void jo(final Scriptable value) {
+            enter(value);
+            final String stepback = indent_;
+            indent_ = indent_ + gap_;
+
+            final Object[] keys;
+            if (propertyList_ != null) {
+                keys = propertyList_.toArray();
+            }
+            else {
+                keys = value.getIds();
+            }
+
+            builder_.append('{');
+            boolean empty = true;
+            for (final Object key : keys) {
+                final int mark = builder_.length();
+                if (!empty) {
+                    builder_.append(',');
+                }
+                newLine();
+                quote(key.toString());
+                builder_.append(':');
+                if (!gap_.isEmpty()) {
+                    builder_.append(' ');
+                }
+                if (str(key, value)) {
+                    empty = false;
+                }
+                else {
+                    builder_.setLength(mark);
+                }
+            }
+            close(empty, stepback, '}');
+
+            stack_.remove(stack_.size() - 1);
+            indent_ = stepback;
+        }
+
+        private void ja(final NativeArray value) {
+            enter(value);
+            final String stepback = indent_;
+            indent_ = indent_ + gap_;
+
+            builder_.append('[');
+            final long len = value.getLength();
+            for (long index = 0; index < len; index++) {
+                if (index > 0) {
+                    builder_.append(',');
+                }
+                newLine();
+
+                final boolean written;
+                if (index > Integer.MAX_VALUE) {
+                    written = str(Long.toString(index), value);
+                }
+                else {
+                    written = str(Integer.valueOf((int) index), value);
+                }
+                if (!written) {
+                    builder_.append("null");
+                }
+            }
+            close(len == 0, stepback, ']');
+
+            stack_.remove(stack_.size() - 1);
+            indent_ = stepback;
+        }
+
+        private void enter(final Scriptable value) {
+            if (stack_.contains(value)) {
+                throw ScriptRuntime.typeError0("msg.cyclic.value");
+            }
+            stack_.add(value);
+        }
+
+        private void newLine() {
+            if (!gap_.isEmpty()) {
+                builder_.append('\n').append(indent_);
+            }
+        }
+
+        private void close(final boolean empty, final String stepback, final char end) {
+            if (!empty && !gap_.isEmpty()) {
+                builder_.append('\n').append(stepback);
+            }
+            builder_.append(end);
+        }
+
+        private void quote(final String string) {
+            builder_.append('"');
+            final int length = string.length();
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                final char c = string.charAt(i);
+                final String escaped;
+                switch (c) {
+                    case '"':
+                        escaped = "\\\"";
+                        break;
+                    case '\\':
+                        escaped = "\\\\";
+                        break;
+                    case '\b':
+                        escaped = "\\b";
+                        break;
+                    case '\f':
+                        escaped = "\\f";
+                        break;
+                    case '\n':
+                        escaped = "\\n";
+                        break;
+                    case '\r':
+                        escaped = "\\r";
+                        break;
+                    case '\t':
+                        escaped = "\\t";
+                        break;
+                    default:
+                        if (c >= ' ') {
+                            continue;
+                        }
+                        escaped = null;
+                }
+
+                builder_.append(string, start, i);
+                start = i + 1;
+                if (escaped == null) {
+                    builder_.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                }
+                else {
+                    builder_.append(escaped);
+                }
+            }
+            builder_.append(string, start, length);
+            builder_.append('"');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return builder_.toString();
+        }
+    }
+}
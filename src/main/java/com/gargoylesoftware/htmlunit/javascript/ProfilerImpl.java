@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.debug.DebugFrame;
+import net.sourceforge.htmlunit.corejs.javascript.debug.DebuggableScript;
+
+/**
+ * <p>
+ * A lightweight JavaScript profiler based on the {@link net.sourceforge.htmlunit.corejs.javascript.debug.Debugger}
+ * interface. Every function or script invocation is recorded in a call tree (one per thread); for every
+ * node the number of calls, the self time and the total time are collected. Unlike {@link DebuggerImpl}
+ * nothing is logged, the per call overhead is a map lookup and two calls to {@link System#nanoTime()}.
+ * </p>
+ *
+ * <p>
+ * Functions are identified by name, script url and line number. The results are available as
+ * {@link #getFunctionStatistics() per function statistics}, as
+ * {@link #writeCollapsedStacks(Writer) collapsed stacks} (the input format of the usual flame graph tools)
+ * or in the {@link #writeChromeTrace(Writer) Chrome trace event format}
+ * (to be loaded in chrome://tracing or https://ui.perfetto.dev).
+ * </p>
+ *
+ * <p>
+ * To enable profiling, call
+ * {@link HtmlUnitContextFactory#setDebugger(net.sourceforge.htmlunit.corejs.javascript.debug.Debugger)}
+ * passing in an instance of this class. Scripts are always interpreted while a debugger is set,
+ * so the numbers are only meaningful relative to each other.
+ * </p>
+ *
+ * @author Ronald Brill
+ * @see HtmlUnitContextFactory#setDebugger(net.sourceforge.htmlunit.corejs.javascript.debug.Debugger)
+ */
+public class ProfilerImpl extends DebuggerAdapter {
+
+    private final Map<DebuggableScript, FunctionKey> keys_ = Collections.synchronizedMap(new WeakHashMap<>());
+    private final List<ThreadData> threads_ = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadData> threadData_ = ThreadLocal.withInitial(this::newThreadData);
+
+    private ThreadData newThreadData() {
+        final ThreadData data = new ThreadData(Thread.currentThread().getName());
+        threads_.add(data);
+        return data;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DebugFrame getFrame(final Context cx, final DebuggableScript functionOrScript) {
+        FunctionKey key = keys_.get(functionOrScript);
+        if (key == null) {
+            key = new FunctionKey(functionOrScript);
+            keys_.put(functionOrScript, key);
+        }
+        return new ProfileFrame(threadData_.get(), key);
+    }
+
+    /**
+     * Discards all the data collected so far.
+     */
+    public void reset() {
+        for (final ThreadData data : threads_) {
+            synchronized (data) {
+                data.root_.children_ = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of all the functions and scripts called so far, the one with
+     * the largest self time first.
+     * @return the statistics
+     */
+    public List<FunctionStatistics> getFunctionStatistics() {
+        final Map<FunctionKey, FunctionStatistics> statistics = new HashMap<>();
+        final Map<FunctionKey, Integer> onStack = new HashMap<>();
+        for (final ThreadData data : threads_) {
+            synchronized (data) {
+                collectStatistics(data.root_, statistics, onStack);
+            }
+        }
+
+        final List<FunctionStatistics> result = new ArrayList<>(statistics.values());
+        result.sort(Comparator.comparingLong(FunctionStatistics::getSelfTime).reversed());
+        return result;
+    }
+
+    private static void collectStatistics(final CallNode node, final Map<FunctionKey, FunctionStatistics> statistics,
+            final Map<FunctionKey, Integer> onStack) {
+        if (node.children_ == null) {
+            return;
+        }
+        for (final CallNode child : node.children_.values()) {
+            final FunctionKey key = child.key_;
+            final FunctionStatistics stats = statistics.computeIfAbsent(key, FunctionStatistics::new);
+            stats.callCount_ += child.calls_;
+            stats.selfTime_ += child.selfTime_;
+
+            // for recursive calls only the outermost invocation counts for the total time
+            final Integer depth = onStack.get(key);
+            if (depth == null) {
+                stats.totalTime_ += child.totalTime_;
+                onStack.put(key, 1);
+            }
+            else {
+                onStack.put(key, depth + 1);
+            }
+
+            collectStatistics(child, statistics, onStack);
+
+            if (depth == null) {
+                onStack.remove(key);
+            }
+            else {
+                onStack.put(key, depth);
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded call stacks in the collapsed stack format; one line per call stack,
+     * the frames separated by <tt>;</tt> followed by a space and the self time in microseconds.
+     * This is the input format of the flame graph tools like <tt>flamegraph.pl</tt> or speedscope.
+     * @param writer the writer to write to
+     * @throws IOException in case of error
+     */
+    public void writeCollapsedStacks(final Writer writer) throws IOException {
+        for (final ThreadData data : threads_) {
+            synchronized (data) {
+                writeCollapsedStacks(writer, data.root_, new StringBuilder());
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeCollapsedStacks(final Writer writer, final CallNode node, final StringBuilder stack)
+            throws IOException {
+        if (node.children_ == null) {
+            return;
+        }
+        for (final CallNode child : node.children_.values()) {
+            final int length = stack.length();
+            if (length > 0) {
+                stack.append(';');
+            }
+            stack.append(StringUtils.replaceChars(child.key_.getLabel(), ';', ','));
+
+            final long self = TimeUnit.NANOSECONDS.toMicros(child.selfTime_);
+            if (self > 0) {
+                writer.append(stack).append(' ').append(Long.toString(self)).append('\n');
+            }
+            writeCollapsedStacks(writer, child, stack);
+            stack.setLength(length);
+        }
+    }
+
+    /**
+     * Writes the recorded call tree in the Chrome trace event format.
+     * The calls are merged per call stack, every node of the call tree is written as a complete event
+     * laid out like in a flame graph; the event arguments contain the url, the line,
+     * the number of calls and the self time.
+     * @param writer the writer to write to
+     * @throws IOException in case of error
+     */
+    public void writeChromeTrace(final Writer writer) throws IOException {
+        writer.append("{\"traceEvents\":[");
+        boolean first = true;
+        int tid = 0;
+        for (final ThreadData data : threads_) {
+            tid++;
+            if (!first) {
+                writer.append(',');
+            }
+            first = false;
+            writer.append("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(Integer.toString(tid))
+                .append(",\"args\":{\"name\":\"").append(escapeJson(data.threadName_)).append("\"}}");
+            synchronized (data) {
+                writeChromeTrace(writer, data.root_, tid, 0);
+            }
+        }
+        writer.append("\n],\"displayTimeUnit\":\"ms\"}\n");
+        writer.flush();
+    }
+
+    private static void writeChromeTrace(final Writer writer, final CallNode node, final int tid, final long start)
+            throws IOException {
+        if (node.children_ == null) {
+            return;
+        }
+        final List<CallNode> children = new ArrayList<>(node.children_.values());
+        children.sort(Comparator.comparingLong((CallNode n) -> n.totalTime_).reversed());
+
+        long ts = start;
+        for (final CallNode child : children) {
+            final FunctionKey key = child.key_;
+            final long dur = Math.max(1, TimeUnit.NANOSECONDS.toMicros(child.totalTime_));
+            writer.append(",\n{\"name\":\"").append(escapeJson(key.name_))
+                .append("\",\"cat\":\"js\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(Integer.toString(tid))
+                .append(",\"ts\":").append(Long.toString(ts))
+                .append(",\"dur\":").append(Long.toString(dur))
+                .append(",\"args\":{\"url\":\"").append(escapeJson(key.url_))
+                .append("\",\"line\":").append(Integer.toString(key.line_))
+                .append(",\"calls\":").append(Long.toString(child.calls_))
+                .append(",\"selfTime\":").append(Long.toString(TimeUnit.NANOSECONDS.toMicros(child.selfTime_)))
+                .append("}}");
+            writeChromeTrace(writer, child, tid, ts);
+            ts += dur;
+        }
+    }
+
+    private static String escapeJson(final String value) {
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the url of the script from the source name used by HtmlUnit.
+     * Embedded scripts have source names like "script in http://foo/bar.html from (3, 10) to (10, 13)".
+     */
+    static String getUrl(final String sourceName) {
+        if (sourceName == null) {
+            return "unknown";
+        }
+        String url = StringUtils.removeStart(sourceName, "script in ");
+        url = StringUtils.substringBefore(url, " from (");
+        return url;
+    }
+
+    /**
+     * The identity of a function or script.
+     */
+    private static final class FunctionKey {
+        private final String name_;
+        private final String url_;
+        private final int line_;
+        private final String label_;
+
+        FunctionKey(final DebuggableScript script) {
+            if (script.isFunction()) {
+                name_ = StringUtils.defaultIfEmpty(script.getFunctionName(), "(anonymous)");
+            }
+            else {
+                name_ = "(script)";
+            }
+            url_ = getUrl(script.getSourceName());
+
+            int line = 0;
+            final int[] lines = script.getLineNumbers();
+            if (lines != null) {
+                for (final int l : lines) {
+                    if (line == 0 || l < line) {
+                        line = l;
+                    }
+                }
+            }
+            line_ = line;
+            label_ = name_ + " (" + url_ + ':' + line_ + ')';
+        }
+
+        String getLabel() {
+            return label_;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof FunctionKey)) {
+                return false;
+            }
+            return label_.equals(((FunctionKey) obj).label_);
+        }
+
+        @Override
+        public int hashCode() {
+            return label_.hashCode();
+        }
+    }
+
+    /**
+     * A node of the call tree.
+     */
+    private static final class CallNode {
+        private final FunctionKey key_;
+        private Map<FunctionKey, CallNode> children_;
+        private long calls_;
+        private long selfTime_;
+        private long totalTime_;
+
+        CallNode(final FunctionKey key) {
+            key_ = key;
+        }
+
+        CallNode getChild(final FunctionKey key) {
+            if (children_ == null) {
+                children_ = new LinkedHashMap<>();
+            }
+            CallNode child = children_.get(key);
+            if (child == null) {
+                child = new CallNode(key);
+                children_.put(key, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * The data recorded for one thread.
+     */
+    private static final class ThreadData {
+        private final String threadName_;
+        private final CallNode root_ = new CallNode(null);
+        private ProfileFrame current_;
+
+        ThreadData(final String threadName) {
+            threadName_ = threadName;
+        }
+    }
+
+    /**
+     * The frame of one invocation.
+     */
+    private static final class ProfileFrame extends DebugFrameAdapter {
+        private final ThreadData data_;
+        private final FunctionKey key_;
+        private ProfileFrame parent_;
+        private CallNode node_;
+        private long start_;
+        private long childTime_;
+
+        ProfileFrame(final ThreadData data, final FunctionKey key) {
+            data_ = data;
+            key_ = key;
+        }
+
+        @Override
+        public void onEnter(final Context cx, final Scriptable activation, final Scriptable thisObj,
+                final Object[] args) {
+            synchronized (data_) {
+                parent_ = data_.current_;
+                final CallNode parentNode = parent_ == null ? data_.root_ : parent_.node_;
+                node_ = parentNode.getChild(key_);
+                node_.calls_++;
+                data_.current_ = this;
+            }
+            start_ = System.nanoTime();
+        }
+
+        @Override
+        public void onExit(final Context cx, final boolean byThrow, final Object resultOrException) {
+            final long elapsed = System.nanoTime() - start_;
+            synchronized (data_) {
+                if (node_ == null) {
+                    return;
+                }
+                node_.totalTime_ += elapsed;
+                node_.selfTime_ += elapsed - childTime_;
+                if (parent_ != null) {
+                    parent_.childTime_ += elapsed;
+                }
+                data_.current_ = parent_;
+            }
+        }
+    }
+
+    /**
+     * The statistics of one function or script.
+     */
+    public static final class FunctionStatistics {
+        private final FunctionKey key_;
+        private long callCount_;
+        private long selfTime_;
+        private long totalTime_;
+
+        FunctionStatistics(final FunctionKey key) {
+            key_ = key;
+        }
+
+        /**
+         * @return the name of the function; <tt>(anonymous)</tt> or <tt>(script)</tt> if there is no name
+         */
+        public String getName() {
+            return key_.name_;
+        }
+
+        /**
+         * @return the url of the script defining the function
+         */
+        public String getUrl() {
+            return key_.url_;
+        }
+
+        /**
+         * @return the first line of the function
+         */
+        public int getLine() {
+            return key_.line_;
+        }
+
+        /**
+         * @return the number of calls
+         */
+        public long getCallCount() {
+            return callCount_;
+        }
+
+        /**
+         * @return the time spent in the function itself, in nanoseconds
+         */
+        public long getSelfTime() {
+            return selfTime_;
+        }
+
+        /**
+         * @return the time spent in the function including the called functions, in nanoseconds
+         */
+        public long getTotalTime() {
+            return totalTime_;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return key_.getLabel() + " calls: " + callCount_
+                    + " self: " + TimeUnit.NANOSECONDS.toMicros(selfTime_) + "us"
+                    + " total: " + TimeUnit.NANOSECONDS.toMicros(totalTime_) + "us";
+        }
+    }
+}
@@ -132,6 +132,10 @@ public class BackgroundJavaScriptFactory {
      * @return the executor.
      */
     public JavaScriptExecutor createJavaScriptExecutor(final WebClient webClient) {
+        final int threads = webClient.getOptions().getJavaScriptExecutorThreads();
+        if (threads > 1) {
+            return new ParallelJavaScriptExecutor(webClient, threads);
+        }
         return new DefaultJavaScriptExecutor(webClient);
     }
 
@@ -17,22 +17,31 @@ package com.gargoylesoftware.htmlunit.javascript.background;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager.JavaScriptJobManagerListener;
+import com.gargoylesoftware.htmlunit.util.ThreadUtils;
 
 /**
  * An event loop to execute all the JavaScript jobs.
+ * The loop does not poll; it waits until the target execution time of the earliest
+ * job is reached or until one of the registered job managers reports a change.
  *
  * @author Amit Manjhi
  * @author Kostadin Chikov
  * @author Ronald Brill
  */
-public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
+public class DefaultJavaScriptExecutor implements JavaScriptExecutor, JavaScriptJobManagerListener {
 
     private final transient WeakReference<WebClient> webClient_;
     private final transient List<WeakReference<JavaScriptJobManager>> jobManagerList_;
@@ -41,6 +50,27 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
 
     private transient Thread eventLoopThread_;
 
+    /**
+     * Used to wait for the next job; guards {@link #jobsChanged_}.
+     * This is a lock (and not a monitor) to avoid pinning if the
+     * event loop runs in a virtual thread.
+     */
+    private final transient ReentrantLock wakeupLock_ = new ReentrantLock();
+    private final transient Condition wakeupCondition_ = wakeupLock_.newCondition();
+    private transient boolean jobsChanged_;
+
+    /**
+     * The maximum time the event loop waits if there is nothing to do.
+     * This is only needed to detect a garbage collected WebClient.
+     */
+    private static final long MAX_IDLE_WAIT = 1_000;
+
+    // some statistics
+    private final transient AtomicLong executedJobs_ = new AtomicLong();
+    private final transient AtomicLong jobExecutionTime_ = new AtomicLong();
+    private final transient AtomicLong jobStartDelay_ = new AtomicLong();
+    private final transient AtomicLong batches_ = new AtomicLong();
+
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(DefaultJavaScriptExecutor.class);
 
@@ -59,8 +89,9 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
      */
     protected void startThreadIfNeeded() {
         if (eventLoopThread_ == null) {
-            eventLoopThread_ = new Thread(this, getThreadName());
-            eventLoopThread_.setDaemon(true);
+            final WebClient webClient = webClient_.get();
+            final boolean virtual = webClient != null && webClient.getOptions().isUseVirtualThreads();
+            eventLoopThread_ = ThreadUtils.newThread(getThreadName(), this, virtual);
             eventLoopThread_.start();
         }
     }
@@ -96,7 +127,13 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
             }
 
             // Stop the thread
-            eventLoopThread_.stop();
+            try {
+                eventLoopThread_.stop();
+            }
+            catch (final UnsupportedOperationException e) {
+                // virtual threads (and newer JDKs) do not support this
+                LOG.warn("Event loop thread could not be stopped", e);
+            }
         }
     }
 
@@ -127,32 +164,40 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     /** Runs the eventLoop. */
     @Override
     public void run() {
-        final boolean trace = LOG.isTraceEnabled();
-        // this has to be a multiple of 10ms
-        // otherwise the VM has to fight with the OS to get such small periods
-        final long sleepInterval = 10;
         while (!shutdown_.get() && !Thread.currentThread().isInterrupted() && webClient_.get() != null) {
+            // reset before inspecting the managers; every change reported
+            // after this point will prevent the wait below
+            wakeupLock_.lock();
+            try {
+                jobsChanged_ = false;
+            }
+            finally {
+                wakeupLock_.unlock();
+            }
+
+            long waitTime = MAX_IDLE_WAIT;
             final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
 
             if (jobManager != null) {
                 final JavaScriptJob earliestJob = jobManager.getEarliestJob();
                 if (earliestJob != null) {
-                    final long waitTime = earliestJob.getTargetExecutionTime() - System.currentTimeMillis();
+                    final JavaScriptClock clock = getClock();
+                    final long targetTime = earliestJob.getTargetExecutionTime();
+                    waitTime = targetTime - clock.currentTimeMillis();
+
+                    // a virtual clock may jump directly to the next job
+                    if (waitTime > 0 && clock.advanceTo(targetTime)) {
+                        waitTime = 0;
+                    }
 
                     // do we have to execute the earliest job
                     if (waitTime < 1) {
-                        // execute the earliest job
-                        if (trace) {
-                            LOG.trace("started executing job at " + System.currentTimeMillis());
-                        }
-                        jobManager.runSingleJob(earliestJob);
-                        if (trace) {
-                            LOG.trace("stopped executing job at " + System.currentTimeMillis());
-                        }
-
-                        // job is done, have a look for another one
+                        runDueJobs(jobManager, earliestJob, clock);
+
+                        // jobs are done, have a look for another one
                         continue;
                     }
+                    waitTime = Math.min(waitTime, MAX_IDLE_WAIT);
                 }
             }
 
@@ -161,13 +206,99 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
                 break;
             }
 
-            // nothing to do, let's sleep a bit
+            // nothing to do, wait for the next job or for a change
+            wakeupLock_.lock();
             try {
-                Thread.sleep(sleepInterval);
+                if (!jobsChanged_) {
+                    wakeupCondition_.await(waitTime, TimeUnit.MILLISECONDS);
+                }
             }
             catch (final InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
+            finally {
+                wakeupLock_.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the given job and all the jobs of the same job manager getting due while doing this
+     * as one batch; the JavaScript engine is prepared only once for the whole batch.
+     * The batch ends if another job manager has an earlier job.
+     */
+    private void runDueJobs(final JavaScriptJobManager jobManager, final JavaScriptJob firstJob,
+            final JavaScriptClock clock) {
+        final Runnable batch = () -> {
+            JavaScriptJob job = firstJob;
+            while (job != null) {
+                runJob(jobManager, job, clock);
+                job = getNextDueJob(jobManager, clock);
+            }
+        };
+
+        batches_.incrementAndGet();
+        final WebClient webClient = webClient_.get();
+        final AbstractJavaScriptEngine<?> engine = webClient == null ? null : webClient.getJavaScriptEngine();
+        if (engine == null) {
+            batch.run();
+        }
+        else {
+            engine.executeBatch(batch);
+        }
+    }
+
+    private void runJob(final JavaScriptJobManager jobManager, final JavaScriptJob job,
+            final JavaScriptClock clock) {
+        final boolean trace = LOG.isTraceEnabled();
+        if (trace) {
+            LOG.trace("started executing job at " + System.currentTimeMillis());
+        }
+        final long delay = clock.currentTimeMillis() - job.getTargetExecutionTime();
+        final long start = System.nanoTime();
+        if (jobManager.runSingleJob(job)) {
+            executedJobs_.incrementAndGet();
+            jobExecutionTime_.addAndGet((System.nanoTime() - start) / 1_000_000);
+            jobStartDelay_.addAndGet(Math.max(0, delay));
+        }
+        if (trace) {
+            LOG.trace("stopped executing job at " + System.currentTimeMillis());
+        }
+    }
+
+    private JavaScriptJob getNextDueJob(final JavaScriptJobManager jobManager, final JavaScriptClock clock) {
+        if (shutdown_.get() || Thread.currentThread().isInterrupted()
+                || getJobManagerWithEarliestJob() != jobManager) {
+            return null;
+        }
+        final JavaScriptJob job = jobManager.getEarliestJob();
+        if (job == null || job.getTargetExecutionTime() > clock.currentTimeMillis()) {
+            return null;
+        }
+        return job;
+    }
+
+    private JavaScriptClock getClock() {
+        final WebClient webClient = webClient_.get();
+        if (webClient == null) {
+            return new JavaScriptClock();
+        }
+        return webClient.getJavaScriptClock();
+    }
+
+    /**
+     * Wakes up the event loop to recalculate the time of the next job.
+     * @param jobManager the manager whose jobs have changed
+     */
+    @Override
+    public void jobsChanged(final JavaScriptJobManager jobManager) {
+        wakeupLock_.lock();
+        try {
+            jobsChanged_ = true;
+            wakeupCondition_.signalAll();
+        }
+        finally {
+            wakeupLock_.unlock();
         }
     }
 
@@ -179,8 +310,10 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     public void addWindow(final WebWindow newWindow) {
         final JavaScriptJobManager jobManager = newWindow.getJobManager();
         if (jobManager != null) {
+            jobManager.setJobManagerListener(this);
             updateJobMangerList(jobManager);
             startThreadIfNeeded();
+            jobsChanged(jobManager);
         }
     }
 
@@ -204,14 +337,71 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
         }
     }
 
+    /**
+     * Returns the number of job managers (windows) served by this event loop.
+     * @return the number of job managers
+     */
+    public int getJobManagerCount() {
+        int count = 0;
+        synchronized (jobManagerList_) {
+            for (WeakReference<JavaScriptJobManager> weakReference : jobManagerList_) {
+                if (weakReference.get() != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of jobs executed by this event loop.
+     * @return the number of executed jobs
+     */
+    public long getExecutedJobCount() {
+        return executedJobs_.get();
+    }
+
+    /**
+     * Returns the number of batches of jobs executed by this event loop;
+     * all the jobs getting due while a batch is running are executed within this batch.
+     * @return the number of batches
+     */
+    public long getBatchCount() {
+        return batches_.get();
+    }
+
+    /**
+     * Returns the total time spent executing jobs.
+     * @return the execution time in milliseconds
+     */
+    public long getJobExecutionTime() {
+        return jobExecutionTime_.get();
+    }
+
+    /**
+     * Returns the sum of the delays between the target execution time
+     * of the executed jobs and their real start.
+     * @return the start delay in milliseconds
+     */
+    public long getJobStartDelay() {
+        return jobStartDelay_.get();
+    }
+
     /** Notes that this thread has been shutdown. */
     @Override
     public void shutdown() {
         shutdown_.set(true);
+        jobsChanged(null);
         killThread();
 
         webClient_.clear();
         synchronized (jobManagerList_) {
+            for (WeakReference<JavaScriptJobManager> weakReference : jobManagerList_) {
+                final JavaScriptJobManager jobManager = weakReference.get();
+                if (jobManager != null) {
+                    jobManager.setJobManagerListener(null);
+                }
+            }
             jobManagerList_.clear();
         }
     }
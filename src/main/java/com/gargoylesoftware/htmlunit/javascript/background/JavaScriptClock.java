@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.io.Serializable;
+
+/**
+ * The source of time for the JavaScript support of a {@link com.gargoylesoftware.htmlunit.WebClient}.
+ * It is used to schedule the {@link JavaScriptJob}s and provides the time for
+ * {@code Date.now()} and {@code performance.now()}.
+ *
+ * <p>This default implementation simply delegates to the system clock. Subclasses
+ * (like {@link VirtualJavaScriptClock}) are able to move forward in time when
+ * the event loop has nothing to do.</p>
+ *
+ * @author Ronald Brill
+ */
+public class JavaScriptClock implements Serializable {
+
+    /**
+     * Returns the current time in milliseconds.
+     * @return the current time in milliseconds
+     * @see System#currentTimeMillis()
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the current value of the high resolution time source, in nanoseconds.
+     * @return the current value of the high resolution time source
+     * @see System#nanoTime()
+     */
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Converts a time of the system clock into the time of this clock.
+     * @param systemTimeMillis the system time in milliseconds
+     * @return the time in milliseconds based on this clock
+     */
+    public long fromSystemTime(final long systemTimeMillis) {
+        return systemTimeMillis;
+    }
+
+    /**
+     * Tries to move this clock forward to the given time. The system clock
+     * is not able to do this.
+     * @param targetTimeMillis the time to move to
+     * @return true if the clock has reached the target time
+     */
+    public boolean advanceTo(final long targetTimeMillis) {
+        return false;
+    }
+
+    /**
+     * Informs the clock that someone is waiting for the jobs scheduled up to the given time.
+     * Clocks that are able to move forward may do so up to this limit.
+     * @param limitMillis the time limit
+     */
+    public void permitAdvanceUntil(final long limitMillis) {
+        // nothing to do
+    }
+
+    /**
+     * Returns {@code true} if this clock follows the system clock.
+     * @return {@code true} if this clock follows the system clock
+     */
+    public boolean isSystemClock() {
+        return true;
+    }
+}
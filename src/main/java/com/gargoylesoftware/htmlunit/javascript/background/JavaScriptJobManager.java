@@ -40,6 +40,20 @@ public interface JavaScriptJobManager extends Serializable {
         boolean passes(JavaScriptJob job);
     }
 
+    /**
+     * Listener interface. Gets informed whenever the scheduled jobs of a
+     * manager have changed (a job was added, removed or rescheduled).
+     */
+    interface JavaScriptJobManagerListener {
+
+        /**
+         * Called after the scheduled jobs of the manager have changed.
+         * Implementations must not block; this may be called while the manager holds its lock.
+         * @param jobManager the manager whose jobs have changed
+         */
+        void jobsChanged(JavaScriptJobManager jobManager);
+    }
+
     /**
      * Returns the number of active jobs, including jobs that are currently executing and jobs that are
      * waiting to execute.
@@ -118,6 +132,14 @@ public interface JavaScriptJobManager extends Serializable {
      */
     int waitForJobsStartingBefore(long delayMillis, JavaScriptJobFilter filter);
 
+    /**
+     * Sets the listener to be informed about changes of the scheduled jobs.
+     * This is used by the {@link JavaScriptExecutor} to wake up exactly when needed
+     * instead of polling the manager.
+     * @param listener the listener, {@code null} to remove the current one
+     */
+    void setJobManagerListener(JavaScriptJobManagerListener listener);
+
     /**
      * Shuts down this job manager and stops all of its jobs.
      */
@@ -19,12 +19,16 @@ import java.io.ObjectInputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 
 /**
@@ -57,6 +61,16 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     private transient ArrayList<Integer> cancelledJobs_ = new ArrayList<>();
 
     private transient JavaScriptJob currentlyRunningJob_;
+    private transient Thread currentlyRunningThread_;
+
+    private transient volatile JavaScriptJobManagerListener listener_;
+
+    /**
+     * Guards the queue; we are using a lock instead of synchronized
+     * to avoid pinning of virtual threads waiting for jobs.
+     */
+    private transient ReentrantLock lock_ = new ReentrantLock();
+    private transient Condition changed_ = lock_.newCondition();
 
     /** A counter used to generate the IDs assigned to {@link JavaScriptJob}s. */
     private static final AtomicInteger NEXT_JOB_ID_ = new AtomicInteger(1);
@@ -64,6 +78,12 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(JavaScriptJobManagerImpl.class);
 
+    /** The maximal time (in millis) {@link #shutdown()} waits for the currently running job. */
+    private static final long SHUTDOWN_WAIT = 2_000;
+
+    /** The clock used if the window is already gone. */
+    private static final JavaScriptClock SYSTEM_CLOCK = new JavaScriptClock();
+
     /**
      * Creates a new instance.
      *
@@ -75,27 +95,39 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
     /** {@inheritDoc} */
     @Override
-    public synchronized int getJobCount() {
-        return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
+    public int getJobCount() {
+        lock_.lock();
+        try {
+            return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
+        }
+        finally {
+            lock_.unlock();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized int getJobCount(final JavaScriptJobFilter filter) {
-        if (filter == null) {
-            return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
-        }
+    public int getJobCount(final JavaScriptJobFilter filter) {
+        lock_.lock();
+        try {
+            if (filter == null) {
+                return scheduledJobsQ_.size() + (currentlyRunningJob_ != null ? 1 : 0);
+            }
 
-        int count = 0;
-        if (currentlyRunningJob_ != null && filter.passes(currentlyRunningJob_)) {
-            count++;
-        }
-        for (JavaScriptJob job : scheduledJobsQ_) {
-            if (filter.passes(job)) {
+            int count = 0;
+            if (currentlyRunningJob_ != null && filter.passes(currentlyRunningJob_)) {
                 count++;
             }
+            for (JavaScriptJob job : scheduledJobsQ_) {
+                if (filter.passes(job)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        finally {
+            lock_.unlock();
         }
-        return count;
     }
 
     /** {@inheritDoc} */
@@ -118,8 +150,11 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         }
         final int id = NEXT_JOB_ID_.getAndIncrement();
         job.setId(Integer.valueOf(id));
+        // the jobs are created based on the system time
+        job.setTargetExecutionTime(getClock().fromSystemTime(job.getTargetExecutionTime()));
 
-        synchronized (this) {
+        lock_.lock();
+        try {
             scheduledJobsQ_.add(job);
 
             if (LOG.isDebugEnabled()) {
@@ -130,7 +165,11 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                 printQueue();
             }
 
-            notify();
+            changed_.signalAll();
+            fireJobsChanged();
+        }
+        finally {
+            lock_.unlock();
         }
 
         return id;
@@ -138,44 +177,65 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void removeJob(final int id) {
-        for (final JavaScriptJob job : scheduledJobsQ_) {
-            final int jobId = job.getId().intValue();
-            if (jobId == id) {
-                scheduledJobsQ_.remove(job);
-                break;
+    public void removeJob(final int id) {
+        lock_.lock();
+        try {
+            for (final JavaScriptJob job : scheduledJobsQ_) {
+                final int jobId = job.getId().intValue();
+                if (jobId == id) {
+                    scheduledJobsQ_.remove(job);
+                    break;
+                }
             }
+            cancelledJobs_.add(Integer.valueOf(id));
+            changed_.signalAll();
+            fireJobsChanged();
+        }
+        finally {
+            lock_.unlock();
         }
-        cancelledJobs_.add(Integer.valueOf(id));
-        notify();
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void stopJob(final int id) {
-        for (final JavaScriptJob job : scheduledJobsQ_) {
-            final int jobId = job.getId().intValue();
-            if (jobId == id) {
-                scheduledJobsQ_.remove(job);
-                // TODO: should we try to interrupt the job if it is running?
-                break;
+    public void stopJob(final int id) {
+        lock_.lock();
+        try {
+            for (final JavaScriptJob job : scheduledJobsQ_) {
+                final int jobId = job.getId().intValue();
+                if (jobId == id) {
+                    scheduledJobsQ_.remove(job);
+                    // TODO: should we try to interrupt the job if it is running?
+                    break;
+                }
             }
+            cancelledJobs_.add(Integer.valueOf(id));
+            changed_.signalAll();
+            fireJobsChanged();
+        }
+        finally {
+            lock_.unlock();
         }
-        cancelledJobs_.add(Integer.valueOf(id));
-        notify();
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void removeAllJobs() {
-        if (currentlyRunningJob_ != null) {
-            cancelledJobs_.add(currentlyRunningJob_.getId());
+    public void removeAllJobs() {
+        lock_.lock();
+        try {
+            if (currentlyRunningJob_ != null) {
+                cancelledJobs_.add(currentlyRunningJob_.getId());
+            }
+            for (final JavaScriptJob job : scheduledJobsQ_) {
+                cancelledJobs_.add(job.getId());
+            }
+            scheduledJobsQ_.clear();
+            changed_.signalAll();
+            fireJobsChanged();
         }
-        for (final JavaScriptJob job : scheduledJobsQ_) {
-            cancelledJobs_.add(job.getId());
+        finally {
+            lock_.unlock();
         }
-        scheduledJobsQ_.clear();
-        notify();
     }
 
     /** {@inheritDoc} */
@@ -186,22 +246,36 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             LOG.debug("Waiting for all jobs to finish (will wait max " + timeoutMillis + " millis).");
         }
         if (timeoutMillis > 0) {
-            long now = System.currentTimeMillis();
+            final JavaScriptClock clock = getClock();
+            long now = clock.currentTimeMillis();
             final long end = now + timeoutMillis;
 
-            synchronized (this) {
+            lock_.lock();
+            try {
+                clock.permitAdvanceUntil(end);
+                fireJobsChanged();
                 while (getJobCount() > 0 && now < end) {
+                    // if the clock is able to jump, there is no need to wait
+                    // for jobs scheduled after the end
+                    if (currentlyRunningJob_ == null
+                            && scheduledJobsQ_.peek().getTargetExecutionTime() >= end
+                            && clock.advanceTo(end)) {
+                        break;
+                    }
                     try {
-                        wait(end - now);
+                        changed_.await(end - now, TimeUnit.MILLISECONDS);
                     }
                     catch (final InterruptedException e) {
                         LOG.error("InterruptedException while in waitForJobs", e);
                     }
                     // maybe a change triggers the wakup; we have to recalculate the
                     // wait time
-                    now = System.currentTimeMillis();
+                    now = clock.currentTimeMillis();
                 }
             }
+            finally {
+                lock_.unlock();
+            }
         }
         final int jobs = getJobCount();
         if (debug) {
@@ -221,14 +295,18 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     public int waitForJobsStartingBefore(final long delayMillis, final JavaScriptJobFilter filter) {
         final boolean debug = LOG.isDebugEnabled();
 
-        final long latestExecutionTime = System.currentTimeMillis() + delayMillis;
+        final JavaScriptClock clock = getClock();
+        final long latestExecutionTime = clock.currentTimeMillis() + delayMillis;
         if (debug) {
             LOG.debug("Waiting for all jobs that have execution time before "
                   + delayMillis + " (" + latestExecutionTime + ") to finish");
         }
 
         final long interval = Math.max(40, delayMillis);
-        synchronized (this) {
+        lock_.lock();
+        try {
+            clock.permitAdvanceUntil(latestExecutionTime);
+            fireJobsChanged();
             JavaScriptJob earliestJob = getEarliestJob(filter);
             boolean pending = earliestJob != null && earliestJob.getTargetExecutionTime() < latestExecutionTime;
             pending = pending
@@ -240,7 +318,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
             while (pending) {
                 try {
-                    wait(interval);
+                    changed_.await(interval, TimeUnit.MILLISECONDS);
                 }
                 catch (final InterruptedException e) {
                     LOG.error("InterruptedException while in waitForJobsStartingBefore", e);
@@ -256,6 +334,9 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                            );
             }
         }
+        finally {
+            lock_.unlock();
+        }
 
         final int jobs = getJobCount(filter);
         if (debug) {
@@ -267,9 +348,61 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void shutdown() {
-        scheduledJobsQ_.clear();
-        notify();
+    public void shutdown() {
+        lock_.lock();
+        try {
+            scheduledJobsQ_.clear();
+            changed_.signalAll();
+            fireJobsChanged();
+
+            // a job running on another thread may still modify the window
+            final Thread current = Thread.currentThread();
+            long now = System.currentTimeMillis();
+            final long end = now + SHUTDOWN_WAIT;
+            while (currentlyRunningJob_ != null && currentlyRunningThread_ != current && now < end) {
+                try {
+                    changed_.await(end - now, TimeUnit.MILLISECONDS);
+                }
+                catch (final InterruptedException e) {
+                    LOG.error("InterruptedException while in shutdown", e);
+                    break;
+                }
+                now = System.currentTimeMillis();
+            }
+            // a periodic job might have been rescheduled in the meantime
+            scheduledJobsQ_.clear();
+        }
+        finally {
+            lock_.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setJobManagerListener(final JavaScriptJobManagerListener listener) {
+        listener_ = listener;
+    }
+
+    /**
+     * Returns the clock of the web client this manager works for.
+     * @return the clock
+     */
+    private JavaScriptClock getClock() {
+        final WebWindow w = getWindow();
+        if (w != null) {
+            final WebClient webClient = w.getWebClient();
+            if (webClient != null) {
+                return webClient.getJavaScriptClock();
+            }
+        }
+        return SYSTEM_CLOCK;
+    }
+
+    private void fireJobsChanged() {
+        final JavaScriptJobManagerListener listener = listener_;
+        if (listener != null) {
+            listener.jobsChanged(this);
+        }
     }
 
     /**
@@ -308,44 +441,51 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
      * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
      */
     @Override
-    public synchronized String jobStatusDump(final JavaScriptJobFilter filter) {
-        final StringBuilder status = new StringBuilder(110);
-        final String lineSeparator = System.lineSeparator();
-        status.append("------ JavaScript job status -----");
-        status.append(lineSeparator);
-        if (null != currentlyRunningJob_ && (filter == null || filter.passes(currentlyRunningJob_))) {
-            status.append("  current running job: ").append(currentlyRunningJob_.toString());
-            status.append("      job id: " + currentlyRunningJob_.getId());
-            status.append(lineSeparator);
-            status.append(lineSeparator);
+    public String jobStatusDump(final JavaScriptJobFilter filter) {
+        lock_.lock();
+        try {
+            final StringBuilder status = new StringBuilder(110);
+            final String lineSeparator = System.lineSeparator();
+            status.append("------ JavaScript job status -----");
             status.append(lineSeparator);
-        }
-        status.append("  number of jobs on the queue: " + scheduledJobsQ_.size());
-        status.append(lineSeparator);
-        int count = 1;
-        for (final JavaScriptJob job : scheduledJobsQ_) {
-            if (filter == null || filter.passes(job)) {
-                final long now = System.currentTimeMillis();
-                final long execTime = job.getTargetExecutionTime();
-                status.append("  " + count);
-                status.append(")  Job target execution time: " + execTime);
-                status.append(" (should start in " + ((execTime - now) / 1000d) + "s)");
+            if (null != currentlyRunningJob_ && (filter == null || filter.passes(currentlyRunningJob_))) {
+                status.append("  current running job: ").append(currentlyRunningJob_.toString());
+                status.append("      job id: " + currentlyRunningJob_.getId());
                 status.append(lineSeparator);
-                status.append("      job to string: ").append(job.toString());
                 status.append(lineSeparator);
-                status.append("      job id: " + job.getId());
                 status.append(lineSeparator);
-                if (job.isPeriodic()) {
-                    status.append("      period: " + job.getPeriod().intValue());
+            }
+            status.append("  number of jobs on the queue: " + scheduledJobsQ_.size());
+            status.append(lineSeparator);
+            int count = 1;
+            final JavaScriptClock clock = getClock();
+            for (final JavaScriptJob job : scheduledJobsQ_) {
+                if (filter == null || filter.passes(job)) {
+                    final long now = clock.currentTimeMillis();
+                    final long execTime = job.getTargetExecutionTime();
+                    status.append("  " + count);
+                    status.append(")  Job target execution time: " + execTime);
+                    status.append(" (should start in " + ((execTime - now) / 1000d) + "s)");
+                    status.append(lineSeparator);
+                    status.append("      job to string: ").append(job.toString());
+                    status.append(lineSeparator);
+                    status.append("      job id: " + job.getId());
                     status.append(lineSeparator);
+                    if (job.isPeriodic()) {
+                        status.append("      period: " + job.getPeriod().intValue());
+                        status.append(lineSeparator);
+                    }
+                    count++;
                 }
-                count++;
             }
-        }
-        status.append("------------------------------------------");
-        status.append(lineSeparator);
+            status.append("------------------------------------------");
+            status.append(lineSeparator);
 
-        return status.toString();
+            return status.toString();
+        }
+        finally {
+            lock_.unlock();
+        }
     }
 
     /**
@@ -360,17 +500,23 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
      * {@inheritDoc}
      */
     @Override
-    public synchronized JavaScriptJob getEarliestJob(final JavaScriptJobFilter filter) {
-        if (filter == null) {
-            return scheduledJobsQ_.peek();
-        }
+    public JavaScriptJob getEarliestJob(final JavaScriptJobFilter filter) {
+        lock_.lock();
+        try {
+            if (filter == null) {
+                return scheduledJobsQ_.peek();
+            }
 
-        for (JavaScriptJob job : scheduledJobsQ_) {
-            if (filter.passes(job)) {
-                return job;
+            for (JavaScriptJob job : scheduledJobsQ_) {
+                if (filter.passes(job)) {
+                    return job;
+                }
             }
+            return null;
+        }
+        finally {
+            lock_.unlock();
         }
-        return null;
     }
 
     /**
@@ -384,16 +530,21 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             return false;
         }
 
-        final long currentTime = System.currentTimeMillis();
+        final long currentTime = getClock().currentTimeMillis();
         if (job.getTargetExecutionTime() > currentTime) {
             return false;
         }
-        synchronized (this) {
+        lock_.lock();
+        try {
             if (scheduledJobsQ_.remove(job)) {
                 currentlyRunningJob_ = job;
+                currentlyRunningThread_ = Thread.currentThread();
             }
             // no need to notify if processing is started
         }
+        finally {
+            lock_.unlock();
+        }
 
         final boolean debug = LOG.isDebugEnabled();
         final boolean isPeriodicJob = job.isPeriodic();
@@ -406,15 +557,20 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             job.setTargetExecutionTime(job.getTargetExecutionTime() + timeDifference);
 
             // queue
-            synchronized (this) {
+            lock_.lock();
+            try {
                 if (!cancelledJobs_.contains(job.getId())) {
                     if (debug) {
                         LOG.debug("Reschedulling job " + job);
                     }
                     scheduledJobsQ_.add(job);
-                    notify();
+                    changed_.signalAll();
+                    fireJobsChanged();
                 }
             }
+            finally {
+                lock_.unlock();
+            }
         }
         if (debug) {
             final String periodicJob = isPeriodicJob ? "interval " : "";
@@ -427,11 +583,16 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             LOG.error("Job run failed with unexpected RuntimeException: " + e.getMessage(), e);
         }
         finally {
-            synchronized (this) {
+            lock_.lock();
+            try {
                 if (job == currentlyRunningJob_) {
                     currentlyRunningJob_ = null;
+                    currentlyRunningThread_ = null;
                 }
-                notify();
+                changed_.signalAll();
+            }
+            finally {
+                lock_.unlock();
             }
         }
         if (debug) {
@@ -454,5 +615,8 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         scheduledJobsQ_ = new PriorityQueue<>();
         cancelledJobs_ = new ArrayList<>();
         currentlyRunningJob_ = null;
+        currentlyRunningThread_ = null;
+        lock_ = new ReentrantLock();
+        changed_ = lock_.newCondition();
     }
 }
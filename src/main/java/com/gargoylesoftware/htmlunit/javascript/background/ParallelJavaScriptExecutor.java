@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+
+/**
+ * An event loop distributing the JavaScript jobs of the windows over a number of threads.
+ *
+ * <p>Every worker is a {@link DefaultJavaScriptExecutor} with its own thread. All windows belonging
+ * to the same top level window (including frames and windows opened by this window) are served
+ * by the same worker; this way the JavaScript code of a window (and of all windows able to access it)
+ * is still executed by a single thread. Unrelated top level windows are processed in parallel.</p>
+ *
+ * @author Ronald Brill
+ * @see com.gargoylesoftware.htmlunit.WebClientOptions#setJavaScriptExecutorThreads(int)
+ */
+public class ParallelJavaScriptExecutor implements JavaScriptExecutor {
+
+    private final List<DefaultJavaScriptExecutor> workers_;
+    private final Map<WebWindow, DefaultJavaScriptExecutor> assignments_ = new WeakHashMap<>();
+
+    /**
+     * Creates an EventLoop for the webClient.
+     *
+     * @param webClient the provided webClient
+     * @param threads the number of worker threads
+     */
+    public ParallelJavaScriptExecutor(final WebClient webClient, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required (" + threads + ").");
+        }
+
+        final List<DefaultJavaScriptExecutor> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers.add(new DefaultJavaScriptExecutor(webClient) {
+                @Override
+                protected String getThreadName() {
+                    return "JS executor " + index + " for " + webClient;
+                }
+            });
+        }
+        workers_ = Collections.unmodifiableList(workers);
+    }
+
+    /**
+     * The workers are running in their own threads; there is nothing to do here.
+     */
+    @Override
+    public void run() {
+        // nothing
+    }
+
+    /**
+     * Register a window with the worker responsible for the top level window.
+     * @param newWindow the new web window
+     */
+    @Override
+    public void addWindow(final WebWindow newWindow) {
+        getWorker(newWindow).addWindow(newWindow);
+    }
+
+    /**
+     * Returns the worker responsible for the given window.
+     * @param window the window
+     * @return the worker
+     */
+    protected DefaultJavaScriptExecutor getWorker(final WebWindow window) {
+        final WebWindow root = getAffinityRoot(window);
+        synchronized (assignments_) {
+            DefaultJavaScriptExecutor worker = assignments_.get(root);
+            if (worker == null) {
+                worker = getLeastUsedWorker();
+                assignments_.put(root, worker);
+            }
+            return worker;
+        }
+    }
+
+    private DefaultJavaScriptExecutor getLeastUsedWorker() {
+        DefaultJavaScriptExecutor result = null;
+        int minUsage = Integer.MAX_VALUE;
+        for (final DefaultJavaScriptExecutor worker : workers_) {
+            final int usage = Collections.frequency(assignments_.values(), worker);
+            if (usage < minUsage) {
+                minUsage = usage;
+                result = worker;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Windows are able to access their top window and the window that has opened them;
+     * all these windows have to be processed by the same thread.
+     */
+    private static WebWindow getAffinityRoot(final WebWindow window) {
+        WebWindow root = window.getTopWindow();
+        while (root instanceof TopLevelWindow) {
+            final WebWindow opener = ((TopLevelWindow) root).getOpener();
+            if (opener == null || opener == root) {
+                break;
+            }
+            root = opener.getTopWindow();
+        }
+        return root;
+    }
+
+    /**
+     * Returns the workers of this executor; the statistics of the
+     * workers are giving an idea about the distribution of the load.
+     * @return the workers
+     */
+    public List<DefaultJavaScriptExecutor> getWorkers() {
+        return workers_;
+    }
+
+    /**
+     * Returns the number of jobs executed by all workers.
+     * @return the number of executed jobs
+     */
+    public long getExecutedJobCount() {
+        long count = 0;
+        for (final DefaultJavaScriptExecutor worker : workers_) {
+            count += worker.getExecutedJobCount();
+        }
+        return count;
+    }
+
+    /** Shuts down all workers. */
+    @Override
+    public void shutdown() {
+        for (final DefaultJavaScriptExecutor worker : workers_) {
+            worker.shutdown();
+        }
+        synchronized (assignments_) {
+            assignments_.clear();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+/**
+ * A {@link JavaScriptClock} that is able to fast-forward.
+ *
+ * <p>The clock runs at the speed of the system clock; but when someone waits for background JavaScript
+ * (e.g. {@link com.gargoylesoftware.htmlunit.WebClient#waitForBackgroundJavaScript(long)}), the
+ * event loop does not wait for the next job. Instead the clock jumps forward to the target time
+ * of the next job. This way pages using long timeouts or intervals are processed in
+ * a fraction of the real time.</p>
+ *
+ * <p>The clock never jumps beyond the limit requested by a waiting caller; without someone waiting
+ * it simply follows the system clock.</p>
+ *
+ * @author Ronald Brill
+ */
+public class VirtualJavaScriptClock extends JavaScriptClock {
+
+    /** The sum of all jumps, in milliseconds. */
+    private long offset_;
+
+    /** The time up to which jumps are allowed. */
+    private long advanceLimit_;
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long currentTimeMillis() {
+        return System.currentTimeMillis() + offset_;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long nanoTime() {
+        return System.nanoTime() + offset_ * 1_000_000L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long fromSystemTime(final long systemTimeMillis) {
+        return systemTimeMillis + offset_;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The clock moves only if the target time is not beyond the limit
+     * set by {@link #permitAdvanceUntil(long)}.
+     */
+    @Override
+    public synchronized boolean advanceTo(final long targetTimeMillis) {
+        final long now = currentTimeMillis();
+        if (targetTimeMillis <= now) {
+            return true;
+        }
+        if (targetTimeMillis > advanceLimit_) {
+            return false;
+        }
+        offset_ += targetTimeMillis - now;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void permitAdvanceUntil(final long limitMillis) {
+        advanceLimit_ = Math.max(advanceLimit_, limitMillis);
+    }
+
+    /**
+     * Moves this clock forward.
+     * @param millis the number of milliseconds to move forward
+     */
+    public synchronized void advance(final long millis) {
+        if (millis > 0) {
+            offset_ += millis;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isSystemClock() {
+        return false;
+    }
+}
@@ -28,7 +28,9 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.IE;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -46,6 +48,7 @@ import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.DomText;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlElement.DisplayStyle;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.NamedNodeMap;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
@@ -127,10 +130,10 @@ public class Element extends Node {
          * Should be called only on construction.
          */
         final DomElement htmlElt = (DomElement) domNode;
-        for (final DomAttr attr : htmlElt.getAttributesMap().values()) {
-            final String eventName = attr.getName().toLowerCase(Locale.ROOT);
+        for (final String name : htmlElt.getAttributesMap().keySet()) {
+            final String eventName = name.toLowerCase(Locale.ROOT);
             if (eventName.startsWith("on")) {
-                createEventHandler(eventName.substring(2), attr.getValue());
+                createEventHandler(eventName.substring(2), htmlElt.getAttributeDirect(name));
             }
         }
     }
@@ -666,6 +669,29 @@ public class Element extends Node {
                 }
                 return true;
             }
+
+            @Override
+            protected List<DomNode> computeElements() {
+                // document.getElementsByClassName() is served from the class name index of the page
+                final HtmlPage page = elt.getHtmlPageOrNull();
+                if (page == null || elt != page.getDocumentElement() || classNames.length == 0
+                        || classNames[0].isEmpty()) {
+                    return super.computeElements();
+                }
+
+                final List<DomNode> response = new ArrayList<>();
+                for (final DomElement candidate : page.getIndexedElementsByClassName(classNames[0])) {
+                    if (candidate != elt && isMatching(candidate)) {
+                        response.add(candidate);
+                    }
+                }
+                return response;
+            }
+
+            @Override
+            protected boolean isIncrementallyUpdatable() {
+                return true;
+            }
         };
 
         return collection;
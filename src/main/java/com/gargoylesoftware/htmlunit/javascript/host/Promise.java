@@ -26,8 +26,8 @@ import java.util.List;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.javascript.HtmlUnitContextFactory;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+import com.gargoylesoftware.htmlunit.javascript.PostponedAction;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
-import com.gargoylesoftware.htmlunit.javascript.background.BasicJavaScriptJob;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxFunction;
@@ -36,6 +36,7 @@ import com.gargoylesoftware.htmlunit.javascript.configuration.JsxStaticFunction;
 import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextAction;
+import net.sourceforge.htmlunit.corejs.javascript.EcmaError;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.IteratorLikeIterable;
 import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
@@ -64,7 +65,7 @@ public class Promise extends SimpleScriptable {
     private boolean race_;
     private Promise[] all_;
 
-    private List<BasicJavaScriptJob> settledJobs_;
+    private List<PostponedAction> settledJobs_;
     private List<Promise> dependentPromises_;
 
     /**
@@ -233,8 +234,10 @@ public class Promise extends SimpleScriptable {
         }
 
         if (settledJobs_ != null) {
-            for (BasicJavaScriptJob job : settledJobs_) {
-                window.getWebWindow().getJobManager().addJob(job, window.getDocument().getPage());
+            final JavaScriptEngine jsEngine =
+                    (JavaScriptEngine) window.getWebWindow().getWebClient().getJavaScriptEngine();
+            for (PostponedAction job : settledJobs_) {
+                jsEngine.addMicrotask(job);
             }
             settledJobs_ = null;
         }
@@ -365,10 +368,10 @@ public class Promise extends SimpleScriptable {
 
         final Promise thisPromise = this;
 
-        final BasicJavaScriptJob job = new BasicJavaScriptJob() {
+        final PostponedAction job = new PostponedAction(window.getDocument().getPage(), "Promise.then") {
 
             @Override
-            public void run() {
+            public void execute() {
                 final WebClient client = window.getWebWindow().getWebClient();
                 final HtmlUnitContextFactory cf = ((JavaScriptEngine) client
                         .getJavaScriptEngine()).getContextFactory();
@@ -438,25 +441,22 @@ public class Promise extends SimpleScriptable {
                         catch (final JavaScriptException e) {
                             returnPromise.settle(false, e.getValue(), window);
                         }
+                        catch (final EcmaError e) {
+                            returnPromise.settle(false, ScriptRuntime.wrapException(e, window, cx), window);
+                        }
                         return null;
                     }
                 };
                 cf.call(contextAction);
             }
-
-            /** {@inheritDoc} */
-            @Override
-            public String toString() {
-                return super.toString() + " Promise.then";
-            }
         };
 
         if (state_ == PromiseState.FULFILLED || state_ == PromiseState.REJECTED) {
-            window.getWebWindow().getJobManager().addJob(job, window.getDocument().getPage());
+            ((JavaScriptEngine) window.getWebWindow().getWebClient().getJavaScriptEngine()).addMicrotask(job);
         }
         else {
             if (settledJobs_ == null) {
-                settledJobs_ = new ArrayList<BasicJavaScriptJob>(2);
+                settledJobs_ = new ArrayList<PostponedAction>(2);
             }
             settledJobs_.add(job);
         }
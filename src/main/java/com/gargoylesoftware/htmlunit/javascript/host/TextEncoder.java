@@ -17,13 +17,12 @@ package com.gargoylesoftware.htmlunit.javascript.host;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.CHROME;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.FF;
 
-import java.nio.charset.StandardCharsets;
-
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxFunction;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxGetter;
+import com.gargoylesoftware.htmlunit.javascript.host.arrays.ArrayBufferUtils;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
@@ -76,12 +75,9 @@ public class TextEncoder extends SimpleScriptable {
             txt = Context.toString(toEncode);
         }
 
-        final byte[] bytes = txt.getBytes(StandardCharsets.UTF_8);
-
-        final NativeArrayBuffer arrayBuffer = new NativeArrayBuffer(bytes.length);
-        System.arraycopy(bytes, 0, arrayBuffer.getBuffer(), 0, bytes.length);
+        final NativeArrayBuffer arrayBuffer = ArrayBufferUtils.encodeUtf8(getWindow(this), txt);
 
-        final NativeUint8Array result = new NativeUint8Array(arrayBuffer, 0, bytes.length);
+        final NativeUint8Array result = new NativeUint8Array(arrayBuffer, 0, arrayBuffer.getLength());
         result.setParentScope(getParentScope());
         result.setPrototype(ScriptableObject.getClassPrototype(getWindow(this), result.getClassName()));
         return result;
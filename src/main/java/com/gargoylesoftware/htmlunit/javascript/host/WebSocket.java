@@ -20,6 +20,7 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.WEBSOCKET_SRC
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,16 +45,17 @@ import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxFunction;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxGetter;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxSetter;
+import com.gargoylesoftware.htmlunit.javascript.host.arrays.ArrayBufferUtils;
 import com.gargoylesoftware.htmlunit.javascript.host.event.CloseEvent;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.event.EventTarget;
 import com.gargoylesoftware.htmlunit.javascript.host.event.MessageEvent;
+import com.gargoylesoftware.htmlunit.util.ThreadUtils;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
-import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBuffer;
 
@@ -141,12 +143,19 @@ public class WebSocket extends EventTarget implements AutoCloseable {
             originSet_ = webClient.getBrowserVersion().hasFeature(WEBSOCKET_ORIGIN_SET);
 
             final WebClientOptions options = webClient.getOptions();
+            Executor executor = null;
+            if (options.isUseVirtualThreads()) {
+                executor = ThreadUtils.newVirtualThreadPerTaskExecutor();
+            }
             if (options.isUseInsecureSSL()) {
-                client_ = new WebSocketClient(new SslContextFactory(true), null, null);
+                client_ = new WebSocketClient(new SslContextFactory(true), executor, null);
                 // still use the deprecated method here to be backward compatible with older jersey versions
                 // see https://github.com/HtmlUnit/htmlunit/issues/36
                 // client_ = new WebSocketClient(new SslContextFactory.Client(true), null, null);
             }
+            else if (executor != null) {
+                client_ = new WebSocketClient(executor);
+            }
             else {
                 client_ = new WebSocketClient();
             }
@@ -501,10 +510,7 @@ public class WebSocket extends EventTarget implements AutoCloseable {
             }
             super.onWebSocketBinary(data, offset, length);
 
-            final NativeArrayBuffer buffer = new NativeArrayBuffer(length);
-            System.arraycopy(data, offset, buffer.getBuffer(), 0, length);
-            buffer.setParentScope(getParentScope());
-            buffer.setPrototype(ScriptableObject.getClassPrototype(getWindow(), buffer.getClassName()));
+            final NativeArrayBuffer buffer = ArrayBufferUtils.newArrayBuffer(getWindow(), data, offset, length);
 
             final MessageEvent msgEvent = new MessageEvent(buffer);
             if (originSet_) {
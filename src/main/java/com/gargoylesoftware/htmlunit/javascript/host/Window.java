@@ -868,10 +868,10 @@ public class Window extends EventTarget implements Function, AutoCloseable {
         final List<AnimationFrame> animationFrames = new ArrayList<>(animationFrames_);
         animationFrames_.clear();
 
-        final double now = System.nanoTime() / 1_000_000d;
+        final WebWindow ww = getWindow().getWebWindow();
+        final double now = ww.getWebClient().getJavaScriptClock().nanoTime() / 1_000_000d;
         final Object[] args = new Object[] {now};
 
-        final WebWindow ww = getWindow().getWebWindow();
         final JavaScriptEngine jsEngine = (JavaScriptEngine) ww.getWebClient().getJavaScriptEngine();
 
         for (AnimationFrame animationFrame : animationFrames) {
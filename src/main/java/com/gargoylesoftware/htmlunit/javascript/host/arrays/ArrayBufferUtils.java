@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.arrays;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBuffer;
+
+/**
+ * Utility methods for creating {@link NativeArrayBuffer}s from binary data.
+ *
+ * <p>The buffer of a {@link NativeArrayBuffer} is a plain byte array allocated by the
+ * buffer itself. The methods of this class write the data directly into this array,
+ * without creating any intermediate copy.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class ArrayBufferUtils {
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private ArrayBufferUtils() {
+        // Empty.
+    }
+
+    /**
+     * Creates a new, zero filled {@link NativeArrayBuffer} for the given scope.
+     * @param scope the scope
+     * @param length the size of the buffer in bytes
+     * @return the new buffer
+     */
+    public static NativeArrayBuffer newArrayBuffer(final Scriptable scope, final int length) {
+        final NativeArrayBuffer buffer = new NativeArrayBuffer(length);
+        buffer.setParentScope(scope);
+        buffer.setPrototype(ScriptableObject.getClassPrototype(scope, buffer.getClassName()));
+        return buffer;
+    }
+
+    /**
+     * Creates a new {@link NativeArrayBuffer} containing a copy of the given bytes.
+     * @param scope the scope
+     * @param data the source array
+     * @param offset the offset of the first byte to copy
+     * @param length the number of bytes to copy
+     * @return the new buffer
+     */
+    public static NativeArrayBuffer newArrayBuffer(final Scriptable scope,
+            final byte[] data, final int offset, final int length) {
+        final NativeArrayBuffer buffer = newArrayBuffer(scope, length);
+        System.arraycopy(data, offset, buffer.getBuffer(), 0, length);
+        return buffer;
+    }
+
+    /**
+     * Creates a new {@link NativeArrayBuffer} containing the remaining bytes of the given
+     * {@link ByteBuffer}; this works for heap, direct and mapped buffers.
+     * The position of the source buffer is not changed.
+     * @param scope the scope
+     * @param data the source
+     * @return the new buffer
+     */
+    public static NativeArrayBuffer newArrayBuffer(final Scriptable scope, final ByteBuffer data) {
+        final NativeArrayBuffer buffer = newArrayBuffer(scope, data.remaining());
+        data.duplicate().get(buffer.getBuffer());
+        return buffer;
+    }
+
+    /**
+     * Creates a new {@link NativeArrayBuffer} and fills it with the given number of bytes
+     * read from the channel. The bytes are transferred directly into the buffer.
+     * @param scope the scope
+     * @param channel the channel to read from
+     * @param length the number of bytes to read
+     * @return the new buffer
+     * @throws IOException if reading fails or the channel provides less than {@code length} bytes
+     */
+    public static NativeArrayBuffer read(final Scriptable scope, final ReadableByteChannel channel,
+            final int length) throws IOException {
+        final NativeArrayBuffer buffer = newArrayBuffer(scope, length);
+        final ByteBuffer target = ByteBuffer.wrap(buffer.getBuffer());
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new EOFException("Expected " + length + " bytes but got only " + target.position());
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Creates a new {@link NativeArrayBuffer} containing the UTF-8 encoding of the given string.
+     * The string is encoded directly into the buffer; unpaired surrogates are replaced
+     * by {@code '?'} like {@link String#getBytes(java.nio.charset.Charset)} does.
+     * @param scope the scope
+     * @param text the string to encode
+     * @return the new buffer
+     */
+    public static NativeArrayBuffer encodeUtf8(final Scriptable scope, final String text) {
+        final NativeArrayBuffer buffer = newArrayBuffer(scope, utf8Length(text));
+
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer target = ByteBuffer.wrap(buffer.getBuffer());
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), target, true);
+        if (!result.isError()) {
+            result = encoder.flush(target);
+        }
+        if (result.isError() || result.isOverflow() || target.hasRemaining()) {
+            throw new IllegalStateException("UTF-8 length of '" + text + "' was not calculated correctly");
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes of the UTF-8 encoding of the given string.
+     * @param text the string
+     * @return the number of bytes
+     */
+    static int utf8Length(final String text) {
+        final int chars = text.length();
+        int length = 0;
+        for (int i = 0; i < chars; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c)
+                        && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c)) {
+                // replaced by '?'
+                length++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
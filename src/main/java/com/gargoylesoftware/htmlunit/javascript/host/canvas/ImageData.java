@@ -21,6 +21,7 @@ import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxGetter;
+import com.gargoylesoftware.htmlunit.javascript.host.arrays.ArrayBufferUtils;
 import com.gargoylesoftware.htmlunit.javascript.host.canvas.rendering.RenderingBackend;
 
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
@@ -86,8 +87,8 @@ public class ImageData extends SimpleScriptable {
     public NativeUint8ClampedArray getData() {
         if (data_ == null) {
             final byte[] bytes = renderingContext_.getBytes(width_, height_, sx_, sy_);
-            final NativeArrayBuffer arrayBuffer = new NativeArrayBuffer(bytes.length);
-            System.arraycopy(bytes, 0, arrayBuffer.getBuffer(), 0, bytes.length);
+            final NativeArrayBuffer arrayBuffer
+                    = ArrayBufferUtils.newArrayBuffer(getWindow(this), bytes, 0, bytes.length);
 
             data_ = new NativeUint8ClampedArray(arrayBuffer, 0, bytes.length);
             data_.setParentScope(getParentScope());
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.css;
+
+import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+
+/**
+ * A counting bloom filter of the tag names, ids and classes of the ancestors of the element
+ * currently visited by a tree walk.
+ *
+ * <p>A {@link SelectorMatcher} uses the filter to reject a descendant combinator without walking up
+ * the ancestors: if one of the names required by the ancestor part of the selector is not contained,
+ * no ancestor can match. False positives are possible, false negatives are not.</p>
+ *
+ * <p>The filter is maintained by the walker: {@link #pushElement(DomElement)} before visiting the
+ * descendants of an element and {@link #popElement()} afterwards.</p>
+ *
+ * @author Ronald Brill
+ */
+public class AncestorFilter {
+
+    private static final int BITS = 12;
+    private static final int SIZE = 1 << BITS;
+    private static final int MASK = SIZE - 1;
+
+    private static final int TAG_SALT = 0x1F3D5B79;
+    private static final int ID_SALT = 0x2C1B3C6D;
+    private static final int CLASS_SALT = 0x297A2D39;
+
+    private final char[] counters_ = new char[SIZE];
+    private final Deque<int[]> pushed_ = new ArrayDeque<>();
+    private DomNode pending_;
+
+    /**
+     * Creates an empty filter.
+     */
+    public AncestorFilter() {
+    }
+
+    /**
+     * Creates a filter for the ancestors of the given node. The ancestors are collected
+     * lazily when the filter is consulted for the first time.
+     * @param node the node
+     */
+    public AncestorFilter(final DomNode node) {
+        pending_ = node;
+    }
+
+    /**
+     * Adds the given element to the filter.
+     * @param element the element
+     */
+    public void pushElement(final DomElement element) {
+        final int[] hashes = hashes(element);
+        for (final int hash : hashes) {
+            final int first = hash & MASK;
+            final int second = (hash >>> BITS) & MASK;
+            if (counters_[first] != Character.MAX_VALUE) {
+                counters_[first]++;
+            }
+            if (counters_[second] != Character.MAX_VALUE) {
+                counters_[second]++;
+            }
+        }
+        pushed_.push(hashes);
+    }
+
+    /**
+     * Removes the element pushed last from the filter.
+     */
+    public void popElement() {
+        for (final int hash : pushed_.pop()) {
+            final int first = hash & MASK;
+            final int second = (hash >>> BITS) & MASK;
+            if (counters_[first] != Character.MAX_VALUE) {
+                counters_[first]--;
+            }
+            if (counters_[second] != Character.MAX_VALUE) {
+                counters_[second]--;
+            }
+        }
+    }
+
+    /**
+     * Adds all the ancestor elements of the given node (but not the node itself) to the filter.
+     * @param node the node
+     */
+    public void pushAncestors(final DomNode node) {
+        for (DomNode parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            if (parent instanceof DomElement) {
+                pushElement((DomElement) parent);
+            }
+        }
+    }
+
+    /**
+     * Returns whether all the given hashes may be contained in the filter.
+     * @param hashes the hashes, as calculated by {@link #tagHash(String)}, {@link #idHash(String)}
+     *        and {@link #classHash(String)}
+     * @return {@code false} if at least one of the hashes is definitely not contained
+     */
+    boolean mayContainAll(final int[] hashes) {
+        if (pending_ != null) {
+            final DomNode node = pending_;
+            pending_ = null;
+            pushAncestors(node);
+        }
+
+        for (final int hash : hashes) {
+            if (counters_[hash & MASK] == 0 || counters_[(hash >>> BITS) & MASK] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] hashes(final DomElement element) {
+        final String id = element.getId();
+        final String classes = element.getAttributeDirect("class");
+        if (ATTRIBUTE_NOT_DEFINED == classes && ATTRIBUTE_NOT_DEFINED == id) {
+            return new int[] {tagHash(element.getLowercaseName())};
+        }
+
+        final String[] classNames = ATTRIBUTE_NOT_DEFINED == classes ? ArrayUtils.EMPTY_STRING_ARRAY
+                : StringUtils.split(classes, null, -1);
+        int[] hashes = new int[classNames.length + 2];
+        int count = 0;
+        hashes[count++] = tagHash(element.getLowercaseName());
+        if (ATTRIBUTE_NOT_DEFINED != id) {
+            hashes[count++] = idHash(id);
+        }
+        for (final String className : classNames) {
+            hashes[count++] = classHash(className);
+        }
+        if (count < hashes.length) {
+            hashes = Arrays.copyOf(hashes, count);
+        }
+        return hashes;
+    }
+
+    static int tagHash(final String lowercaseName) {
+        return mix(lowercaseName.hashCode() ^ TAG_SALT);
+    }
+
+    static int idHash(final String id) {
+        return mix(id.hashCode() ^ ID_SALT);
+    }
+
+    static int classHash(final String className) {
+        return mix(className.hashCode() ^ CLASS_SALT);
+    }
+
+    private static int mix(final int value) {
+        int h = value * 0x9E3779B1;
+        h ^= h >>> 15;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
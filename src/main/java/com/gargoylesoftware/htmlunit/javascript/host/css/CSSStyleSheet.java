@@ -19,7 +19,6 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTOR
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTOR_CSS3_PSEUDO_REQUIRE_ATTACHED_NODE;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.STYLESHEET_ADD_RULE_RETURNS_POS;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.STYLESHEET_HREF_EMPTY_IS_NULL;
-import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.CHROME;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.FF;
 import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBrowser.FF68;
@@ -76,7 +75,6 @@ import com.gargoylesoftware.css.parser.selector.DescendantSelector;
 import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
 import com.gargoylesoftware.css.parser.selector.ElementSelector;
 import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
-import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
 import com.gargoylesoftware.css.parser.selector.Selector;
 import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
 import com.gargoylesoftware.css.parser.selector.SelectorList;
@@ -114,6 +112,7 @@ import com.gargoylesoftware.htmlunit.javascript.host.Window;
 import com.gargoylesoftware.htmlunit.javascript.host.dom.MediaList;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
 
@@ -137,7 +136,10 @@ public class CSSStyleSheet extends StyleSheet {
     private static final Log LOG = LogFactory.getLog(CSSStyleSheet.class);
     private static final Pattern NTH_NUMERIC = Pattern.compile("\\d+");
     private static final Pattern NTH_COMPLEX = Pattern.compile("[+-]?\\d*n\\w*([+-]\\w\\d*)?");
-    private static final Pattern UNESCAPE_SELECTOR = Pattern.compile("\\\\([\\[\\]\\.:])");
+
+    /** The size of the cache of the parsed selectors of the :not() pseudo class. */
+    private static final int NOT_SELECTORS_CACHE_SIZE = 1_000;
+    private static final LruCache<String, SelectorList> NOT_SELECTORS = new LruCache<>(NOT_SELECTORS_CACHE_SIZE);
 
     /** The parsed stylesheet which this host object wraps. */
     private final CSSStyleSheetImpl wrapped_;
@@ -263,8 +265,10 @@ public class CSSStyleSheet extends StyleSheet {
 
         final BrowserVersion browser = getBrowserVersion();
         final DomElement e = element.getDomNodeOrDie();
+        // the ancestors of the element are collected only once for all the rules
+        final AncestorFilter filter = new AncestorFilter(e);
         final List<CSSStyleSheetImpl.SelectorEntry> matchingRules =
-                selects(getRuleIndex(), this, browser, e, pseudoElement, false);
+                selects(getRuleIndex(), this, browser, e, pseudoElement, false, filter);
         for (CSSStyleSheetImpl.SelectorEntry entry : matchingRules) {
             final CSSStyleDeclarationImpl dec = entry.getRule().getStyle();
             style.applyStyleFromSelector(dec, entry.getSelector());
@@ -392,242 +396,20 @@ public class CSSStyleSheet extends StyleSheet {
      */
     public static boolean selects(final BrowserVersion browserVersion, final Selector selector,
             final DomElement element, final String pseudoElement, final boolean fromQuerySelectorAll) {
-        switch (selector.getSelectorType()) {
-            case ELEMENT_NODE_SELECTOR:
-                final ElementSelector es = (ElementSelector) selector;
-                final String name = es.getLocalNameLowerCase();
-                if (name == null || name.equals(element.getLowercaseName())) {
-                    final List<Condition> conditions = es.getConditions();
-                    if (conditions != null) {
-                        for (Condition condition : conditions) {
-                            if (!selects(browserVersion, condition, element, fromQuerySelectorAll)) {
-                                return false;
-                            }
-                        }
-                    }
-                    return true;
-                }
-                return false;
-
-            case CHILD_SELECTOR:
-                final DomNode parentNode = element.getParentNode();
-                if (parentNode == element.getPage()) {
-                    return false;
-                }
-                if (!(parentNode instanceof HtmlElement)) {
-                    return false; // for instance parent is a DocumentFragment
-                }
-                final ChildSelector cs = (ChildSelector) selector;
-                return selects(browserVersion, cs.getSimpleSelector(), element, pseudoElement, fromQuerySelectorAll)
-                    && selects(browserVersion, cs.getAncestorSelector(), (HtmlElement) parentNode,
-                            pseudoElement, fromQuerySelectorAll);
-
-            case DESCENDANT_SELECTOR:
-                final DescendantSelector ds = (DescendantSelector) selector;
-                final SimpleSelector simpleSelector = ds.getSimpleSelector();
-                if (selects(browserVersion, simpleSelector, element, pseudoElement, fromQuerySelectorAll)) {
-                    DomNode ancestor = element;
-                    if (simpleSelector.getSelectorType() != SelectorType.PSEUDO_ELEMENT_SELECTOR) {
-                        ancestor = ancestor.getParentNode();
-                    }
-                    final Selector dsAncestorSelector = ds.getAncestorSelector();
-                    while (ancestor instanceof HtmlElement) {
-                        if (selects(browserVersion, dsAncestorSelector, (HtmlElement) ancestor, pseudoElement,
-                                fromQuerySelectorAll)) {
-                            return true;
-                        }
-                        ancestor = ancestor.getParentNode();
-                    }
-                }
-                return false;
-
-            case DIRECT_ADJACENT_SELECTOR:
-                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
-                if (selects(browserVersion, das.getSimpleSelector(), element, pseudoElement, fromQuerySelectorAll)) {
-                    DomNode prev = element.getPreviousSibling();
-                    while (prev != null && !(prev instanceof HtmlElement)) {
-                        prev = prev.getPreviousSibling();
-                    }
-                    return prev != null
-                            && selects(browserVersion, das.getSelector(),
-                                    (HtmlElement) prev, pseudoElement, fromQuerySelectorAll);
-                }
-                return false;
-
-            case GENERAL_ADJACENT_SELECTOR:
-                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
-                if (selects(browserVersion, gas.getSimpleSelector(), element, pseudoElement, fromQuerySelectorAll)) {
-                    for (DomNode prev1 = element.getPreviousSibling(); prev1 != null;
-                                                        prev1 = prev1.getPreviousSibling()) {
-                        if (prev1 instanceof HtmlElement
-                            && selects(browserVersion, gas.getSelector(), (HtmlElement) prev1,
-                                    pseudoElement, fromQuerySelectorAll)) {
-                            return true;
-                        }
-                    }
-                }
-                return false;
-            case PSEUDO_ELEMENT_SELECTOR:
-                if (pseudoElement != null && pseudoElement.length() != 0 && pseudoElement.charAt(0) == ':') {
-                    final String pseudoName = ((PseudoElementSelector) selector).getLocalName();
-                    return pseudoName.equals(pseudoElement.substring(1));
-                }
-                return false;
-
-            default:
-                if (LOG.isErrorEnabled()) {
-                    LOG.error("Unknown CSS selector type '" + selector.getSelectorType() + "'.");
-                }
-                return false;
-        }
+        return SelectorMatcher.of(selector).matches(browserVersion, element, pseudoElement,
+                fromQuerySelectorAll, null);
     }
 
     /**
-     * Returns {@code true} if the specified condition selects the specified element.
+     * Returns {@code true} if the specified pseudo class condition selects the specified element.
      *
      * @param browserVersion the browser version
-     * @param condition the condition to test
+     * @param condition the pseudo class condition to test
      * @param element the element to test
      * @param fromQuerySelectorAll whether this is called from {@link DomNode#querySelectorAll(String)
      * @return {@code true} if it does apply, {@code false} if it doesn't apply
      */
-    static boolean selects(final BrowserVersion browserVersion, final Condition condition, final DomElement element,
-            final boolean fromQuerySelectorAll) {
-
-        switch (condition.getConditionType()) {
-            case ID_CONDITION:
-                return condition.getValue().equals(element.getId());
-
-            case CLASS_CONDITION:
-                String v3 = condition.getValue();
-                if (v3.indexOf('\\') > -1) {
-                    v3 = UNESCAPE_SELECTOR.matcher(v3).replaceAll("$1");
-                }
-                final String a3 = element.getAttributeDirect("class");
-                return selectsWhitespaceSeparated(v3, a3);
-
-            case ATTRIBUTE_CONDITION:
-                String value = condition.getValue();
-                if (value != null) {
-                    if (value.indexOf('\\') > -1) {
-                        value = UNESCAPE_SELECTOR.matcher(value).replaceAll("$1");
-                    }
-                    final String attrValue = element.getAttribute(condition.getLocalName());
-                    return ATTRIBUTE_NOT_DEFINED != attrValue && attrValue.equals(value);
-                }
-                return element.hasAttribute(condition.getLocalName());
-
-            case PREFIX_ATTRIBUTE_CONDITION:
-                final String prefixValue = condition.getValue();
-                return !"".equals(prefixValue)
-                        && element.getAttribute(condition.getLocalName()).startsWith(prefixValue);
-
-            case SUFFIX_ATTRIBUTE_CONDITION:
-                final String suffixValue = condition.getValue();
-                return !"".equals(suffixValue)
-                        && element.getAttribute(condition.getLocalName()).endsWith(suffixValue);
-
-            case SUBSTRING_ATTRIBUTE_CONDITION:
-                final String substringValue = condition.getValue();
-                return !"".equals(substringValue)
-                        && element.getAttribute(condition.getLocalName()).contains(substringValue);
-
-            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
-                final String v = condition.getValue();
-                final String a = element.getAttribute(condition.getLocalName());
-                return selects(v, a, '-');
-
-            case ONE_OF_ATTRIBUTE_CONDITION:
-                final String v2 = condition.getValue();
-                final String a2 = element.getAttribute(condition.getLocalName());
-                return selects(v2, a2, ' ');
-
-            case LANG_CONDITION:
-                final String lcLang = condition.getValue();
-                final int lcLangLength = lcLang.length();
-                for (DomNode node = element; node instanceof HtmlElement; node = node.getParentNode()) {
-                    final String nodeLang = ((HtmlElement) node).getAttributeDirect("lang");
-                    if (ATTRIBUTE_NOT_DEFINED != nodeLang) {
-                        // "en", "en-GB" should be matched by "en" but not "english"
-                        return nodeLang.startsWith(lcLang)
-                            && (nodeLang.length() == lcLangLength || '-' == nodeLang.charAt(lcLangLength));
-                    }
-                }
-                return false;
-
-            case PSEUDO_CLASS_CONDITION:
-                return selectsPseudoClass(browserVersion, condition, element, fromQuerySelectorAll);
-
-            default:
-                if (LOG.isErrorEnabled()) {
-                    LOG.error("Unknown CSS condition type '" + condition.getConditionType() + "'.");
-                }
-                return false;
-        }
-    }
-
-    private static boolean selects(final String condition, final String attribute, final char separator) {
-        // attribute.equals(condition)
-        // || attribute.startsWith(condition + " ") || attriubte.endsWith(" " + condition)
-        // || attribute.contains(" " + condition + " ");
-
-        final int conditionLength = condition.length();
-        if (conditionLength < 1) {
-            return false;
-        }
-
-        final int attribLength = attribute.length();
-        if (attribLength < conditionLength) {
-            return false;
-        }
-        if (attribLength > conditionLength) {
-            if (separator == attribute.charAt(conditionLength)
-                    && attribute.startsWith(condition)) {
-                return true;
-            }
-            if (separator == attribute.charAt(attribLength - conditionLength - 1)
-                    && attribute.endsWith(condition)) {
-                return true;
-            }
-            if (attribLength + 1 > conditionLength) {
-                final StringBuilder tmp = new StringBuilder(conditionLength + 2);
-                tmp.append(separator).append(condition).append(separator);
-                return attribute.contains(tmp);
-            }
-            return false;
-        }
-        return attribute.equals(condition);
-    }
-
-    private static boolean selectsWhitespaceSeparated(final String condition, final String attribute) {
-        final int conditionLength = condition.length();
-        if (conditionLength < 1) {
-            return false;
-        }
-
-        final int attribLength = attribute.length();
-        if (attribLength < conditionLength) {
-            return false;
-        }
-
-        int pos = attribute.indexOf(condition);
-        while (pos != -1) {
-            if (pos > 0 && !Character.isWhitespace(attribute.charAt(pos - 1))) {
-                pos = attribute.indexOf(condition, pos + 1);
-            }
-            else {
-                final int lastPos = pos + condition.length();
-                if (lastPos >= attribLength || Character.isWhitespace(attribute.charAt(lastPos))) {
-                    return true;
-                }
-                pos = attribute.indexOf(condition, pos + 1);
-            }
-        }
-
-        return false;
-    }
-
-    private static boolean selectsPseudoClass(final BrowserVersion browserVersion,
+    static boolean selectsPseudoClass(final BrowserVersion browserVersion,
             final Condition condition, final DomElement element, final boolean fromQuerySelectorAll) {
         if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
             final Object sobj = element.getPage().getScriptableObject();
@@ -788,45 +570,54 @@ public class CSSStyleSheet extends StyleSheet {
                 }
                 else if (value.startsWith("not(")) {
                     final String selectors = value.substring(value.indexOf('(') + 1, value.length() - 1);
-                    final AtomicBoolean errorOccured = new AtomicBoolean(false);
-                    final CSSErrorHandler errorHandler = new CSSErrorHandler() {
-                        @Override
-                        public void warning(final CSSParseException exception) throws CSSException {
-                            // ignore
-                        }
-
-                        @Override
-                        public void fatalError(final CSSParseException exception) throws CSSException {
-                            errorOccured.set(true);
-                        }
-
-                        @Override
-                        public void error(final CSSParseException exception) throws CSSException {
-                            errorOccured.set(true);
-                        }
-                    };
-                    final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
-                    parser.setErrorHandler(errorHandler);
-                    try {
-                        final SelectorList selectorList = parser.parseSelectors(selectors);
-                        if (errorOccured.get() || selectorList == null || selectorList.size() != 1) {
-                            throw new CSSException("Invalid selectors: " + selectors);
-                        }
+                    SelectorList selectorList = NOT_SELECTORS.get(selectors);
+                    if (selectorList == null) {
+                        selectorList = parseNotSelectors(selectors);
+                        NOT_SELECTORS.put(selectors, selectorList);
+                    }
 
-                        validateSelectors(selectorList, 9, element);
+                    validateSelectors(selectorList, 9, element);
 
-                        return !selects(browserVersion, selectorList.get(0), element,
-                                null, fromQuerySelectorAll);
-                    }
-                    catch (final IOException e) {
-                        throw new CSSException("Error parsing CSS selectors from '" + selectors + "': "
-                                + e.getMessage());
-                    }
+                    return !selects(browserVersion, selectorList.get(0), element,
+                            null, fromQuerySelectorAll);
                 }
                 return false;
         }
     }
 
+    private static SelectorList parseNotSelectors(final String selectors) {
+        final AtomicBoolean errorOccured = new AtomicBoolean(false);
+        final CSSErrorHandler errorHandler = new CSSErrorHandler() {
+            @Override
+            public void warning(final CSSParseException exception) throws CSSException {
+                // ignore
+            }
+
+            @Override
+            public void fatalError(final CSSParseException exception) throws CSSException {
+                errorOccured.set(true);
+            }
+
+            @Override
+            public void error(final CSSParseException exception) throws CSSException {
+                errorOccured.set(true);
+            }
+        };
+        final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
+        parser.setErrorHandler(errorHandler);
+        try {
+            final SelectorList selectorList = parser.parseSelectors(selectors);
+            if (errorOccured.get() || selectorList == null || selectorList.size() != 1) {
+                throw new CSSException("Invalid selectors: " + selectors);
+            }
+            return selectorList;
+        }
+        catch (final IOException e) {
+            throw new CSSException("Error parsing CSS selectors from '" + selectors + "': "
+                    + e.getMessage());
+        }
+    }
+
     private static boolean isEmpty(final DomElement element) {
         for (DomNode n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
             if (n instanceof DomElement || n instanceof DomText) {
@@ -1667,7 +1458,8 @@ public class CSSStyleSheet extends StyleSheet {
                             final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index,
                             final SimpleScriptable scriptable,
                             final BrowserVersion browserVersion, final DomElement element,
-                            final String pseudoElement, final boolean fromQuerySelectorAll) {
+                            final String pseudoElement, final boolean fromQuerySelectorAll,
+                            final AncestorFilter filter) {
 
         final List<CSSStyleSheetImpl.SelectorEntry> matchingRules = new ArrayList<>();
 
@@ -1679,8 +1471,8 @@ public class CSSStyleSheet extends StyleSheet {
 
             CSSStyleSheetImpl.SelectorEntry entry = iter.next();
             while (null != entry) {
-                if (CSSStyleSheet.selects(browserVersion, entry.getSelector(),
-                                            element, pseudoElement, fromQuerySelectorAll)) {
+                if (SelectorMatcher.of(entry.getSelector()).matches(browserVersion,
+                                            element, pseudoElement, fromQuerySelectorAll, filter)) {
                     matchingRules.add(entry);
                 }
                 entry = iter.next();
@@ -1688,7 +1480,7 @@ public class CSSStyleSheet extends StyleSheet {
 
             for (CSSStyleSheetImpl.CSSStyleSheetRuleIndex child : index.getChildren()) {
                 matchingRules.addAll(selects(child, scriptable, browserVersion,
-                                                    element, pseudoElement, fromQuerySelectorAll));
+                                                    element, pseudoElement, fromQuerySelectorAll, filter));
             }
         }
 
@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.css;
+
+import static com.gargoylesoftware.htmlunit.html.DomElement.ATTRIBUTE_NOT_DEFINED;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+
+/**
+ * A {@link Selector} compiled into a tree of specialized matchers.
+ *
+ * <p>The matchers evaluate the selector from right to left like the interpreting code in
+ * {@link CSSStyleSheet} did before; but the dispatch on the selector and condition types, the unescaping of
+ * values and the lower casing of names is done only once. Descendant combinators consult an
+ * optional {@link AncestorFilter} before walking up the ancestors.</p>
+ *
+ * <p>The compiled matchers are cached for the lifetime of the selector instances.</p>
+ *
+ * @author Ronald Brill
+ */
+public abstract class SelectorMatcher {
+
+    private static final Log LOG = LogFactory.getLog(SelectorMatcher.class);
+    private static final Pattern UNESCAPE_SELECTOR = Pattern.compile("\\\\([\\[\\]\\.:])");
+    private static final int[] NO_HASHES = new int[0];
+
+    // the matchers are not referencing the selector they are compiled from
+    private static final Map<Selector, SelectorMatcher> MATCHERS
+            = Collections.synchronizedMap(new WeakHashMap<Selector, SelectorMatcher>());
+
+    /**
+     * Returns the (cached) matcher for the given selector.
+     * @param selector the selector
+     * @return the matcher
+     */
+    public static SelectorMatcher of(final Selector selector) {
+        SelectorMatcher matcher = MATCHERS.get(selector);
+        if (matcher == null) {
+            matcher = compile(selector);
+            MATCHERS.put(selector, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * Returns {@code true} if the selector selects the specified element.
+     *
+     * @param browserVersion the browser version
+     * @param element the element to test
+     * @param pseudoElement the pseudo element to match, (can be {@code null})
+     * @param fromQuerySelectorAll whether this is called from {@link DomNode#querySelectorAll(String)}
+     * @param filter the filter of the ancestors of the element (can be {@code null})
+     * @return {@code true} if it does apply, {@code false} if it doesn't apply
+     */
+    public abstract boolean matches(BrowserVersion browserVersion, DomElement element, String pseudoElement,
+            boolean fromQuerySelectorAll, AncestorFilter filter);
+
+    /**
+     * Returns the id every element matched by this matcher has, if the selector
+     * (or its rightmost compound selector) contains an id condition.
+     * @return the id or {@code null}
+     */
+    public String getRequiredId() {
+        return null;
+    }
+
+    private static SelectorMatcher compile(final Selector selector) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                final ElementSelector es = (ElementSelector) selector;
+                final List<ConditionMatcher> conditions = new ArrayList<>();
+                String id = null;
+                if (es.getConditions() != null) {
+                    for (final Condition condition : es.getConditions()) {
+                        conditions.add(compile(condition));
+                        if (id == null && condition.getConditionType() == Condition.ConditionType.ID_CONDITION) {
+                            id = condition.getValue();
+                        }
+                    }
+                }
+                return new ElementMatcher(es.getLocalNameLowerCase(), id,
+                        conditions.toArray(new ConditionMatcher[conditions.size()]));
+
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                return new ChildMatcher(of(cs.getSimpleSelector()), of(cs.getAncestorSelector()));
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                final boolean pseudoElement =
+                        ds.getSimpleSelector().getSelectorType() == SelectorType.PSEUDO_ELEMENT_SELECTOR;
+                final List<Integer> hashes = new ArrayList<>();
+                if (!pseudoElement) {
+                    collectAncestorHashes(ds.getAncestorSelector(), hashes);
+                }
+                final int[] ancestorHashes = new int[hashes.size()];
+                for (int i = 0; i < ancestorHashes.length; i++) {
+                    ancestorHashes[i] = hashes.get(i);
+                }
+                return new DescendantMatcher(of(ds.getSimpleSelector()), of(ds.getAncestorSelector()),
+                        pseudoElement, ancestorHashes.length == 0 ? NO_HASHES : ancestorHashes);
+
+            case DIRECT_ADJACENT_SELECTOR:
+                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
+                return new DirectAdjacentMatcher(of(das.getSimpleSelector()), of(das.getSelector()));
+
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
+                return new GeneralAdjacentMatcher(of(gas.getSimpleSelector()), of(gas.getSelector()));
+
+            case PSEUDO_ELEMENT_SELECTOR:
+                return new PseudoElementMatcher(((PseudoElementSelector) selector).getLocalName());
+
+            default:
+                final SelectorType type = selector.getSelectorType();
+                return new SelectorMatcher() {
+                    @Override
+                    public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                            final String pseudoElement, final boolean fromQuerySelectorAll,
+                            final AncestorFilter filter) {
+                        if (LOG.isErrorEnabled()) {
+                            LOG.error("Unknown CSS selector type '" + type + "'.");
+                        }
+                        return false;
+                    }
+                };
+        }
+    }
+
+    /**
+     * Collects the hashes of the names some ancestor has to have if the given selector
+     * should match an ancestor of an element.
+     * @param selector the ancestor part of a descendant selector
+     * @param hashes the list to add the hashes to
+     */
+    private static void collectAncestorHashes(final Selector selector, final List<Integer> hashes) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                final ElementSelector es = (ElementSelector) selector;
+                final String name = es.getLocalNameLowerCase();
+                if (name != null) {
+                    hashes.add(AncestorFilter.tagHash(name));
+                }
+                if (es.getConditions() != null) {
+                    for (final Condition condition : es.getConditions()) {
+                        if (condition.getConditionType() == Condition.ConditionType.ID_CONDITION) {
+                            hashes.add(AncestorFilter.idHash(condition.getValue()));
+                        }
+                        else if (condition.getConditionType() == Condition.ConditionType.CLASS_CONDITION) {
+                            // a class containing whitespace is not a single token of the attribute
+                            final String value = unescape(condition.getValue());
+                            if (!StringUtils.containsWhitespace(value)) {
+                                hashes.add(AncestorFilter.classHash(value));
+                            }
+                        }
+                    }
+                }
+                break;
+
+            case CHILD_SELECTOR:
+                // the parent of an ancestor is an ancestor too
+                final ChildSelector cs = (ChildSelector) selector;
+                collectAncestorHashes(cs.getSimpleSelector(), hashes);
+                collectAncestorHashes(cs.getAncestorSelector(), hashes);
+                break;
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                if (ds.getSimpleSelector().getSelectorType() != SelectorType.PSEUDO_ELEMENT_SELECTOR) {
+                    collectAncestorHashes(ds.getSimpleSelector(), hashes);
+                    collectAncestorHashes(ds.getAncestorSelector(), hashes);
+                }
+                break;
+
+            case DIRECT_ADJACENT_SELECTOR:
+                // siblings of ancestors are no ancestors
+                collectAncestorHashes(((DirectAdjacentSelector) selector).getSimpleSelector(), hashes);
+                break;
+
+            case GENERAL_ADJACENT_SELECTOR:
+                collectAncestorHashes(((GeneralAdjacentSelector) selector).getSimpleSelector(), hashes);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private static ConditionMatcher compile(final Condition condition) {
+        final String localName = condition.getLocalName();
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                final String id = condition.getValue();
+                return (browserVersion, element, fromQuerySelectorAll) -> id.equals(element.getId());
+
+            case CLASS_CONDITION:
+                final String className = unescape(condition.getValue());
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        selectsWhitespaceSeparated(className, element.getAttributeDirect("class"));
+
+            case ATTRIBUTE_CONDITION:
+                if (condition.getValue() != null) {
+                    final String value = unescape(condition.getValue());
+                    return (browserVersion, element, fromQuerySelectorAll) -> {
+                        final String attrValue = element.getAttribute(localName);
+                        return ATTRIBUTE_NOT_DEFINED != attrValue && attrValue.equals(value);
+                    };
+                }
+                return (browserVersion, element, fromQuerySelectorAll) -> element.hasAttribute(localName);
+
+            case PREFIX_ATTRIBUTE_CONDITION:
+                final String prefixValue = condition.getValue();
+                if ("".equals(prefixValue)) {
+                    return (browserVersion, element, fromQuerySelectorAll) -> false;
+                }
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        element.getAttribute(localName).startsWith(prefixValue);
+
+            case SUFFIX_ATTRIBUTE_CONDITION:
+                final String suffixValue = condition.getValue();
+                if ("".equals(suffixValue)) {
+                    return (browserVersion, element, fromQuerySelectorAll) -> false;
+                }
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        element.getAttribute(localName).endsWith(suffixValue);
+
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                final String substringValue = condition.getValue();
+                if ("".equals(substringValue)) {
+                    return (browserVersion, element, fromQuerySelectorAll) -> false;
+                }
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        element.getAttribute(localName).contains(substringValue);
+
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                final String hyphenValue = condition.getValue();
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        selects(hyphenValue, element.getAttribute(localName), '-');
+
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                final String oneOfValue = condition.getValue();
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        selects(oneOfValue, element.getAttribute(localName), ' ');
+
+            case LANG_CONDITION:
+                final String lcLang = condition.getValue();
+                final int lcLangLength = lcLang.length();
+                return (browserVersion, element, fromQuerySelectorAll) -> {
+                    for (DomNode node = element; node instanceof HtmlElement; node = node.getParentNode()) {
+                        final String nodeLang = ((HtmlElement) node).getAttributeDirect("lang");
+                        if (ATTRIBUTE_NOT_DEFINED != nodeLang) {
+                            // "en", "en-GB" should be matched by "en" but not "english"
+                            return nodeLang.startsWith(lcLang)
+                                && (nodeLang.length() == lcLangLength || '-' == nodeLang.charAt(lcLangLength));
+                        }
+                    }
+                    return false;
+                };
+
+            case PSEUDO_CLASS_CONDITION:
+                return (browserVersion, element, fromQuerySelectorAll) ->
+                        CSSStyleSheet.selectsPseudoClass(browserVersion, condition, element, fromQuerySelectorAll);
+
+            default:
+                final Condition.ConditionType type = condition.getConditionType();
+                return (browserVersion, element, fromQuerySelectorAll) -> {
+                    if (LOG.isErrorEnabled()) {
+                        LOG.error("Unknown CSS condition type '" + type + "'.");
+                    }
+                    return false;
+                };
+        }
+    }
+
+    private static String unescape(final String value) {
+        if (value.indexOf('\\') > -1) {
+            return UNESCAPE_SELECTOR.matcher(value).replaceAll("$1");
+        }
+        return value;
+    }
+
+    private static boolean selects(final String condition, final String attribute, final char separator) {
+        // attribute.equals(condition)
+        // || attribute.startsWith(condition + " ") || attriubte.endsWith(" " + condition)
+        // || attribute.contains(" " + condition + " ");
+
+        final int conditionLength = condition.length();
+        if (conditionLength < 1) {
+            return false;
+        }
+
+        final int attribLength = attribute.length();
+        if (attribLength < conditionLength) {
+            return false;
+        }
+        if (attribLength > conditionLength) {
+            if (separator == attribute.charAt(conditionLength)
+                    && attribute.startsWith(condition)) {
+                return true;
+            }
+            if (separator == attribute.charAt(attribLength - conditionLength - 1)
+                    && attribute.endsWith(condition)) {
+                return true;
+            }
+            if (attribLength + 1 > conditionLength) {
+                final StringBuilder tmp = new StringBuilder(conditionLength + 2);
+                tmp.append(separator).append(condition).append(separator);
+                return attribute.contains(tmp);
+            }
+            return false;
+        }
+        return attribute.equals(condition);
+    }
+
+    private static boolean selectsWhitespaceSeparated(final String condition, final String attribute) {
+        final int conditionLength = condition.length();
+        if (conditionLength < 1) {
+            return false;
+        }
+
+        final int attribLength = attribute.length();
+        if (attribLength < conditionLength) {
+            return false;
+        }
+
+        int pos = attribute.indexOf(condition);
+        while (pos != -1) {
+            if (pos > 0 && !Character.isWhitespace(attribute.charAt(pos - 1))) {
+                pos = attribute.indexOf(condition, pos + 1);
+            }
+            else {
+                final int lastPos = pos + condition.length();
+                if (lastPos >= attribLength || Character.isWhitespace(attribute.charAt(lastPos))) {
+                    return true;
+                }
+                pos = attribute.indexOf(condition, pos + 1);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A compiled condition.
+     */
+    private interface ConditionMatcher {
+        boolean matches(BrowserVersion browserVersion, DomElement element, boolean fromQuerySelectorAll);
+    }
+
+    /**
+     * Matches the element name and all the conditions.
+     */
+    private static final class ElementMatcher extends SelectorMatcher {
+        private final String name_;
+        private final String id_;
+        private final ConditionMatcher[] conditions_;
+
+        ElementMatcher(final String name, final String id, final ConditionMatcher[] conditions) {
+            name_ = name;
+            id_ = id;
+            conditions_ = conditions;
+        }
+
+        @Override
+        public String getRequiredId() {
+            return id_;
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            if (name_ != null && !name_.equals(element.getLowercaseName())) {
+                return false;
+            }
+            for (final ConditionMatcher condition : conditions_) {
+                if (!condition.matches(browserVersion, element, fromQuerySelectorAll)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Matches {@code ancestor > simple}.
+     */
+    private static final class ChildMatcher extends SelectorMatcher {
+        private final SelectorMatcher simple_;
+        private final SelectorMatcher ancestor_;
+
+        ChildMatcher(final SelectorMatcher simple, final SelectorMatcher ancestor) {
+            simple_ = simple;
+            ancestor_ = ancestor;
+        }
+
+        @Override
+        public String getRequiredId() {
+            return simple_.getRequiredId();
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            final DomNode parentNode = element.getParentNode();
+            if (parentNode == element.getPage()) {
+                return false;
+            }
+            if (!(parentNode instanceof HtmlElement)) {
+                return false; // for instance parent is a DocumentFragment
+            }
+            return simple_.matches(browserVersion, element, pseudoElement, fromQuerySelectorAll, filter)
+                && ancestor_.matches(browserVersion, (HtmlElement) parentNode,
+                        pseudoElement, fromQuerySelectorAll, filter);
+        }
+    }
+
+    /**
+     * Matches {@code ancestor simple}.
+     */
+    private static final class DescendantMatcher extends SelectorMatcher {
+        private final SelectorMatcher simple_;
+        private final SelectorMatcher ancestor_;
+        private final boolean pseudoElement_;
+        private final int[] ancestorHashes_;
+
+        DescendantMatcher(final SelectorMatcher simple, final SelectorMatcher ancestor,
+                final boolean pseudoElement, final int[] ancestorHashes) {
+            simple_ = simple;
+            ancestor_ = ancestor;
+            pseudoElement_ = pseudoElement;
+            ancestorHashes_ = ancestorHashes;
+        }
+
+        @Override
+        public String getRequiredId() {
+            return simple_.getRequiredId();
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            if (!simple_.matches(browserVersion, element, pseudoElement, fromQuerySelectorAll, filter)) {
+                return false;
+            }
+
+            DomNode ancestor = element;
+            if (!pseudoElement_) {
+                // all ancestors of the element (or of one of its ancestors or their siblings)
+                // are part of the filter
+                if (filter != null && ancestorHashes_.length > 0 && !filter.mayContainAll(ancestorHashes_)) {
+                    return false;
+                }
+                ancestor = ancestor.getParentNode();
+            }
+            while (ancestor instanceof HtmlElement) {
+                if (ancestor_.matches(browserVersion, (HtmlElement) ancestor, pseudoElement,
+                        fromQuerySelectorAll, filter)) {
+                    return true;
+                }
+                ancestor = ancestor.getParentNode();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches {@code selector + simple}.
+     */
+    private static final class DirectAdjacentMatcher extends SelectorMatcher {
+        private final SelectorMatcher simple_;
+        private final SelectorMatcher selector_;
+
+        DirectAdjacentMatcher(final SelectorMatcher simple, final SelectorMatcher selector) {
+            simple_ = simple;
+            selector_ = selector;
+        }
+
+        @Override
+        public String getRequiredId() {
+            return simple_.getRequiredId();
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            if (simple_.matches(browserVersion, element, pseudoElement, fromQuerySelectorAll, filter)) {
+                DomNode prev = element.getPreviousSibling();
+                while (prev != null && !(prev instanceof HtmlElement)) {
+                    prev = prev.getPreviousSibling();
+                }
+                return prev != null
+                        && selector_.matches(browserVersion, (HtmlElement) prev, pseudoElement,
+                                fromQuerySelectorAll, filter);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches {@code selector ~ simple}.
+     */
+    private static final class GeneralAdjacentMatcher extends SelectorMatcher {
+        private final SelectorMatcher simple_;
+        private final SelectorMatcher selector_;
+
+        GeneralAdjacentMatcher(final SelectorMatcher simple, final SelectorMatcher selector) {
+            simple_ = simple;
+            selector_ = selector;
+        }
+
+        @Override
+        public String getRequiredId() {
+            return simple_.getRequiredId();
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            if (simple_.matches(browserVersion, element, pseudoElement, fromQuerySelectorAll, filter)) {
+                for (DomNode prev = element.getPreviousSibling(); prev != null; prev = prev.getPreviousSibling()) {
+                    if (prev instanceof HtmlElement
+                        && selector_.matches(browserVersion, (HtmlElement) prev, pseudoElement,
+                                fromQuerySelectorAll, filter)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches a pseudo element.
+     */
+    private static final class PseudoElementMatcher extends SelectorMatcher {
+        private final String name_;
+
+        PseudoElementMatcher(final String name) {
+            name_ = name;
+        }
+
+        @Override
+        public boolean matches(final BrowserVersion browserVersion, final DomElement element,
+                final String pseudoElement, final boolean fromQuerySelectorAll, final AncestorFilter filter) {
+            if (pseudoElement != null && pseudoElement.length() != 0 && pseudoElement.charAt(0) == ':') {
+                return name_.equals(pseudoElement.substring(1));
+            }
+            return false;
+        }
+    }
+}
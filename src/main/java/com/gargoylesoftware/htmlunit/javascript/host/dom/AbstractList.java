@@ -22,7 +22,9 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
@@ -54,6 +56,7 @@ import net.sourceforge.htmlunit.corejs.javascript.Undefined;
  * @author Chris Erskine
  * @author Ahmed Ashour
  * @author Frank Danek
+ * @author Ronald Brill
  */
 @JsxClass(isJSObject = false)
 public class AbstractList extends SimpleScriptable implements Function {
@@ -68,6 +71,34 @@ public class AbstractList extends SimpleScriptable implements Function {
         RESET
     }
 
+    /**
+     * Caches for every class if the cache of its instances can be updated incrementally (see
+     * {@link #isIncrementallyUpdatable()}).
+     */
+    private static final ClassValue<Boolean> INCREMENTALLY_UPDATABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            boolean matching = false;
+            for (Class<?> c = type; c != AbstractList.class; c = c.getSuperclass()) {
+                if (declares(c, "computeElements") || declares(c, "getCandidates")) {
+                    return Boolean.FALSE;
+                }
+                matching = matching || declares(c, "isMatching", DomNode.class);
+            }
+            return Boolean.valueOf(matching);
+        }
+
+        private boolean declares(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+            try {
+                type.getDeclaredMethod(name, parameterTypes);
+                return true;
+            }
+            catch (final NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
     private boolean avoidObjectDetection_;
 
     private boolean attributeChangeSensitive_;
@@ -243,7 +274,8 @@ public class AbstractList extends SimpleScriptable implements Function {
         if (!listenerRegistered_) {
             final DomNode domNode = getDomNodeOrNull();
             if (domNode != null) {
-                final DomHtmlAttributeChangeListenerImpl listener = new DomHtmlAttributeChangeListenerImpl(this);
+                final DomHtmlAttributeChangeListenerImpl listener
+                        = new DomHtmlAttributeChangeListenerImpl(this, domNode);
                 domNode.addDomChangeListener(listener);
                 if (attributeChangeSensitive_) {
                     if (domNode instanceof HtmlElement) {
@@ -286,6 +318,137 @@ public class AbstractList extends SimpleScriptable implements Function {
         return domNode.getDescendants();
     }
 
+    /**
+     * Indicates if the cache can be updated in place when nodes are added to or removed from the subtree of
+     * the reference node; otherwise it is reset and recomputed on the next access.
+     * This is only possible if the collection contains (in document order) all descendant elements
+     * matching {@link #isMatching(DomNode)} and if the result of {@link #isMatching(DomNode)} only depends
+     * on the node itself and its ancestors.
+     * The default implementation returns {@code true} if the class overrides {@link #isMatching(DomNode)}
+     * but neither {@link #computeElements()} nor {@link #getCandidates()}.
+     * @return whether the cache can be updated incrementally
+     */
+    protected boolean isIncrementallyUpdatable() {
+        return INCREMENTALLY_UPDATABLE.get(getClass()).booleanValue();
+    }
+
+    /**
+     * Updates the cache after the addition of the given node to the subtree of the reference node.
+     * @param root the node the listener was registered on
+     * @param node the added node
+     */
+    private void nodeAdded(final DomNode root, final DomNode node) {
+        final List<DomNode> cachedElements = cachedElements_;
+        if (cachedElements == null) {
+            return;
+        }
+        // cloned nodes are sharing the listeners of the original, ignore changes outside of the subtree
+        if (root != getDomNodeOrNull() || !root.isAncestorOf(node) || !isIncrementallyUpdatable()) {
+            cachedElements_ = null;
+            return;
+        }
+
+        final List<DomNode> added = new ArrayList<>();
+        if (node instanceof DomElement && isMatching(node)) {
+            added.add(node);
+        }
+        for (final DomNode descendant : node.getDescendants()) {
+            if (descendant instanceof DomElement && isMatching(descendant)) {
+                added.add(descendant);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+
+        // the new nodes are adjacent in document order, search the position of the first one
+        final boolean useDocumentOrder = root.isAttachedToPage();
+        int low = 0;
+        int high = cachedElements.size();
+        if (high > 0 && isBefore(cachedElements.get(high - 1), node, useDocumentOrder)) {
+            low = high;
+        }
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (isBefore(cachedElements.get(mid), node, useDocumentOrder)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        if (low < cachedElements.size() && cachedElements.get(low) == node) {
+            // should not happen, the node is already part of the collection
+            cachedElements_ = null;
+            return;
+        }
+        cachedElements_ = CachedElements.insert(cachedElements, low, added);
+    }
+
+    /**
+     * Updates the cache after the removal of the given node from the subtree of the reference node.
+     * @param root the node the listener was registered on
+     * @param parent the former parent of the removed node
+     * @param node the removed node
+     */
+    private void nodeDeleted(final DomNode root, final DomNode parent, final DomNode node) {
+        final List<DomNode> cachedElements = cachedElements_;
+        if (cachedElements == null) {
+            return;
+        }
+        // if the reference node itself has been removed, only its ancestors have changed
+        if (root != getDomNodeOrNull() || root == node || !root.isAncestorOf(parent)
+                || !isIncrementallyUpdatable()) {
+            cachedElements_ = null;
+            return;
+        }
+
+        // the removed elements are adjacent; the document order of the removed node and all its descendants
+        // is still valid as long as nothing else has been added in between
+        final int size = cachedElements.size();
+        int start = 0;
+        if (root.isAttachedToPage()) {
+            int high = size;
+            while (start < high) {
+                final int mid = (start + high) >>> 1;
+                if (cachedElements.get(mid).compareDocumentOrder(node) < 0) {
+                    start = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+        }
+        else {
+            while (start < size && !node.isAncestorOf(cachedElements.get(start))) {
+                start++;
+            }
+        }
+
+        int end = start;
+        while (end < size && node.isAncestorOf(cachedElements.get(end))) {
+            end++;
+        }
+        if (start != end) {
+            cachedElements_ = CachedElements.remove(cachedElements, start, end);
+        }
+    }
+
+    /**
+     * Indicates if the first node is before the second one in document order.
+     * @param node the first node
+     * @param other the second node
+     * @param useDocumentOrder if both nodes are attached to the page and the cheap
+     *        {@link DomNode#compareDocumentOrder(DomNode)} can be used
+     * @return {@code true} if the first node is before the second one
+     */
+    private static boolean isBefore(final DomNode node, final DomNode other, final boolean useDocumentOrder) {
+        if (useDocumentOrder) {
+            return node.compareDocumentOrder(other) < 0;
+        }
+        return (node.compareDocumentPosition(other) & DomNode.DOCUMENT_POSITION_FOLLOWING) != 0;
+    }
+
     /**
      * Indicates if the node should belong to the collection.
      * Belongs to the refactoring effort to improve HTMLCollection's performance.
@@ -562,11 +725,13 @@ public class AbstractList extends SimpleScriptable implements Function {
                                     implements DomChangeListener, HtmlAttributeChangeListener {
 
         private transient WeakReference<AbstractList> nodeList_;
+        private final DomNode domNode_;
 
-        private DomHtmlAttributeChangeListenerImpl(final AbstractList nodeList) {
+        private DomHtmlAttributeChangeListenerImpl(final AbstractList nodeList, final DomNode domNode) {
             super();
 
             nodeList_ = new WeakReference<>(nodeList);
+            domNode_ = domNode;
         }
 
         /**
@@ -574,7 +739,10 @@ public class AbstractList extends SimpleScriptable implements Function {
          */
         @Override
         public void nodeAdded(final DomChangeEvent event) {
-            clearCache();
+            final AbstractList nodes = nodeList_.get();
+            if (null != nodes) {
+                nodes.nodeAdded(domNode_, event.getChangedNode());
+            }
         }
 
         /**
@@ -582,7 +750,10 @@ public class AbstractList extends SimpleScriptable implements Function {
          */
         @Override
         public void nodeDeleted(final DomChangeEvent event) {
-            clearCache();
+            final AbstractList nodes = nodeList_.get();
+            if (null != nodes) {
+                nodes.nodeDeleted(domNode_, event.getParentNode(), event.getChangedNode());
+            }
         }
 
         /**
@@ -638,6 +809,97 @@ public class AbstractList extends SimpleScriptable implements Function {
         }
     }
 
+    /**
+     * The immutable content of the cache. Lists handed out by {@link #getElements()} never change;
+     * every update creates a new instance. Appending at the end is cheap because the backing array
+     * is shared with the previous instance (which does not see the new entries).
+     */
+    private static final class CachedElements extends java.util.AbstractList<DomNode> implements RandomAccess {
+        private final Store store_;
+        private final int size_;
+
+        /** The array shared by all instances created by appending. */
+        private static final class Store {
+            private DomNode[] elements_;
+            private int used_;
+        }
+
+        private CachedElements(final Store store, final int size) {
+            store_ = store;
+            size_ = size;
+        }
+
+        /**
+         * Returns the elements with the added ones inserted at the given position.
+         */
+        static CachedElements insert(final List<DomNode> elements, final int index, final List<DomNode> added) {
+            final int size = elements.size();
+            final int newSize = size + added.size();
+            if (index == size && elements instanceof CachedElements) {
+                final CachedElements cached = (CachedElements) elements;
+                final Store store = cached.store_;
+                if (store.used_ == size) {
+                    if (store.elements_.length < newSize) {
+                        store.elements_ = Arrays.copyOf(store.elements_, Math.max(newSize, size * 2));
+                    }
+                    for (final DomNode node : added) {
+                        store.elements_[store.used_++] = node;
+                    }
+                    return new CachedElements(store, newSize);
+                }
+            }
+
+            final Store store = new Store();
+            store.elements_ = new DomNode[Math.max(newSize + 4, newSize + newSize / 4)];
+            for (int i = 0; i < index; i++) {
+                store.elements_[i] = elements.get(i);
+            }
+            for (int i = 0; i < added.size(); i++) {
+                store.elements_[index + i] = added.get(i);
+            }
+            for (int i = index; i < size; i++) {
+                store.elements_[added.size() + i] = elements.get(i);
+            }
+            store.used_ = newSize;
+            return new CachedElements(store, newSize);
+        }
+
+        /**
+         * Returns the elements without the ones from start (inclusive) to end (exclusive).
+         */
+        static CachedElements remove(final List<DomNode> elements, final int start, final int end) {
+            final int size = elements.size();
+            if (end == size && elements instanceof CachedElements) {
+                // the store is not marked as free, the entries are still visible for the previous instance
+                return new CachedElements(((CachedElements) elements).store_, start);
+            }
+
+            final Store store = new Store();
+            store.elements_ = new DomNode[size - (end - start) + 4];
+            for (int i = 0; i < start; i++) {
+                store.elements_[i] = elements.get(i);
+            }
+            for (int i = end; i < size; i++) {
+                store.elements_[start + i - end] = elements.get(i);
+            }
+            store.used_ = size - (end - start);
+            return new CachedElements(store, store.used_);
+        }
+
+        @Override
+        public DomNode get(final int index) {
+            if (index < 0 || index >= size_) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size_);
+            }
+            return store_.elements_[index];
+        }
+
+        @Override
+        public int size() {
+            return size_;
+        }
+    }
+
     /**
      * Gets the effect of the change on an attribute of the reference node
      * on this collection's cache.
@@ -44,6 +44,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -767,6 +768,25 @@ public class Document extends Node {
                 }
             };
         }
+        else if (getDomNodeOrDie() instanceof HtmlPage) {
+            final HtmlPage page = (HtmlPage) getDomNodeOrDie();
+            collection = new HTMLCollection(page, false) {
+                @Override
+                protected List<DomNode> computeElements() {
+                    return new ArrayList<>(page.getIndexedElementsByTagName(tagName));
+                }
+
+                @Override
+                protected boolean isMatching(final DomNode node) {
+                    return tagName.equalsIgnoreCase(node.getNodeName());
+                }
+
+                @Override
+                protected boolean isIncrementallyUpdatable() {
+                    return true;
+                }
+            };
+        }
         else {
             collection = new HTMLCollection(getDomNodeOrDie(), false) {
                 @Override
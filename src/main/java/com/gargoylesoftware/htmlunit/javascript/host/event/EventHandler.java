@@ -14,13 +14,20 @@
  */
 package com.gargoylesoftware.htmlunit.javascript.host.event;
 
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.javascript.HtmlUnitContextFactory;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 
 import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.ContextFactory;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
+import net.sourceforge.htmlunit.corejs.javascript.Script;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 
@@ -28,8 +35,22 @@ import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
  * Allows to wrap event handler code as Function object.
  *
  * @author Marc Guillemot
+ * @author Ronald Brill
  */
 public class EventHandler extends BaseFunction {
+
+    /** The maximum number of compiled handler templates. */
+    static final int TEMPLATE_CACHE_SIZE = 1_000;
+
+    /**
+     * The compiled handlers. A template is a script evaluating to the handler function;
+     * executing it creates a new function object without parsing the code again. The function
+     * is declared inside a wrapper function (and not as named function expression) because its
+     * name must not be bound to the function itself; the parent scope is replaced by the
+     * scope of the element anyway.
+     */
+    private static final LruCache<TemplateKey, Script> TEMPLATES = new LruCache<>(TEMPLATE_CACHE_SIZE);
+
     private final DomNode node_;
     private final String eventName_;
     private final String jsSnippet_;
@@ -62,14 +83,44 @@ public class EventHandler extends BaseFunction {
         final SimpleScriptable jsObj = node_.getScriptableObject();
         // compile "just in time"
         if (realFunction_ == null) {
-            realFunction_ = cx.compileFunction(jsObj, jsSnippet_, eventName_ + " event for " + node_
-                + " in " + node_.getPage().getUrl(), 0, null);
+            realFunction_ = compile(cx, jsObj);
             realFunction_.setParentScope(jsObj);
         }
 
         return realFunction_.call(cx, scope, thisObj, args);
     }
 
+    private Function compile(final Context cx, final SimpleScriptable jsObj) {
+        final SgmlPage page = node_.getPage();
+        final WebClient webClient = page.getWebClient();
+        final ContextFactory factory = cx.getFactory();
+
+        // the debugger, the deminification and the pre processor want to see every single handler
+        if (cx.getDebugger() != null
+                || webClient.getScriptPreProcessor() != null
+                || factory instanceof HtmlUnitContextFactory
+                    && ((HtmlUnitContextFactory) factory).isDeminifyFunctionCode()) {
+            return cx.compileFunction(jsObj, jsSnippet_, eventName_ + " event for " + node_
+                + " in " + page.getUrl(), 0, null);
+        }
+
+        final TemplateKey key = new TemplateKey(webClient.getBrowserVersion(), cx.getOptimizationLevel(),
+                page.getUrl().toExternalForm(), jsSnippet_);
+        final Script template = TEMPLATES.computeIfAbsent(key,
+            k -> cx.compileString("(function() {" + jsSnippet_ + " return on" + eventName_ + ";})()",
+                    eventName_ + " event in " + k.url_, 0, null));
+        return (Function) template.exec(cx, jsObj);
+    }
+
+    /**
+     * Returns the cache of the compiled handler templates; shared by all
+     * {@link WebClient}s. The cache can be used to get the hit rate.
+     * @return the cache
+     */
+    public static LruCache<?, Script> getTemplateCache() {
+        return TEMPLATES;
+    }
+
     /**
      * @see net.sourceforge.htmlunit.corejs.javascript.ScriptableObject#getDefaultValue(java.lang.Class)
      * @param typeHint the type hint
@@ -99,4 +150,38 @@ public class EventHandler extends BaseFunction {
         return super.get(name, start);
     }
 
+    /**
+     * The key of the template cache.
+     */
+    private static final class TemplateKey {
+        private final BrowserVersion browserVersion_;
+        private final int optimizationLevel_;
+        private final String url_;
+        private final String snippet_;
+
+        TemplateKey(final BrowserVersion browserVersion, final int optimizationLevel,
+                final String url, final String snippet) {
+            browserVersion_ = browserVersion;
+            optimizationLevel_ = optimizationLevel;
+            url_ = url;
+            snippet_ = snippet;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof TemplateKey)) {
+                return false;
+            }
+            final TemplateKey other = (TemplateKey) obj;
+            return browserVersion_ == other.browserVersion_
+                    && optimizationLevel_ == other.optimizationLevel_
+                    && url_.equals(other.url_)
+                    && snippet_.equals(other.snippet_);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(browserVersion_) * 31 + url_.hashCode()) * 31 + snippet_.hashCode();
+        }
+    }
 }
@@ -20,10 +20,12 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.JS_FILEREADER
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.Charsets;
@@ -39,15 +41,14 @@ import com.gargoylesoftware.htmlunit.javascript.configuration.JsxConstructor;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxFunction;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxGetter;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxSetter;
+import com.gargoylesoftware.htmlunit.javascript.host.arrays.ArrayBufferUtils;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.event.EventTarget;
 import com.gargoylesoftware.htmlunit.util.MimeType;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
-import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
-import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBuffer;
 
 /**
  * A JavaScript object for {@code FileReader}.
@@ -167,17 +168,13 @@ public class FileReader extends EventTarget {
     public void readAsArrayBuffer(final Object object) throws IOException {
         readyState_ = LOADING;
         final java.io.File file = ((File) object).getFile();
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            FileUtils.copyFile(file, bos);
-
-            final byte[] bytes = bos.toByteArray();
-
-            final NativeArrayBuffer buffer = new NativeArrayBuffer(bytes.length);
-            System.arraycopy(bytes, 0, buffer.getBuffer(), 0, bytes.length);
-            buffer.setParentScope(getParentScope());
-            buffer.setPrototype(ScriptableObject.getClassPrototype(getWindow(), buffer.getClassName()));
-
-            result_ = buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File '" + file + "' is too large for an ArrayBuffer");
+            }
+            // read directly into the buffer, no intermediate copy
+            result_ = ArrayBufferUtils.read(getWindow(), channel, (int) size);
         }
         readyState_ = DONE;
 
@@ -76,6 +76,6 @@ public class Performance extends EventTarget {
      */
     @JsxFunction
     public double now() {
-        return System.nanoTime() / 1_000_000d;
+        return getWindow().getWebWindow().getWebClient().getJavaScriptClock().nanoTime() / 1_000_000d;
     }
 }
@@ -20,11 +20,17 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.ScriptException;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
@@ -33,6 +39,7 @@ import com.gargoylesoftware.htmlunit.javascript.HtmlUnitScriptable;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.background.BasicJavaScriptJob;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJob;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.configuration.AbstractJavaScriptConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.configuration.JsxClass;
@@ -41,29 +48,43 @@ import com.gargoylesoftware.htmlunit.javascript.configuration.JsxGetter;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.event.MessageEvent;
+import com.gargoylesoftware.htmlunit.util.ThreadUtils;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextAction;
 import net.sourceforge.htmlunit.corejs.javascript.ContextFactory;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
 import net.sourceforge.htmlunit.corejs.javascript.Script;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
 /**
  * The scope for the execution of {@link Worker}s.
+ * Every worker runs in its own context on a thread of the worker pool; the tasks
+ * of a worker (loading the script, delivering messages) are processed in order.
+ * Messages are passed as {@link StructuredClone structured clones}.
  *
  * @author Marc Guillemot
+ * @author Ronald Brill
  */
 @JsxClass({CHROME, FF})
 @JsxClass(className = "WorkerGlobalScope", value = IE)
 public class DedicatedWorkerGlobalScope extends HtmlUnitScriptable {
 
     private static final Log LOG = LogFactory.getLog(DedicatedWorkerGlobalScope.class);
+
+    /** The threads processing the tasks of the workers. */
+    private static final ExecutorService WORKER_POOL =
+            Executors.newCachedThreadPool(r -> ThreadUtils.newThread("JS worker", r, false));
+
     private final Window owningWindow_;
     private final String origin_;
     private final Worker worker_;
 
+    private final Queue<Runnable> tasks_ = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled_ = new AtomicBoolean();
+
     /**
      * For prototype instantiation.
      */
@@ -108,23 +129,27 @@ public class DedicatedWorkerGlobalScope extends HtmlUnitScriptable {
     /**
      * Posts a message to the {@link Worker} in the page's context.
      * @param message the message
+     * @param transfer the transferable objects (optional)
      */
     @JsxFunction
-    public void postMessage(final Object message) {
-        final MessageEvent event = new MessageEvent();
-        event.initMessageEvent(Event.TYPE_MESSAGE, false, false, message, origin_, "",
-                                    owningWindow_, Undefined.instance);
-        event.setParentScope(owningWindow_);
-        event.setPrototype(owningWindow_.getPrototype(event.getClass()));
-
+    public void postMessage(final Object message, final Object transfer) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("[DedicatedWorker] postMessage: {}" + message);
         }
+        final Object data = StructuredClone.serialize(message, transfer);
+
         final JavaScriptEngine jsEngine =
                 (JavaScriptEngine) owningWindow_.getWebWindow().getWebClient().getJavaScriptEngine();
         final ContextAction<Object> action = new ContextAction<Object>() {
             @Override
             public Object run(final Context cx) {
+                final MessageEvent event = new MessageEvent();
+                event.initMessageEvent(Event.TYPE_MESSAGE, false, false,
+                        StructuredClone.deserialize(cx, data, owningWindow_), origin_, "",
+                        owningWindow_, Undefined.instance);
+                event.setParentScope(owningWindow_);
+                event.setPrototype(owningWindow_.getPrototype(event.getClass()));
+
                 worker_.getEventListenersContainer().executeCapturingListeners(event, null);
                 final Object[] args = new Object[] {event};
                 worker_.getEventListenersContainer().executeBubblingListeners(event, args);
@@ -140,28 +165,25 @@ public class DedicatedWorkerGlobalScope extends HtmlUnitScriptable {
         owningWindow_.getWebWindow().getJobManager().addJob(job, page);
     }
 
-    void messagePosted(final Object message) {
-        final MessageEvent event = new MessageEvent();
-        event.initMessageEvent(Event.TYPE_MESSAGE, false, false, message, origin_, "",
-                                    owningWindow_, Undefined.instance);
-        event.setParentScope(owningWindow_);
-        event.setPrototype(owningWindow_.getPrototype(event.getClass()));
+    void messagePosted(final Object message, final Object transfer) {
+        final Object data = StructuredClone.serialize(message, transfer);
 
-        final JavaScriptEngine jsEngine =
-                (JavaScriptEngine) owningWindow_.getWebWindow().getWebClient().getJavaScriptEngine();
+        final DedicatedWorkerGlobalScope thisScope = this;
         final ContextAction<Object> action = new ContextAction<Object>() {
             @Override
             public Object run(final Context cx) {
+                final MessageEvent event = new MessageEvent();
+                event.initMessageEvent(Event.TYPE_MESSAGE, false, false,
+                        StructuredClone.deserialize(cx, data, thisScope), origin_, "",
+                        owningWindow_, Undefined.instance);
+                event.setParentScope(owningWindow_);
+                event.setPrototype(owningWindow_.getPrototype(event.getClass()));
+
                 return executeEvent(cx, event);
             }
         };
 
-        final ContextFactory cf = jsEngine.getContextFactory();
-
-        final JavaScriptJob job = new WorkerJob(cf, action, "messagePosted: " + Context.toString(message));
-
-        final HtmlPage page = (HtmlPage) owningWindow_.getDocument().getPage();
-        owningWindow_.getWebWindow().getJobManager().addJob(job, page);
+        addTask(action, "messagePosted: " + Context.toString(message));
     }
 
     private Object executeEvent(final Context cx, final MessageEvent event) {
@@ -200,30 +222,99 @@ public class DedicatedWorkerGlobalScope extends HtmlUnitScriptable {
 
         final WebClient webClient = owningWindow_.getWebWindow().getWebClient();
 
-        final WebRequest webRequest = new WebRequest(fullUrl);
-        final WebResponse response = webClient.loadWebResponse(webRequest);
-        final String scriptCode = response.getContentAsString();
-        final JavaScriptEngine javaScriptEngine = (JavaScriptEngine) webClient.getJavaScriptEngine();
-
         final DedicatedWorkerGlobalScope thisScope = this;
         final ContextAction<Object> action = new ContextAction<Object>() {
             @Override
             public Object run(final Context cx) {
-                final Script script = javaScriptEngine.compile(page, thisScope, scriptCode,
-                        fullUrl.toExternalForm(), 1);
-                return javaScriptEngine.execute(page, thisScope, script);
+                final String scriptCode;
+                try {
+                    final WebRequest webRequest = new WebRequest(fullUrl);
+                    final WebResponse response = webClient.loadWebResponse(webRequest);
+                    scriptCode = response.getContentAsString();
+                }
+                catch (final IOException e) {
+                    throw Context.throwAsScriptRuntimeEx(e);
+                }
+
+                // the worker has its own context; executing the script does
+                // not require the lock of the page
+                final Script script = cx.compileString(scriptCode, fullUrl.toExternalForm(), 1, null);
+                return script.exec(cx, thisScope);
             }
         };
 
-        final ContextFactory cf = javaScriptEngine.getContextFactory();
-
         if (context != null) {
             action.run(context);
         }
         else {
-            final JavaScriptJob job = new WorkerJob(cf, action, "loadAndExecute " + url);
+            addTask(action, "loadAndExecute " + url);
+        }
+    }
+
+    /**
+     * Adds a task to the queue of this worker. The queue is processed by a thread
+     * of the worker pool; as long as the task is not finished, a job is registered
+     * with the job manager of the owning window to make this pending work visible
+     * (e.g. for {@link WebClient#waitForBackgroundJavaScript(long)}).
+     * @param action the action to execute in the context of the worker
+     * @param description the description of the task
+     */
+    private void addTask(final ContextAction<Object> action, final String description) {
+        final HtmlPage page = (HtmlPage) owningWindow_.getDocument().getPage();
+        final WebClient webClient = owningWindow_.getWebWindow().getWebClient();
+        final ContextFactory cf = ((JavaScriptEngine) webClient.getJavaScriptEngine()).getContextFactory();
+
+        final JavaScriptJobManager jobManager = owningWindow_.getWebWindow().getJobManager();
+        final int pendingJobId = jobManager.addJob(new PendingWorkerJob(description), page);
+
+        tasks_.add(() -> {
+            try {
+                // the page might have been unloaded in the meantime
+                if (page == page.getEnclosingWindow().getEnclosedPage()) {
+                    cf.call(cx -> {
+                        cx.putThreadLocal(JavaScriptEngine.KEY_STARTING_PAGE, page);
+                        return action.run(cx);
+                    });
+                }
+            }
+            catch (final RhinoException e) {
+                webClient.getJavaScriptErrorListener().scriptException(page, new ScriptException(page, e));
+            }
+            catch (final RuntimeException e) {
+                LOG.error("Worker task '" + description + "' failed: " + e.getMessage(), e);
+            }
+            finally {
+                jobManager.removeJob(pendingJobId);
+            }
+        });
+        scheduleTasks(webClient);
+    }
 
-            owningWindow_.getWebWindow().getJobManager().addJob(job, page);
+    private void scheduleTasks(final WebClient webClient) {
+        if (scheduled_.compareAndSet(false, true)) {
+            if (webClient.getOptions().isUseVirtualThreads() && ThreadUtils.isVirtualThreadSupported()) {
+                ThreadUtils.newThread("JS worker", () -> processTasks(webClient), true).start();
+            }
+            else {
+                WORKER_POOL.execute(() -> processTasks(webClient));
+            }
+        }
+    }
+
+    private void processTasks(final WebClient webClient) {
+        try {
+            Runnable task = tasks_.poll();
+            while (task != null) {
+                task.run();
+                task = tasks_.poll();
+            }
+        }
+        finally {
+            scheduled_.set(false);
+            // a task might have been added after the last poll
+            if (!tasks_.isEmpty()) {
+                scheduleTasks(webClient);
+            }
         }
     }
 }
@@ -249,3 +340,34 @@ class WorkerJob extends BasicJavaScriptJob {
         return "WorkerJob(" + description_ + ")";
     }
 }
+
+/**
+ * Placeholder for a task processed by a worker thread; this job is
+ * never executed but removed when the task is done.
+ */
+class PendingWorkerJob extends BasicJavaScriptJob {
+    /** Far enough in the future to never be executed by the event loop. */
+    private static final long PENDING_DELAY = 24L * 60 * 60 * 1000;
+
+    private final String description_;
+
+    PendingWorkerJob(final String description) {
+        description_ = description;
+        setTargetExecutionTime(System.currentTimeMillis() + PENDING_DELAY);
+    }
+
+    @Override
+    public boolean isExecuteAsap() {
+        return false;
+    }
+
+    @Override
+    public void run() {
+        // nothing to do
+    }
+
+    @Override
+    public String toString() {
+        return "PendingWorkerJob(" + description_ + ")";
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.worker;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.gargoylesoftware.htmlunit.javascript.host.arrays.ArrayBufferUtils;
+
+import net.sourceforge.htmlunit.corejs.javascript.ConsString;
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.NativeArray;
+import net.sourceforge.htmlunit.corejs.javascript.NativeObject;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+import net.sourceforge.htmlunit.corejs.javascript.Undefined;
+import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBuffer;
+import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBufferView;
+
+/**
+ * The structured clone algorithm used to pass messages between a page and its workers.
+ * The value is first {@link #serialize(Object, Object) serialized} into plain java objects
+ * on the thread of the sender; these are {@link #deserialize(Context, Object, Scriptable) deserialized}
+ * into the scope of the receiver on its own thread. This way no JavaScript object is shared
+ * between the threads, with the exception of transferred {@code ArrayBuffer}s that are
+ * handed over without copying the content.
+ *
+ * @see <a href="https://html.spec.whatwg.org/multipage/structured-data.html">Structured data</a>
+ * @author Ronald Brill
+ */
+final class StructuredClone {
+
+    private final Map<Object, Object> memory_ = new IdentityHashMap<>();
+    private final Set<Object> transfer_;
+
+    private StructuredClone(final Set<Object> transfer) {
+        transfer_ = transfer;
+    }
+
+    /**
+     * Serializes the given value.
+     * @param value the value to clone
+     * @param transfer the transfer list; may be {@code null} or undefined
+     * @return the serialized value
+     */
+    static Object serialize(final Object value, final Object transfer) {
+        Set<Object> transferSet = Collections.emptySet();
+        if (transfer instanceof NativeArray) {
+            final NativeArray transferArray = (NativeArray) transfer;
+            transferSet = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            for (int i = 0; i < transferArray.getLength(); i++) {
+                final Object transferable = transferArray.get(i, transferArray);
+                if (!(transferable instanceof NativeArrayBuffer)) {
+                    throw Context.reportRuntimeError("DataCloneError: "
+                            + Context.toString(transferable) + " is not transferable.");
+                }
+                transferSet.add(transferable);
+            }
+        }
+        return new StructuredClone(transferSet).write(value);
+    }
+
+    /**
+     * Creates the JavaScript value from the serialized data.
+     * @param cx the context of the receiver
+     * @param data the serialized value
+     * @param scope the scope of the receiver
+     * @return the cloned value
+     */
+    static Object deserialize(final Context cx, final Object data, final Scriptable scope) {
+        return new StructuredClone(null).read(cx, data, scope);
+    }
+
+    private Object write(final Object value) {
+        if (value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value == Undefined.instance) {
+            return value;
+        }
+        if (value instanceof ConsString || value instanceof Character) {
+            return value.toString();
+        }
+
+        final Object known = memory_.get(value);
+        if (known != null) {
+            return known;
+        }
+
+        if (value instanceof NativeArray) {
+            final NativeArray array = (NativeArray) value;
+            final ArrayData data = new ArrayData((int) array.getLength());
+            memory_.put(value, data);
+            for (int i = 0; i < data.elements_.length; i++) {
+                final Object element = array.get(i, array);
+                data.elements_[i] = element == Scriptable.NOT_FOUND ? Undefined.instance : write(element);
+            }
+            return data;
+        }
+
+        if (value instanceof NativeArrayBuffer) {
+            final NativeArrayBuffer buffer = (NativeArrayBuffer) value;
+            final BufferData data;
+            if (transfer_.contains(buffer)) {
+                data = new BufferData(buffer, null);
+            }
+            else {
+                data = new BufferData(null, buffer.getBuffer().clone());
+            }
+            memory_.put(value, data);
+            return data;
+        }
+
+        if (value instanceof NativeArrayBufferView) {
+            final NativeArrayBufferView view = (NativeArrayBufferView) value;
+            final String className = view.getClassName();
+            final int length;
+            if ("DataView".equals(className)) {
+                length = view.getByteLength();
+            }
+            else {
+                length = ScriptRuntime.toInt32(ScriptableObject.getProperty(view, "length"));
+            }
+            final ViewData data = new ViewData(className, (BufferData) write(view.getBuffer()),
+                    view.getByteOffset(), length);
+            memory_.put(value, data);
+            return data;
+        }
+
+        if (value instanceof Scriptable && "Date".equals(((Scriptable) value).getClassName())) {
+            final Object time = ScriptableObject.callMethod((Scriptable) value, "getTime", ScriptRuntime.emptyArgs);
+            final DateData data = new DateData(ScriptRuntime.toNumber(time));
+            memory_.put(value, data);
+            return data;
+        }
+
+        if (value instanceof NativeObject) {
+            final NativeObject object = (NativeObject) value;
+            final ObjectData data = new ObjectData();
+            memory_.put(value, data);
+            for (final Object id : object.getIds()) {
+                final Object property;
+                if (id instanceof Integer) {
+                    property = object.get(((Integer) id).intValue(), object);
+                }
+                else {
+                    property = object.get(id.toString(), object);
+                }
+                data.properties_.put(id, write(property));
+            }
+            return data;
+        }
+
+        throw Context.reportRuntimeError("DataCloneError: " + Context.toString(value) + " could not be cloned.");
+    }
+
+    private Object read(final Context cx, final Object data, final Scriptable scope) {
+        if (!(data instanceof CloneData)) {
+            return data;
+        }
+
+        final Object known = memory_.get(data);
+        if (known != null) {
+            return known;
+        }
+
+        if (data instanceof ArrayData) {
+            final Object[] elements = ((ArrayData) data).elements_;
+            final Scriptable array = cx.newArray(scope, elements.length);
+            memory_.put(data, array);
+            for (int i = 0; i < elements.length; i++) {
+                array.put(i, array, read(cx, elements[i], scope));
+            }
+            return array;
+        }
+
+        if (data instanceof BufferData) {
+            final BufferData bufferData = (BufferData) data;
+            NativeArrayBuffer buffer = bufferData.transferred_;
+            if (buffer == null) {
+                buffer = ArrayBufferUtils.newArrayBuffer(scope, bufferData.bytes_, 0, bufferData.bytes_.length);
+            }
+            else {
+                buffer.setParentScope(scope);
+                buffer.setPrototype(ScriptableObject.getClassPrototype(scope, buffer.getClassName()));
+            }
+            memory_.put(data, buffer);
+            return buffer;
+        }
+
+        if (data instanceof ViewData) {
+            final ViewData viewData = (ViewData) data;
+            final Object buffer = read(cx, viewData.buffer_, scope);
+            final Scriptable view = cx.newObject(scope, viewData.className_,
+                    new Object[] {buffer, viewData.byteOffset_, viewData.length_});
+            memory_.put(data, view);
+            return view;
+        }
+
+        if (data instanceof DateData) {
+            final Scriptable date = cx.newObject(scope, "Date", new Object[] {((DateData) data).time_});
+            memory_.put(data, date);
+            return date;
+        }
+
+        final Scriptable object = cx.newObject(scope);
+        memory_.put(data, object);
+        for (final Map.Entry<Object, Object> entry : ((ObjectData) data).properties_.entrySet()) {
+            final Object id = entry.getKey();
+            final Object value = read(cx, entry.getValue(), scope);
+            if (id instanceof Integer) {
+                object.put(((Integer) id).intValue(), object, value);
+            }
+            else {
+                object.put(id.toString(), object, value);
+            }
+        }
+        return object;
+    }
+
+    /** Marker for the serialized form of objects. */
+    private interface CloneData {
+    }
+
+    private static final class ObjectData implements CloneData {
+        private final Map<Object, Object> properties_ = new LinkedHashMap<>();
+    }
+
+    private static final class ArrayData implements CloneData {
+        private final Object[] elements_;
+
+        ArrayData(final int length) {
+            elements_ = new Object[length];
+        }
+    }
+
+    private static final class DateData implements CloneData {
+        private final double time_;
+
+        DateData(final double time) {
+            time_ = time;
+        }
+    }
+
+    private static final class BufferData implements CloneData {
+        private final NativeArrayBuffer transferred_;
+        private final byte[] bytes_;
+
+        BufferData(final NativeArrayBuffer transferred, final byte[] bytes) {
+            transferred_ = transferred;
+            bytes_ = bytes;
+        }
+    }
+
+    private static final class ViewData implements CloneData {
+        private final String className_;
+        private final BufferData buffer_;
+        private final int byteOffset_;
+        private final int length_;
+
+        ViewData(final String className, final BufferData buffer, final int byteOffset, final int length) {
+            className_ = className;
+            buffer_ = buffer;
+            byteOffset_ = byteOffset;
+            length_ = length;
+        }
+    }
+}
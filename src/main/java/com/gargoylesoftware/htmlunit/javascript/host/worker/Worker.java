@@ -33,6 +33,7 @@ import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
  *
  * @author Ahmed Ashour
  * @author Marc Guillemot
+ * @author Ronald Brill
  */
 @JsxClass
 public class Worker extends EventTarget {
@@ -83,10 +84,11 @@ public class Worker extends EventTarget {
     /**
      * Post the provided message to the WebWorker execution.
      * @param message the message
+     * @param transfer the transferable objects (optional)
      */
     @JsxFunction
-    public void postMessage(final Object message) {
-        workerScope_.messagePosted(message);
+    public void postMessage(final Object message, final Object transfer) {
+        workerScope_.messagePosted(message, transfer);
     }
 
     /**
@@ -18,9 +18,7 @@ import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.JS_REGEXP_EMP
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.JS_REGEXP_GROUP0_RETURNS_WHOLE_MATCH;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -31,6 +29,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.RegExpProxy;
@@ -52,8 +51,13 @@ import net.sourceforge.htmlunit.corejs.javascript.regexp.SubString;
 public class HtmlUnitRegExpProxy extends RegExpImpl {
 
     private static final Log LOG = LogFactory.getLog(HtmlUnitRegExpProxy.class);
-    /** Pattern cache */
-    private static final Map<String, Pattern> PATTENS = new HashMap<>();
+    /** The maximum number of entries of the translation and of the pattern cache. */
+    static final int CACHE_SIZE = 1_000;
+
+    /** Cache of the Java translations of JavaScript regular expressions, keyed by JavaScript source. */
+    private static final LruCache<String, String> TRANSLATIONS = new LruCache<>(CACHE_SIZE);
+    /** Cache of the compiled patterns, keyed by JavaScript source and flags. */
+    private static final LruCache<String, Pattern> PATTERNS = new LruCache<>(CACHE_SIZE);
 
     private final RegExpProxy wrapped_;
     private final BrowserVersion browserVersion_;
@@ -422,22 +426,25 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
             final String jsFlags = StringUtils.substringAfterLast(str, "/");
 
             global_ = jsFlags.indexOf('g') != -1;
-
-            pattern_ = PATTENS.get(str);
-            if (pattern_ == null) {
-                pattern_ = Pattern.compile(jsRegExpToJavaRegExp(jsSource), getJavaFlags(jsFlags));
-                PATTENS.put(str, pattern_);
-            }
+            pattern_ = getPattern(jsSource, jsFlags);
         }
 
         RegExpData(final String string) {
             global_ = false;
+            pattern_ = getPattern(string, "");
+        }
 
-            pattern_ = PATTENS.get(string);
-            if (pattern_ == null) {
-                pattern_ = Pattern.compile(jsRegExpToJavaRegExp(string), 0);
-                PATTENS.put(string, pattern_);
-            }
+        /**
+         * Returns the (cached) Java pattern for the given JavaScript regular expression.
+         * @param jsSource the JavaScript source
+         * @param jsFlags the JavaScript flags
+         * @return the pattern
+         */
+        private static Pattern getPattern(final String jsSource, final String jsFlags) {
+            // flags never contain a slash, therefore the last one separates source and flags
+            final String key = jsSource + '/' + jsFlags;
+            return PATTERNS.computeIfAbsent(key,
+                k -> Pattern.compile(jsRegExpToJavaRegExp(jsSource), getJavaFlags(jsFlags)));
         }
 
         /**
@@ -470,8 +477,27 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
      * @return the transformed expression
      */
     static String jsRegExpToJavaRegExp(final String re) {
-        final RegExpJsToJavaConverter regExpJsToJavaFSM = new RegExpJsToJavaConverter();
-        return regExpJsToJavaFSM.convert(re);
+        return TRANSLATIONS.computeIfAbsent(re, k -> new RegExpJsToJavaConverter().convert(k));
+    }
+
+    /**
+     * Returns the cache of the Java translations of JavaScript regular expressions;
+     * shared by all {@link com.gargoylesoftware.htmlunit.WebClient}s.
+     * The cache can be used to get the hit rate.
+     * @return the cache
+     */
+    public static LruCache<String, String> getTranslationCache() {
+        return TRANSLATIONS;
+    }
+
+    /**
+     * Returns the cache of the compiled Java patterns;
+     * shared by all {@link com.gargoylesoftware.htmlunit.WebClient}s.
+     * The cache can be used to get the hit rate.
+     * @return the cache
+     */
+    public static LruCache<String, Pattern> getPatternCache() {
+        return PATTERNS;
     }
 
     /**
@@ -17,13 +17,13 @@ package com.gargoylesoftware.htmlunit.svg;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.SVG_UNKNOWN_ARE_DOM;
 
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 
 import org.xml.sax.Attributes;
 
 import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.html.DefaultElementFactory;
 import com.gargoylesoftware.htmlunit.html.DomAttr;
 import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.ElementFactory;
@@ -93,7 +93,7 @@ public class SvgElementFactory implements ElementFactory {
     public DomElement createElementNS(final SgmlPage page, final String namespaceURI, String qualifiedNameLC,
             final Attributes attributes, final boolean checkBrowserCompatibility) {
 
-        final Map<String, DomAttr> attributeMap = toMap(page, attributes);
+        final Map<String, DomAttr> attributeMap = DefaultElementFactory.toMap(page, attributes);
         qualifiedNameLC = qualifiedNameLC.toLowerCase(Locale.ROOT);
         String tagNameLC = qualifiedNameLC;
         if (tagNameLC.indexOf(':') != -1) {
@@ -122,26 +122,6 @@ public class SvgElementFactory implements ElementFactory {
         return element;
     }
 
-    private static Map<String, DomAttr> toMap(final SgmlPage page, final Attributes attributes) {
-        Map<String, DomAttr> attributeMap = null;
-        if (attributes != null) {
-            attributeMap = new LinkedHashMap<>(attributes.getLength());
-            for (int i = 0; i < attributes.getLength(); i++) {
-                final String qName = attributes.getQName(i);
-                // browsers consider only first attribute (ex: <div id='foo' id='something'>...</div>)
-                if (!attributeMap.containsKey(qName)) {
-                    String namespaceURI = attributes.getURI(i);
-                    if (namespaceURI != null && namespaceURI.isEmpty()) {
-                        namespaceURI = null;
-                    }
-                    final DomAttr newAttr = new DomAttr(page, namespaceURI, qName, attributes.getValue(i), true);
-                    attributeMap.put(qName, newAttr);
-                }
-            }
-        }
-        return attributeMap;
-    }
-
     /**
      * Returns whether the specified name is a valid SVG tag name.
      * @param tagNameLowerCase the tag name in lower case
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A thread safe cache holding at most a fixed number of entries; if the cache is full,
+ * the least recently used entry is evicted.
+ *
+ * <p>Values are computed outside of the lock, so two threads missing the same key at the
+ * same time may both compute the value; only the first one is stored. The cache keeps
+ * track of hits and misses.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ *
+ * @author Ronald Brill
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize_;
+    private final Map<K, V> map_;
+    private final AtomicLong hits_ = new AtomicLong();
+    private final AtomicLong misses_ = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries
+     */
+    public LruCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but is " + maxSize);
+        }
+        maxSize_ = maxSize;
+        map_ = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return size() > maxSize_;
+            }
+        };
+    }
+
+    /**
+     * Returns the value cached for the given key.
+     * @param key the key
+     * @return the value or {@code null} if there is no entry for this key
+     */
+    public V get(final K key) {
+        final V value;
+        synchronized (map_) {
+            value = map_.get(key);
+        }
+        if (value == null) {
+            misses_.incrementAndGet();
+        }
+        else {
+            hits_.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value cached for the given key, computing and caching it if there is none.
+     * If the function throws, nothing is cached.
+     * @param key the key
+     * @param function the function computing the value; must not return {@code null}
+     * @return the (maybe newly computed) value
+     */
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+        final V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final V value = function.apply(key);
+        synchronized (map_) {
+            final V existing = map_.putIfAbsent(key, value);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        synchronized (map_) {
+            map_.put(key, value);
+        }
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public void clear() {
+        synchronized (map_) {
+            map_.clear();
+        }
+        hits_.set(0);
+        misses_.set(0);
+    }
+
+    /**
+     * @return the number of entries currently cached
+     */
+    public int size() {
+        synchronized (map_) {
+            return map_.size();
+        }
+    }
+
+    /**
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * @return the number of lookups finding a cached value
+     */
+    public long getHitCount() {
+        return hits_.get();
+    }
+
+    /**
+     * @return the number of lookups finding no cached value
+     */
+    public long getMissCount() {
+        return misses_.get();
+    }
+
+    /**
+     * @return the ratio of hits to all lookups, between {@code 0} and {@code 1};
+     *         {@code 0} if there was no lookup so far
+     */
+    public double getHitRate() {
+        final long hits = hits_.get();
+        final long total = hits + misses_.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", maxSize=" + maxSize_
+                + ", hits=" + hits_.get() + ", misses=" + misses_.get() + "]";
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility class for creating the threads used by HtmlUnit.
+ *
+ * <p>On JDKs supporting virtual threads (Java 21 and later) the threads can be created as
+ * virtual threads; HtmlUnit itself is still compiled for older JDKs, therefore
+ * the virtual thread API is accessed by reflection. If virtual threads are not available,
+ * normal daemon threads are used.</p>
+ *
+ * @author Ronald Brill
+ */
+public final class ThreadUtils {
+
+    /** Logging support. */
+    private static final Log LOG = LogFactory.getLog(ThreadUtils.class);
+
+    private static final Method OF_VIRTUAL_;
+    private static final Method BUILDER_NAME_;
+    private static final Method BUILDER_UNSTARTED_;
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderUnstarted = null;
+        Method newVirtualThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class);
+            builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+            newVirtualThreadPerTaskExecutor = Class.forName("java.util.concurrent.Executors")
+                                                .getMethod("newVirtualThreadPerTaskExecutor");
+
+            // preview versions are throwing if not enabled
+            ofVirtual.invoke(null);
+        }
+        catch (final Throwable e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Virtual threads are not supported by this JDK (" + e + ").");
+            }
+            ofVirtual = null;
+        }
+        OF_VIRTUAL_ = ofVirtual;
+        BUILDER_NAME_ = builderName;
+        BUILDER_UNSTARTED_ = builderUnstarted;
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_ = newVirtualThreadPerTaskExecutor;
+    }
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private ThreadUtils() {
+        // Empty.
+    }
+
+    /**
+     * Returns whether the current JDK supports virtual threads.
+     * @return whether the current JDK supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL_ != null;
+    }
+
+    /**
+     * Creates a new (not started) thread. If requested and supported, this will be a virtual thread,
+     * otherwise a daemon thread.
+     * @param name the name of the thread
+     * @param runnable the runnable to run
+     * @param virtual whether to create a virtual thread
+     * @return the new thread
+     */
+    public static Thread newThread(final String name, final Runnable runnable, final boolean virtual) {
+        if (virtual && isVirtualThreadSupported()) {
+            try {
+                final Object builder = BUILDER_NAME_.invoke(OF_VIRTUAL_.invoke(null), name);
+                return (Thread) BUILDER_UNSTARTED_.invoke(builder, runnable);
+            }
+            catch (final Exception e) {
+                LOG.warn("Failed to create a virtual thread; using a platform thread.", e);
+            }
+        }
+
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     * @return the new executor or {@code null} if virtual threads are not supported
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (isVirtualThreadSupported()) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR_.invoke(null);
+            }
+            catch (final Exception e) {
+                LOG.warn("Failed to create a virtual thread executor.", e);
+            }
+        }
+        return null;
+    }
+}
@@ -409,8 +409,7 @@ public final class XmlUtils {
         final Map<String, DomAttr> attributes = element.getAttributesMap();
         for (final Map.Entry<String, DomAttr> entry : attributes.entrySet()) {
             final String name = entry.getKey();
-            final DomAttr value = entry.getValue();
-            if (name.startsWith("xmlns:") && value.getValue().equals(namespace)) {
+            if (name.startsWith("xmlns:") && entry.getValue().getValue().equals(namespace)) {
                 return name.substring(6);
             }
         }
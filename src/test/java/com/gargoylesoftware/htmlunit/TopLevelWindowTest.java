@@ -112,6 +112,11 @@ public class TopLevelWindowTest extends SimpleWebTestCase {
             }
             /** {@inheritDoc} */
             @Override
+            public void setJobManagerListener(final JavaScriptJobManagerListener listener) {
+                // Empty.
+            }
+            /** {@inheritDoc} */
+            @Override
             public void shutdown() {
                 // Empty.
             }
@@ -17,14 +17,23 @@ package com.gargoylesoftware.htmlunit.html;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.w3c.dom.Node;
 import org.xml.sax.helpers.AttributesImpl;
 
+import com.gargoylesoftware.css.parser.CSSException;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Alerts;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.ElementNotFoundException;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
 import com.gargoylesoftware.htmlunit.WebClient;
@@ -884,4 +893,201 @@ public class DomNodeTest extends SimpleWebTestCase {
         assertTrue(elem1.isDisplayed());
         assertTrue(elem2.isDisplayed());
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getIndex() throws Exception {
+        final String html = "<html><body><div id='d'><a></a><b></b><i></i></div></body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final HtmlElement div = page.getHtmlElementById("d");
+        assertIndexes(div);
+
+        div.appendChild(page.createElement("p"));
+        assertIndexes(div);
+
+        div.getFirstChild().insertBefore(page.createElement("span"));
+        assertIndexes(div);
+
+        div.getChildNodes().get(2).remove();
+        assertIndexes(div);
+
+        div.getLastChild().remove();
+        assertIndexes(div);
+
+        div.appendChild(div.getFirstChild());
+        assertIndexes(div);
+
+        assertEquals(3, div.getChildNodes().getLength());
+        assertNull(div.getChildNodes().get(3));
+    }
+
+    private static void assertIndexes(final DomNode parent) {
+        int index = 0;
+        for (DomNode child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            assertEquals(index, child.getIndex());
+            assertSame(child, parent.getChildNodes().get(index));
+            index++;
+        }
+        assertEquals(index, parent.getChildNodes().size());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void selectorListCache() throws Exception {
+        final String html = "<html><body><div id='d1' class='a'></div><p class='a'></p></body></html>";
+        final HtmlPage page = loadPage(html);
+        final BrowserVersion browserVersion = page.getWebClient().getBrowserVersion();
+
+        final SelectorList selectorList = page.getSelectorList("div.a, p", browserVersion);
+        assertSame(selectorList, page.getSelectorList("div.a, p", browserVersion));
+        assertSame(selectorList, page.getHtmlElementById("d1").getSelectorList("div.a, p", browserVersion));
+        assertEquals(2, page.querySelectorAll("div.a, p").size());
+        assertTrue(page.getHtmlElementById("d1").matches("div.a, p"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                page.querySelectorAll("div.a:unknown");
+                fail("CSSException expected");
+            }
+            catch (final CSSException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void documentOrder() throws Exception {
+        final String html = "<html><body><div id='d1'><p id='p1'></p></div><div id='d2'></div></body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final HtmlElement d1 = page.getHtmlElementById("d1");
+        final HtmlElement d2 = page.getHtmlElementById("d2");
+        final HtmlElement p1 = page.getHtmlElementById("p1");
+
+        // many inserts at the same position consume the gaps of the numbering
+        for (int i = 0; i < 100; i++) {
+            p1.insertBefore(page.createElement("span"));
+            final DomElement div = page.createElement("div");
+            div.appendChild(page.createElement("b"));
+            d2.insertBefore(div, d2.getFirstChild());
+        }
+        d1.appendChild(d2.getFirstChild());
+        page.getBody().insertBefore(d2, d1);
+
+        final List<DomElement> elements = new ArrayList<>();
+        for (final DomElement element : page.getDomElementDescendants()) {
+            elements.add(element);
+        }
+
+        final List<DomElement> sorted = new ArrayList<>(elements);
+        Collections.reverse(sorted);
+        Collections.sort(sorted, new HtmlPage.DocumentPositionComparator());
+        assertEquals(elements, sorted);
+
+        assertSame(d2, page.getIndexedElementsByTagName("div").get(0));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void querySelectorIterator() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='d1'><p id='p1' class='a'></p><p id='p2' class='a'></p></div>\n"
+            + "<div id='d2'><p id='p3' class='a'></p></div>\n"
+            + "</body></html>";
+        final HtmlPage page = loadPage(html);
+        final HtmlElement d1 = page.getHtmlElementById("d1");
+
+        final Iterator<DomElement> iterator = page.querySelectorIterator("p.a");
+        assertSame(page.getHtmlElementById("p1"), iterator.next());
+        assertSame(page.getHtmlElementById("p2"), iterator.next());
+        assertSame(page.getHtmlElementById("p3"), iterator.next());
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("NoSuchElementException expected");
+        }
+        catch (final NoSuchElementException e) {
+            // expected
+        }
+
+        assertFalse(d1.querySelectorIterator("div").hasNext());
+        assertEquals(2L, d1.querySelectorStream("p").count());
+        assertEquals(Arrays.asList("d2", "p3"), page.querySelectorStream("div, p").skip(3).limit(2)
+                .map(DomElement::getId).collect(Collectors.toList()));
+        assertSame(page.getHtmlElementById("p2"), d1.querySelector("p + p"));
+        assertNull(d1.querySelector("div p + p.b"));
+
+        try {
+            page.querySelectorStream("p:unknown");
+            fail("CSSException expected");
+        }
+        catch (final CSSException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void querySelectorId() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='d1'><p id='x' class='a'></p><span id='x'></span></div>\n"
+            + "<div id='d2'><p id='x'></p></div>\n"
+            + "</body></html>";
+        final HtmlPage page = loadPage(html);
+        final HtmlElement d1 = page.getHtmlElementById("d1");
+        final HtmlElement d2 = page.getHtmlElementById("d2");
+
+        assertEquals(3, page.querySelectorAll("#x").size());
+        assertEquals(2, d1.querySelectorAll("#x").size());
+        assertSame(d2.getFirstChild(), d2.querySelector("#x"));
+        assertSame(d2.getFirstChild(), page.querySelector("#d2 > p#x"));
+        assertEquals(2, page.querySelectorAll("p#x").size());
+        assertEquals(1, page.querySelectorAll("p#x.a").size());
+        assertEquals(0, page.querySelectorAll("#d1").get(0).querySelectorAll("#d1").size());
+
+        // ids changed or removed later
+        final HtmlElement p = (HtmlElement) d1.getFirstChild();
+        p.setAttribute("id", "y");
+        assertEquals(1, d1.querySelectorAll("#x").size());
+        assertSame(p, d1.querySelector("#y"));
+        p.remove();
+        assertNull(page.querySelector("#y"));
+
+        // not attached to the page
+        final DomElement div = page.createElement("div");
+        div.appendChild(d2);
+        assertSame(d2.getFirstChild(), div.querySelector("#x"));
+        assertNull(page.querySelector("#d2"));
+    }
+
+    /**
+     * The sibling indexes of nodes in different trees are not comparable.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void compareDocumentPositionDifferentTrees() throws Exception {
+        final HtmlPage page = loadPage("<html><body></body></html>");
+        final DomDocumentFragment fragment1 = page.createDocumentFragment();
+        final DomDocumentFragment fragment2 = page.createDocumentFragment();
+        final DomElement x1 = page.createElement("p");
+        final DomElement x2 = page.createElement("p");
+        fragment1.appendChild(x1);
+        fragment2.appendChild(x2);
+
+        assertEquals(0, x1.getIndex());
+        assertEquals(0, x2.getIndex());
+        assertEquals(Node.DOCUMENT_POSITION_FOLLOWING, x1.compareDocumentPosition(x2));
+    }
 }
@@ -18,6 +18,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -27,6 +28,8 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import com.gargoylesoftware.htmlunit.SgmlPage;
+
 /**
  * Tests for {@link NamedAttrNodeMapImpl}.
  *
@@ -186,4 +189,108 @@ public class NamedAttrNodeMapImplTest {
         assertEquals("Key2", entry.getKey());
         assertEquals("attr2", entry.getValue().getNodeName());
     }
+
+    /**
+     * The attribute nodes are only created if requested.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void lazyAttributes() throws Exception {
+        final DomElement dom = new HtmlBreak("", null, null);
+
+        final NamedAttrNodeMapImpl map = new NamedAttrNodeMapImpl(dom, false);
+        map.putValue("id", "i1");
+        map.putValue("class", "");
+        map.putValue("Title", "t");
+
+        assertEquals(3, map.size());
+        assertEquals("i1", map.getValue("ID"));
+        assertSame(DomElement.ATTRIBUTE_VALUE_EMPTY, map.getValue("class"));
+        assertSame(DomElement.ATTRIBUTE_NOT_DEFINED, map.getValue("unknown"));
+        assertNull(map.createdAttrAt(0));
+        assertNull(map.createdAttrAt(1));
+
+        // a name which is not the key needs the attribute node from the beginning
+        assertEquals("Title", map.createdAttrAt(2).getName());
+        assertEquals("t", map.getValueDirect("title"));
+
+        final DomAttr id = map.get("id");
+        assertEquals("id", id.getName());
+        assertEquals("i1", id.getValue());
+        assertSame(dom, id.getOwnerElement());
+        assertSame(id, map.createdAttrAt(0));
+        assertSame(id, map.item(0));
+        assertSame(id, map.getNamedItem("Id"));
+
+        // the value is changed by the node
+        id.setValue("i2");
+        assertEquals("i2", map.getValue("id"));
+
+        // a new value replaces the node but keeps the position
+        map.putValue("id", "i3");
+        assertEquals("i3", map.getValue("id"));
+        assertNull(map.createdAttrAt(0));
+        assertEquals("id", map.nameAt(0));
+        assertEquals("i2", id.getValue());
+    }
+
+    /**
+     * Test the views.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void views() throws Exception {
+        final DomElement dom = new HtmlBreak("", null, null);
+
+        final NamedAttrNodeMapImpl map = new NamedAttrNodeMapImpl(dom, true);
+        map.putValue("a", "1");
+        map.putValue("b", "2");
+        map.putValue("c", "3");
+
+        final Iterator<String> keys = map.keySet().iterator();
+        assertEquals("a", keys.next());
+        assertTrue(map.keySet().contains("b"));
+        assertNull(map.createdAttrAt(0));
+
+        final Iterator<Map.Entry<String, DomAttr>> entries = map.entrySet().iterator();
+        assertEquals("a", entries.next().getKey());
+        assertNull(map.createdAttrAt(0));
+        final Map.Entry<String, DomAttr> entry = entries.next();
+        assertEquals("2", entry.getValue().getValue());
+        assertSame(entry.getValue(), map.createdAttrAt(1));
+
+        final Iterator<DomAttr> values = map.values().iterator();
+        assertEquals("1", values.next().getValue());
+        assertEquals("2", values.next().getValue());
+        values.remove();
+        assertEquals("3", values.next().getValue());
+        assertFalse(values.hasNext());
+
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("b"));
+        assertEquals("c", map.nameAt(1));
+        assertTrue(map.containsValue(map.get("c")));
+    }
+
+    /**
+     * Test the map which is filled before the element is created.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void notAttached() throws Exception {
+        final NamedAttrNodeMapImpl attribs = new NamedAttrNodeMapImpl((SgmlPage) null, 2);
+        attribs.putValue("Id", "i1");
+        attribs.putValue("src", "x.png");
+        final DomAttr src = attribs.get("src");
+        assertNull(src.getOwnerElement());
+        assertNull(attribs.createdAttrAt(0));
+
+        final DomElement dom = new HtmlBreak("", null, null);
+        final NamedAttrNodeMapImpl map = new NamedAttrNodeMapImpl(dom, false, attribs);
+        assertEquals(2, map.size());
+        assertEquals("id", map.nameAt(0));
+        assertEquals("i1", map.getValue("ID"));
+        assertEquals("Id", map.createdAttrAt(0).getName());
+        assertSame(src, map.get("src"));
+    }
 }
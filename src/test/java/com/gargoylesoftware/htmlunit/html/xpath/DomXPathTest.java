@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html.xpath;
+
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.XPATH_ATTRIBUTE_CASE_SENSITIVE;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.DomText;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.xml.XmlPage;
+
+/**
+ * Tests for {@link DomXPath}; the results are compared with the ones of Xalan.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class DomXPathTest extends SimpleWebTestCase {
+
+    private static final String HTML = "<html><head><title>t</title></head><body>\n"
+            + "<div id='d1' class='a'>\n"
+            + "  <div id='d2'><p id='p3'>third</p><p>fourth</p><!-- comment --></div>\n"
+            + "  <p id='p1'>Hello <b>big</b> world</p>\n"
+            + "  <P id='p2' class='x y'>  second   para </P>\n"
+            + "  <a href='one.html' title='One'>one</a><a href='two.html' ID='a2'>two</a>\n"
+            + "</div>\n"
+            + "<ul><li>1</li><li>2</li><li> 3 </li><li>x</li></ul>\n"
+            + "<input type='text' name='q' value='v'><svg><rect id='r'/></svg>\n"
+            + "</body></html>";
+
+    private static final String[] HTML_EXPRESSIONS = {
+        "/", "/html", "/html/body/div", "/HTML/Body", "//p", "//P", "//div//p", "//div/p", "//p[1]", "//p[last()]",
+        "//li[position() > 1]", "//li[position() != 2]", "//li[position() <= 2]", "//li[last()]",
+        "//div[@id='d2']/p", "//*[@id='p2']", "//p[@id='p2']", "//a[@id='a2']", "//A[@ID='a2']",
+        "//p[@id = 'p2' or @id = 'p3']", "//p[@class]", "//p[not(@class)]", "//a/@href", "//@id", "//@*",
+        "//a[@title='One']", "//a[contains(@href, 'two')]", "//a[starts-with(@href, 'one')]",
+        "//p[contains(., 'big')]", "//p[text()='third']", "//p[normalize-space()='second para']",
+        "//p[normalize-space(text())='second para']", "//b/..", "//p/..", "//div[p]", "//div[count(p) = 2]",
+        "//div[count(p) > 2]", "//ul/li[2]", "//ul/li[2]/text()", "//li/text()", "//text()", "//node()",
+        "//div[@id='d1']//p[2]", "//p[@id='p1']/b", "//body/*", "//body/*[2]", "//*[@class='a']//a",
+        ".//p", "descendant::p", "descendant-or-self::div", "//div/descendant::p[1]", "//p/parent::div",
+        "//p/self::p", "//div[@id='d2']/node()", "//a[. = 'two']", "//a[string() = 'two']", "//li[. > 1]",
+        "//li[. = 2]", "//li[. != 2]", "//li[. = 'x']", "//li[. < 'x']", "//svg", "//rect", "//p[@id='nope']",
+        "//p[true()]", "//p[false()]", "//p[1][@id='p1']", "//p[@id][2]", "//div[@id='d1']/p[@class='x y']",
+        "//input[@value='v']", "//input/@*", "//p[@id=\"p3\"]", "//p[(@id='p1')]", "//a[@href!='one.html']",
+        "//p[@id='p1' and b]", "//p[b = 'big']", "//div[p = 'third']", "//div[.//b]", "//li[. = //li[2]]",
+        "//li[count(//li) = 4]", "//p[@id = //a/@title]", "//li[.=1 or .=3]", "//p[@id='p3' and 1]",
+        "//div[@id='d1']/*[@id='p1']/b/text()", " //p [ 1 ] ", "//p[@id='p1']/..//a", "/html/body//@class",
+        "//*[@id='d2']/p[2]", "//li[true() = .]", "//div[p/b]", "//div[count(.//p) = 4]"
+    };
+
+    private static final String[] ELEMENT_EXPRESSIONS = {
+        "p", "./p", "..", "@id", "*", "*[2]", ".//p", "//p", "p/b", ".", "div/p", "div/p[2]", "/html"
+    };
+
+    private static final String XML = "<?xml version='1.0'?>\n"
+            + "<root>\n"
+            + "  <item type='a' id='i1'><name>a</name><value>1</value></item>\n"
+            + "  <item type='b' id='i2'><name>b</name><value>2</value><![CDATA[<cdata>]]></item>\n"
+            + "  <Item type='c'><name>c</name><!-- comment --></Item>\n"
+            + "  <ns xmlns='urn:x'><item>x</item></ns>\n"
+            + "  <ns2 xmlns:y='urn:y' y:a='1' b='2'/>\n"
+            + "</root>";
+
+    private static final String[] XML_EXPRESSIONS = {
+        "/root/item", "//item", "//Item", "//item[@type='a']", "//item[2]/name", "//name/text()", "//*[@id='i2']",
+        "//item[name='b']", "//item/text()", "//item[contains(., 'cdata')]", "//ns", "//ns/item", "//ns/*",
+        "//ns2/@*", "//ns2/@b", "//ns2/@a", "//*[value > 1]", "//item[value = 2]/@id", "//node()"
+    };
+
+    private static final String[] UNSUPPORTED_EXPRESSIONS = {
+        "(//p)[1]", "//p | //a", "//x:p", "count(//p)", "string(//p)", "//p[lower-case(@id)='p1']",
+        "ancestor::div", "//p/following-sibling::p", "//comment()", "//p[@id=$x]", "//li[. * 2 = 4]",
+        "//p[-1]", "id('p1')", "//p[name()='p']", "//p[1", "//", "..[1]", "//p[@x:id]", "//p[Contains(., 'a')]"
+    };
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameResultAsXalan() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        for (final String expression : HTML_EXPRESSIONS) {
+            assertSameResult(page, expression);
+            assertTrue(expression, DomXPath.getInstance(expression, false, getBrowserVersion()
+                    .hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE)).evaluate(page, new ArrayList<>()));
+        }
+
+        final DomElement div = page.getElementById("d1");
+        for (final String expression : ELEMENT_EXPRESSIONS) {
+            assertSameResult(div, expression);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameResultAsXalanXml() throws Exception {
+        getMockWebConnection().setResponse(URL_FIRST, XML, MimeType.TEXT_XML);
+        final XmlPage page = (XmlPage) getWebClientWithMockWebConnection().getPage(URL_FIRST);
+        for (final String expression : XML_EXPRESSIONS) {
+            assertSameResult(page, expression);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void unsupported() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        for (final String expression : UNSUPPORTED_EXPRESSIONS) {
+            assertNull(expression, DomXPath.getInstance(expression, false, false));
+        }
+        assertEquals(1, page.getByXPath("(//p)[1]").size());
+        assertEquals(6, page.getByXPath("//p | //a").size());
+    }
+
+    /**
+     * Xalan sees adjacent text nodes as one node; these trees are evaluated by Xalan.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void adjacentTextNodes() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement p3 = page.getElementById("p3");
+        p3.appendChild(new DomText(page, " and more"));
+
+        assertSameResult(page, "//p[@id='p3']/text()");
+        assertSameResult(page, "//p[text()='third and more']");
+        assertSameResult(page, "//text()");
+        assertFalse(DomXPath.getInstance("//text()", false, false).evaluate(page, new ArrayList<>()));
+        assertEquals(1, page.getByXPath("//p[@id='p3']/text()").size());
+
+        // the lazy evaluation continues with Xalan when it meets the text nodes
+        final Iterator<DomNode> iterator = page.getByXPathIterator("//text()");
+        final List<DomNode> texts = new ArrayList<>();
+        while (iterator.hasNext()) {
+            texts.add(iterator.next());
+        }
+        assertEquals(page.getByXPath("//text()", new HtmlUnitPrefixResolver(page)), texts);
+        assertEquals(page.getByXPath("//p/text()", new HtmlUnitPrefixResolver(page)),
+                page.getByXPathStream("//p/text()").collect(Collectors.toList()));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void iterator() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        for (final String expression : HTML_EXPRESSIONS) {
+            assertEquals(expression, page.getByXPath(expression, new HtmlUnitPrefixResolver(page)),
+                    page.getByXPathStream(expression).collect(Collectors.toList()));
+        }
+
+        final DomElement div = page.getElementById("d1");
+        for (final String expression : ELEMENT_EXPRESSIONS) {
+            assertEquals(expression, div.getByXPath(expression, new HtmlUnitPrefixResolver(div)),
+                    div.getByXPathStream(expression).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void elementsById() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement d2 = page.getElementById("d2");
+        final DomElement p3 = page.getElementById("p3");
+
+        assertEquals(1, page.getByXPath("//p[@id='p3']").size());
+        assertEquals(0, page.getByXPath("//div[@id='p3']").size());
+        assertEquals(1, d2.getByXPath(".//p[@id='p3']").size());
+        assertEquals(0, p3.getByXPath(".//p[@id='p3']").size());
+        assertEquals(0, page.getElementById("p1").getByXPath(".//p[@id='p3']").size());
+
+        p3.setAttribute("id", "p1");
+        assertEquals(0, page.getByXPath("//p[@id='p3']").size());
+        final List<?> result = page.getByXPath("//p[@id='p1']");
+        assertEquals(2, result.size());
+        assertSame(p3, result.get(0));
+        assertSameResult(page, "//p[@id='p1']");
+        assertSameResult(page, "//p[@id='p1'][2]");
+        assertSameResult(page, "//p[@id='p1' and text()='third']");
+
+        p3.remove();
+        assertEquals(1, page.getByXPath("//p[@id='p1']").size());
+        assertEquals(1, p3.getByXPath("self::p[@id='p1']").size());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void modifiedPage() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement d1 = page.getElementById("d1");
+        final DomElement p = page.createElement("p");
+        p.setAttribute("id", "new");
+        d1.insertBefore(p, d1.getFirstChild());
+
+        assertSameResult(page, "//div/p");
+        assertSameResult(page, "//p[@id='new']");
+        assertSameResult(page, "//div/p[1]");
+        assertSame(p, page.getByXPath("//div/p").get(0));
+    }
+
+    private void assertSameResult(final DomNode node, final String expression) {
+        final boolean caseSensitive = node.getPage().hasCaseSensitiveTagNames();
+        assertNotNull(expression, DomXPath.getInstance(expression, caseSensitive,
+                caseSensitive || getBrowserVersion().hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE)));
+
+        // with a prefix resolver the expression is evaluated by Xalan
+        final List<?> expected = node.getByXPath(expression, new HtmlUnitPrefixResolver(node));
+        final List<?> actual = node.getByXPath(expression);
+        assertEquals(expression, expected, actual);
+    }
+}
@@ -18,13 +18,20 @@ import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+import org.apache.xml.utils.PrefixResolver;
+import org.apache.xml.utils.PrefixResolverDefault;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.DomText;
 import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
@@ -32,6 +39,8 @@ import com.gargoylesoftware.htmlunit.html.HtmlBody;
 import com.gargoylesoftware.htmlunit.html.HtmlDivision;
 import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
 /**
  * Tests for XPath evaluation on HtmlUnit DOM.
@@ -268,4 +277,182 @@ public class HtmlUnitXPathTest extends SimpleWebTestCase {
         div.setAttribute("class", "design");
         assertSame(div, page.getFirstByXPath("//*[@class = 'design']"));
     }
+
+    /**
+     * @throws Exception if test fails
+     */
+    @Test
+    public void compiledExpressionCache() throws Exception {
+        final String content = "<html><head></head><body><p id='p1'></p></body></html>";
+        final HtmlPage page = loadPage(content);
+        final PrefixResolver resolver = new PrefixResolverDefault(page.getDocumentElement());
+
+        final XPathAdapter adapter = XPathAdapter.getInstance("//p[@id='p1']", resolver, false, false);
+        assertSame(adapter, XPathAdapter.getInstance("//p[@id='p1']", resolver, false, false));
+        assertNotSame(adapter, XPathAdapter.getInstance("//p[@id='p1']", resolver, true, true));
+        assertSame(page.getHtmlElementById("p1"), page.getFirstByXPath("//p[@id='p1']"));
+        assertSame(page.getHtmlElementById("p1"), page.getFirstByXPath("//P[@id='p1']"));
+    }
+
+    /**
+     * The prefixes are resolved when the expression is compiled.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void compiledExpressionCacheNamespaces() throws Exception {
+        final String xml1 = "<r xmlns:a='urn:x'><a:e/></r>";
+        final String xml2 = "<r xmlns:a='urn:y'><x:e xmlns:x='urn:x'/></r>";
+        getMockWebConnection().setResponse(URL_FIRST, xml1, MimeType.TEXT_XML);
+        getMockWebConnection().setResponse(URL_SECOND, xml2, MimeType.TEXT_XML);
+        final WebClient client = getWebClientWithMockWebConnection();
+
+        final XmlPage page1 = client.getPage(URL_FIRST);
+        assertEquals(1, page1.getByXPath("//a:e").size());
+        final XmlPage page2 = client.getPage(URL_SECOND);
+        assertEquals(0, page2.getByXPath("//a:e").size());
+        assertEquals(1, page1.getByXPath("//a:e").size());
+    }
+
+    /**
+     * The context of a page is not reused after the page has been modified.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void modifiedPage() throws Exception {
+        final String content = "<html><head></head><body><div id='d'><p>a</p></div></body></html>";
+        final HtmlPage page = loadPage(content);
+        final HtmlDivision div = page.getHtmlElementById("d");
+        assertEquals(1, page.getByXPath("//p").size());
+
+        int modificationCount = page.getModificationCount();
+        final DomElement p = page.createElement("p");
+        div.appendChild(p);
+        assertTrue(modificationCount != page.getModificationCount());
+        assertEquals(2, page.getByXPath("//p").size());
+        assertEquals(2, div.getByXPath("p").size());
+
+        modificationCount = page.getModificationCount();
+        p.setAttribute("class", "x");
+        assertTrue(modificationCount != page.getModificationCount());
+        assertSame(p, page.getFirstByXPath("//p[@class='x']"));
+        p.removeAttribute("class");
+        assertNull(page.getFirstByXPath("//p[@class='x']"));
+
+        ((DomText) div.getFirstChild().getFirstChild()).setData("b");
+        final String value = page.getFirstByXPath("string(//p)");
+        assertEquals("b", value);
+
+        p.remove();
+        assertEquals(1, page.getByXPath("//p").size());
+
+        final DomElement detached = page.createElement("div");
+        detached.appendChild(p);
+        assertSame(p, detached.getFirstByXPath("p"));
+        assertEquals(1, page.getByXPath("//p").size());
+    }
+
+    /**
+     * @throws Exception if test fails
+     */
+    @Test
+    public void iterator() throws Exception {
+        final String content = "<html><head></head><body>\n"
+            + "<div id='d'><p id='p1'>a</p><p id='p2'>b</p><span><p id='p3'>c</p></span></div>\n"
+            + "</body></html>";
+        final HtmlPage page = loadPage(content);
+        final PrefixResolver resolver = new PrefixResolverDefault(page.getDocumentElement());
+
+        final String[] expressions = {"//p", "/html/body/div/p", "//p[2]", "//div//p", "//p/text()", "//p | //span",
+            "//p[@id='p2']", "//x", "count(//p)", "string(//p)", "//p[.='c']"};
+        for (final String expression : expressions) {
+            assertEquals(expression, page.getByXPath(expression), toList(page.getByXPathIterator(expression)));
+            assertEquals(expression, page.getByXPath(expression, resolver),
+                    toList(page.getByXPathIterator(expression, resolver)));
+        }
+
+        final DomElement div = page.getElementById("d");
+        assertEquals(div.getByXPath("p"), toList(div.getByXPathIterator("p")));
+
+        assertSame(page.getElementById("p1"), page.getFirstByXPath("//p"));
+        assertSame(page.getElementById("p2"), page.getFirstByXPath("//p[2]", resolver));
+        assertSame(page.getElementById("p3"),
+                page.<DomElement>getByXPathStream("//p").filter(p -> "c".equals(p.getTextContent()))
+                    .findFirst().get());
+        assertEquals(2L, page.getByXPathStream("//p").limit(2).count());
+    }
+
+    /**
+     * @throws Exception if test fails
+     */
+    @Test
+    public void iteratorModifiedPage() throws Exception {
+        final String content = "<html><head></head><body><div id='d'><p>a</p><p>b</p></div></body></html>";
+        final HtmlPage page = loadPage(content);
+        final PrefixResolver resolver = new PrefixResolverDefault(page.getDocumentElement());
+
+        final Iterator<DomElement> iterator = page.getByXPathIterator("//p");
+        iterator.next();
+        page.getElementById("d").appendChild(page.createElement("p"));
+        try {
+            iterator.hasNext();
+            fail("ConcurrentModificationException expected");
+        }
+        catch (final ConcurrentModificationException e) {
+            // expected
+        }
+
+        final Iterator<?> xalanIterator = page.getByXPathIterator("//p", resolver);
+        xalanIterator.next();
+        page.getElementById("d").removeChild(page.getElementById("d").getFirstChild());
+        try {
+            xalanIterator.next();
+            fail("ConcurrentModificationException expected");
+        }
+        catch (final ConcurrentModificationException e) {
+            // expected
+        }
+
+        // a context left before all nodes are fetched is not reused
+        assertEquals(2, page.getByXPath("//p", resolver).size());
+        assertEquals(2, toList(page.getByXPathIterator("//p", resolver)).size());
+    }
+
+    /**
+     * @throws Exception if test fails
+     */
+    @Test
+    public void iteratorXmlPage() throws Exception {
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<entry id='e").append(i).append("'><title>t").append(i).append("</title></entry>");
+        }
+        xml.append("</feed>");
+        getMockWebConnection().setResponse(URL_FIRST, xml.toString(), MimeType.TEXT_XML);
+        final XmlPage page = getWebClientWithMockWebConnection().getPage(URL_FIRST);
+
+        final String[] expressions = {"//entry", "/feed/entry/title", "/feed/entry[@id='e42']/title/text()",
+            "//title[.='t99']", "//entry[last()]"};
+        for (final String expression : expressions) {
+            assertEquals(expression, page.getByXPath(expression), toList(page.getByXPathIterator(expression)));
+        }
+
+        final DomElement title = page.getFirstByXPath("/feed/entry/title");
+        assertEquals("t0", title.getTextContent());
+        assertEquals("t3", page.<DomElement>getByXPathStream("//title").skip(3).findFirst().get().getTextContent());
+    }
+
+    private static List<Object> toList(final Iterator<?> iterator) {
+        final List<Object> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        try {
+            iterator.next();
+            fail("NoSuchElementException expected");
+        }
+        catch (final NoSuchElementException e) {
+            // expected
+        }
+        return list;
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html.xpath;
+
+import java.net.URL;
+import java.util.Locale;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Compares the performance of {@link DomXPath} with Xalan on a large page.
+ *
+ * <p>This is not a unit test; run it with the test classpath (e.g. from the IDE).
+ * The optional argument is the number of list items of the page (default 5000).</p>
+ *
+ * @author Ronald Brill
+ */
+public final class XPathBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    private static final String[] EXPRESSIONS = {
+        "//li[@id='item-4711']",
+        "//li[@class='odd']",
+        "//ul/li[3]/a",
+        "//a[contains(@href, '42')]",
+        "//span[normalize-space()='Item 7']",
+        "//div[@id='main']//li[last()]/@id",
+        "//li/span/text()"
+    };
+
+    private XPathBenchmark() {
+    }
+
+    /**
+     * The entry point.
+     * @param args the optional number of list items
+     * @throws Exception in case of error
+     */
+    public static void main(final String[] args) throws Exception {
+        final int items = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        final URL url = new URL("http://localhost/");
+
+        try (WebClient webClient = new WebClient(BrowserVersion.CHROME)) {
+            webClient.getOptions().setJavaScriptEnabled(false);
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setResponse(url, createPage(items));
+            webClient.setWebConnection(connection);
+
+            final HtmlPage page = webClient.getPage(url);
+            final HtmlUnitPrefixResolver resolver = new HtmlUnitPrefixResolver(page.getDocumentElement());
+            final DomElement main = page.getElementById("main");
+            System.out.println("Page: " + items + " items");
+
+            for (final String expression : EXPRESSIONS) {
+                if (!page.getByXPath(expression).equals(page.getByXPath(expression, resolver))) {
+                    throw new IllegalStateException("Implementations are producing different results for "
+                            + expression);
+                }
+
+                run(expression + " (xalan)", page, expression, resolver, null);
+                run(expression + " (htmlunit)", page, expression, null, null);
+            }
+
+            // every modification of the page invalidates the cached Xalan view of the dom
+            for (final String expression : EXPRESSIONS) {
+                run(expression + " (xalan, modified)", page, expression, resolver, main);
+                run(expression + " (htmlunit, modified)", page, expression, null, main);
+            }
+        }
+    }
+
+    private static void run(final String name, final HtmlPage page, final String expression,
+            final HtmlUnitPrefixResolver resolver, final DomElement modified) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            evaluate(page, expression, resolver, modified, i);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            evaluate(page, expression, resolver, modified, i);
+        }
+        final double millis = (System.nanoTime() - start) / 1_000_000d / ROUNDS;
+        System.out.println(String.format(Locale.ROOT, "%-56s %10.3f ms/op", name, millis));
+    }
+
+    private static void evaluate(final HtmlPage page, final String expression,
+            final HtmlUnitPrefixResolver resolver, final DomElement modified, final int round) {
+        if (modified != null) {
+            modified.setAttribute("data-round", Integer.toString(round));
+        }
+        if (resolver == null) {
+            page.getByXPath(expression);
+        }
+        else {
+            page.getByXPath(expression, resolver);
+        }
+    }
+
+    private static String createPage(final int items) {
+        final StringBuilder builder = new StringBuilder("<html><head><title>benchmark</title></head><body>\n")
+                .append("<div id='main'>\n");
+        for (int i = 0; i < items; i++) {
+            if (i % 50 == 0) {
+                if (i > 0) {
+                    builder.append("</ul>\n");
+                }
+                builder.append("<ul>\n");
+            }
+            builder.append("<li id='item-").append(i).append("' class='").append(i % 2 == 0 ? "even" : "odd")
+                .append("'><a href='page").append(i).append(".html'>link</a> <span> Item ").append(i)
+                .append(" </span></li>\n");
+        }
+        return builder.append("</ul>\n</div>\n</body></html>").toString();
+    }
+}
@@ -14,17 +14,24 @@
  */
 package com.gargoylesoftware.htmlunit.javascript;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindowImpl;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 /**
  * Tests for {@link HtmlUnitContextFactory}.
  *
  * @author Ahmed Ashour
+ * @author Ronald Brill
  */
 @RunWith(BrowserRunner.class)
 public class HtmlUnitContextFactoryTest extends SimpleWebTestCase {
@@ -45,4 +52,130 @@ public class HtmlUnitContextFactoryTest extends SimpleWebTestCase {
 
         loadPage(browserVersion, html, null, URL_FIRST);
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void timeoutStopsEndlessLoop() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    alert('start');\n"
+            + "    while(true) {}\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "  <button id='b' onclick='alert(\"clicked\")'>click</button>\n"
+            + "</body></html>";
+
+        final WebClient client = getWebClient();
+        client.setJavaScriptTimeout(500);
+        client.getOptions().setThrowExceptionOnScriptError(false);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        final HtmlPage page = loadPage(client, html, collectedAlerts);
+        assertEquals(new String[] {"start"}, collectedAlerts);
+
+        final WebWindowImpl window = (WebWindowImpl) page.getEnclosingWindow();
+        assertTrue(window.getJavaScriptExecutionTime() >= 500);
+
+        // the next call runs without being flagged
+        page.getHtmlElementById("b").click();
+        assertEquals(new String[] {"start", "clicked"}, collectedAlerts);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void compiledMode() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+            + "  alert(fib(20));\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        client.getOptions().setJavaScriptOptimizationLevel(9);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        loadPage(client, html, collectedAlerts);
+        assertEquals(new String[] {"6765"}, collectedAlerts);
+    }
+
+    /**
+     * A method exceeding the 64K bytecode limit has to be interpreted.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void compiledModeFallbackToInterpreter() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><script>\n"
+            + "  var a = 0;\n");
+        for (int i = 0; i < 20_000; i++) {
+            html.append("a = a + ").append(i % 7).append(";\n");
+        }
+        html.append("  alert(a);\n"
+            + "</script></head><body></body></html>");
+
+        final WebClient client = getWebClient();
+        client.getOptions().setJavaScriptOptimizationLevel(0);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        loadPage(client, html.toString(), collectedAlerts);
+        assertEquals(new String[] {"59997"}, collectedAlerts);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void dynamicScriptCache() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var sum = 0;\n"
+            + "  for (var i = 0; i < 10; i++) {\n"
+            + "    sum += eval('i * 2');\n"
+            + "    var f = new Function('a', 'return a + anonymous;');\n"
+            + "    var anonymous = 1;\n"
+            + "    sum += f(i);\n"
+            + "  }\n"
+            + "  alert(sum);\n"
+            + "  alert(typeof f.call);\n"
+            + "  alert(f.toString().indexOf('function anonymous(a') == 0);\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        final HtmlUnitContextFactory factory = ((JavaScriptEngine) client.getJavaScriptEngine()).getContextFactory();
+        final long hits = factory.getDynamicScriptCache().getHitCount();
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        loadPage(client, html, collectedAlerts);
+        assertEquals(new String[] {"145", "function", "true"}, collectedAlerts);
+
+        // the eval and the new Function are compiled once
+        assertTrue(factory.getDynamicScriptCache().getHitCount() - hits >= 18);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void dynamicScriptCacheNotUsedWithPreProcessor() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  for (var i = 0; i < 3; i++) {\n"
+            + "    eval('alert(' + 1 + ')');\n"
+            + "  }\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        final List<String> processed = new ArrayList<>();
+        client.setScriptPreProcessor((htmlPage, sourceCode, sourceName, lineNumber, htmlElement) -> {
+            processed.add(sourceCode);
+            return sourceCode;
+        });
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        loadPage(client, html, collectedAlerts);
+        assertEquals(new String[] {"1", "1", "1"}, collectedAlerts);
+        // the script itself and three times the eval
+        assertEquals(4, processed.size());
+    }
 }
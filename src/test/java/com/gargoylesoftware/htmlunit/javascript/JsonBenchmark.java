@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.Locale;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * Compares the performance of {@link JsonParseFunction} and {@link JsonStringifyFunction}
+ * with Rhino's native JSON implementation on a large payload.
+ *
+ * <p>This is not a unit test; run it with the test classpath (e.g. from the IDE).
+ * The optional argument is the number of records of the payload (default 20000).</p>
+ *
+ * @author Ronald Brill
+ */
+public final class JsonBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private JsonBenchmark() {
+    }
+
+    /**
+     * The entry point.
+     * @param args the optional number of records
+     */
+    public static void main(final String[] args) {
+        final int records = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        final String payload = createPayload(records);
+        System.out.println("Payload: " + records + " records, " + payload.length() / 1024 + " KB");
+
+        final Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(9);
+            final ScriptableObject scope = cx.initStandardObjects();
+            final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(scope, "JSON");
+            final Function nativeParse = (Function) ScriptableObject.getProperty(json, "parse");
+            final Function nativeStringify = (Function) ScriptableObject.getProperty(json, "stringify");
+            final Function parse = new JsonParseFunction(nativeParse);
+            final Function stringify = new JsonStringifyFunction(nativeStringify);
+
+            final Object parsed = nativeParse.call(cx, scope, json, new Object[] {payload});
+            if (!nativeStringify.call(cx, scope, json, new Object[] {parsed})
+                    .equals(stringify.call(cx, scope, json, new Object[] {parse.call(cx, scope, json,
+                            new Object[] {payload})}))) {
+                throw new IllegalStateException("Implementations are producing different results");
+            }
+
+            run("JSON.parse (native)", cx, scope, json, nativeParse, payload);
+            run("JSON.parse (htmlunit)", cx, scope, json, parse, payload);
+            run("JSON.stringify (native)", cx, scope, json, nativeStringify, parsed);
+            run("JSON.stringify (htmlunit)", cx, scope, json, stringify, parsed);
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private static void run(final String name, final Context cx, final ScriptableObject scope,
+            final ScriptableObject json, final Function function, final Object arg) {
+        final Object[] args = {arg};
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            function.call(cx, scope, json, args);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            function.call(cx, scope, json, args);
+        }
+        final double millis = (System.nanoTime() - start) / 1_000_000d / ROUNDS;
+        System.out.println(String.format(Locale.ROOT, "%-28s %10.2f ms/op", name, millis));
+    }
+
+    private static String createPayload(final int records) {
+        final StringBuilder builder = new StringBuilder("{\"total\":").append(records).append(",\"items\":[");
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(i)
+                .append(",\"name\":\"Item \\\"").append(i).append("\\\"\"")
+                .append(",\"price\":").append(i * 1.25)
+                .append(",\"active\":").append(i % 2 == 0)
+                .append(",\"tags\":[\"a\",\"b\",\"c\"]")
+                .append(",\"owner\":{\"id\":").append(i % 100).append(",\"name\":\"Owner ").append(i % 100)
+                .append("\",\"address\":{\"street\":\"Main Street\",\"zip\":\"").append(10_000 + i % 1000)
+                .append("\"}}}");
+        }
+        return builder.append("]}").toString();
+    }
+}
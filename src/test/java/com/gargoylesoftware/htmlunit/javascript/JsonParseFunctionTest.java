@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.EcmaError;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.NativeArray;
+import net.sourceforge.htmlunit.corejs.javascript.NativeObject;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * Tests for {@link JsonParseFunction}; the results are compared with the ones
+ * of Rhino's native implementation.
+ *
+ * @author Ronald Brill
+ */
+public class JsonParseFunctionTest {
+
+    private static final String[] VALID = {
+        "0", "-0", "1", "-1", "123456789", "1234567890", "-2147483648", "2147483648", "1.0", "1.5",
+        "-0.25", "1e3", "1E+3", "1e-3", "12345678901234567890", "0.1e1",
+        "true", "false", "null", "  \t\r\n 7 \n",
+        "\"\"", "\"abc\"", "\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\"", "\"\\u0041\\u00e4\\uD83D\\uDE00\"",
+        "[]", "[ ]", "[1,2,3]", "[[],[[]],{}]", "[1, \"a\", true, null, {\"b\": [2]}]",
+        "{}", "{ }", "{\"a\":1}", "{\"a\" : 1 , \"b\" : [ 1 , 2 ] }", "{\"0\":\"zero\",\"1x\":1,\"10\":10}",
+        "{\"a\\u0062\":1,\"ab\":2}", "{\"a\":1,\"a\":2}",
+        "[{\"id\":1,\"name\":\"x\"},{\"id\":2,\"name\":\"y\"},{\"name\":\"z\",\"id\":3}]"
+    };
+
+    private static final String[] INVALID = {
+        "", " ", "01", "-", "1.", ".1", "1e", "1e+", "+1", "tru", "nul", "falsey", "\"abc", "\"a\nb\"",
+        "\"\\x\"", "\"\\u12\"", "\"\\u12G4\"", "[", "[1", "[1,]", "[,1]", "[1 2]", "{", "{\"a\"}",
+        "{\"a\":}", "{\"a\":1,}", "{,}", "{\"a\":1 \"b\":2}", "{a:1}", "1 2", "undefined", "'a'"
+    };
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameResultAsNative() throws Exception {
+        final Context cx = Context.enter();
+        try {
+            final ScriptableObject scope = cx.initStandardObjects();
+            final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(scope, "JSON");
+            final Function nativeParse = (Function) ScriptableObject.getProperty(json, "parse");
+            final Function nativeStringify = (Function) ScriptableObject.getProperty(json, "stringify");
+            final JsonParseFunction parse = new JsonParseFunction(nativeParse);
+
+            for (final String text : VALID) {
+                final Object expected = nativeParse.call(cx, scope, json, new Object[] {text});
+                final Object actual = parse.call(cx, scope, json, new Object[] {text});
+                assertEquals(text, toString(cx, scope, nativeStringify, expected),
+                        toString(cx, scope, nativeStringify, actual));
+                if (expected != null) {
+                    assertEquals(text, expected.getClass(), actual.getClass());
+                }
+            }
+
+            for (final String text : INVALID) {
+                String expected = null;
+                try {
+                    nativeParse.call(cx, scope, json, new Object[] {text});
+                }
+                catch (final EcmaError e) {
+                    expected = e.getMessage();
+                }
+                try {
+                    parse.call(cx, scope, json, new Object[] {text});
+                    fail("SyntaxError expected for '" + text + "'");
+                }
+                catch (final EcmaError e) {
+                    assertEquals(text, expected, e.getMessage());
+                }
+            }
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void prototypesAndKeys() throws Exception {
+        final Context cx = Context.enter();
+        try {
+            final ScriptableObject scope = cx.initStandardObjects();
+            final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(scope, "JSON");
+            final JsonParseFunction parse
+                    = new JsonParseFunction((Function) ScriptableObject.getProperty(json, "parse"));
+
+            final NativeArray array = (NativeArray) parse.call(cx, scope, json,
+                    new Object[] {"[{\"name\":1},{\"name\":2}]"});
+            assertSame(ScriptableObject.getArrayPrototype(scope), array.getPrototype());
+            assertSame(scope, array.getParentScope());
+
+            final NativeObject first = (NativeObject) array.get(0);
+            final NativeObject second = (NativeObject) array.get(1);
+            assertSame(ScriptableObject.getObjectPrototype(scope), first.getPrototype());
+            assertSame(first.getIds()[0], second.getIds()[0]);
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private static String toString(final Context cx, final ScriptableObject scope,
+            final Function stringify, final Object value) {
+        return (String) stringify.call(cx, scope, scope, new Object[] {value});
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.EcmaError;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+/**
+ * Tests for {@link JsonStringifyFunction}; the results are compared with the ones
+ * of Rhino's native implementation.
+ *
+ * @author Ronald Brill
+ */
+public class JsonStringifyFunctionTest {
+
+    private static final String VALUES = "var o = {a: 1, b: 'x\"\\\\\\n\\u0001\\u001f\\u2028',"
+            + " c: [1, , undefined, null,"
+            + " function() {}, NaN, Infinity, -0, 1.5, 1e21], d: undefined, e: function() {},"
+            + " f: {g: {h: [true, false, new Boolean(false), new Number(7), new String('s')]}},"
+            + " 3: 'three', 'i j': {}, k: [], l: {toJSON: function(key) { return 'json:' + key; }},"
+            + " m: new Date(0), n: {toJSON: 7}};\n"
+            + "var values = [o, o.c, o.f, 'str', 42, -1.25, true, null, undefined, function() {}, [], {},"
+            + " [[[]]], new Number(3), new String('q'), [undefined], {x: undefined}];";
+
+    private static final String[] CALLS = {
+        "JSON.stringify(v)",
+        "JSON.stringify(v, null, 2)",
+        "JSON.stringify(v, null, 20)",
+        "JSON.stringify(v, null, -1)",
+        "JSON.stringify(v, null, '\\t')",
+        "JSON.stringify(v, null, 'abcdefghijklmn')",
+        "JSON.stringify(v, null, new Number(3))",
+        "JSON.stringify(v, null, new String('--'))",
+        "JSON.stringify(v, ['a', 'c', 3, new String('f'), 'g', 'h', {}])",
+        "JSON.stringify(v, function(k, v) { return typeof v === 'number' ? v * 2 : v; })",
+        "JSON.stringify(v, function(k, v) { return k === 'a' ? undefined : v; }, 1)",
+        "JSON.stringify()"
+    };
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameResultAsNative() throws Exception {
+        final Context cx = Context.enter();
+        try {
+            final ScriptableObject scope = cx.initStandardObjects();
+            cx.evaluateString(scope, VALUES, "test", 1, null);
+            final int count = ((Number) cx.evaluateString(scope, "values.length", "test", 1, null)).intValue();
+
+            final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(scope, "JSON");
+            final Function nativeStringify = (Function) ScriptableObject.getProperty(json, "stringify");
+            final JsonStringifyFunction stringify = new JsonStringifyFunction(nativeStringify);
+
+            for (final String call : CALLS) {
+                for (int i = 0; i < count; i++) {
+                    final String script = "var v = values[" + i + "]; " + call;
+
+                    json.defineProperty("stringify", nativeStringify, ScriptableObject.DONTENUM);
+                    final Object expected = evaluate(cx, scope, script);
+
+                    json.defineProperty("stringify", stringify, ScriptableObject.DONTENUM);
+                    final Object actual = evaluate(cx, scope, script);
+
+                    assertEquals(script, expected, actual);
+                }
+            }
+
+            assertEquals("{\"g\":{\"h\":[true,false,false,7,\"s\"]}}",
+                    evaluate(cx, scope, "JSON.stringify(o.f)"));
+            assertEquals("[1,null,null,null,null,null,null,0,1.5,1e+21]",
+                    evaluate(cx, scope, "JSON.stringify(o.c)"));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void cyclicValue() throws Exception {
+        final Context cx = Context.enter();
+        try {
+            final ScriptableObject scope = cx.initStandardObjects();
+            final ScriptableObject json = (ScriptableObject) ScriptableObject.getProperty(scope, "JSON");
+            final Function nativeStringify = (Function) ScriptableObject.getProperty(json, "stringify");
+            final String script = "var o = {a: [1]}; o.a.push(o); JSON.stringify(o);";
+
+            final Object expected = evaluate(cx, scope, script);
+            json.defineProperty("stringify", new JsonStringifyFunction(nativeStringify), ScriptableObject.DONTENUM);
+            assertEquals(expected, evaluate(cx, scope, script));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private static Object evaluate(final Context cx, final ScriptableObject scope, final String script) {
+        try {
+            return cx.evaluateString(scope, script, "test", 1, null);
+        }
+        catch (final EcmaError e) {
+            return "exception: " + e.getMessage();
+        }
+    }
+}
@@ -57,4 +57,64 @@ public class NativeJSONTest extends WebDriverTestCase {
 
         loadPageWithAlerts2(html);
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"function", "function", "true", "3", "b,a", "x\"y", "2", "1", "exception"})
+    public void parse() throws Exception {
+        final String html
+            = "<html>\n"
+            + "<head>\n"
+            + "<script>\n"
+            + "  function doTest() {\n"
+            + "    alert(typeof JSON.parse);\n"
+            + "    alert(typeof JSON.stringify);\n"
+            + "    alert(JSON.parse.toString() == Function.prototype.toString.call(JSON.parse));\n"
+
+            + "    var obj = JSON.parse('[{\"b\": 1, \"a\": \"x\\\\\"y\"}, {\"b\": 2, \"a\": [1, 2, 3]}, {}]');\n"
+            + "    alert(obj.length);\n"
+            + "    alert(Object.keys(obj[0]));\n"
+            + "    alert(obj[0].a);\n"
+            + "    alert(obj[1].b);\n"
+            + "    alert(obj[1].a[0]);\n"
+
+            + "    try {\n"
+            + "      JSON.parse('{\"a\": 1,}');\n"
+            + "    } catch(e) { alert('exception'); }\n"
+            + "  }\n"
+            + "</script>\n"
+            + "</head>\n"
+            + "<body onload='doTest()'>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"{\"a\":[1,\"x\",null,true],\"c\":{\"d\":\"e\\n\"}}",
+                "{\n  \"a\": [\n    1,\n    \"x\",\n    null,\n    true\n  ],\n  \"c\": {\n    \"d\": \"e\\n\"\n  }\n}",
+                "undefined"})
+    public void stringify() throws Exception {
+        final String html
+            = "<html>\n"
+            + "<head>\n"
+            + "<script>\n"
+            + "  function doTest() {\n"
+            + "    var obj = {a: [1, 'x', undefined, true], b: undefined, c: {d: 'e\\n'}};\n"
+            + "    alert(JSON.stringify(obj));\n"
+            + "    alert(JSON.stringify(obj, null, 2));\n"
+            + "    alert(JSON.stringify(function() {}));\n"
+            + "  }\n"
+            + "</script>\n"
+            + "</head>\n"
+            + "<body onload='doTest()'>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
 }
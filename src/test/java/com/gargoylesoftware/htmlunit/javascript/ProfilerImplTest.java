@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.javascript.ProfilerImpl.FunctionStatistics;
+
+/**
+ * Tests for {@link ProfilerImpl}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class ProfilerImplTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void profile() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>\n"
+            + "  function fib(n) {\n"
+            + "    return n < 2 ? n : fib(n - 1) + fib(n - 2);\n"
+            + "  }\n"
+            + "  function test() {\n"
+            + "    fib(10);\n"
+            + "  }\n"
+            + "  test();\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        final ProfilerImpl profiler = new ProfilerImpl();
+        final HtmlUnitContextFactory factory = ((JavaScriptEngine) client.getJavaScriptEngine()).getContextFactory();
+        factory.setDebugger(profiler);
+        try {
+            loadPage(html);
+        }
+        finally {
+            factory.setDebugger(null);
+        }
+
+        final List<FunctionStatistics> statistics = profiler.getFunctionStatistics();
+        FunctionStatistics fib = null;
+        FunctionStatistics test = null;
+        for (final FunctionStatistics stats : statistics) {
+            if ("fib".equals(stats.getName())) {
+                fib = stats;
+            }
+            else if ("test".equals(stats.getName())) {
+                test = stats;
+            }
+        }
+        assertNotNull(fib);
+        assertNotNull(test);
+        assertEquals(177L, fib.getCallCount());
+        assertEquals(1L, test.getCallCount());
+        assertEquals(URL_FIRST.toExternalForm(), fib.getUrl());
+        assertEquals(3, fib.getLine());
+        assertTrue(test.getTotalTime() >= fib.getTotalTime());
+        assertTrue(fib.getTotalTime() >= fib.getSelfTime());
+
+        final StringWriter collapsed = new StringWriter();
+        profiler.writeCollapsedStacks(collapsed);
+        final String fibLabel = "fib (" + URL_FIRST + ":3)";
+        assertTrue(collapsed.toString(),
+                collapsed.toString().contains("test (" + URL_FIRST + ":6);" + fibLabel + ";" + fibLabel));
+
+        final StringWriter trace = new StringWriter();
+        profiler.writeChromeTrace(trace);
+        assertTrue(trace.toString().startsWith("{\"traceEvents\":["));
+        assertTrue(trace.toString().contains("\"name\":\"fib\",\"cat\":\"js\",\"ph\":\"X\""));
+
+        profiler.reset();
+        assertTrue(profiler.getFunctionStatistics().isEmpty());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getUrl() throws Exception {
+        assertEquals("http://foo/bar.html",
+                ProfilerImpl.getUrl("script in http://foo/bar.html from (3, 10) to (10, 13)"));
+        assertEquals("http://foo/bar.js", ProfilerImpl.getUrl("http://foo/bar.js"));
+        assertEquals("unknown", ProfilerImpl.getUrl(null));
+    }
+}
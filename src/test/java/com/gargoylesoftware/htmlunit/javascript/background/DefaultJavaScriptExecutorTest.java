@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+
+/**
+ * Tests for {@link DefaultJavaScriptExecutor}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class DefaultJavaScriptExecutorTest extends SimpleWebTestCase {
+
+    /**
+     * Due jobs are executed as batch, an error in one job does not affect the others.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void dueJobsRunAsBatch() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  var count = 0;\n"
+            + "  for (var i = 0; i < 50; i++) {\n"
+            + "    setTimeout(function() { count++; }, 0);\n"
+            + "    if (i == 25) {\n"
+            + "      setTimeout(function() { undefined.foo(); }, 0);\n"
+            + "    }\n"
+            + "  }\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        client.getOptions().setThrowExceptionOnScriptError(false);
+
+        final MockWebConnection conn = getMockWebConnection();
+        conn.setDefaultResponse(content);
+        client.setWebConnection(conn);
+
+        final HtmlPage page = client.getPage(URL_FIRST);
+        assertEquals(0, client.waitForBackgroundJavaScript(2_000));
+        assertEquals(50, ((Number) page.executeJavaScript("count").getJavaScriptResult()).intValue());
+
+        final DefaultJavaScriptExecutor executor
+            = (DefaultJavaScriptExecutor) ((JavaScriptEngine) client.getJavaScriptEngine()).getJavaScriptExecutor();
+
+        // the counters are updated after the job finished; give the executor a moment
+        final long end = System.currentTimeMillis() + 1_000;
+        while (executor.getExecutedJobCount() < 51 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(51L, executor.getExecutedJobCount());
+        assertTrue(executor.getBatchCount() < executor.getExecutedJobCount());
+    }
+}
@@ -144,6 +144,30 @@ public class JavaScriptJobManagerMinimalTest {
         assertEquals(1, count.intValue());
     }
 
+    /**
+     * The event loop has to wake up as soon as a job is added; it must not
+     * wait for the end of an idle period.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void addJob_wakesUpIdleEventLoop() throws Exception {
+        // let the event loop become idle
+        Thread.sleep(100);
+
+        final MutableInt count = new MutableInt(0);
+        final JavaScriptJob job = new BasicJavaScriptJob(0, null) {
+            @Override
+            public void run() {
+                count.increment();
+            }
+        };
+        final long start = System.currentTimeMillis();
+        manager_.addJob(job, page_);
+        manager_.waitForJobs(5000);
+        assertEquals(1, count.intValue());
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
     /**
      * @throws Exception if an error occurs
      */
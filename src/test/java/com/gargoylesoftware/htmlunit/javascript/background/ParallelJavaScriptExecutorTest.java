@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
+
+/**
+ * Tests for {@link ParallelJavaScriptExecutor}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class ParallelJavaScriptExecutorTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void topLevelWindowsUseDifferentWorkers() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    setTimeout(function() { alert('done'); }, 10);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "  <iframe src='" + URL_SECOND + "'></iframe>\n"
+            + "</body></html>";
+        final String frameContent = "<html><head><script>\n"
+            + "  setTimeout(function() { alert('frame'); }, 10);\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        client.getOptions().setJavaScriptExecutorThreads(2);
+
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+        final MockWebConnection conn = getMockWebConnection();
+        conn.setResponse(URL_SECOND, frameContent);
+        conn.setDefaultResponse(content);
+        client.setWebConnection(conn);
+
+        client.getPage(URL_FIRST);
+        // a second window without opener
+        final TopLevelWindow second = new TopLevelWindow("second", client) { };
+        client.getPage(second, new WebRequest(URL_THIRD));
+        assertEquals(0, client.waitForBackgroundJavaScript(2_000));
+        assertEquals(4, collectedAlerts.size());
+
+        final JavaScriptExecutor executor = ((JavaScriptEngine) client.getJavaScriptEngine()).getJavaScriptExecutor();
+        assertTrue(executor instanceof ParallelJavaScriptExecutor);
+        final List<DefaultJavaScriptExecutor> workers = ((ParallelJavaScriptExecutor) executor).getWorkers();
+        assertEquals(2, workers.size());
+
+        // the counters are updated after the job finished; give the workers a moment
+        final long end = System.currentTimeMillis() + 1_000;
+        while (((ParallelJavaScriptExecutor) executor).getExecutedJobCount() < 4
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        // every worker serves one top level window and its frame
+        assertEquals(2, workers.get(0).getJobManagerCount());
+        assertEquals(2, workers.get(1).getJobManagerCount());
+        assertEquals(2L, workers.get(0).getExecutedJobCount());
+        assertEquals(2L, workers.get(1).getExecutedJobCount());
+        assertEquals(4L, ((ParallelJavaScriptExecutor) executor).getExecutedJobCount());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * Tests for {@link VirtualJavaScriptClock}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class VirtualJavaScriptClockTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void fastForwardTimeouts() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    var start = Date.now();\n"
+            + "    var perfStart = performance.now();\n"
+            + "    setTimeout(function() {\n"
+            + "      alert(Date.now() - start >= 5000);\n"
+            + "      alert(new Date().getTime() - start >= 5000);\n"
+            + "      alert(performance.now() - perfStart >= 4999);\n"
+            + "      alert(new Date() instanceof Date);\n"
+            + "    }, 5000);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "</body></html>";
+
+        final WebClient client = getWebClient();
+        client.setJavaScriptClock(new VirtualJavaScriptClock());
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        loadPage(client, content, collectedAlerts);
+        assertEquals(0, client.waitForBackgroundJavaScript(10_000));
+
+        assertEquals(new String[] {"true", "true", "true", "true"}, collectedAlerts);
+        assertTrue(System.currentTimeMillis() - start < 4000);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void fastForwardInterval() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    var count = 0;\n"
+            + "    var id = setInterval(function() {\n"
+            + "      count++;\n"
+            + "      if (count == 10) {\n"
+            + "        clearInterval(id);\n"
+            + "        alert('done');\n"
+            + "      }\n"
+            + "    }, 1000);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "</body></html>";
+
+        final WebClient client = getWebClient();
+        client.setJavaScriptClock(new VirtualJavaScriptClock());
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        loadPage(client, content, collectedAlerts);
+        assertEquals(0, client.waitForBackgroundJavaScript(20_000));
+
+        assertEquals(new String[] {"done"}, collectedAlerts);
+        assertTrue(System.currentTimeMillis() - start < 4000);
+    }
+
+    /**
+     * The clock must not jump beyond the time someone is waiting for.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void doNotJumpBeyondWaitTime() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    setTimeout(function() { alert('first'); }, 1000);\n"
+            + "    setTimeout(function() { alert('second'); }, 60000);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "</body></html>";
+
+        final WebClient client = getWebClient();
+        client.setJavaScriptClock(new VirtualJavaScriptClock());
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        loadPage(client, content, collectedAlerts);
+        assertEquals(1, client.waitForBackgroundJavaScript(5_000));
+        assertEquals(new String[] {"first"}, collectedAlerts);
+        assertTrue(System.currentTimeMillis() - start < 4000);
+    }
+}
@@ -1713,4 +1713,83 @@ public class PromiseTest extends WebDriverTestCase {
         final WebDriver driver = loadPage2(html);
         assertTitle(driver, getExpectedAlerts()[0]);
     }
+
+    /**
+     * Promise reactions are microtasks; they run before any timer.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Alerts(DEFAULT = {"sync", "then1", "then2", "timeout"},
+            IE = "")
+    public void reactionsBeforeTimeout() throws Exception {
+        final String html =
+            "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    function test() {\n"
+            + "      if (window.Promise) {\n"
+            + "        setTimeout(function() { log('timeout'); }, 0);\n"
+            + "        Promise.resolve().then(function() {\n"
+            + "          log('then1');\n"
+            + "        }).then(function() {\n"
+            + "          log('then2');\n"
+            + "        });\n"
+            + "        log('sync');\n"
+            + "      }\n"
+            + "    }\n"
+            + "    function log(x) {\n"
+            + "      document.getElementById('log').value += x + '\\n';\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='test()'>\n"
+            + "  <textarea id='log' cols='80' rows='40'></textarea>\n"
+            + "</body>\n"
+            + "</html>";
+
+        final WebDriver driver = loadPage2(html);
+
+        verifyAlerts(() -> driver.findElement(By.id("log"))
+                .getAttribute("value").trim().replaceAll("\r", ""), String.join("\n", getExpectedAlerts()));
+    }
+
+    /**
+     * A TypeError thrown by a reaction rejects the returned promise.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Alerts(DEFAULT = {"sync", "TypeError"},
+            IE = "")
+    public void reactionThrowsTypeError() throws Exception {
+        final String html =
+            "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    function test() {\n"
+            + "      if (window.Promise) {\n"
+            + "        Promise.resolve().then(function() {\n"
+            + "          null.foo();\n"
+            + "        }).then(function() {\n"
+            + "          log('fulfilled');\n"
+            + "        }, function(e) {\n"
+            + "          log(e.name);\n"
+            + "        });\n"
+            + "        log('sync');\n"
+            + "      }\n"
+            + "    }\n"
+            + "    function log(x) {\n"
+            + "      document.getElementById('log').value += x + '\\n';\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='test()'>\n"
+            + "  <textarea id='log' cols='80' rows='40'></textarea>\n"
+            + "</body>\n"
+            + "</html>";
+
+        final WebDriver driver = loadPage2(html);
+
+        verifyAlerts(() -> driver.findElement(By.id("log"))
+                .getAttribute("value").trim().replaceAll("\r", ""), String.join("\n", getExpectedAlerts()));
+    }
 }
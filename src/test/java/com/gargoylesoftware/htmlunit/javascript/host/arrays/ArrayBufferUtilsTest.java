@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
+import net.sourceforge.htmlunit.corejs.javascript.typedarrays.NativeArrayBuffer;
+
+/**
+ * Tests for {@link ArrayBufferUtils}.
+ *
+ * @author Ronald Brill
+ */
+public class ArrayBufferUtilsTest {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void encodeUtf8() throws Exception {
+        final String[] texts = {"", "abc", "äöü", "€", "😀",
+            "a\ud83dz", "\ude00", "x\ud83d", "mixed ä € 😀 \ud800\ud800 end"};
+
+        final Context cx = Context.enter();
+        try {
+            final Scriptable scope = cx.initStandardObjects();
+            for (final String text : texts) {
+                final byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+                assertEquals(text, expected.length, ArrayBufferUtils.utf8Length(text));
+
+                final NativeArrayBuffer buffer = ArrayBufferUtils.encodeUtf8(scope, text);
+                assertArrayEquals(text, expected, buffer.getBuffer());
+            }
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void read() throws Exception {
+        final byte[] data = {1, 2, 3, 4, 5};
+
+        final Context cx = Context.enter();
+        try {
+            final Scriptable scope = cx.initStandardObjects();
+
+            NativeArrayBuffer buffer = ArrayBufferUtils.read(scope,
+                    Channels.newChannel(new ByteArrayInputStream(data)), data.length);
+            assertArrayEquals(data, buffer.getBuffer());
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data).flip();
+            direct.position(1);
+            buffer = ArrayBufferUtils.newArrayBuffer(scope, direct);
+            assertArrayEquals(new byte[] {2, 3, 4, 5}, buffer.getBuffer());
+            assertEquals(1, direct.position());
+        }
+        finally {
+            Context.exit();
+        }
+    }
+}
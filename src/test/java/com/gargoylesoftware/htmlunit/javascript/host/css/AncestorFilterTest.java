@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.css;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Tests for {@link AncestorFilter}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class AncestorFilterTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void ancestors() throws Exception {
+        final String html = "<html><head></head><body>\n"
+            + "<div id='d1' class='a  b'><p id='p1'><span id='s1'></span></p></div>\n"
+            + "</body></html>";
+        final HtmlPage page = loadPage(html);
+
+        final AncestorFilter filter = new AncestorFilter(page.getElementById("s1"));
+        assertTrue(filter.mayContainAll(new int[] {AncestorFilter.tagHash("div"), AncestorFilter.tagHash("p"),
+            AncestorFilter.tagHash("body"), AncestorFilter.idHash("d1"), AncestorFilter.idHash("p1"),
+            AncestorFilter.classHash("a"), AncestorFilter.classHash("b")}));
+        assertTrue(filter.mayContainAll(new int[0]));
+
+        // the element itself is not part of the filter
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.tagHash("span")}));
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.idHash("s1")}));
+        // the hashes of tags, ids and classes are different
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.classHash("div")}));
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.idHash("a")}));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void pushAndPop() throws Exception {
+        final String html = "<html><head></head><body>\n"
+            + "<div id='d1' class='a'><div id='d2' class='a b'></div></div>\n"
+            + "</body></html>";
+        final HtmlPage page = loadPage(html);
+        final DomElement d1 = page.getElementById("d1");
+        final DomElement d2 = page.getElementById("d2");
+
+        final AncestorFilter filter = new AncestorFilter();
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.tagHash("div")}));
+
+        filter.pushElement(d1);
+        filter.pushElement(d2);
+        assertTrue(filter.mayContainAll(new int[] {AncestorFilter.classHash("a"), AncestorFilter.classHash("b"),
+            AncestorFilter.idHash("d1"), AncestorFilter.idHash("d2")}));
+
+        // d2 is removed, even if its attributes have been changed in between
+        d2.setAttribute("class", "c");
+        filter.popElement();
+        assertTrue(filter.mayContainAll(new int[] {AncestorFilter.tagHash("div"), AncestorFilter.classHash("a")}));
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.classHash("b")}));
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.idHash("d2")}));
+
+        filter.popElement();
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.tagHash("div")}));
+        assertFalse(filter.mayContainAll(new int[] {AncestorFilter.classHash("a")}));
+    }
+}
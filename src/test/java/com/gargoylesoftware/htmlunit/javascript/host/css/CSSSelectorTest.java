@@ -1649,4 +1649,50 @@ public class CSSSelectorTest extends WebDriverTestCase {
 
         loadPageWithAlerts2(html);
     }
+
+    /**
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Alerts({"s1,s2,s3", "s1", "s3", "s1,s4", "s2,s3", "", "s2,s3", "s2,s3", "s3",
+             "rgb(255, 0, 0)", "rgb(0, 0, 0)"})
+    public void combinators() throws Exception {
+        final String html = "<html><head>\n"
+            + "<meta http-equiv='X-UA-Compatible' content='IE=edge'>\n"
+            + "<style>.x .z { color: rgb(255, 0, 0) }</style>\n"
+            + "<script>\n"
+            + "function ids(list) {\n"
+            + "  var result = [];\n"
+            + "  for (var i = 0; i < list.length; i++) {\n"
+            + "    result.push(list[i].id);\n"
+            + "  }\n"
+            + "  return result.join(',');\n"
+            + "}\n"
+            + "function test() {\n"
+            + "  alert(ids(document.querySelectorAll('.x span')));\n"
+            + "  alert(ids(document.querySelectorAll('#a > p span')));\n"
+            + "  alert(ids(document.querySelectorAll('div.x.y section .z')));\n"
+            + "  alert(ids(document.querySelectorAll('#b span, .x p > span')));\n"
+            + "  alert(ids(document.querySelectorAll('p + section span')));\n"
+            + "  alert(ids(document.querySelectorAll('.unknown span')));\n"
+
+            + "  var sec = document.getElementById('sec');\n"
+            + "  alert(ids(sec.querySelectorAll('div span')));\n"
+            + "  alert(ids(sec.querySelectorAll('#sec span')));\n"
+            + "  alert(ids(sec.querySelectorAll('.y .z')));\n"
+
+            + "  alert(window.getComputedStyle(document.getElementById('s1'), null).color);\n"
+            + "  alert(window.getComputedStyle(document.getElementById('s4'), null).color);\n"
+            + "}\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "  <div id='a' class='x y'>\n"
+            + "    <p id='p1'><span id='s1' class='z'></span></p>\n"
+            + "    <section id='sec'><span id='s2'></span><span id='s3' class='z'></span></section>\n"
+            + "  </div>\n"
+            + "  <div id='b'><span id='s4' class='z'></span></div>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
 }
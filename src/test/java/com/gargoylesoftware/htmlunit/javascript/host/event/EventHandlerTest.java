@@ -19,12 +19,14 @@ import org.junit.runner.RunWith;
 import org.openqa.selenium.WebDriver;
 
 import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Alerts;
 import com.gargoylesoftware.htmlunit.WebDriverTestCase;
 
 /**
  * Tests for {@link EventHandler}.
  *
  * @author Ahmed Ashour
+ * @author Ronald Brill
  */
 @RunWith(BrowserRunner.class)
 public class EventHandlerTest extends WebDriverTestCase {
@@ -45,4 +47,45 @@ public class EventHandlerTest extends WebDriverTestCase {
         final String alert = getCollectedAlerts(driver, 1).get(0);
         assertTrue(alert.contains("function onload(event)"));
     }
+
+    /**
+     * Handlers with the same code share the compiled code but not the scope.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"a1", "b2", "a3", "function", "true"})
+    public void sameCodeDifferentElements() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var count = 0;\n"
+            + "  function test() {\n"
+            + "    document.getElementById('a').click();\n"
+            + "    document.getElementById('b').click();\n"
+            + "    document.getElementById('a').click();\n"
+            + "    alert(typeof document.getElementById('a').onclick);\n"
+            + "    alert(document.getElementById('a').onclick !== document.getElementById('b').onclick);\n"
+            + "  }\n"
+            + "</script></head><body onload='test()'>\n"
+            + "  <div id='a' onclick='alert(id + (++count))'></div>\n"
+            + "  <div id='b' onclick='alert(id + (++count))'></div>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"true", "true"})
+    public void handlerNameInScope() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    document.getElementById('a').click();\n"
+            + "  }\n"
+            + "</script></head><body onload='test()'>\n"
+            + "  <div id='a' onclick='alert(onclick === this.onclick); alert(typeof event == \"object\")'></div>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
 }
@@ -825,6 +825,95 @@ public class HTMLCollectionTest extends WebDriverTestCase {
         item("'1.1'");
     }
 
+    /**
+     * Live collections are updated when nodes are added or removed.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"2", "3", "s1,x1,s2,x2,s3", "s1,s2,x2,s3", "s1,s2,x2,s3,n1,n2", "n2",
+             "2", "d1,d2", "d0,d1,d2,d3", "d0", "d0", "d0", "4", "r1,r2,r3,r4"})
+    public void liveUpdates() throws Exception {
+        final String html
+            = "<html><head><script>\n"
+            + "  function ids(col) {\n"
+            + "    var result = [];\n"
+            + "    for (var i = 0; i < col.length; i++) {\n"
+            + "      result.push(col[i].id);\n"
+            + "    }\n"
+            + "    return result.join(',');\n"
+            + "  }\n"
+            + "  function span(id) {\n"
+            + "    var s = document.createElement('span');\n"
+            + "    s.id = id;\n"
+            + "    return s;\n"
+            + "  }\n"
+            + "  function test() {\n"
+            + "    var spans = document.getElementsByTagName('span');\n"
+            + "    alert(spans.length);\n"
+            + "    var div = document.getElementById('d');\n"
+            + "    div.appendChild(span('s3'));\n"
+            + "    alert(spans.length);\n"
+
+            + "    var inner = document.createElement('p');\n"
+            + "    inner.appendChild(span('x1'));\n"
+            + "    inner.appendChild(span('x2'));\n"
+            + "    div.insertBefore(inner, document.getElementById('s2'));\n"
+            + "    document.getElementById('s2').appendChild(inner.lastChild);\n"
+            + "    alert(ids(spans));\n"
+
+            + "    div.removeChild(inner);\n"
+            + "    alert(ids(spans));\n"
+
+            + "    var nested = span('n1');\n"
+            + "    nested.appendChild(span('n2'));\n"
+            + "    document.body.appendChild(nested);\n"
+            + "    alert(ids(spans));\n"
+            + "    alert(ids(nested.getElementsByTagName('span')));\n"
+
+            // collection rooted at a detached node
+            + "    var detached = document.createElement('div');\n"
+            + "    var divs = detached.getElementsByTagName('div');\n"
+            + "    detached.appendChild(document.createElement('div')).id = 'd1';\n"
+            + "    detached.appendChild(document.createElement('div')).id = 'd2';\n"
+            + "    alert(divs.length);\n"
+            + "    alert(ids(divs));\n"
+            + "    var d0 = document.createElement('div');\n"
+            + "    d0.id = 'd0';\n"
+            + "    detached.insertBefore(d0, detached.firstChild);\n"
+            + "    detached.lastChild.appendChild(document.createElement('div')).id = 'd3';\n"
+            + "    alert(ids(divs));\n"
+            + "    detached.removeChild(detached.childNodes[1]);\n"
+            + "    detached.removeChild(detached.childNodes[1]);\n"
+            + "    alert(ids(divs));\n"
+
+            // changes of a clone are not visible
+            + "    var clone = detached.cloneNode(true);\n"
+            + "    clone.appendChild(document.createElement('div')).id = 'c1';\n"
+            + "    alert(ids(divs));\n"
+            + "    clone.removeChild(clone.firstChild);\n"
+            + "    alert(ids(divs));\n"
+
+            // rows are appended while iterating
+            + "    var table = document.getElementById('t');\n"
+            + "    var rows = table.rows;\n"
+            + "    for (var i = 0; i < rows.length && i < 10; i++) {\n"
+            + "      if (rows.length < 4) {\n"
+            + "        var id = 'r' + (rows.length + 1);\n"
+            + "        table.insertRow(-1).id = id;\n"
+            + "      }\n"
+            + "    }\n"
+            + "    alert(rows.length);\n"
+            + "    alert(ids(rows));\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "  <div id='d'><span id='s1'></span><span id='s2'></span></div>\n"
+            + "  <table id='t'><tr id='r1'><td></td></tr></table>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
+
     private void namedItem(final String name) throws Exception {
         final String html
             = "<!doctype html>\n"
@@ -143,6 +143,51 @@ public class HTMLDocumentTest extends WebDriverTestCase {
         loadPageWithAlerts2(html);
     }
 
+    /**
+     * The collections are served from the indexes of the page; they have to follow the dom changes.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"3 3", "new,div1,span2,span3", "new,div1,span1,span2,span3", "new,div1,span1,span3",
+                "new,span3", "new,span3", "new", "2"})
+    public void getElementsByClassNameAndTagNameLive() throws Exception {
+        final String html
+            = "<html><head><script>\n"
+            + "function ids(coll) {\n"
+            + "  var result = [];\n"
+            + "  for (var i = 0; i < coll.length; i++) {\n"
+            + "    result.push(coll[i].id);\n"
+            + "  }\n"
+            + "  return result.join(',');\n"
+            + "}\n"
+            + "function doTest() {\n"
+            + "  var byClass = document.getElementsByClassName('foo');\n"
+            + "  var byTag = document.getElementsByTagName('span');\n"
+            + "  alert(byClass.length + ' ' + byTag.length);\n"
+            + "  var s = document.createElement('span');\n"
+            + "  s.className = 'foo';\n"
+            + "  s.id = 'new';\n"
+            + "  document.body.insertBefore(s, document.body.firstChild);\n"
+            + "  alert(ids(byClass));\n"
+            + "  document.getElementById('span1').className = 'bar  foo';\n"
+            + "  alert(ids(byClass));\n"
+            + "  document.getElementById('span2').className = 'bar';\n"
+            + "  alert(ids(byClass));\n"
+            + "  document.body.removeChild(document.getElementById('div1'));\n"
+            + "  alert(ids(byClass));\n"
+            + "  alert(ids(byTag));\n"
+            + "  document.getElementById('span3').removeAttribute('class');\n"
+            + "  alert(ids(byClass));\n"
+            + "  alert(document.getElementsByTagName('SPAN').length);\n"
+            + "}\n"
+            + "</script></head><body onload='doTest()'>"
+            + "<div class='foo' id='div1'><span id='span1'>a</span><span class='foo' id='span2'>b</span></div>"
+            + "<SPAN class='x foo' id='span3'>c</SPAN>"
+            + "</body></html>";
+
+        loadPageWithAlerts2(html);
+    }
+
     /**
      * @throws Exception if the test fails
      */
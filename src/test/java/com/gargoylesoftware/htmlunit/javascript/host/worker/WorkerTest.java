@@ -262,4 +262,65 @@ public class WorkerTest extends WebDriverTestCase {
 
         loadPageWithAlerts2(html);
     }
+
+    /**
+     * The message is cloned; changes done by the worker are not visible in the page.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"1", "2", "4", "true", "7"})
+    public void postMessageClonesData() throws Exception {
+        final String html = "<html><body><script>\n"
+            + "  var msg = { v: 1, list: [1, 2, 3], nested: { x: 7 } };\n"
+            + "  msg.self = msg;\n"
+            + "  var myWorker = new Worker('worker.js');\n"
+            + "  myWorker.onmessage = function(e) {\n"
+            + "    alert(msg.v);\n"
+            + "    alert(e.data.v);\n"
+            + "    alert(e.data.list.length);\n"
+            + "    alert(e.data.self === e.data);\n"
+            + "    alert(e.data.nested.x);\n"
+            + "  };\n"
+            + "  myWorker.postMessage(msg);\n"
+            + "</script></body></html>\n";
+
+        final String workerJs = "onmessage = function(e) {\n"
+                + "  e.data.v = 2;\n"
+                + "  e.data.list.push(4);\n"
+                + "  postMessage(e.data);\n"
+                + "}\n";
+
+        getMockWebConnection().setResponse(new URL(URL_FIRST, "worker.js"), workerJs);
+
+        loadPageWithAlerts2(html, 2000);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"6", "3", "12"})
+    public void postMessageTransferArrayBuffer() throws Exception {
+        final String html = "<html><body><script>\n"
+            + "  var myWorker = new Worker('worker.js');\n"
+            + "  myWorker.onmessage = function(e) {\n"
+            + "    alert(e.data.sum);\n"
+            + "    alert(e.data.bytes.length);\n"
+            + "    alert(e.data.bytes[0] + e.data.bytes[1] + e.data.bytes[2]);\n"
+            + "  };\n"
+            + "  var bytes = new Uint8Array([1, 2, 3]);\n"
+            + "  myWorker.postMessage(bytes, [bytes.buffer]);\n"
+            + "</script></body></html>\n";
+
+        final String workerJs = "onmessage = function(e) {\n"
+                + "  var bytes = e.data;\n"
+                + "  var sum = bytes[0] + bytes[1] + bytes[2];\n"
+                + "  for (var i = 0; i < bytes.length; i++) { bytes[i] = bytes[i] * 2; }\n"
+                + "  postMessage({ sum: sum, bytes: bytes }, [bytes.buffer]);\n"
+                + "}\n";
+
+        getMockWebConnection().setResponse(new URL(URL_FIRST, "worker.js"), workerJs);
+
+        loadPageWithAlerts2(html, 2000);
+    }
 }
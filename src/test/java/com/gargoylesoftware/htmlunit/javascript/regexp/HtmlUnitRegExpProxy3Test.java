@@ -15,6 +15,8 @@
 package com.gargoylesoftware.htmlunit.javascript.regexp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -22,6 +24,7 @@ import java.util.regex.Pattern;
 import org.junit.Test;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 
 /**
  * Tests for {@link HtmlUnitRegExpProxy}.
@@ -29,6 +32,7 @@ import com.gargoylesoftware.htmlunit.BrowserVersion;
  * @author Marc Guillemot
  * @author Ahmed Ashour
  * @author Frank Danek
+ * @author Ronald Brill
  */
 public class HtmlUnitRegExpProxy3Test {
 
@@ -85,4 +89,22 @@ public class HtmlUnitRegExpProxy3Test {
             assertEquals("\\" + c, HtmlUnitRegExpProxy.jsRegExpToJavaRegExp("\\" + c));
         }
     }
+
+    /**
+     * Verifies that translations are cached and the cache is bounded.
+     */
+    @Test
+    public void translationCache() {
+        final LruCache<String, String> cache = HtmlUnitRegExpProxy.getTranslationCache();
+        final long hits = cache.getHitCount();
+
+        final String translated = HtmlUnitRegExpProxy.jsRegExpToJavaRegExp("(a)(b)[^\\2c]translationCache");
+        assertSame(translated, HtmlUnitRegExpProxy.jsRegExpToJavaRegExp("(a)(b)[^\\2c]translationCache"));
+        assertTrue(cache.getHitCount() > hits);
+
+        for (int i = 0; i < HtmlUnitRegExpProxy.CACHE_SIZE + 10; i++) {
+            HtmlUnitRegExpProxy.jsRegExpToJavaRegExp("a{" + i + "}");
+        }
+        assertTrue(cache.size() <= HtmlUnitRegExpProxy.CACHE_SIZE);
+    }
 }
@@ -1120,4 +1120,15 @@ public class HtmlUnitRegExpProxyTest extends WebDriverTestCase {
         // [^] matches any character in JS
         testEvaluate("'ab]cd'.replace(/[^]]/g, 'x')");
     }
+
+    /**
+     * A string used as pattern must not share the cached pattern of a regular expression
+     * having the same string form.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts("2-1")
+    public void stringPatternNotMixedUpWithRegExp() throws Exception {
+        testEvaluate("'aa'.match(/a/g).length + '-' + 'x/a/g'.search('/a/g')");
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LruCache}.
+ *
+ * @author Ronald Brill
+ */
+public class LruCacheTest {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        // touch a, so b is the eldest one
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void computeIfAbsent() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(10);
+        assertEquals("A", cache.computeIfAbsent("a", k -> "A"));
+        assertEquals("A", cache.computeIfAbsent("a", k -> "other"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+
+        try {
+            cache.computeIfAbsent("x", k -> {
+                throw new IllegalStateException();
+            });
+            fail("IllegalStateException expected");
+        }
+        catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitRate(), 0.0001);
+    }
+}
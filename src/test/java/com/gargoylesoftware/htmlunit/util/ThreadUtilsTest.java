@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2002-2020 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * Tests for {@link ThreadUtils}.
+ *
+ * @author Ronald Brill
+ */
+@RunWith(BrowserRunner.class)
+public class ThreadUtilsTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void newThread() throws Exception {
+        final Thread platform = ThreadUtils.newThread("test", () -> { }, false);
+        assertEquals("test", platform.getName());
+        assertTrue(platform.isDaemon());
+
+        // falls back to a daemon thread if virtual threads are not supported
+        final Thread thread = ThreadUtils.newThread("virtual", () -> { }, true);
+        assertEquals("virtual", thread.getName());
+        assertTrue(thread.isDaemon());
+
+        if (!ThreadUtils.isVirtualThreadSupported()) {
+            assertNull(ThreadUtils.newVirtualThreadPerTaskExecutor());
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void eventLoopWithVirtualThreads() throws Exception {
+        final String content = "<html><head><script>\n"
+            + "  function test() {\n"
+            + "    setTimeout(function() { alert('done'); }, 10);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'>\n"
+            + "</body></html>";
+
+        final WebClient client = getWebClient();
+        client.getOptions().setUseVirtualThreads(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        loadPage(client, content, collectedAlerts);
+        assertEquals(0, client.waitForBackgroundJavaScript(1_000));
+        assertEquals(new String[] {"done"}, collectedAlerts);
+    }
+}